@@ -0,0 +1,114 @@
+package com.yc.clickhouse.benchmark;
+
+import com.yc.clickhouse.mapping.ParameterBinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量插入的逐列参数绑定：10列 × cells/10 行绑定到驱动的预编译语句（只绑定，不发送）。
+ * instanceofCascade 是原来 batchInsertExt 对每个值走的 instanceof 判断链，
+ * resolvedBinders 每列按表结构和第一行确定一次绑定器后整批复用
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBindingBenchmark {
+
+    private enum Status {
+        NEW, PAID, SHIPPED
+    }
+
+    private static final String[] TYPES = {"Int64", "Int32", "String", "Float64", "Decimal(18, 2)", "Float32",
+            "DateTime", "LowCardinality(String)", "Int16", "UInt8"};
+    private static final int DISTINCT_ROWS = 1024;// 行数据循环使用，不占用 cells 大小的内存
+
+    @Param({"10000000"})
+    private int cells;
+
+    private Connection connection;
+    private PreparedStatement statement;
+    private Object[][] rows;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = TTestFixture.dataSource(0).getConnection();
+        statement = connection.prepareStatement("INSERT INTO t_order (id,user_id,name,price,amount,ratio,created,status,qty,paid) VALUES ("
+                + String.join(",", Collections.nCopies(TYPES.length, "?")) + ")");
+        rows = new Object[DISTINCT_ROWS][];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < DISTINCT_ROWS; i++) {
+            rows[i] = new Object[]{(long) i, i, "name" + i, i + 0.5d, new BigDecimal(i).movePointLeft(2), i / 3f,
+                    new Date(now + i * 1000L), Status.values()[i % 3], (short) i, i % 2 == 0};
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        statement.close();
+        connection.close();
+    }
+
+    @Benchmark
+    public PreparedStatement instanceofCascade() throws SQLException {
+        int rowCount = cells / TYPES.length;
+        for (int r = 0; r < rowCount; r++) {
+            Object[] row = rows[r & (DISTINCT_ROWS - 1)];
+            for (int j = 0; j < row.length; j++) {
+                Object value = row[j];
+                if (value instanceof Integer) {
+                    statement.setInt(j + 1, (Integer) value);
+                } else if (value instanceof Long) {
+                    statement.setLong(j + 1, (Long) value);
+                } else if (value instanceof String) {
+                    statement.setString(j + 1, value.toString());
+                } else if (value instanceof Double) {
+                    statement.setDouble(j + 1, (Double) value);
+                } else if (value instanceof BigDecimal) {
+                    statement.setBigDecimal(j + 1, (BigDecimal) value);
+                } else if (value instanceof Float) {
+                    statement.setFloat(j + 1, (Float) value);
+                } else {
+                    statement.setObject(j + 1, value);
+                }
+            }
+        }
+        return statement;
+    }
+
+    @Benchmark
+    public PreparedStatement resolvedBinders() throws SQLException {
+        int rowCount = cells / TYPES.length;
+        ParameterBinder[] binders = new ParameterBinder[TYPES.length];
+        for (int j = 0; j < binders.length; j++) {
+            binders[j] = ParameterBinder.forColumn(TYPES[j], rows[0][j]);
+        }
+        for (int r = 0; r < rowCount; r++) {
+            Object[] row = rows[r & (DISTINCT_ROWS - 1)];
+            for (int j = 0; j < row.length; j++) {
+                binders[j].bind(statement, j + 1, row[j]);
+            }
+        }
+        return statement;
+    }
+}
@@ -0,0 +1,119 @@
+package com.yc.clickhouse.benchmark;
+
+import com.kamluen.clickhouse.FakeClickHouseServer;
+import com.yc.clickhouse.config.ClickHouseCompressionProperties;
+import com.yc.clickhouse.config.ClickHouseDataSourceConfig;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 传输压缩的吞吐量与网络字节数：经过真实驱动和HTTP访问进程内假clickHouse服务，compression 为
+ * none（不压缩）、requests（只压缩请求体）、lz4（请求体和响应都压缩）。
+ * requestBytes / responseBytes 是测量期间收发的网络字节总数，除以操作次数（ops/s × 测量总秒数）即每次操作的字节数；
+ * 单线程、无延迟时吞吐量的差异就是客户端加服务端压缩/解压的CPU开销
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    @Param({"10000"})
+    private int rows;
+
+    @Param({"none", "requests", "lz4"})
+    private String compression;
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private TTestDao dao;
+    private List<TTest> entities;
+    private List<Map<String, Object>> maps;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Wire {
+        public long requestBytes;
+        public long responseBytes;
+
+        private long received;
+        private long sent;
+
+        /**
+         * 累加上次记录以来服务端收发的字节数（只有本线程在访问服务）
+         */
+        void record(FakeClickHouseServer server) {
+            requestBytes += server.getReceivedBytes() - received;
+            responseBytes += server.getSentBytes() - sent;
+            received = server.getReceivedBytes();
+            sent = server.getSentBytes();
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requestBytes = 0;
+            responseBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        server = FakeClickHouseServer.start().tTest(rows);
+        ClickHouseCompressionProperties properties = new ClickHouseCompressionProperties();
+        properties.setCompressRequests(!"none".equals(compression));
+        properties.setCompressResponses("lz4".equals(compression));
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(1);
+        ClickHouseDataSourceConfig.applyCompression(dataSource, properties);
+        dao = Daos.newDao(TTestDao.class, dataSource);
+        entities = TTestFixture.entities(rows);
+        maps = TTestFixture.maps(rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Object selectList(Wire wire) {
+        Object result = dao.selectListObj("SELECT * FROM t_test", null);
+        wire.record(server);
+        return result;
+    }
+
+    @Benchmark
+    public void batchInsert(Wire wire) {
+        dao.batchInsert(entities, rows);
+        wire.record(server);
+    }
+
+    @Benchmark
+    public void batchInsertExt(Wire wire) {
+        dao.batchInsertExt(maps);
+        wire.record(server);
+    }
+}
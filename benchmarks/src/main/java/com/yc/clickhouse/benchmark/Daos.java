@@ -0,0 +1,28 @@
+package com.yc.clickhouse.benchmark;
+
+import com.yc.clickhouse.dao.ClickHouseDaoBase;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import javax.sql.DataSource;
+
+/**
+ * 不启动Spring，直接创建使用指定数据源的DAO
+ */
+public final class Daos {
+
+    private Daos() {
+    }
+
+    public static <D extends ClickHouseDaoBase<?>> D newDao(Class<D> daoClass, DataSource dataSource) {
+        try {
+            D dao = daoClass.newInstance();
+            Field field = ReflectionUtils.findField(ClickHouseDaoBase.class, "clickHouseDatasource");
+            ReflectionUtils.makeAccessible(field);
+            ReflectionUtils.setField(field, dao, dataSource);
+            return dao;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
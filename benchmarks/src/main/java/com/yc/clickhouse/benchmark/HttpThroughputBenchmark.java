@@ -0,0 +1,106 @@
+package com.yc.clickhouse.benchmark;
+
+import com.kamluen.clickhouse.FakeClickHouseServer;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经过真实驱动、连接池和HTTP访问进程内假clickHouse服务的DAO吞吐量，latency 模拟服务端耗时；
+ * 每个操作分别以 1、4、16 个线程运行（方法名后缀为线程数），得到吞吐量随并发变化的曲线，连接池大小为 16
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpThroughputBenchmark {
+
+    @Param({"1000"})
+    private int rows;
+
+    @Param({"0", "5"})
+    private long latencyMillis;
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private TTestDao dao;
+    private List<TTest> entities;
+
+    @Setup
+    public void setUp() {
+        server = FakeClickHouseServer.start().tTest(rows).latency(latencyMillis);
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(16);
+        dao = Daos.newDao(TTestDao.class, dataSource);
+        entities = TTestFixture.entities(rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+        server.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object selectList1() {
+        return selectList();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object selectList4() {
+        return selectList();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object selectList16() {
+        return selectList();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void batchInsert1() {
+        batchInsert();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void batchInsert4() {
+        batchInsert();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void batchInsert16() {
+        batchInsert();
+    }
+
+    private Object selectList() {
+        return dao.selectListObj("SELECT * FROM t_test", null);
+    }
+
+    private void batchInsert() {
+        dao.batchInsert(entities, rows);
+    }
+}
@@ -0,0 +1,373 @@
+package com.yc.clickhouse.benchmark;
+
+import org.apache.http.HttpEntity;
+import ru.yandex.clickhouse.ClickHouseConnection;
+import ru.yandex.clickhouse.ClickHousePreparedStatementImpl;
+import ru.yandex.clickhouse.ClickHouseStatementImpl;
+import ru.yandex.clickhouse.except.ClickHouseException;
+import ru.yandex.clickhouse.except.ClickHouseUnknownException;
+import ru.yandex.clickhouse.response.ClickHouseResultSet;
+import ru.yandex.clickhouse.settings.ClickHouseProperties;
+import ru.yandex.clickhouse.settings.ClickHouseQueryParam;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+import ru.yandex.clickhouse.util.ClickHouseStreamCallback;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.text.SimpleDateFormat;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * 不需要clickHouse服务的数据源：使用 clickhouse-jdbc 自己的语句和结果集实现，只把HTTP收发换成内存操作。
+ * 查询按 SQL 返回预先生成的 TabSeparatedWithNamesAndTypes 响应体，由驱动解析（RowBinary 查询返回 RowBinaryWithNamesAndTypes 响应体）；
+ * 插入的 VALUES / RowBinary 请求体完整编码后丢弃，只统计字节数。
+ * <p>
+ * 每次 getConnection() 返回新的租借连接，unwrap 得到共享的物理连接，与连接池下的预编译语句缓存行为一致
+ */
+public class InMemoryClickHouse implements DataSource {
+
+    private final ClickHouseProperties properties = new ClickHouseProperties();
+    private final TimeZone timeZone = TimeZone.getDefault();
+    private final Function<String, byte[]> responder;
+    private final ClickHouseConnection physicalConnection;
+    private long sentBytes;// 单线程基准测试使用，不需要同步
+
+    /**
+     * @param responder 查询SQL（已绑定参数）对应的响应体：TabSeparatedWithNamesAndTypes，
+     *                  SQL 带 FORMAT RowBinaryWithNamesAndTypes 时为 {@link #rowBinary} 生成的响应体
+     */
+    public InMemoryClickHouse(Function<String, byte[]> responder) {
+        this.responder = responder;
+        this.physicalConnection = physicalConnection();
+    }
+
+    /**
+     * 按列名、clickHouse类型和行生成器生成 TabSeparatedWithNamesAndTypes 响应体，日期列写成 yyyy-MM-dd，
+     * DateTime 列写成 yyyy-MM-dd HH:mm:ss
+     *
+     * @param names
+     * @param types
+     * @param rowCount
+     * @param rowGenerator
+     * @return
+     */
+    public static byte[] tsv(String[] names, String[] types, int rowCount, IntFunction<Object[]> rowGenerator) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder body = new StringBuilder(64 * (rowCount + 2));
+        body.append(String.join("\t", names)).append('\n');
+        body.append(String.join("\t", types)).append('\n');
+        for (int i = 0; i < rowCount; i++) {
+            Object[] row = rowGenerator.apply(i);
+            for (int j = 0; j < row.length; j++) {
+                if (j > 0) {
+                    body.append('\t');
+                }
+                if (row[j] == null) {
+                    body.append("\\N");
+                } else if (row[j] instanceof java.util.Date) {
+                    body.append((types[j].startsWith("DateTime") ? dateTimeFormat : dateFormat).format(row[j]));
+                } else {
+                    body.append(row[j]);
+                }
+            }
+            body.append('\n');
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按列名、clickHouse类型和行生成器生成 RowBinaryWithNamesAndTypes 响应体，
+     * 支持 UInt8/Int32/UInt32/Int64/Float64/String/Date/DateTime
+     *
+     * @param names
+     * @param types
+     * @param rowCount
+     * @param rowGenerator
+     * @return
+     */
+    public static byte[] rowBinary(String[] names, String[] types, int rowCount, IntFunction<Object[]> rowGenerator) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(32 * (rowCount + 2));
+        try {
+            ClickHouseRowBinaryStream out = new ClickHouseRowBinaryStream(body, TimeZone.getDefault(), new ClickHouseProperties());
+            out.writeUnsignedLeb128(names.length);
+            for (String name : names) {
+                out.writeString(name);
+            }
+            for (String type : types) {
+                out.writeString(type);
+            }
+            for (int i = 0; i < rowCount; i++) {
+                Object[] row = rowGenerator.apply(i);
+                for (int j = 0; j < row.length; j++) {
+                    writeValue(out, types[j], row[j]);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return body.toByteArray();
+    }
+
+    private static void writeValue(ClickHouseRowBinaryStream out, String type, Object value) throws IOException {
+        switch (type) {
+            case "UInt8":
+                out.writeUInt8(((Number) value).intValue());
+                break;
+            case "Int32":
+                out.writeInt32(((Number) value).intValue());
+                break;
+            case "UInt32":
+                out.writeUInt32(((Number) value).longValue());
+                break;
+            case "Int64":
+                out.writeInt64(((Number) value).longValue());
+                break;
+            case "Float64":
+                out.writeFloat64(((Number) value).doubleValue());
+                break;
+            case "String":
+                out.writeString(value.toString());
+                break;
+            case "Date":
+                out.writeDate((java.util.Date) value);
+                break;
+            case "DateTime":
+                out.writeDateTime((java.util.Date) value);
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported type " + type);
+        }
+    }
+
+    /**
+     * 已发送（编码后丢弃）的插入请求体字节数
+     *
+     * @return
+     */
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    private ResultSet respond(String sql, ClickHouseStatementImpl statement) throws SQLException {
+        try {
+            return new ClickHouseResultSet(new ByteArrayInputStream(responder.apply(sql)), properties.getBufferSize(),
+                    properties.getDatabase(), null, false, statement, timeZone, properties);
+        } catch (IOException e) {
+            throw new ClickHouseUnknownException(e, null, 0);
+        }
+    }
+
+    private ClickHouseRowBinaryInputStream respondRowBinary(String sql) {
+        return new ClickHouseRowBinaryInputStream(new ByteArrayInputStream(responder.apply(sql)), timeZone, properties);
+    }
+
+    private final OutputStream discard = new OutputStream() {
+        @Override
+        public void write(int b) {
+            sentBytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            sentBytes += len;
+        }
+    };
+
+    private ClickHouseConnection physicalConnection() {
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return new InMemoryPreparedStatement((ClickHouseConnection) proxy, properties, (String) args[0]);
+                case "createStatement":
+                    return new InMemoryStatement((ClickHouseConnection) proxy, properties);
+                case "getTimeZone":
+                case "getServerTimeZone":
+                    return timeZone;
+                case "isClosed":
+                    return false;
+                case "unwrap":
+                    return proxy;
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return null;
+            }
+        };
+        return (ClickHouseConnection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ClickHouseConnection.class}, handler);
+    }
+
+    @Override
+    public Connection getConnection() {
+        final boolean[] closed = {false};
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                    closed[0] = true;
+                    return null;
+                case "isClosed":
+                    return closed[0];
+                case "unwrap":
+                    return physicalConnection;
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(physicalConnection);
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    try {
+                        return method.invoke(physicalConnection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class}, handler);
+    }
+
+    /**
+     * 预编译语句：参数绑定、SQL拼接和批量 VALUES 编码都由驱动完成
+     */
+    private class InMemoryPreparedStatement extends ClickHousePreparedStatementImpl {
+
+        InMemoryPreparedStatement(ClickHouseConnection connection, ClickHouseProperties properties, String sql) throws SQLException {
+            super(null, connection, properties, sql, connection.getTimeZone(), ResultSet.TYPE_FORWARD_ONLY);
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            return respond(asSql(), this);
+        }
+
+        @Override
+        public ResultSet executeQuery(Map<ClickHouseQueryParam, String> additionalDBParams) throws SQLException {
+            return executeQuery();
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            asSql();
+            return 1;
+        }
+
+        @Override
+        public ClickHouseRowBinaryInputStream executeQueryClickhouseRowBinaryStream(String sql, Map<ClickHouseQueryParam, String> additionalDBParams) {
+            return respondRowBinary(sql);
+        }
+
+        @Override
+        public void sendStream(HttpEntity content, String sql, Map<ClickHouseQueryParam, String> additionalDBParams) throws ClickHouseException {
+            try {
+                content.writeTo(discard);
+            } catch (IOException e) {
+                throw new ClickHouseUnknownException(e, null, 0);
+            }
+        }
+    }
+
+    /**
+     * 普通语句：查询返回预置响应，RowBinary 插入流写入后丢弃
+     */
+    private class InMemoryStatement extends ClickHouseStatementImpl {
+
+        InMemoryStatement(ClickHouseConnection connection, ClickHouseProperties properties) {
+            super(null, connection, properties, ResultSet.TYPE_FORWARD_ONLY);
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql) throws SQLException {
+            return respond(sql, this);
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql, Map<ClickHouseQueryParam, String> additionalDBParams) throws SQLException {
+            return executeQuery(sql);
+        }
+
+        @Override
+        public int executeUpdate(String sql) {
+            return 1;
+        }
+
+        @Override
+        public ClickHouseRowBinaryInputStream executeQueryClickhouseRowBinaryStream(String sql, Map<ClickHouseQueryParam, String> additionalDBParams) {
+            return respondRowBinary(sql);
+        }
+
+        @Override
+        public void sendRowBinaryStream(String sql, ClickHouseStreamCallback callback) throws SQLException {
+            sendRowBinaryStream(sql, null, callback);
+        }
+
+        @Override
+        public void sendRowBinaryStream(String sql, Map<ClickHouseQueryParam, String> additionalDBParams,
+                                        ClickHouseStreamCallback callback) throws SQLException {
+            try {
+                ClickHouseRowBinaryStream stream = new ClickHouseRowBinaryStream(discard, timeZone, properties);
+                callback.writeTo(stream);
+            } catch (IOException e) {
+                throw new ClickHouseUnknownException(e, null, 0);
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) {
+        return getConnection();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException("not a wrapper");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return false;
+    }
+}
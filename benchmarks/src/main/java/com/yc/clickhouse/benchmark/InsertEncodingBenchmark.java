@@ -0,0 +1,89 @@
+package com.yc.clickhouse.benchmark;
+
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.mapping.EntityMeta;
+import com.yc.clickhouse.mapping.EntityRowBinaryWriter;
+import com.yc.clickhouse.po.TTest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.clickhouse.settings.ClickHouseProperties;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 插入编码：实体 RowBinary 编码（batchInsert）与 Map 逐列绑定后由驱动编码 VALUES（batchInsertExt），请求体编码后丢弃
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InsertEncodingBenchmark {
+
+    @Param({"1000", "50000"})
+    private int rows;
+
+    private TTestDao dao;
+    private List<TTest> entities;
+    private List<Map<String, Object>> maps;
+    private EntityRowBinaryWriter<TTest> writer;
+    private ClickHouseRowBinaryStream stream;
+
+    @Setup
+    public void setUp() {
+        dao = Daos.newDao(TTestDao.class, TTestFixture.dataSource(0));
+        entities = TTestFixture.entities(rows);
+        maps = TTestFixture.maps(rows);
+        Map<String, String> columnTypes = new HashMap<>();
+        for (int i = 0; i < TTestFixture.COLUMNS.length; i++) {
+            columnTypes.put(TTestFixture.COLUMNS[i], TTestFixture.TYPES[i]);
+        }
+        writer = new EntityRowBinaryWriter<>(EntityMeta.of(TTest.class), "t_test", columnTypes);
+        OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        stream = new ClickHouseRowBinaryStream(discard, TimeZone.getDefault(), new ClickHouseProperties());
+    }
+
+    @Benchmark
+    public long rowBinaryEncode() throws IOException {
+        long bytes = 0;
+        for (TTest entity : entities) {
+            bytes += writer.write(stream, entity);
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public void batchInsert() {
+        dao.batchInsert(entities, rows);
+    }
+
+    @Benchmark
+    public void batchInsertExt() {
+        dao.batchInsertExt(maps);
+    }
+}
@@ -0,0 +1,77 @@
+package com.yc.clickhouse.benchmark;
+
+import com.kamluen.clickhouse.FakeClickHouseServer;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.mapping.EntityQuery;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分页的客户端开销：limit start,size 与游标分页各取一页（pageSize 行）时，客户端拼SQL、解析游标、
+ * 经驱动和HTTP收发并映射结果的耗时（包含同进程假服务生成和编码这一页的时间）。
+ * 假服务按 offset 或游标位置直接生成返回的行，不模拟服务端读取并丢弃前 depth 行的代价，
+ * 所以结果与 depth 无关，不代表真实服务端的深分页延迟；那部分需要在真实clickHouse上对比 system.query_log 的 read_rows
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaginationClientOverheadBenchmark {
+
+    private static final int TABLE_ROWS = 2_000_000;
+
+    @Param({"1000", "100000", "1000000"})
+    private int depth;
+
+    @Param({"1000"})
+    private int pageSize;
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private TTestDao dao;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        server = FakeClickHouseServer.start().tTest(TABLE_ROWS);
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(2);
+        dao = Daos.newDao(TTestDao.class, dataSource);
+        TTest last = new TTest();
+        last.setId(depth - 1);// 上一页最后一行
+        token = EntityQuery.from(TTest.class).seek(null, pageSize).continuationToken(last);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Object offsetPage() {
+        return dao.selectPage(depth, pageSize, "order by id", null);
+    }
+
+    @Benchmark
+    public Object seekPage() {
+        return dao.selectPage(dao.query(), pageSize, token);
+    }
+}
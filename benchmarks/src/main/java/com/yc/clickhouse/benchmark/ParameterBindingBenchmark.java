@@ -0,0 +1,67 @@
+package com.yc.clickhouse.benchmark;
+
+import com.yc.clickhouse.dao.TTestDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询参数绑定：空结果的 IN (?, ...) 查询，耗时主要在逐个参数 setXxx 和驱动拼接最终SQL
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParameterBindingBenchmark {
+
+    @Param({"1", "16", "256"})
+    private int params;
+
+    private TTestDao dao;
+    private String sql;
+    private Object[] values;
+
+    @Setup
+    public void setUp() {
+        dao = Daos.newDao(TTestDao.class, TTestFixture.dataSource(0));
+        sql = "SELECT * FROM t_test WHERE id IN (" + String.join(",", Collections.nCopies(params, "?")) + ")";
+        values = new Object[params];
+        for (int i = 0; i < params; i++) {
+            switch (i % 5) {
+                case 0:
+                    values[i] = i;
+                    break;
+                case 1:
+                    values[i] = (long) i;
+                    break;
+                case 2:
+                    values[i] = "name" + i;
+                    break;
+                case 3:
+                    values[i] = i + 0.5d;
+                    break;
+                default:
+                    values[i] = new BigDecimal(i);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object bindAndExecute() {
+        return dao.selectListObj(sql, values);
+    }
+}
@@ -0,0 +1,86 @@
+package com.yc.clickhouse.benchmark;
+
+import com.yc.clickhouse.dao.TTestDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询结果读取：驱动解析 TabSeparatedWithNamesAndTypes 后经 ResultSet 映射，与 RowBinaryWithNamesAndTypes 直接解码对比。
+ * entity* 为 t_test 映射成实体（3个字符串列），numericColumnar* 为8个数值/日期列的列式结果
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowBinaryReadBenchmark {
+
+    private static final String SQL = "SELECT * FROM t_test";
+    private static final String NUMERIC_SQL = "SELECT * FROM t_metric";
+    private static final String[] NUMERIC_COLUMNS = {"id", "user_id", "amount", "price", "ratio", "qty", "created", "paid"};
+    private static final String[] NUMERIC_TYPES = {"Int64", "UInt32", "Float64", "Float64", "Float64", "Int32", "DateTime", "UInt8"};
+
+    @Param({"100", "10000"})
+    private int rows;
+
+    private TTestDao dao;
+    private TTestDao numericDao;
+
+    @Setup
+    public void setUp() {
+        dao = Daos.newDao(TTestDao.class, TTestFixture.dataSource(rows));
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        byte[] text = InMemoryClickHouse.tsv(NUMERIC_COLUMNS, NUMERIC_TYPES, rows, i -> numericRow(i, now));
+        byte[] binary = InMemoryClickHouse.rowBinary(NUMERIC_COLUMNS, NUMERIC_TYPES, rows, i -> numericRow(i, now));
+        numericDao = Daos.newDao(TTestDao.class,
+                new InMemoryClickHouse(sql -> sql.contains("RowBinaryWithNamesAndTypes") ? binary : text));
+    }
+
+    private static Object[] numericRow(int i, long now) {
+        return new Object[]{1_000_000_000L + i, i * 7, i * 1.25, 99.5 + i % 100, i / 3.0, i % 1000,
+                new Date(now + i * 1000L), i % 2};
+    }
+
+    @Benchmark
+    public Object entityResultSet() {
+        return dao.selectListObj(SQL, null);
+    }
+
+    @Benchmark
+    public Object entityRowBinary() {
+        return dao.selectListBinary(SQL, null);
+    }
+
+    @Benchmark
+    public Object columnarResultSet() {
+        return dao.selectColumnar(SQL, null);
+    }
+
+    @Benchmark
+    public Object columnarRowBinary() {
+        return dao.selectColumnarBinary(SQL, null);
+    }
+
+    @Benchmark
+    public Object numericColumnarResultSet() {
+        return numericDao.selectColumnar(NUMERIC_SQL, null);
+    }
+
+    @Benchmark
+    public Object numericColumnarRowBinary() {
+        return numericDao.selectColumnarBinary(NUMERIC_SQL, null);
+    }
+}
@@ -0,0 +1,87 @@
+package com.yc.clickhouse.benchmark;
+
+import com.yc.clickhouse.dao.TTestDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询结果映射：同一份 t_test 响应分别映射成实体、Map、Object[]、列式结果，
+ * driverScan 只用驱动逐列读取，作为解析开销的基线
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowMappingBenchmark {
+
+    private static final String SQL = "SELECT * FROM t_test";
+
+    @Param({"100", "10000"})
+    private int rows;
+
+    private InMemoryClickHouse dataSource;
+    private TTestDao dao;
+
+    @Setup
+    public void setUp() {
+        dataSource = TTestFixture.dataSource(rows);
+        dao = Daos.newDao(TTestDao.class, dataSource);
+    }
+
+    @Benchmark
+    public void driverScan(Blackhole blackhole) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement statement = conn.prepareStatement(SQL);
+             ResultSet rs = statement.executeQuery()) {
+            int columnCount = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int i = 1; i <= columnCount; i++) {
+                    blackhole.consume(rs.getString(i));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Object entity() {
+        return dao.selectListObj(SQL, null);
+    }
+
+    @Benchmark
+    public Object map() {
+        return dao.selectListMap(SQL, null);
+    }
+
+    @Benchmark
+    public Object objectArray() {
+        return dao.execute(SQL);
+    }
+
+    @Benchmark
+    public Object columnar() {
+        return dao.selectColumnar(SQL, null);
+    }
+
+    @Benchmark
+    public long rowCursor(Blackhole blackhole) {
+        return dao.selectRows(SQL, null, row -> blackhole.consume(row.get(0)));
+    }
+}
@@ -0,0 +1,68 @@
+package com.yc.clickhouse.benchmark;
+
+import com.yc.clickhouse.mapping.EntitySql;
+import com.yc.clickhouse.po.TTest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL构建：实体SQL查找、分页/计数SQL拼接，以及驱动解析预编译SQL（语句缓存未命中时的开销）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlBuildingBenchmark {
+
+    private static final String WHERE = "where del_status = ? and create_date >= ?";
+
+    private Connection connection;
+    private String pageSql;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = TTestFixture.dataSource(0).getConnection();
+        pageSql = EntitySql.of(TTest.class).pageSql(WHERE);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public Object entitySqlLookup() {
+        return EntitySql.of(TTest.class);
+    }
+
+    @Benchmark
+    public String pageSql() {
+        return EntitySql.of(TTest.class).pageSql(WHERE);
+    }
+
+    @Benchmark
+    public String countSql() {
+        return EntitySql.of(TTest.class).countSql(WHERE);
+    }
+
+    @Benchmark
+    public PreparedStatement prepareStatement() throws SQLException {
+        return connection.prepareStatement(pageSql);
+    }
+}
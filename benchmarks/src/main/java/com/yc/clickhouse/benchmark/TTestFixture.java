@@ -0,0 +1,97 @@
+package com.yc.clickhouse.benchmark;
+
+import com.yc.clickhouse.po.TTest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * t_test 表的基准测试数据：第i行为 (i, "name" + i, "address" + i, create_date, i % 2)
+ */
+public final class TTestFixture {
+
+    public static final String[] COLUMNS = {"id", "name", "address", "create_date", "del_status"};
+    public static final String[] TYPES = {"UInt32", "String", "String", "Date", "UInt8"};
+    private static final long DAY = 24L * 3600 * 1000;
+
+    private TTestFixture() {
+    }
+
+    /**
+     * SELECT * FROM t_test 的响应体
+     *
+     * @param rowCount
+     * @return
+     */
+    public static byte[] selectResponse(int rowCount) {
+        return InMemoryClickHouse.tsv(COLUMNS, TYPES, rowCount,
+                i -> new Object[]{i, "name" + i, "address" + i, new Date(i * DAY), i % 2});
+    }
+
+    /**
+     * SELECT * FROM t_test 的 RowBinaryWithNamesAndTypes 响应体，与 selectResponse 同样的行
+     *
+     * @param rowCount
+     * @return
+     */
+    public static byte[] selectRowBinaryResponse(int rowCount) {
+        return InMemoryClickHouse.rowBinary(COLUMNS, TYPES, rowCount,
+                i -> new Object[]{i, "name" + i, "address" + i, new Date(i * DAY), i % 2});
+    }
+
+    /**
+     * DESCRIBE TABLE t_test 的响应体
+     *
+     * @return
+     */
+    public static byte[] describeResponse() {
+        return InMemoryClickHouse.tsv(new String[]{"name", "type", "default_type", "default_expression"},
+                new String[]{"String", "String", "String", "String"}, COLUMNS.length,
+                i -> new Object[]{COLUMNS[i], TYPES[i], "", ""});
+    }
+
+    /**
+     * 按SQL返回响应：DESCRIBE 返回表结构，其余返回 rowCount 行数据（按SQL中的格式返回文本或RowBinary）
+     *
+     * @param rowCount
+     * @return
+     */
+    public static InMemoryClickHouse dataSource(int rowCount) {
+        byte[] select = selectResponse(rowCount);
+        byte[] selectRowBinary = selectRowBinaryResponse(rowCount);
+        byte[] describe = describeResponse();
+        return new InMemoryClickHouse(sql -> sql.startsWith("DESCRIBE") ? describe
+                : sql.contains("RowBinaryWithNamesAndTypes") ? selectRowBinary : select);
+    }
+
+    public static List<TTest> entities(int rowCount) {
+        List<TTest> list = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            TTest entity = new TTest();
+            entity.setId(i);
+            entity.setName("name" + i);
+            entity.setAddress("address" + i);
+            entity.setCreateDate(new Date(i * DAY));
+            entity.setDelStatus(i % 2);
+            list.add(entity);
+        }
+        return list;
+    }
+
+    public static List<Map<String, Object>> maps(int rowCount) {
+        List<Map<String, Object>> list = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", i);
+            map.put("name", "name" + i);
+            map.put("address", "address" + i);
+            map.put("create_date", new java.sql.Date(i * DAY));
+            map.put("del_status", i % 2);
+            list.add(map);
+        }
+        return list;
+    }
+}
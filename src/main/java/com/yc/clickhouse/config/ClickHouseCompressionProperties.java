@@ -0,0 +1,33 @@
+package com.yc.clickhouse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 传输压缩配置，前缀 clickhouse.compression；以驱动属性的方式加到每个连接池（单数据源、各副本、各分片），
+ * 使用 clickhouse 原生的 LZ4 分块格式（每块带 CityHash128 校验和）。
+ * 单个数据源可在JDBC地址上用 ?compress=0&amp;decompress=1 覆盖，地址参数优先
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "clickhouse.compression")
+public class ClickHouseCompressionProperties {
+
+    /**
+     * 查询结果由服务端LZ4压缩后返回（驱动属性 compress，驱动默认开启）；同机房低延迟网络下关闭可省去两端的压缩CPU
+     */
+    private boolean compressResponses = true;
+
+    /**
+     * 请求体LZ4压缩后发送（驱动属性 decompress）：批量插入的 VALUES/RowBinary 数据和查询SQL都压缩，
+     * 应用节点到集群带宽紧张时开启
+     */
+    private boolean compressRequests = false;
+
+    /**
+     * 请求体压缩的分块大小（字节，驱动属性 maxCompressBufferSize），块越大压缩率越高、缓冲占用越大
+     */
+    private int maxBufferSize = 1024 * 1024;
+
+}
@@ -0,0 +1,50 @@
+package com.yc.clickhouse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * ClickHouseDaoBase 的可调参数，前缀 clickhouse.dao
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "clickhouse.dao")
+public class ClickHouseDaoProperties {
+
+    /**
+     * 批量插入时每批发送的行数
+     */
+    private int batchSize = 2000;
+
+    /**
+     * 每个物理连接缓存的预编译语句数，0 表示不缓存
+     */
+    private int statementCacheSize = 64;
+
+    /**
+     * 查询结果缓存的最大条数（只缓存指定了TTL的查询），0 表示不缓存
+     */
+    private long resultCacheSize = 1000;
+
+    /**
+     * 异步调用（selectXxxAsync 等）的线程数，一般不超过连接池大小
+     */
+    private int asyncThreads = 8;
+
+    /**
+     * 异步调用排队数上限，排满时立即失败
+     */
+    private int asyncQueueCapacity = 256;
+
+    /**
+     * 每次调用默认的服务端执行时间上限（max_execution_time，秒），0 表示不设置
+     */
+    private int maxExecutionTime = 0;
+
+    /**
+     * 每次调用默认的客户端截止时间（毫秒），超过时 KILL QUERY，0 表示不限
+     */
+    private long queryTimeoutMillis = 0;
+
+}
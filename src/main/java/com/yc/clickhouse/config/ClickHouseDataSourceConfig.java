@@ -1,12 +1,24 @@
 package com.yc.clickhouse.config;
 
+import com.yc.clickhouse.dao.AsyncQueryExecutor;
+import com.yc.clickhouse.dao.ClickHouseShards;
+import com.yc.clickhouse.dao.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import com.alibaba.druid.filter.logging.Slf4jLogFilter;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
 /**
  * clickHouse数据源配置类
@@ -17,8 +29,66 @@ public class ClickHouseDataSourceConfig {
 
     @Bean(name = "dataSource")
     @ConfigurationProperties(prefix = "spring.datasource")
-    public DataSource clickHouseDataSource() {
-        return DataSourceBuilder.create().driverClassName("ru.yandex.clickhouse.ClickHouseDriver").build();
+    public DataSource clickHouseDataSource(ClickHouseReplicaProperties replicas, ClickHouseCompressionProperties compression,
+                                           Environment environment) {
+        if (replicas.getUrls().isEmpty()) {
+            DataSource dataSource = DataSourceBuilder.create().driverClassName("ru.yandex.clickhouse.ClickHouseDriver").build();
+            if (dataSource instanceof HikariDataSource) {
+                applyCompression((HikariDataSource) dataSource, compression);
+            }
+            return dataSource;
+        }
+        // 多副本：每个副本一个连接池，连接池参数沿用 spring.datasource
+        Map<String, DataSource> pools = new LinkedHashMap<>();
+        for (int i = 0; i < replicas.getUrls().size(); i++) {
+            HikariDataSource pool = Binder.get(environment).bind("spring.datasource", Bindable.ofInstance(new HikariDataSource()))
+                    .orElseGet(HikariDataSource::new);
+            pool.setPoolName("clickhouse-replica-" + (i + 1));
+            pool.setDriverClassName("ru.yandex.clickhouse.ClickHouseDriver");
+            pool.setJdbcUrl(replicas.getUrls().get(i));
+            pool.setInitializationFailTimeout(-1);// 启动时有副本不可用不影响启动
+            applyCompression(pool, compression);
+            pools.put(replicas.getUrls().get(i), pool);
+        }
+        return new ReplicaRoutingDataSource(pools, replicas.getQuarantineMillis(), replicas.getMaxQuarantineMillis(), replicas.getMaxRetries());
+    }
+
+    /**
+     * 各分片的连接池和分片查询/写入线程池，由 clickhouse.shards 配置
+     */
+    @Bean(destroyMethod = "close")
+    public ClickHouseShards clickHouseShards(ClickHouseShardProperties properties, ClickHouseCompressionProperties compression) {
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < properties.getUrls().size(); i++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("clickhouse-shard-" + (i + 1));
+            dataSource.setDriverClassName("ru.yandex.clickhouse.ClickHouseDriver");
+            dataSource.setJdbcUrl(properties.getUrls().get(i));
+            dataSource.setUsername(properties.getUsername());
+            dataSource.setPassword(properties.getPassword());
+            dataSource.setMaximumPoolSize(properties.getMaximumPoolSize());
+            applyCompression(dataSource, compression);
+            dataSources.add(dataSource);
+        }
+        return new ClickHouseShards(dataSources, properties.getWeights(), properties.getParallelism(), properties.getQueueCapacity());
+    }
+
+    /**
+     * 把传输压缩配置作为驱动属性加到连接池；已在 data-source-properties 里配置的同名属性不覆盖，JDBC地址上的参数优先于两者
+     */
+    public static void applyCompression(HikariDataSource dataSource, ClickHouseCompressionProperties compression) {
+        Properties properties = dataSource.getDataSourceProperties();
+        properties.putIfAbsent("compress", String.valueOf(compression.isCompressResponses()));
+        properties.putIfAbsent("decompress", String.valueOf(compression.isCompressRequests()));
+        properties.putIfAbsent("maxCompressBufferSize", String.valueOf(compression.getMaxBufferSize()));
+    }
+
+    /**
+     * 异步DAO调用的有界线程池，由 clickhouse.dao.async-threads / async-queue-capacity 配置
+     */
+    @Bean(destroyMethod = "close")
+    public AsyncQueryExecutor clickHouseAsyncExecutor(ClickHouseDaoProperties properties) {
+        return new AsyncQueryExecutor(properties.getAsyncThreads(), properties.getAsyncQueueCapacity());
     }
 
     /**
@@ -0,0 +1,39 @@
+package com.yc.clickhouse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多副本路由配置，前缀 clickhouse.replicas；配置 urls 后 dataSource 为 ReplicaRoutingDataSource，
+ * 每个副本的连接池沿用 spring.datasource 的配置，只替换地址
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "clickhouse.replicas")
+public class ClickHouseReplicaProperties {
+
+    /**
+     * 各副本的JDBC地址，不配置时使用 spring.datasource.jdbc-url 单节点
+     */
+    private List<String> urls = new ArrayList<>();
+
+    /**
+     * 副本出现网络/过载错误后首次隔离的毫秒数，连续隔离时翻倍
+     */
+    private long quarantineMillis = 1000;
+
+    /**
+     * 最长隔离毫秒数
+     */
+    private long maxQuarantineMillis = 60000;
+
+    /**
+     * 只读查询遇到副本级错误时换副本重试的次数
+     */
+    private int maxRetries = 1;
+
+}
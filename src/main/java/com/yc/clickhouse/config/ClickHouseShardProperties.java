@@ -0,0 +1,47 @@
+package com.yc.clickhouse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分片直连配置，前缀 clickhouse.shards；不配置 urls 时分片查询退回到 spring.datasource 单数据源
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "clickhouse.shards")
+public class ClickHouseShardProperties {
+
+    /**
+     * 每个分片一个JDBC地址，顺序与集群配置中的分片顺序一致
+     */
+    private List<String> urls = new ArrayList<>();
+
+    /**
+     * 各分片权重，与集群配置中的 weight 一致，用于按分片键写入；不配置时都为1
+     */
+    private List<Integer> weights = new ArrayList<>();
+
+    private String username;
+
+    private String password;
+
+    /**
+     * 每个分片连接池的最大连接数
+     */
+    private int maximumPoolSize = 4;
+
+    /**
+     * 最多同时执行的分片查询数，0 表示取分片数
+     */
+    private int parallelism = 0;
+
+    /**
+     * 排队等待的分片查询数上限，超过时查询立即失败
+     */
+    private int queueCapacity = 64;
+
+}
@@ -0,0 +1,40 @@
+package com.yc.clickhouse.config.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明实体类中作为分布式表 sharding_key 的属性；配置了分片（clickhouse.shards）时，
+ * 批量插入按该属性计算分片，直接并行写入各分片的本地表，不再经过分布式表转发
+ */
+@Target({ElementType.METHOD, ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ClickHouseShardingKey {
+
+    /**
+     * 与建分布式表时 sharding_key 表达式一致的函数
+     * @return
+     */
+    Hash hash() default Hash.NONE;
+
+    /**
+     * sharding_key 表达式
+     */
+    enum Hash {
+        /**
+         * 直接用整数列：Distributed(..., id)
+         */
+        NONE,
+        /**
+         * Distributed(..., intHash64(id))
+         */
+        INT_HASH64,
+        /**
+         * Distributed(..., cityHash64(col))，支持字符串和整数列
+         */
+        CITY_HASH64
+    }
+
+}
@@ -23,4 +23,36 @@ public @interface ClickHouseTable {
      */
     String name() default "";
 
+    /**
+     * 各分片上的本地表名（分布式表对应的 ReplicatedMergeTree/MergeTree 表），分片直连查询时使用；默认与 name 相同
+     * @return
+     */
+    String localName() default "";
+
+    /**
+     * ReplacingMergeTree(ver) 的版本列：声明后 updateByPrimaryKey 不再执行 ALTER mutation，而是插入一行新版本，
+     * 版本取单调递增的当前毫秒（Date 类型为当前时间）；插入时版本为null的行同样自动赋值。
+     * 表的 ORDER BY 需与 @ClickHousePrimaryKey 一致，读取时按 FINAL 或 argMax 去重，见 EntityQuery.dedup
+     * @return
+     */
+    String versionColumn() default "";
+
+    /**
+     * ReplacingMergeTree(ver, is_deleted) 的删除标记列：声明后 deleteByPrimaryKey 先按主键 FINAL 读出当前行，
+     * 插入它的 is_deleted=1 新版本（分片键和排序键与原行相同），去重读取时过滤掉；需要同时声明 versionColumn。
+     * 没有声明时 Replacing 表的删除仍是 ALTER mutation
+     * @return
+     */
+    String deletedColumn() default "";
+
+    /**
+     * CollapsingMergeTree(sign) 的符号列：声明后 updateByPrimaryKey 插入旧行的 sign=-1 取消行和 sign=1 的新行，
+     * deleteByPrimaryKey 只插入取消行；取消行要与原行完全相同，所以两者都先按主键 FINAL 读出当前行。
+     * 插入时符号为null的行赋值为1。
+     * 读当前行和插入之间没有保护，同一主键的并发修改、或刚写入分布式表还未投递到分片的行会产生错误的取消行，
+     * 只适合每个主键单一写入方的场景；有并发修改时请用 versionColumn（ReplacingMergeTree），见 WriteMode.COLLAPSING
+     * @return
+     */
+    String signColumn() default "";
+
 }
@@ -0,0 +1,419 @@
+package com.yc.clickhouse.dao;
+
+import com.yc.clickhouse.entity._BaseEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * 异步缓冲写入器：业务线程逐行提交，后台按行数/字节数/等待时间攒成大批量后再插入，
+ * 避免多线程小批量插入在clickHouse上产生大量小part。
+ * <p>
+ * 提交走无锁队列（多生产者单消费者），缓冲满时 write 阻塞、offer 超时返回false 形成背压；
+ * 进行中的批次也占用容量，直到插入完成才释放。
+ * <p>
+ * 投递保证：批次插入遇到副本级错误（网络中断、节点过载，见 {@link ReplicaRoutingDataSource#isRetryable(Throwable)}）时
+ * 按退避时间重试 retries 次，期间批次继续占用容量；重试的批次与原批次相同，Replicated 表上服务端按块去重，
+ * 其他表在"服务端已写入但响应丢失"时可能重复（至少一次）。SQL错误不重试，重试用完或SQL错误的批次交给 onFailure 回调
+ * （如写入死信队列或本地文件），之后写入器不再持有这些行；没有设置回调时只记录日志和 failedRows，这些行丢失。
+ * <pre>
+ * AsyncClickHouseWriter&lt;TTest&gt; writer = AsyncClickHouseWriter.builder(tTestDao).maxRows(50000).maxDelay(1, TimeUnit.SECONDS)
+ *         .retries(3, 200, TimeUnit.MILLISECONDS).onFailure((rows, e) -&gt; deadLetter.save(rows)).build();
+ * writer.write(row);
+ * ...
+ * writer.close();// 停止接收并把缓冲全部写完
+ * </pre>
+ */
+@Slf4j
+public class AsyncClickHouseWriter<T extends _BaseEntity> implements Closeable {
+
+    private final ClickHouseDaoBase<T> dao;
+    private final int maxRows;// 达到行数立即发送
+    private final long maxBytes;// 达到估算字节数立即发送
+    private final long maxDelayNanos;// 最早一行等待超过该时间发送
+    private final ToLongFunction<? super T> sizeEstimator;
+    private final int retries;// 副本级错误的重试次数
+    private final long retryBackoffNanos;// 首次重试前的等待，之后每次翻倍
+    private final BiConsumer<? super List<T>, ? super Exception> onFailure;
+
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final Semaphore capacity;// 缓冲+进行中批次的行数上限
+    private final AtomicInteger pendingRows = new AtomicInteger();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong oldestPendingNanos = new AtomicLong();// 0 表示缓冲为空
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ReentrantLock drainLock = new ReentrantLock();// 保证同一时间只有一个消费者
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger activeProducers = new AtomicInteger();// 正在 write/offer 中的线程数，close 等它们入队完再最后 flush
+    private volatile boolean closed;
+
+    private final AtomicLong writtenRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+
+    private AsyncClickHouseWriter(Builder<T> builder) {
+        this.dao = builder.dao;
+        this.maxRows = builder.maxRows;
+        this.maxBytes = builder.maxBytes;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.sizeEstimator = builder.sizeEstimator;
+        this.retries = builder.retries;
+        this.retryBackoffNanos = builder.retryBackoffNanos;
+        this.onFailure = builder.onFailure;
+        this.capacity = new Semaphore(builder.capacity);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "clickhouse-async-writer-" + dao.getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(10), maxDelayNanos / 4);
+        scheduler.scheduleWithFixedDelay(this::flushIfDue, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static <T extends _BaseEntity> Builder<T> builder(ClickHouseDaoBase<T> dao) {
+        return new Builder<>(dao);
+    }
+
+    /**
+     * 提交一行，缓冲满时阻塞等待
+     *
+     * @param row
+     * @throws InterruptedException
+     */
+    public void write(T row) throws InterruptedException {
+        activeProducers.incrementAndGet();
+        try {
+            checkOpen();
+            capacity.acquire();
+            enqueueIfOpen(row);
+        } finally {
+            activeProducers.decrementAndGet();
+        }
+    }
+
+    /**
+     * 提交一行，缓冲满时最多等待 timeout
+     *
+     * @param row
+     * @param timeout
+     * @param unit
+     * @return 超时未能提交返回false
+     * @throws InterruptedException
+     */
+    public boolean offer(T row, long timeout, TimeUnit unit) throws InterruptedException {
+        activeProducers.incrementAndGet();
+        try {
+            checkOpen();
+            if (!capacity.tryAcquire(timeout, unit)) {
+                return false;
+            }
+            enqueueIfOpen(row);
+            return true;
+        } finally {
+            activeProducers.decrementAndGet();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("AsyncClickHouseWriter is closed");
+        }
+    }
+
+    /**
+     * 已取得容量后入队；等待容量期间已关闭的归还容量并拒绝
+     */
+    private void enqueueIfOpen(T row) {
+        if (closed) {
+            capacity.release();
+            throw new IllegalStateException("AsyncClickHouseWriter is closed");
+        }
+        if (row == null) {
+            capacity.release();
+            throw new NullPointerException("row");
+        }
+        queue.offer(row);
+        oldestPendingNanos.compareAndSet(0, System.nanoTime());
+        int rows = pendingRows.incrementAndGet();
+        long bytes = pendingBytes.addAndGet(sizeEstimator.applyAsLong(row));
+        if ((rows >= maxRows || bytes >= maxBytes) && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    flushScheduled.set(false);
+                    flushIfDue();
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);// 已关闭，剩余行由 close() 写完
+            }
+        }
+    }
+
+    /**
+     * 后台线程：满足任一阈值时发送
+     */
+    private void flushIfDue() {
+        try {
+            while (pendingRows.get() >= maxRows || pendingBytes.get() >= maxBytes || isExpired()) {
+                if (drain() == 0) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("异步写入 flush 发生了异常", e);
+        }
+    }
+
+    private boolean isExpired() {
+        long oldest = oldestPendingNanos.get();
+        if (oldest == 0) {
+            // 与drain并发入队时可能丢失起始时间，从现在开始计时
+            if (pendingRows.get() > 0) {
+                oldestPendingNanos.compareAndSet(0, System.nanoTime());
+            }
+            return false;
+        }
+        return System.nanoTime() - oldest >= maxDelayNanos;
+    }
+
+    /**
+     * 同步把当前缓冲的所有行写入clickHouse
+     */
+    public void flush() {
+        while (pendingRows.get() > 0) {
+            if (drain() == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 取出最多 maxRows 行插入一次
+     *
+     * @return 本次取出的行数
+     */
+    private int drain() {
+        drainLock.lock();
+        try {
+            List<T> batch = new ArrayList<>(Math.min(maxRows, Math.max(pendingRows.get(), 1)));
+            long bytes = 0;
+            T row;
+            while (batch.size() < maxRows && bytes < maxBytes && (row = queue.poll()) != null) {
+                batch.add(row);
+                bytes += sizeEstimator.applyAsLong(row);
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            pendingRows.addAndGet(-batch.size());
+            pendingBytes.addAndGet(-bytes);
+            oldestPendingNanos.set(queue.isEmpty() ? 0 : System.nanoTime());
+            try {
+                insertWithRetry(batch);
+                writtenRows.addAndGet(batch.size());
+            } catch (SQLException | RuntimeException e) {
+                failedRows.addAndGet(batch.size());
+                failed(batch, e);
+            } finally {
+                flushCount.incrementAndGet();
+                capacity.release(batch.size());
+            }
+            return batch.size();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * 插入一批，副本级错误按退避时间重试；等待重试时被中断则不再重试
+     *
+     * @param batch
+     * @throws SQLException 重试用完、SQL错误或等待被中断时的最后一次异常
+     */
+    private void insertWithRetry(List<T> batch) throws SQLException {
+        long backoffNanos = retryBackoffNanos;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                dao.insertBatch(batch, batch.size());
+                return;
+            } catch (SQLException | RuntimeException e) {
+                if (attempt >= retries || !ReplicaRoutingDataSource.isRetryable(e)) {
+                    throw e;
+                }
+                log.warn("异步批量插入{}行失败，{}ms后重试（第{}次）：{}", batch.size(),
+                        TimeUnit.NANOSECONDS.toMillis(backoffNanos), attempt + 1, e.getMessage());
+                retryCount.incrementAndGet();
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoffNanos);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoffNanos *= 2;
+            }
+        }
+    }
+
+    /**
+     * 放弃的批次交给 onFailure 回调，回调的异常只记录日志
+     */
+    private void failed(List<T> batch, Exception e) {
+        log.error("异步批量插入{}行异常", batch.size(), e);
+        if (onFailure == null) {
+            return;
+        }
+        try {
+            onFailure.accept(batch, e);
+        } catch (RuntimeException ex) {
+            log.error("异步写入失败回调发生了异常", ex);
+        }
+    }
+
+    /**
+     * 停止接收新行，关闭后台线程，等正在提交的线程入队完成后写完缓冲；
+     * 关闭前已返回的 write/offer 提交的行都会写入，之后的提交抛出 IllegalStateException
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 已通过 checkOpen 的提交方可能还在入队，或在等容量（flush 释放容量后醒来看到已关闭）
+        while (activeProducers.get() > 0) {
+            flush();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        flush();
+    }
+
+    public int getPendingRows() {
+        return pendingRows.get();
+    }
+
+    public long getWrittenRows() {
+        return writtenRows.get();
+    }
+
+    public long getFailedRows() {
+        return failedRows.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * 批次插入重试的总次数
+     *
+     * @return
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public static class Builder<T extends _BaseEntity> {
+        private final ClickHouseDaoBase<T> dao;
+        private int maxRows = 100000;
+        private long maxBytes = 64L * 1024 * 1024;
+        private long maxDelayNanos = TimeUnit.SECONDS.toNanos(1);
+        private int capacity = 500000;
+        private ToLongFunction<? super T> sizeEstimator = row -> 128;
+        private int retries = 3;
+        private long retryBackoffNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private BiConsumer<? super List<T>, ? super Exception> onFailure;
+
+        private Builder(ClickHouseDaoBase<T> dao) {
+            this.dao = dao;
+        }
+
+        /**
+         * 每批最大行数
+         */
+        public Builder<T> maxRows(int maxRows) {
+            this.maxRows = maxRows;
+            return this;
+        }
+
+        /**
+         * 每批最大估算字节数
+         */
+        public Builder<T> maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * 一行最多在缓冲中等待的时间
+         */
+        public Builder<T> maxDelay(long delay, TimeUnit unit) {
+            this.maxDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * 缓冲容量（行），超出后提交方被阻塞
+         */
+        public Builder<T> capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * 单行字节数估算，默认每行128字节
+         */
+        public Builder<T> sizeEstimator(ToLongFunction<? super T> sizeEstimator) {
+            this.sizeEstimator = sizeEstimator;
+            return this;
+        }
+
+        /**
+         * 副本级错误时批次的重试次数和首次重试前的等待（之后每次翻倍），默认重试3次、从100ms开始；0 不重试
+         */
+        public Builder<T> retries(int retries, long backoff, TimeUnit unit) {
+            this.retries = retries;
+            this.retryBackoffNanos = unit.toNanos(backoff);
+            return this;
+        }
+
+        /**
+         * 放弃的批次（重试用完或SQL错误）的处理，如写入死信队列；在后台写入线程中调用，不设置时这些行只记录日志后丢弃
+         */
+        public Builder<T> onFailure(BiConsumer<? super List<T>, ? super Exception> onFailure) {
+            this.onFailure = onFailure;
+            return this;
+        }
+
+        public AsyncClickHouseWriter<T> build() {
+            if (maxRows <= 0 || maxBytes <= 0 || maxDelayNanos <= 0 || capacity < maxRows) {
+                throw new IllegalArgumentException("maxRows/maxBytes/maxDelay must be positive and capacity >= maxRows");
+            }
+            if (retries < 0 || retryBackoffNanos < 0) {
+                throw new IllegalArgumentException("retries/backoff must not be negative");
+            }
+            return new AsyncClickHouseWriter<>(this);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.yc.clickhouse.dao;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 异步DAO调用（selectXxxAsync 等）的有界线程池：web线程提交后立即返回 {@link ClickHouseFuture}，
+ * 不再为每次clickHouse调用阻塞一个servlet线程。
+ * <p>
+ * 线程数一般不超过连接池大小；排队数有上限，排满时返回的 future 立即以 RejectedExecutionException 失败，
+ * 不无限堆积。每次调用有自己的 query_id，取消时在服务端 KILL QUERY
+ */
+@Slf4j
+public class AsyncQueryExecutor implements Closeable {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads 最多同时执行的调用数
+     * @param queueCapacity 排队等待的调用数上限
+     */
+    public AsyncQueryExecutor(int threads, int queueCapacity) {
+        int size = Math.max(1, threads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread thread = new Thread(r, "clickhouse-async-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交一次DAO调用，在新的 {@link QueryContext} 中执行
+     *
+     * @param call
+     * @return 排队已满时返回已失败的 future
+     */
+    public <R> ClickHouseFuture<R> submit(Supplier<R> call) {
+        return submit(null, call);
+    }
+
+    /**
+     * 按指定的查询设置提交一次DAO调用；设置了 timeout 时排队时间也计入
+     *
+     * @param options 查询设置，为null时只带 query_id
+     * @param call
+     * @return 排队已满时返回已失败的 future
+     */
+    public <R> ClickHouseFuture<R> submit(QueryOptions options, Supplier<R> call) {
+        QueryContext context = new QueryContext(options);
+        ClickHouseFuture<R> future = new ClickHouseFuture<>(context);
+        Task<R> task = new Task<>(context, future, call);
+        future.setDequeue(() -> executor.remove(task));
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("clickHouse异步调用排队已满（{}），拒绝执行", executor.getQueue().size());
+            future.completeExceptionally(new RejectedExecutionException("clickHouse异步调用排队已满", e));
+        }
+        return future;
+    }
+
+    /**
+     * 排队中的调用数
+     *
+     * @return
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 执行中的调用数
+     *
+     * @return
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * 停止线程池，排队中的调用不再执行，其 future 以 RejectedExecutionException 失败
+     */
+    @Override
+    public void close() {
+        for (Runnable task : executor.shutdownNow()) {
+            ((Task<?>) task).future.completeExceptionally(new RejectedExecutionException("clickHouse异步调用线程池已关闭"));
+        }
+    }
+
+    private static final class Task<R> implements Runnable {
+        private final QueryContext context;
+        private final ClickHouseFuture<R> future;
+        private final Supplier<R> call;
+
+        Task(QueryContext context, ClickHouseFuture<R> future, Supplier<R> call) {
+            this.context = context;
+            this.future = future;
+            this.call = call;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return;// 排队期间已取消
+            }
+            try {
+                future.complete(context.run(call));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
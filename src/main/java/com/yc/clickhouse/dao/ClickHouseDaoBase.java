@@ -1,30 +1,53 @@
 package com.yc.clickhouse.dao;
 
-import com.yc.clickhouse.config.annotation.ClickHousePrimaryKey;
+import com.yc.clickhouse.config.ClickHouseDaoProperties;
 import com.yc.clickhouse.config.annotation.ClickHouseTable;
 import com.yc.clickhouse.constant.Constant;
 import com.yc.clickhouse.entity._BaseEntity;
-import com.yc.clickhouse.utils.ClickHouseBaseUtil;
+import com.yc.clickhouse.mapping.ColumnMeta;
+import com.yc.clickhouse.mapping.ColumnarResult;
+import com.yc.clickhouse.mapping.EntityMeta;
+import com.yc.clickhouse.mapping.EntityQuery;
+import com.yc.clickhouse.mapping.EntityRowBinaryReader;
+import com.yc.clickhouse.mapping.EntityRowBinaryWriter;
+import com.yc.clickhouse.mapping.EntityRowMapper;
+import com.yc.clickhouse.mapping.EntitySql;
+import com.yc.clickhouse.mapping.ParameterBinder;
+import com.yc.clickhouse.mapping.RowBinaryHeader;
+import com.yc.clickhouse.mapping.RowCursor;
+import com.yc.clickhouse.mapping.RowFetcher;
+import com.yc.clickhouse.mapping.WriteMode;
 import com.yc.clickhouse.utils.StringUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.beanutils.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.util.CollectionUtils;
-import org.springframework.util.StringUtils;
+import ru.yandex.clickhouse.ClickHouseConnection;
+import ru.yandex.clickhouse.ClickHousePreparedStatement;
+import ru.yandex.clickhouse.ClickHouseStatement;
+import ru.yandex.clickhouse.settings.ClickHouseQueryParam;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
 
 import javax.annotation.Resource;
-import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.sql.DataSource;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * @author zhanglei
@@ -35,8 +58,14 @@ import java.util.concurrent.locks.ReentrantLock;
 public class ClickHouseDaoBase<T extends _BaseEntity> {
     private Lock lock = new ReentrantLock();// 可重入锁
     private Class<T> tClass;// 当前实体类对应泛型
-    private Field[] allFieldList;// 当前实体类属性数组
-    private Connection conn;//数据库连接
+    private volatile EntityRowBinaryWriter<T> rowBinaryWriter;// 实体RowBinary编码器
+    private volatile EntityRowBinaryWriter<T> localRowBinaryWriter;// 按分片键写分片本地表时的编码器
+    private final Map<String, Map<String, String>> columnTypesByTable = new ConcurrentHashMap<>();// map批量插入的列类型
+    private volatile StatementCache statementCache;// 预编译语句缓存
+    private volatile QueryResultCache resultCache;// 查询结果缓存
+    private volatile ClickHouseDaoMetrics metrics;// 调用指标
+    private volatile AsyncQueryExecutor defaultAsyncExecutor;// 没有注入异步线程池时按配置创建
+    private static final ClickHouseDaoProperties DEFAULT_PROPERTIES = new ClickHouseDaoProperties();
 
     /**
      * 注入数据源
@@ -45,25 +74,421 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
     private DataSource clickHouseDatasource;
 
     /**
-     * 获取创建CK连接
+     * 分片数据源，分片查询（selectXxxOnShards）使用；没有配置分片时分片查询走默认数据源
+     */
+    @Autowired(required = false)
+    private ClickHouseShards clickHouseShards;
+
+    /**
+     * 异步调用线程池，selectXxxAsync 等使用
+     */
+    @Autowired(required = false)
+    private AsyncQueryExecutor asyncQueryExecutor;
+
+    /**
+     * DAO配置
+     */
+    @Autowired(required = false)
+    private ClickHouseDaoProperties daoProperties;
+
+    /**
+     * 指标注册表，没有Actuator时使用全局注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 从连接池租借一个CK连接，每次操作独占一个连接，用完后由调用方close归还连接池
      *
      * @return
      * @throws SQLException
      */
     private Connection getConnection() throws SQLException {
+        return getConnection(clickHouseDatasource);
+    }
+
+    /**
+     * 从指定数据源（如某个分片）租借一个连接
+     *
+     * @param dataSource
+     * @return
+     * @throws SQLException
+     */
+    private Connection getConnection(DataSource dataSource) throws SQLException {
         try {
-            lock.lock();
-            if( conn == null || conn.isClosed() ) {
-                conn = clickHouseDatasource.getConnection();
-//                conn.setAutoCommit(false);//关闭自动提交，有异常直接回滚
-            }
+            return dataSource.getConnection();
         } catch (SQLException e) {
             log.error("连接clickHouse服务异常：{}", e.getMessage());
             throw new SQLException("获取连接出错",e);
-        }finally {
-            lock.unlock();
         }
-        return conn;
+    }
+
+    /**
+     * 租借连接执行查询，并在结束后关闭结果集、语句并归还连接；按 operation 记录各阶段耗时、行数和异常
+     *
+     * @param operation 指标的operation标签
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @param extractor 结果集处理，通过传入的 RowFetcher 取行
+     * @return
+     * @throws SQLException
+     */
+    private <R> R executeQuery(String operation, String sql, Object[] params, RowsExtractor<R> extractor) throws SQLException {
+        return executeQuery(clickHouseDatasource, operation, sql, params, extractor, true);
+    }
+
+    /**
+     * 在指定数据源上执行查询，见 {@link #executeQuery(String, String, Object[], RowsExtractor)}；
+     * 数据源为 ReplicaRoutingDataSource 且出现副本级错误时，可重试的查询换副本重新执行
+     *
+     * @param retryable 重新执行是否安全；结果逐行交给调用方回调的流式查询不能重试
+     */
+    private <R> R executeQuery(DataSource dataSource, String operation, String sql, Object[] params,
+                               RowsExtractor<R> extractor, boolean retryable) throws SQLException {
+        return executeStatement(dataSource, operation, sql, params, (conn, preparedStatement, sample) -> {
+            try (ResultSet resultSet = executeQuery(preparedStatement)) {
+                sample.mark(ClickHouseDaoMetrics.Phase.EXECUTE);
+                ReplicaRoutingDataSource.markResponded(conn);
+                R extracted = extractor.extract(resultSet, sample);
+                sample.endFetch();
+                return extracted;
+            }
+        }, retryable);
+    }
+
+    /**
+     * 按 RowBinaryWithNamesAndTypes 格式执行查询，响应体交给 extractor 直接解码，不经过驱动的 TabSeparated 文本解析；
+     * 连接、语句缓存、query_id、指标和副本重试与 {@link #executeQuery(String, String, Object[], RowsExtractor)} 相同
+     *
+     * @param operation 指标的operation标签
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @param extractor 从头部开始解码响应体
+     * @return
+     * @throws SQLException 执行出错，或解码出错（IOException 包装成 SQLException）
+     */
+    private <R> R executeRowBinaryQuery(String operation, String sql, Object[] params, RowBinaryExtractor<R> extractor) throws SQLException {
+        return executeStatement(clickHouseDatasource, operation, sql, params, (conn, preparedStatement, sample) -> {
+            try (ClickHouseRowBinaryInputStream response = executeRowBinaryQuery(preparedStatement)) {
+                sample.mark(ClickHouseDaoMetrics.Phase.EXECUTE);
+                ReplicaRoutingDataSource.markResponded(conn);
+                RowBinaryByteCounter counter = RowBinaryByteCounter.of(response);
+                try {
+                    R extracted = extractor.extract(counter == null ? response : counter.wrap(response), sample);
+                    sample.endFetch();
+                    return extracted;
+                } finally {
+                    if (counter != null) {
+                        sample.addBytesRead(counter.getCount());
+                    }
+                }
+            } catch (IOException e) {
+                throw new SQLException("RowBinary结果解码出错：" + e.getMessage(), e);
+            }
+        }, true);
+    }
+
+    /**
+     * 租借连接、从语句缓存取预编译语句并绑定参数后交给 executor 执行，见 {@link #executeQuery(DataSource, String, String, Object[], RowsExtractor, boolean)}
+     */
+    private <R> R executeStatement(DataSource dataSource, String operation, String sql, Object[] params,
+                                   StatementExecutor<R> executor, boolean retryable) throws SQLException {
+        int retries = retryable && dataSource instanceof ReplicaRoutingDataSource ? ((ReplicaRoutingDataSource) dataSource).getMaxRetries() : 0;
+        for (int attempt = 0; ; attempt++) {
+            ClickHouseDaoMetrics.Sample sample = getMetrics().start(operation);
+            try {
+                R result = withConnection(dataSource, conn -> {
+                    sample.mark(ClickHouseDaoMetrics.Phase.CONNECTION);
+                    return getStatementCache().execute(conn, sql, preparedStatement -> {
+                        putPrepareStatementParams(preparedStatement, params);
+                        sample.mark(ClickHouseDaoMetrics.Phase.PREPARE);
+                        return executor.execute(conn, preparedStatement, sample);
+                    });
+                });
+                sample.success();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                sample.error(e);
+                if (attempt >= retries || !ReplicaRoutingDataSource.isRetryable(e)) {
+                    throw e;
+                }
+                log.warn("{} 副本查询失败，换副本重试（第{}次）：{}", operation, attempt + 1, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 租借连接执行操作后归还；操作失败时在归还前报告给副本路由数据源，用于副本健康统计
+     *
+     * @param dataSource
+     * @param action
+     * @return
+     * @throws SQLException
+     */
+    private <R> R withConnection(DataSource dataSource, ConnectionCallback<R> action) throws SQLException {
+        QueryContext context = QueryContext.current();
+        if (context == null) {
+            // 没有外层上下文（异步调用、withOptions）时按默认设置创建，每次执行都带上 query_id
+            return new QueryContext(getDefaultQueryOptions()).execute(() -> withConnection(dataSource, action));
+        }
+        try (Connection conn = getConnection(dataSource)) {
+            try {
+                context.attach(conn);// 取消或超时时在这个连接所在节点上 KILL QUERY
+                return action.doInConnection(conn);
+            } catch (SQLException | RuntimeException e) {
+                ReplicaRoutingDataSource.markFailed(conn, e);
+                if (context.isTimedOut()) {
+                    throw new SQLTimeoutException("clickHouse查询超过截止时间，已取消：" + context.getQueryId(), e);
+                }
+                throw e;
+            } finally {
+                context.detach(conn);
+            }
+        }
+    }
+
+    /**
+     * 在指定的查询设置下执行一次或多次DAO调用，其中的语句共用一个 query_id，
+     * 超过 timeout 时在服务端 KILL QUERY，调用按异常处理（返回null/-1等）
+     * <pre>
+     * List&lt;TTest&gt; list = tTestDao.withOptions(QueryOptions.create().timeout(5, TimeUnit.SECONDS),
+     *         () -&gt; tTestDao.selectListObj(sql, params));
+     * </pre>
+     *
+     * @param options
+     * @param call
+     * @return
+     */
+    public <R> R withOptions(QueryOptions options, Supplier<R> call) {
+        return new QueryContext(options).run(call);
+    }
+
+    /**
+     * 默认查询设置，取配置 clickhouse.dao.max-execution-time / query-timeout-millis
+     *
+     * @return 都没有配置时返回null
+     */
+    private QueryOptions getDefaultQueryOptions() {
+        ClickHouseDaoProperties properties = getDaoProperties();
+        if (properties.getMaxExecutionTime() <= 0 && properties.getQueryTimeoutMillis() <= 0) {
+            return null;
+        }
+        QueryOptions options = QueryOptions.create();
+        if (properties.getMaxExecutionTime() > 0) {
+            options.maxExecutionTime(properties.getMaxExecutionTime());
+        }
+        if (properties.getQueryTimeoutMillis() > 0) {
+            options.timeout(properties.getQueryTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        return options;
+    }
+
+    /**
+     * 当前调用发给服务端的 query_id 和查询设置
+     *
+     * @return
+     */
+    private Map<ClickHouseQueryParam, String> queryParams() {
+        QueryContext context = QueryContext.current();
+        return (context == null ? new QueryContext(getDefaultQueryOptions()) : context).getQueryParams();
+    }
+
+    /**
+     * 执行预编译查询，带上当前调用的 query_id 和查询设置；不是 clickhouse-jdbc 的语句时直接执行
+     *
+     * @param preparedStatement
+     * @return
+     * @throws SQLException
+     */
+    private ResultSet executeQuery(PreparedStatement preparedStatement) throws SQLException {
+        if (!preparedStatement.isWrapperFor(ClickHousePreparedStatement.class)) {
+            return preparedStatement.executeQuery();
+        }
+        return preparedStatement.unwrap(ClickHousePreparedStatement.class).executeQuery(queryParams());
+    }
+
+    /**
+     * 用绑定参数后的SQL执行 RowBinaryWithNamesAndTypes 格式查询，带上当前调用的 query_id 和查询设置；
+     * 响应压缩（compress）时由驱动解压
+     *
+     * @param preparedStatement
+     * @return
+     * @throws SQLException
+     */
+    private ClickHouseRowBinaryInputStream executeRowBinaryQuery(PreparedStatement preparedStatement) throws SQLException {
+        if (!preparedStatement.isWrapperFor(ClickHousePreparedStatement.class)) {
+            throw new SQLFeatureNotSupportedException("RowBinary查询需要clickhouse-jdbc的语句");
+        }
+        ClickHousePreparedStatement statement = preparedStatement.unwrap(ClickHousePreparedStatement.class);
+        String sql = statement.asSql().trim();
+        while (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1).trim();
+        }
+        return statement.executeQueryClickhouseRowBinaryStream(sql + RowBinaryHeader.FORMAT_CLAUSE, queryParams());
+    }
+
+    /**
+     * 执行预编译修改语句，带上当前调用的 query_id 和查询设置；
+     * 驱动的 executeUpdate 不能附加URL参数，非查询语句 executeQuery 返回null，与 executeUpdate 一样计为1
+     *
+     * @param preparedStatement
+     * @return
+     * @throws SQLException
+     */
+    private int executeUpdate(PreparedStatement preparedStatement) throws SQLException {
+        if (!preparedStatement.isWrapperFor(ClickHousePreparedStatement.class)) {
+            return preparedStatement.executeUpdate();
+        }
+        preparedStatement.unwrap(ClickHousePreparedStatement.class).executeQuery(queryParams());
+        return 1;
+    }
+
+    /**
+     * 执行预编译批量插入，带上当前调用的 query_id 和查询设置
+     *
+     * @param preparedStatement
+     * @throws SQLException
+     */
+    private void executeBatch(PreparedStatement preparedStatement) throws SQLException {
+        if (!preparedStatement.isWrapperFor(ClickHousePreparedStatement.class)) {
+            preparedStatement.executeBatch();
+        } else {
+            preparedStatement.unwrap(ClickHousePreparedStatement.class).executeBatch(queryParams());
+        }
+    }
+
+    /**
+     * 租借连接执行修改语句（alter table ... update/delete 等），结束后关闭语句并归还连接
+     *
+     * @param operation 指标的operation标签
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return
+     * @throws SQLException
+     */
+    private int executeUpdate(String operation, String sql, Object[] params) throws SQLException {
+        ClickHouseDaoMetrics.Sample sample = getMetrics().start(operation);
+        try {
+            int result = withConnection(clickHouseDatasource, conn -> {
+                sample.mark(ClickHouseDaoMetrics.Phase.CONNECTION);
+                return getStatementCache().execute(conn, sql, preparedStatement -> {
+                    putPrepareStatementParams(preparedStatement, params);
+                    sample.mark(ClickHouseDaoMetrics.Phase.PREPARE);
+                    int count = executeUpdate(preparedStatement);
+                    sample.mark(ClickHouseDaoMetrics.Phase.EXECUTE);
+                    return count;
+                });
+            });
+            sample.success();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            sample.error(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 在所有分片上并行执行同一查询，按分片顺序返回各分片的结果；没有配置分片时在默认数据源上执行一次
+     *
+     * @param operation 指标的operation标签
+     * @param sql 一般查分片本地表
+     * @param params sql语句参数，没有传 null
+     * @param extractor 每个分片结果集的处理
+     * @return
+     * @throws SQLException 任一分片失败
+     */
+    private <R> List<R> executeQueryOnShards(String operation, String sql, Object[] params, RowsExtractor<R> extractor) throws SQLException {
+        if (clickHouseShards == null || clickHouseShards.size() == 0) {
+            return Collections.singletonList(executeQuery(operation, sql, params, extractor));
+        }
+        return clickHouseShards.fanOut((shard, dataSource) -> executeQuery(dataSource, operation, sql, params, extractor, true));
+    }
+
+    /**
+     * 结果集处理，通过 fetcher 取行以便统计取数耗时和行数
+     */
+    @FunctionalInterface
+    private interface RowsExtractor<R> {
+        R extract(ResultSet rs, RowFetcher fetcher) throws SQLException;
+    }
+
+    /**
+     * RowBinaryWithNamesAndTypes 响应体处理，解码的行数记入 sample
+     */
+    @FunctionalInterface
+    private interface RowBinaryExtractor<R> {
+        R extract(ClickHouseRowBinaryInputStream in, ClickHouseDaoMetrics.Sample sample) throws IOException;
+    }
+
+    /**
+     * 已绑定参数的预编译语句的执行和结果处理，conn 为语句所在的连接，用于向副本路由数据源报告响应时间
+     */
+    @FunctionalInterface
+    private interface StatementExecutor<R> {
+        R execute(Connection conn, PreparedStatement preparedStatement, ClickHouseDaoMetrics.Sample sample) throws SQLException;
+    }
+
+    /**
+     * 获取本DAO的指标，table 标签取 @ClickHouseTable 表名
+     *
+     * @return
+     */
+    public ClickHouseDaoMetrics getMetrics() {
+        if (metrics == null) {
+            lock.lock();
+            try {
+                if (metrics == null) {
+                    ClickHouseTable table = getTClass().getAnnotation(ClickHouseTable.class);
+                    metrics = new ClickHouseDaoMetrics(meterRegistry == null ? Metrics.globalRegistry : meterRegistry,
+                            table == null ? getTClass().getSimpleName() : table.name());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * 获取异步调用线程池：优先使用注入的线程池，否则按配置 clickhouse.dao.async-threads 创建
+     *
+     * @return
+     */
+    public AsyncQueryExecutor getAsyncExecutor() {
+        if (asyncQueryExecutor != null) {
+            return asyncQueryExecutor;
+        }
+        if (defaultAsyncExecutor == null) {
+            lock.lock();
+            try {
+                if (defaultAsyncExecutor == null) {
+                    defaultAsyncExecutor = new AsyncQueryExecutor(getDaoProperties().getAsyncThreads(), getDaoProperties().getAsyncQueueCapacity());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return defaultAsyncExecutor;
+    }
+
+    /**
+     * 获取预编译语句缓存，大小取配置 clickhouse.dao.statement-cache-size，命中/未命中次数可用于监控
+     *
+     * @return
+     */
+    public StatementCache getStatementCache() {
+        if (statementCache == null) {
+            lock.lock();
+            try {
+                if (statementCache == null) {
+                    statementCache = new StatementCache(getDaoProperties().getStatementCacheSize());
+                    getMetrics().bindStatementCache(statementCache);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return statementCache;
     }
     //################################# merginng #################################
 
@@ -81,55 +506,84 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
     }
 
     /**
-     * 获取T的class实例
+     * 获取查询结果缓存，大小取配置 clickhouse.dao.result-cache-size
      *
      * @return
      */
-    private Class<T> getTClass() {
-        if (tClass == null) {
+    public QueryResultCache getResultCache() {
+        if (resultCache == null) {
             lock.lock();
             try {
-                if (tClass == null) {
-                    tClass = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
+                if (resultCache == null) {
+                    resultCache = new QueryResultCache(getDaoProperties().getResultCacheSize());
+                    getMetrics().bindResultCache(resultCache);
                 }
             } finally {
                 lock.unlock();
             }
         }
-        return tClass;
+        return resultCache;
+    }
+
+    /**
+     * 指定了TTL且开启结果缓存时先查缓存，否则直接查询
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @param ttlMillis 缓存时间，小于等于0不缓存
+     * @param query
+     * @return
+     * @throws SQLException
+     */
+    private <R> R cachedQuery(String sql, Object[] params, long ttlMillis, QueryResultCache.Query<R> query) throws SQLException {
+        if (ttlMillis <= 0 || getDaoProperties().getResultCacheSize() <= 0) {
+            return query.execute();
+        }
+        return getResultCache().get(sql, params, ttlMillis, query);
+    }
+
+    /**
+     * 本表数据有写入/修改/删除，清空查询结果缓存
+     */
+    private void invalidateResultCache() {
+        if (resultCache != null) {
+            resultCache.invalidateAll();
+        }
+    }
+
+    /**
+     * 获取当前实体类的SQL文本（每个实体类只构建一次）
+     *
+     * @return
+     */
+    EntitySql<T> getEntitySql() {
+        this.getTableName();// 没有表注解时抛出异常
+        return EntitySql.of(getTClass());
     }
 
     /**
-     * 获取当前T所有的属性数组
+     * 获取T的class实例
      *
      * @return
      */
-    private Field[] getAllFieldList() {
-        if (allFieldList == null) {
+    Class<T> getTClass() {
+        if (tClass == null) {
             lock.lock();
             try {
-                if (allFieldList == null) {
-                    //one
-//                    List<Field> fieldList = new ArrayList<>();
-//                    Class clazz = this.getTClass();
-//                    while (clazz != null) {   //当父类为null的时候说明到达了最上层的父类(Object类).
-//                        fieldList.addAll(Arrays.asList(clazz.getDeclaredFields()));
-//                        clazz = clazz.getSuperclass(); //得到父类,然后赋给自己
-//                    }
-//                    allFieldList = fieldList.toArray(new Field[fieldList.size()]);
-                    //two
-                    allFieldList = this.getTClass().getDeclaredFields();
+                if (tClass == null) {
+                    tClass = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
                 }
             } finally {
                 lock.unlock();
             }
         }
-        return allFieldList;
+        return tClass;
     }
 
     /**
      * 不同于普通SQL的修改和删除，alter table [tableName] update……where……
-     * 根据构造的对象，以ID为条件来修改
+     * 根据构造的对象，以ID为条件来修改；
+     * 版本表（@ClickHouseTable 声明了 versionColumn / signColumn）不执行 mutation，改为插入新版本行
      *
      * @param entity：只针对注解声明的属性
      * @return
@@ -138,40 +592,28 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
         if (entity == null) {
             throw new RuntimeException(" entity is null ");
         }
-        // 构建修改语句sql
-        StringBuffer sql = new StringBuffer("alter table ").append(this.getTableName()).append(" update ");
-        String where = "";
-
-        // 获取类的所有字段，并逐一填充sql，只针对注解声明的属性,
-        Field[] fieldList = this.getAllFieldList();
-        List<Object> setValue = new ArrayList<>();
-        for (Field field : fieldList) {
-            Column column = field.getAnnotation(Column.class);
-            if (column != null) {
-                Object getValue = entity.getClass().getMethod("get" + ClickHouseBaseUtil.capitalize(field.getName())).invoke(entity);
-                // ID条件判断
-                ClickHousePrimaryKey id = field.getAnnotation(ClickHousePrimaryKey.class);
-                if (id != null) {
-                    where = " where " + column.name() + " = " + getValue;
-                } else {
-                    sql.append(column.name()).append(" = ?,");
-                    setValue.add(getValue);
-                }
-            }
+        EntityMeta<T> meta = EntityMeta.of(getTClass());
+        if (meta.getWriteMode() != WriteMode.MUTATION) {
+            return insertNewVersion(meta, entity);
         }
-
-        // 完成SQL的构建
-        sql.deleteCharAt(sql.length() - 1).append(where);
-        log.info("updateByPrimaryKey " + sql.toString());
+        // 修改语句按实体类缓存，只针对注解声明的属性，主键作为最后一个参数
+        EntitySql<T> entitySql = this.getEntitySql();
+        String sql = entitySql.getUpdateByPrimaryKeySql();
+        if (sql == null) {
+            throw new RuntimeException(noUpdateSqlMessage(meta));
+        }
+        List<ColumnMeta> columns = entitySql.getUpdateColumns();
+        Object[] setValue = new Object[columns.size() + 1];
+        for (int i = 0; i < columns.size(); i++) {
+            setValue[i] = columns.get(i).get(entity);
+        }
+        setValue[columns.size()] = EntityMeta.of(getTClass()).getPrimaryKey().get(entity);
+        log.debug("updateByPrimaryKey {}", sql);
 
         // 开始修改
         try {
-            conn = getConnection();
-            PreparedStatement preparedStatement = conn.prepareStatement(sql.toString());
-            putPrepareStatementParams(preparedStatement,setValue.toArray());
-            int res = preparedStatement.executeUpdate();//提交修改
-//            conn.commit();// 执行
-            log.info("修改结果：[{}]", res);
+            int res = executeUpdate("updateByPrimaryKey", sql, setValue);//提交修改
+            log.debug("修改结果：[{}]", res);
             return res;
         } catch (Exception e) {
 //            try {
@@ -180,10 +622,22 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
 //                log.error("发生了异常",e);
 //            }
             log.error("发生了异常",e);
+        } finally {
+            invalidateResultCache();
         }
         return 0;
     }
 
+    /**
+     * 没有按主键修改/删除的SQL时的异常信息：实体没有主键，或除主键外没有可修改的@Column列
+     */
+    private static String noUpdateSqlMessage(EntityMeta<?> meta) {
+        if (meta.getPrimaryKey() == null) {
+            return " no Annotation 'ClickHousePrimaryKey' in clazz  ";
+        }
+        return " no @Column except 'ClickHousePrimaryKey' to update in clazz " + meta.getTableName();
+    }
+
     /**
      * 指定的SQL语句修改，一般是范围修改
      *
@@ -191,38 +645,37 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
      * @return
      */
     public int updateBySql(String fullSql) {
-        log.info("updateBySql " + fullSql);
+        log.debug("updateBySql {}", fullSql);
         return this.executeInsertUpdateDelete(fullSql);
     }
 
     /**
      * 不同于普通SQL的修改和删除，alter table [tableName] delete where……
-     * 根据ID删除，要获取被ID注解声明的字段名称
+     * 根据ID删除，要获取被ID注解声明的字段名称；
+     * 声明了 deletedColumn 的 Replacing 表插入删除标记行，Collapsing 表插入取消行，不执行 mutation
      *
      * @param primaryKey
      * @return
      */
     public int deleteByPrimaryKey(Object primaryKey) throws SQLException {
-        String columnID = "";//字段ID
-        Field[] fieldList = this.getAllFieldList();
-        for (Field field : fieldList) {
-            ClickHousePrimaryKey annotationID = field.getAnnotation(ClickHousePrimaryKey.class);
-            if (annotationID != null) {
-                Column annotationColumn = field.getAnnotation(Column.class);
-                columnID = annotationColumn.name();
+        EntityMeta<T> meta = EntityMeta.of(getTClass());
+        if (isInsertDelete(meta)) {
+            try {
+                return insertDeleteVersions(meta, Collections.singletonList(primaryKey));
+            } catch (Exception e) {
+                log.error("发生了异常",e);
             }
+            return 0;
+        }
+        String sql = this.getEntitySql().getDeleteByPrimaryKeySql();
+        if (sql == null) {
+            throw new RuntimeException(" no Annotation 'ClickHousePrimaryKey' in clazz  ");
         }
-        String sql = "alter table " + this.getTableName() + " delete where " + columnID + " = ?";
 
-        log.info("deleteByPrimaryKey " + sql);
+        log.debug("deleteByPrimaryKey {}", sql);
 
         try {
-            conn = getConnection();
-            PreparedStatement preparedStatement = conn.prepareStatement(sql);
-            preparedStatement.setObject(1, primaryKey);
-            int res = preparedStatement.executeUpdate();//提交删除
-//            conn.commit();// 执行
-            return res;
+            return executeUpdate("deleteByPrimaryKey", sql, new Object[]{primaryKey});//提交删除
         } catch (Exception e) {
 //            try {
 //                conn.rollback();//异常回滚
@@ -230,6 +683,8 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
 //                log.error("发生了异常",e);
 //            }
             log.error("发生了异常",e);
+        } finally {
+            invalidateResultCache();
         }
         return 0;
     }
@@ -241,72 +696,276 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
      * @return
      */
     public int deleteBySql(String fullSql){
-        log.info("deleteBySql " + fullSql);
+        log.debug("deleteBySql {}", fullSql);
         return executeInsertUpdateDelete(fullSql);
     }
 
     /**
-     * 简单count查询；单表查询
+     * 按多个主键删除，只产生一个 mutation：alter table [tableName] delete where pk in (……)；
+     * 逐个 deleteByPrimaryKey 时每个主键都是一个重写数据part的 mutation
      *
-     * @param sqlWhere
-     * @param params sql语句参数，没有传 null
+     * @param primaryKeys
      * @return
      */
-    public int selectCount(String sqlWhere, Object[] params) {
-        StringBuffer stringBuffer = new StringBuffer("select count(*) as count from ").append(this.getTableName());
-        if (sqlWhere != null) {
-            stringBuffer.append(" ").append(sqlWhere);
-        }
-        log.info(stringBuffer.toString());
+    public int deleteByPrimaryKeys(Collection<?> primaryKeys) {
         try {
-            conn = getConnection();
-            PreparedStatement preparedStatement = conn.prepareStatement(stringBuffer.toString());
-            putPrepareStatementParams(preparedStatement,params);
-            ResultSet resultSet = preparedStatement.executeQuery();
-            if (resultSet.next()) {
-                return resultSet.getInt("count");
+            EntityMeta<T> meta = EntityMeta.of(getTClass());
+            if (isInsertDelete(meta)) {
+                return insertDeleteVersions(meta, primaryKeys);
             }
+            return mutateByPrimaryKeys(null, primaryKeys);
         } catch (Exception e) {
             log.error("发生了异常",e);
-        }finally {
-//            close(preparedStatement,conn,null);
         }
-        return -1;
+        return 0;
     }
 
     /**
-     * 复杂count查询；多表查询
-     * @param tableSql
+     * 版本表的修改：Replacing 表插入一行新版本；Collapsing 表按主键 FINAL 读出当前行，插入它的取消行（sign=-1）和新行（sign=1）
+     *
+     * @param meta
+     * @param entity 版本列/符号列会被赋值
+     * @return 异常返回0
+     */
+    private int insertNewVersion(EntityMeta<T> meta, T entity) {
+        try {
+            List<T> rows = new ArrayList<>(2);
+            if (meta.getWriteMode() == WriteMode.COLLAPSING) {
+                rows.addAll(selectCancelRows(meta, Collections.singletonList(meta.getPrimaryKey().get(entity))));
+                meta.getSignColumn().set(entity, EntityMeta.flag(meta.getSignColumn(), 1));
+            }
+            if (meta.getVersionColumn() != null) {
+                meta.getVersionColumn().set(entity, meta.nextVersion());
+            }
+            rows.add(entity);
+            log.debug("updateByPrimaryKey {} 插入{}行", meta.getWriteMode(), rows.size());
+            insertBatch(rows, 0);
+            return 1;
+        } catch (Exception e) {
+            log.error("发生了异常",e);
+        }
+        return 0;
+    }
+
+    /**
+     * 删除是否插入删除标记行/取消行：Collapsing 表，或声明了 deletedColumn 的 Replacing 表
+     */
+    private static boolean isInsertDelete(EntityMeta<?> meta) {
+        return meta.getWriteMode() == WriteMode.COLLAPSING || meta.getDeletedColumn() != null;
+    }
+
+    /**
+     * 版本表的删除：按主键 FINAL 读出当前行，Replacing 表插入它的 is_deleted=1 新版本，Collapsing 表插入它的取消行；
+     * 删除行的其余列与当前行相同，分片键、排序键都不变，所以与原行写入同一分片并被去重替换。不存在的主键不插入
+     *
+     * @param meta
+     * @param primaryKeys
+     * @return 插入的行数
+     * @throws SQLException
+     */
+    private int insertDeleteVersions(EntityMeta<T> meta, Collection<?> primaryKeys) throws SQLException {
+        if (primaryKeys.isEmpty()) {
+            return 0;
+        }
+        List<T> rows;
+        if (meta.getWriteMode() == WriteMode.COLLAPSING) {
+            rows = selectCancelRows(meta, primaryKeys);
+        } else {
+            rows = selectCurrentRows(meta, primaryKeys);
+            Object deleted = EntityMeta.flag(meta.getDeletedColumn(), 1);
+            for (T row : rows) {
+                meta.getDeletedColumn().set(row, deleted);
+                meta.getVersionColumn().set(row, meta.nextVersion());
+            }
+        }
+        log.debug("deleteByPrimaryKey {} 插入{}行", meta.getWriteMode(), rows.size());
+        if (!rows.isEmpty()) {
+            insertBatch(rows, 0);
+        }
+        return rows.size();
+    }
+
+    /**
+     * 按主键 FINAL 读出版本表的当前行（已删除/已取消的不返回）
+     */
+    private List<T> selectCurrentRows(EntityMeta<T> meta, Collection<?> primaryKeys) throws SQLException {
+        EntityQuery<T> query = query().where(meta.getPrimaryKey().getColumnName(), EntityQuery.Op.IN, primaryKeys)
+                .dedup(EntityQuery.Dedup.FINAL);
+        List<T> rows = executeQuery("selectCurrentRows", query.toSql(), query.getParams(), this::mapResultSetToPO);
+        return rows == null ? new ArrayList<>() : rows;
+    }
+
+    /**
+     * Collapsing 表按主键 FINAL 读出当前行并改为取消行：取消行除 sign 外必须与原行完全相同
+     */
+    private List<T> selectCancelRows(EntityMeta<T> meta, Collection<?> primaryKeys) throws SQLException {
+        List<T> rows = selectCurrentRows(meta, primaryKeys);
+        Object cancel = EntityMeta.flag(meta.getSignColumn(), -1);
+        for (T row : rows) {
+            meta.getSignColumn().set(row, cancel);
+        }
+        return rows;
+    }
+
+    /**
+     * 按多个主键执行一个 mutation，异常直接抛出，供 MutationBatcher 使用。
+     * 主键个数补齐到2的幂（重复最后一个主键），个数不同的调用只产生少量不同的SQL文本
+     *
+     * @param setValues 修改时按 EntitySql.getUpdateColumns() 顺序的取值，为null时删除
+     * @param primaryKeys
+     * @return
+     * @throws SQLException
+     */
+    int mutateByPrimaryKeys(Object[] setValues, Collection<?> primaryKeys) throws SQLException {
+        if (primaryKeys.isEmpty()) {
+            return 0;
+        }
+        int keyCount = primaryKeys.size() == 1 ? 1 : Integer.highestOneBit(primaryKeys.size() - 1) << 1;
+        EntitySql<T> entitySql = this.getEntitySql();
+        String sql = setValues == null ? entitySql.deleteByPrimaryKeysSql(keyCount) : entitySql.updateByPrimaryKeysSql(keyCount);
+        if (sql == null) {
+            throw new RuntimeException(noUpdateSqlMessage(EntityMeta.of(getTClass())));
+        }
+        int leading = setValues == null ? 0 : setValues.length;
+        Object[] params = new Object[leading + keyCount];
+        if (setValues != null) {
+            System.arraycopy(setValues, 0, params, 0, leading);
+        }
+        int i = leading;
+        Object last = null;
+        for (Object primaryKey : primaryKeys) {
+            params[i++] = last = primaryKey;
+        }
+        while (i < params.length) {
+            params[i++] = last;
+        }
+        log.debug("mutateByPrimaryKeys {} keys {}", primaryKeys.size(), sql);
+        try {
+            return executeUpdate(setValues == null ? "deleteByPrimaryKeys" : "updateByPrimaryKeys", sql, params);
+        } finally {
+            invalidateResultCache();
+        }
+    }
+
+    /**
+     * 简单count查询；单表查询
+     *
+     * @param sqlWhere
+     * @param params sql语句参数，没有传 null
+     * @return
+     */
+    public int selectCount(String sqlWhere, Object[] params) {
+        return selectCount(sqlWhere, params, 0);
+    }
+
+    /**
+     * 简单count查询；单表查询，结果缓存 ttlMillis 毫秒，期间本DAO对表有写入时失效
+     *
+     * @param sqlWhere
+     * @param params sql语句参数，没有传 null
+     * @param ttlMillis 缓存时间，小于等于0不缓存
+     * @return
+     */
+    public int selectCount(String sqlWhere, Object[] params, long ttlMillis) {
+        String sql = this.getEntitySql().countSql(sqlWhere);
+        log.debug(sql);
+        try {
+            return cachedQuery(sql, params, ttlMillis,
+                    () -> executeQuery("selectCount", sql, params, (resultSet, fetcher) -> fetcher.next(resultSet) ? resultSet.getInt("count") : -1));
+        } catch (Exception e) {
+            log.error("发生了异常",e);
+        }
+        return -1;
+    }
+
+    /**
+     * 异步简单count查询，在异步线程池中执行 {@link #selectCount(String, Object[])}；
+     * 取消时在服务端 KILL QUERY
+     *
+     * @param sqlWhere
+     * @param params sql语句参数，没有传 null
+     * @return 异常时结果为-1，排队已满时以 RejectedExecutionException 失败
+     */
+    public ClickHouseFuture<Integer> selectCountAsync(String sqlWhere, Object[] params) {
+        return getAsyncExecutor().submit(() -> selectCount(sqlWhere, params));
+    }
+
+    /**
+     * 复杂count查询；多表查询
+     * @param tableSql
      * @return
      */
     public int selectCount(String tableSql) {
-        tableSql = "select count(1) as count from (" + tableSql + ") t";//手动构造统计
-        log.info("selectCount " + tableSql);
+        return selectCount(tableSql, 0);
+    }
+
+    /**
+     * 复杂count查询；多表查询，结果缓存 ttlMillis 毫秒
+     * @param tableSql
+     * @param ttlMillis 缓存时间，小于等于0不缓存
+     * @return
+     */
+    public int selectCount(String tableSql, long ttlMillis) {
+        String sql = "select count(1) as count from (" + tableSql + ") t";//手动构造统计
+        log.debug("selectCount {}", sql);
 
-        Statement statement = null;
-        ResultSet resultSet = null;
         try {
-            conn = getConnection();
-            statement = conn.createStatement();
-            resultSet = statement.executeQuery(tableSql);
-            if (resultSet != null) {
-                try {
-                    if (resultSet.next()) {
-                        return resultSet.getInt("count");
-                    }
-                } catch (Exception e) {
-                    log.error("发生了异常",e);
-                }
-            }
-            return 0;
+            return cachedQuery(sql, null, ttlMillis,
+                    () -> executeQuery("selectCount", sql, null, (resultSet, fetcher) -> fetcher.next(resultSet) ? resultSet.getInt("count") : 0));
         } catch (SQLException e) {
             log.error("发生了异常",e);
-        } finally {//关闭连接
-            //close(statement, conn, resultSet);
         }
         return -1;
     }
 
+    /**
+     * 分片count：各分片并行统计本地表（@ClickHouseTable localName）后求和
+     *
+     * @param sqlWhere
+     * @param params sql语句参数，没有传 null
+     * @return 异常返回-1
+     */
+    public long selectCountOnShards(String sqlWhere, Object[] params) {
+        String sql = this.getEntitySql().localCountSql(sqlWhere);
+        log.debug("selectCountOnShards {}", sql);
+        try {
+            long count = 0;
+            for (Long shardCount : executeQueryOnShards("selectCountOnShards", sql, params,
+                    (resultSet, fetcher) -> fetcher.next(resultSet) ? resultSet.getLong("count") : 0L)) {
+                count += shardCount;
+            }
+            return count;
+        } catch (SQLException e) {
+            log.error("发生了异常", e);
+        }
+        return -1;
+    }
+
+    /**
+     * 分片求和：各分片并行执行返回单个数值的聚合（count/sum 等可直接相加的部分聚合），取第一行第一列求和；
+     * avg 之类不能直接相加的聚合请分别查 sum 和 count
+     *
+     * @param sql 查分片本地表，如 select sum(price) from t_local where ...
+     * @param params sql语句参数，没有传 null
+     * @return 异常返回null
+     */
+    public BigDecimal selectSumOnShards(String sql, Object[] params) {
+        log.debug("selectSumOnShards {}", sql);
+        try {
+            BigDecimal sum = BigDecimal.ZERO;
+            for (BigDecimal partial : executeQueryOnShards("selectSumOnShards", sql, params,
+                    (resultSet, fetcher) -> fetcher.next(resultSet) ? resultSet.getBigDecimal(1) : null)) {
+                if (partial != null) {
+                    sum = sum.add(partial);
+                }
+            }
+            return sum;
+        } catch (SQLException e) {
+            log.error("发生了异常", e);
+        }
+        return null;
+    }
+
     /**
      * 分页查询，构造条件，排序
      *
@@ -316,34 +975,135 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
      * @return
      */
     public List<T> selectPage(int start, int size, String sqlWhere, Object[] params) {//} T entity, String orderByFieldAndIsAsc) {
-        StringBuffer sql = new StringBuffer("select * from ").append(this.getTableName());
-        if (sqlWhere == null) {
-            sql.append(" limit ").append(start).append(",").append(size);
-        } else {
-            sql.append(" ").append(sqlWhere).append(" limit ").append(start).append(",").append(size);
-        }
+        return selectPage(start, size, sqlWhere, params, (String[]) null);
+    }
 
-        log.info("selectPage " + sql.toString());
+    /**
+     * 分页查询，只查询指定的列，其余属性为null；宽表上只需要少数列时减少读取和传输的数据量
+     *
+     * @param start
+     * @param size
+     * @param sqlWhere：eg：field asc/desc
+     * @param params sql语句参数，没有传 null
+     * @param columns 表字段名，为空时查询实体所有@Column列
+     * @return
+     */
+    public List<T> selectPage(int start, int size, String sqlWhere, Object[] params, String... columns) {
+        int paramCount = params == null ? 0 : params.length;
+        Object[] pageParams = params == null ? new Object[2] : Arrays.copyOf(params, paramCount + 2);
+        pageParams[paramCount] = start;
+        pageParams[paramCount + 1] = size;
 
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
         try {
-            conn = getConnection();
-            preparedStatement = conn.prepareStatement(sql.toString());
-            putPrepareStatementParams(preparedStatement, params);
-            resultSet = preparedStatement.executeQuery();
-            return mapResultSetToPO(resultSet);
+            // limit 也用参数绑定，不同页使用同一个SQL文本
+            String sql = this.getEntitySql().pageSql(sqlWhere, columns);
+            log.debug("selectPage {}", sql);
+            return executeQuery("selectPage", sql, pageParams, this::mapResultSetToPO);
         } catch (Exception e) {
             log.error("发生了异常",e);
-        } finally {
-            //close(preparedStatement, conn, resultSet);
         }
         return new ArrayList<T>(0);//直接返回空list，防止NullPointException
     }
+
+    /**
+     * 游标分页：按排序列（没有 orderBy 时为 @ClickHousePrimaryKey）从上一页最后一行之后读取 size 行，
+     * 服务端按主键索引定位，翻到多深都只读一页的数据；limit start,size 则每页都要读取并丢弃前 start 行。
+     * <pre>
+     * SeekPage&lt;TTest&gt; page = tTestDao.selectPage(tTestDao.query().where("del_status", EntityQuery.Op.EQ, 0), 1000, null);
+     * while (page.hasNext()) {
+     *     page = tTestDao.selectPage(tTestDao.query().where("del_status", EntityQuery.Op.EQ, 0), 1000, page.getContinuationToken());
+     * }
+     * </pre>
+     * 会设置 query 的排序、游标和 limit，每页传入条件相同的新查询
+     *
+     * @param query 条件
+     * @param size 每页行数
+     * @param continuationToken 上一页返回的令牌，第一页传null
+     * @return 异常时返回空页
+     * @throws IllegalArgumentException 令牌不是这个查询的排序生成的
+     */
+    public SeekPage<T> selectPage(EntityQuery<T> query, int size, String continuationToken) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("每页行数必须大于0：" + size);
+        }
+        query.seek(continuationToken, size + 1);// 多读一行判断是否还有下一页
+        try {
+            String sql = query.toSql();
+            log.debug("selectPage {}", sql);
+            List<T> rows = executeQuery("selectPage", sql, query.getParams(), this::mapResultSetToPO);
+            if (rows.size() <= size) {
+                return new SeekPage<>(rows, null);
+            }
+            List<T> page = new ArrayList<>(rows.subList(0, size));
+            return new SeekPage<>(page, query.continuationToken(page.get(size - 1)));
+        } catch (SQLException | RuntimeException e) {
+            log.error("发生了异常", e);
+        }
+        return new SeekPage<>(new ArrayList<T>(0), null);
+    }
+
+    /**
+     * 创建当前实体的查询，见 {@link EntityQuery}
+     *
+     * @return
+     */
+    public EntityQuery<T> query() {
+        return EntityQuery.from(this.getTClass());
+    }
+
+    /**
+     * 按实体查询取数据：只查询投影的列，条件参数化，SQL按形状缓存
+     *
+     * @param query
+     * @return 异常返回null
+     */
+    public List<T> selectList(EntityQuery<T> query) {
+        try {
+            String sql = query.toSql();
+            log.debug("selectList {}", sql);
+            return executeQuery("selectQuery", sql, query.getParams(), this::mapResultSetToPO);
+        } catch (SQLException | RuntimeException e) {
+            log.error("发生了异常", e);
+        }
+        return null;
+    }
+
+    /**
+     * 同 {@link #selectList(EntityQuery)}，但按 RowBinaryWithNamesAndTypes 格式读取，见 {@link #selectListBinary(String, Object[])}
+     *
+     * @param query
+     * @return 异常返回null
+     */
+    public List<T> selectListBinary(EntityQuery<T> query) {
+        try {
+            return selectListBinary(query.toSql(), query.getParams());
+        } catch (RuntimeException e) {
+            log.error("发生了异常", e);
+        }
+        return null;
+    }
+
+    /**
+     * 按实体查询的条件count，忽略排序、游标和 limit
+     *
+     * @param query
+     * @return 异常返回-1
+     */
+    public int selectCount(EntityQuery<T> query) {
+        try {
+            String sql = query.toCountSql();
+            log.debug("selectCount {}", sql);
+            return executeQuery("selectCount", sql, query.getCountParams(),
+                    (resultSet, fetcher) -> fetcher.next(resultSet) ? resultSet.getInt("count") : -1);
+        } catch (SQLException | RuntimeException e) {
+            log.error("发生了异常", e);
+        }
+        return -1;
+    }
     //################################# merginng #################################
 
     /**
-     * 添加传入参数
+     * 添加传入参数，按取值类型直接 setXxx（见 ParameterBinder）
      *
      * @param preparedStatement
      * @param params sql语句参数，没有传 null
@@ -352,230 +1112,436 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
     private void putPrepareStatementParams(PreparedStatement preparedStatement, Object[] params) throws SQLException {
         if (params != null && params.length > 0) {
             for (int i = 0; i < params.length; i++) {
-                if (params[i] instanceof Integer) {
-                    preparedStatement.setInt(i + 1, (Integer) params[i]);
-                } else if (params[i] instanceof Long) {
-                    preparedStatement.setLong(i + 1, (Long) params[i]);
-                } else if (params[i] instanceof String) {
-                    preparedStatement.setString(i + 1, params[i].toString());
-                } else if (params[i] instanceof Double) {
-                    preparedStatement.setDouble(i + 1, (Double) params[i]);
-                } else if (params[i] instanceof BigDecimal) {
-                    preparedStatement.setBigDecimal(i + 1, (BigDecimal) params[i]);
-                } else if (params[i] instanceof Float) {
-                    preparedStatement.setFloat(i + 1, (Float) params[i]);
-                } else {
-                    preparedStatement.setObject(i + 1, params[i]);
-                }
+                ParameterBinder.bindValue(preparedStatement, i + 1, params[i]);
             }
         }
     }
 
     /**
-     * 返回结果数据封装成List对象map集合格式返回
+     * 返回结果数据封装成List对象map集合格式返回；取行或映射出错时抛出，不返回部分结果（由公开方法统一处理异常，出错的结果也不会被缓存）
      *
      * @param rs
+     * @param fetcher 取行
      * @return
+     * @throws SQLException 取行出错（连接中断、超时被KILL），映射出错包装成 SQLException
      */
-    private List<Map<String, Object>> mapResultSetToMap(ResultSet rs) {
+    private List<Map<String, Object>> mapResultSetToMap(ResultSet rs, RowFetcher fetcher) throws SQLException {
+        if (rs == null) {
+            return null;
+        }
         List<Map<String, Object>> outputList = new ArrayList<>();
         try {
-            if (rs != null) {
-                ResultSetMetaData rsmd = rs.getMetaData();
-                Map<String, Object> resultMap;
-                while (rs.next()) {
-                    resultMap = new HashMap<>();
-                    for (int _iterator = 0; _iterator < rsmd.getColumnCount(); _iterator++) {
-                        resultMap.put(rsmd.getColumnName(_iterator + 1), rs.getObject(_iterator + 1));
-                    }
-                    outputList.add(resultMap);
+            ResultSetMetaData rsmd = rs.getMetaData();
+            Map<String, Object> resultMap;
+            while (fetcher.next(rs)) {
+                resultMap = new HashMap<>();
+                for (int _iterator = 0; _iterator < rsmd.getColumnCount(); _iterator++) {
+                    resultMap.put(rsmd.getColumnName(_iterator + 1), rs.getObject(_iterator + 1));
                 }
-            } else {
-                return null;
+                outputList.add(resultMap);
             }
-        } catch (Exception e) {
-            log.error("发生了异常",e);
+        } catch (RuntimeException e) {
+            throw mappingFailed(e);
         }
         return outputList;
     }
 
     /**
-     * 返回结果数据封装成List对象map集合格式返回
+     * 返回结果数据封装成List对象数组格式返回，每行一个 Object[]，按列顺序；出错时抛出，同 mapResultSetToMap
      *
      * @param rs
+     * @param fetcher 取行
      * @return
+     * @throws SQLException
      */
-    private List mapResultSetToObject(ResultSet rs) {
-        List<List<Object>> outputList = new ArrayList<>();
+    private List<Object[]> mapResultSetToObject(ResultSet rs, RowFetcher fetcher) throws SQLException {
+        if (rs == null) {
+            return null;
+        }
+        List<Object[]> outputList = new ArrayList<>();
         try {
-            if (rs != null) {
-                ResultSetMetaData rsmd = rs.getMetaData();
-                List<Object> cellList = new ArrayList<>();
-                while (rs.next()) {
-                    for (int _iterator = 0; _iterator < rsmd.getColumnCount(); _iterator++) {
-                        cellList.add(rs.getObject(_iterator + 1));
-                    }
-                    outputList.add(cellList);
+            int columnCount = rs.getMetaData().getColumnCount();
+            while (fetcher.next(rs)) {
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = rs.getObject(i + 1);
                 }
-            } else {
-                return null;
+                outputList.add(row);
             }
-        } catch (Exception e) {
-            log.error("发生了异常",e);
+        } catch (RuntimeException e) {
+            throw mappingFailed(e);
         }
         return outputList;
     }
 
     /**
-     * 将查询的返回结果信息封装实体对象
+     * 将查询的返回结果信息封装实体对象，行映射器按结果集列布局缓存复用；出错时抛出，同 mapResultSetToMap
      *
      * @param rs
+     * @param fetcher 取行
      * @return
+     * @throws SQLException
      */
-    @SuppressWarnings("unchecked")
-    private List<T> mapResultSetToPO(ResultSet rs) {
-        List<T> outputList = new ArrayList<T>();
-        try {
-            if (rs != null) {
-                if (this.getTClass().isAnnotationPresent(Entity.class)) {
-                    ResultSetMetaData resultSetMetaData = rs.getMetaData();
-                    Field[] fields = getAllFieldList();
-                    //字段名字，详细信息map
-                    Map<String,Field>  nameFieldMap = new HashMap<>();
-                    //循环行赋值
-                    while (rs.next()) {
-                        T bean = (T) this.getTClass().newInstance();
-                        //循环列赋值
-                        for (int _iterator = 0; _iterator < resultSetMetaData.getColumnCount(); _iterator++) {
-                            String columnName = resultSetMetaData.getColumnName(_iterator + 1);
-                            Object columnValue = rs.getObject(_iterator + 1);
-                            if(StringUtils.isEmpty(columnName) || columnValue == null){
-                                continue;
-                            }
-                            //字段赋值
-                            if(nameFieldMap.containsKey(columnName)){
-                                Field field = nameFieldMap.get(columnName);
-                                BeanUtils.setProperty(bean, field == null ? null : field.getName(), columnValue);
-                            }else{
-                                for (Field field : fields) {
-                                    if (field.isAnnotationPresent(Column.class) && field.getAnnotation(Column.class).name().equalsIgnoreCase(columnName)) {
-                                        nameFieldMap.put(columnName,field);
-                                        BeanUtils.setProperty(bean, field.getName(), columnValue);
-                                        break;
-                                    }
-                                    nameFieldMap.put(columnName,null);
-                                }
-                            }
-                        }
-                        outputList.add(bean);
-                    }
-                } else {
-                    // throw some error
-                }
-            } else {
-                return null;
-            }
-        } catch (IllegalAccessException e) {
-            log.error("发生了异常",e);
+    private List<T> mapResultSetToPO(ResultSet rs, RowFetcher fetcher) throws SQLException {
+        if (rs == null) {
+            return null;
+        }
+        if (!this.getTClass().isAnnotationPresent(Entity.class)) {
+            return new ArrayList<T>();
+        }
+        try {
+            return EntityRowMapper.of(this.getTClass(), rs.getMetaData()).mapAll(rs, fetcher);
+        } catch (RuntimeException e) {
+            throw mappingFailed(e);
+        }
+    }
+
+    /**
+     * 映射中的运行时异常（驱动取行时的包装异常、类型转换出错）转为 SQLException，保留原因供副本重试判断
+     */
+    private static SQLException mappingFailed(RuntimeException e) {
+        return new SQLException("结果集映射出错：" + e.getMessage(), e);
+    }
+
+//    /**
+//     * 根据传入SQL条件，查询对象集合数据
+//     *
+//     * @param sql
+//     * @return
+//     */
+//    public List<T> selectList(String sql) {
+//        log.info("clickHouse 查询集合数据执行sql：" + sql);
+//        Statement statement = null;
+//        ResultSet resultSet = null;
+//        try {
+//            conn = getConnection();
+//            statement = conn.createStatement();
+//            resultSet = statement.executeQuery(sql.toString());
+//            List<T> list = mapResultSetToObject(resultSet);
+//            if (list != null) {
+//                log.debug("查询出数据size：{}", list.size());
+//            } else {
+//                log.debug("ResultSet is empty. Please check if database table is empty");
+//            }
+//            return list;
+//        } catch (SQLException e) {
+//            log.error("发生了异常",e);
+//        } finally {//关闭连接
+//            close(statement, conn, resultSet);
+//        }
+//        return null;
+//    }
+
+    /**
+     * 根据传入SQL条件以及参数，查询集合数据
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return
+     */
+    public List<T> selectListObj(String sql, Object[] params) {
+        return selectListCommon("obj",sql,params, 0);
+    }
+
+    /**
+     * 根据传入SQL条件以及参数查询集合数据，按 RowBinaryWithNamesAndTypes 格式读取：
+     * 响应按小端字节直接解码到实体属性，不经过驱动的 TabSeparated 文本解析，结果与 {@link #selectListObj(String, Object[])} 相同。
+     * 适合返回行数多、数值列多的查询；sql 不要带 FORMAT 子句
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return 异常（包括 Array 等不支持解码的列类型）返回null
+     */
+    public List<T> selectListBinary(String sql, Object[] params) {
+        log.debug("clickHouse RowBinary查询集合数据执行sql：{}", sql);
+        try {
+            List<T> list = executeRowBinaryQuery("selectListBinary", sql, params, (in, sample) -> {
+                List<T> rows = EntityRowBinaryReader.of(getTClass(), RowBinaryHeader.read(in)).readAll(in);
+                sample.addRows(rows.size());
+                return rows;
+            });
+            log.debug("查询出数据size：{}", list.size());
+            return list;
+        } catch (SQLException | RuntimeException e) {
+            log.error("发生了异常", e);
+        }
+        return null;
+    }
+
+    /**
+     * 根据传入SQL条件以及参数，查询集合数据，结果缓存 ttlMillis 毫秒；缓存的集合不可修改
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @param ttlMillis 缓存时间，小于等于0不缓存
+     * @return
+     */
+    public List<T> selectListObj(String sql, Object[] params, long ttlMillis) {
+        return selectListCommon("obj",sql,params, ttlMillis);
+    }
+
+    /**
+     * 异步查询集合数据，在异步线程池中执行 {@link #selectListObj(String, Object[])}；
+     * 取消时在服务端 KILL QUERY
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return 异常时结果为null，排队已满时以 RejectedExecutionException 失败
+     */
+    public ClickHouseFuture<List<T>> selectListObjAsync(String sql, Object[] params) {
+        return getAsyncExecutor().submit(() -> selectListObj(sql, params));
+    }
+
+    /**
+     * 根据传入SQL条件以及参数，返回List对象Map集合数据
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return
+     */
+    public List<Map<String, Object>> selectListMap(String sql, Object[] params) {
+        return selectListCommon("map",sql,params, 0);
+    }
+
+    /**
+     * 根据传入SQL条件以及参数，返回List对象Map集合数据，结果缓存 ttlMillis 毫秒；缓存的集合不可修改
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @param ttlMillis 缓存时间，小于等于0不缓存
+     * @return
+     */
+    public List<Map<String, Object>> selectListMap(String sql, Object[] params, long ttlMillis) {
+        return selectListCommon("map",sql,params, ttlMillis);
+    }
+
+    /**
+     * 异步查询Map集合数据，在异步线程池中执行 {@link #selectListMap(String, Object[])}；
+     * 取消时在服务端 KILL QUERY
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return 异常时结果为null，排队已满时以 RejectedExecutionException 失败
+     */
+    public ClickHouseFuture<List<Map<String, Object>>> selectListMapAsync(String sql, Object[] params) {
+        return getAsyncExecutor().submit(() -> selectListMap(sql, params));
+    }
+
+    /**
+     * 根据传入SQL条件以及参数，返回列式结果（基本类型数组存储），适合返回大量数值行的聚合查询
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return 异常返回null
+     */
+    public ColumnarResult selectColumnar(String sql, Object[] params) {
+        log.debug("clickHouse 列式查询执行sql：{}", sql);
+        try {
+            ColumnarResult result = executeQuery("selectColumnar", sql, params, ColumnarResult::from);
+            log.debug("查询出数据size：{}", result.getRowCount());
+            return result;
         } catch (SQLException e) {
-            log.error("发生了SQLException异常",e);
-        } catch (InstantiationException e) {
-            log.error("发生了 InstantiationException 异常",e);
-        } catch (InvocationTargetException e) {
-            log.error("发生了 InvocationTargetException 异常",e);
+            log.error("发生了异常", e);
+        }
+        return null;
+    }
+
+    /**
+     * 同 {@link #selectColumnar(String, Object[])}，但按 RowBinaryWithNamesAndTypes 格式查询，
+     * 数值按小端字节直接写入列数组，不经过驱动的文本解析
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return 异常（包括 Array 等不支持解码的列类型）返回null
+     */
+    public ColumnarResult selectColumnarBinary(String sql, Object[] params) {
+        log.debug("clickHouse RowBinary列式查询执行sql：{}", sql);
+        try {
+            ColumnarResult result = executeRowBinaryQuery("selectColumnarBinary", sql, params, (in, sample) -> {
+                ColumnarResult columnar = ColumnarResult.fromRowBinary(in);
+                sample.addRows(columnar.getRowCount());
+                return columnar;
+            });
+            log.debug("查询出数据size：{}", result.getRowCount());
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            log.error("发生了异常", e);
+        }
+        return null;
+    }
+
+    /**
+     * 流式查询：逐行映射成实体交给consumer，不在内存中保留整个结果集
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @param consumer 每行的处理
+     * @return 处理的行数，异常返回-1
+     */
+    public long selectStream(String sql, Object[] params, Consumer<? super T> consumer) {
+        log.debug("clickHouse 流式查询执行sql：{}", sql);
+        long count = 0;
+        try (ResultSetIterator<T> iterator = selectIterator(sql, params)) {
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
+            return count;
+        } catch (SQLException | DataAccessException e) {
+            log.error("发生了异常，已处理{}行", count, e);
+        }
+        return -1;
+    }
+
+    /**
+     * 流式查询任意结果：所有行复用同一个行游标交给consumer，回调外需要保留的行请 toArray() 复制
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @param consumer 每行的处理
+     * @return 处理的行数，异常返回-1
+     */
+    public long selectRows(String sql, Object[] params, Consumer<? super RowCursor> consumer) {
+        log.debug("clickHouse 流式查询执行sql：{}", sql);
+        try {
+            return executeQuery(clickHouseDatasource, "selectRows", sql, params, (resultSet, fetcher) -> {
+                RowCursor cursor = RowCursor.of(resultSet.getMetaData());
+                while (fetcher.next(resultSet)) {
+                    cursor.read(resultSet);
+                    consumer.accept(cursor);
+                }
+                return cursor.getRowNum() + 1;
+            }, false);
+        } catch (SQLException | DataAccessException e) {
+            log.error("发生了异常", e);
         }
-        return outputList;
+        return -1;
     }
 
     /**
-     * 关闭流公共处理
+     * 流式查询：返回逐行映射的Stream，必须关闭（try-with-resources）以释放连接
      *
-     * @param statement
-     * @param conn
-     * @param resultSet
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return
+     * @throws SQLException
+     */
+    public Stream<T> selectStream(String sql, Object[] params) throws SQLException {
+        return selectIterator(sql, params).stream();
+    }
+
+    /**
+     * 流式查询：返回逐行映射的迭代器，读完或close()时释放连接
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @return
+     * @throws SQLException
      */
-    private void close(Statement statement, Connection conn, ResultSet resultSet) {
+    public ResultSetIterator<T> selectIterator(String sql, Object[] params) throws SQLException {
+        QueryContext context = QueryContext.current();
+        if (context == null) {
+            // 与 withConnection 一样按默认设置创建上下文，语句带上它的 query_id
+            return new QueryContext(getDefaultQueryOptions()).execute(() -> selectIterator(sql, params));
+        }
+        ClickHouseDaoMetrics.Sample sample = getMetrics().start("selectStream");
+        Connection conn;
+        try {
+            conn = getConnection();
+        } catch (SQLException e) {
+            sample.error(e);
+            throw e;
+        }
+        sample.mark(ClickHouseDaoMetrics.Phase.CONNECTION);
+        Runnable release = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
         try {
+            release = context.attachStream(conn);// 迭代器关闭前取消或超时都在这个连接所在节点上 KILL QUERY
+            preparedStatement = conn.prepareStatement(sql);
+            putPrepareStatementParams(preparedStatement, params);
+            sample.mark(ClickHouseDaoMetrics.Phase.PREPARE);
+            resultSet = executeQuery(preparedStatement);
+            sample.mark(ClickHouseDaoMetrics.Phase.EXECUTE);
+            ReplicaRoutingDataSource.markResponded(conn);
+            EntityRowMapper<T> mapper = EntityRowMapper.of(getTClass(), resultSet.getMetaData());
+            return new ResultSetIterator<>(conn, preparedStatement, resultSet, (rs, rowNum) -> mapper.mapRow(rs), sql, sample, context, release);
+        } catch (SQLException | RuntimeException e) {
+            sample.error(e);
+            ReplicaRoutingDataSource.markFailed(conn, e);
+            if (release != null) {
+                release.run();
+            }
             if (resultSet != null) {
                 resultSet.close();
             }
-            if (statement != null) {
-                statement.close();
-            }
-            if (conn != null) {
-                conn.close();
+            closeQuietly(preparedStatement);
+            conn.close();
+            if (context.isTimedOut()) {
+                throw new SQLTimeoutException("clickHouse查询超过截止时间，已取消：" + context.getQueryId(), e);
             }
-        } catch (SQLException e) {
-            log.error("发生了异常",e);
+            throw e;
         }
     }
 
-//    /**
-//     * 根据传入SQL条件，查询对象集合数据
-//     *
-//     * @param sql
-//     * @return
-//     */
-//    public List<T> selectList(String sql) {
-//        log.info("clickHouse 查询集合数据执行sql：" + sql);
-//        Statement statement = null;
-//        ResultSet resultSet = null;
-//        try {
-//            conn = getConnection();
-//            statement = conn.createStatement();
-//            resultSet = statement.executeQuery(sql.toString());
-//            List<T> list = mapResultSetToObject(resultSet);
-//            if (list != null) {
-//                log.debug("查询出数据size：{}", list.size());
-//            } else {
-//                log.debug("ResultSet is empty. Please check if database table is empty");
-//            }
-//            return list;
-//        } catch (SQLException e) {
-//            log.error("发生了异常",e);
-//        } finally {//关闭连接
-//            close(statement, conn, resultSet);
-//        }
-//        return null;
-//    }
-
     /**
-     * 根据传入SQL条件以及参数，查询集合数据
+     * 分片查询：各分片并行执行同一SQL（一般查本地表），按分片顺序拼接结果；
+     * 多个分片的结果之间没有全局排序，需要排序/limit 的请在拼接后自行处理
      *
      * @param sql
      * @param params sql语句参数，没有传 null
-     * @return
+     * @return 异常返回null
      */
-    public List<T> selectListObj(String sql, Object[] params) {
-        return selectListCommon("obj",sql,params);
+    public List<T> selectListObjOnShards(String sql, Object[] params) {
+        return selectListOnShards("obj", sql, params);
     }
 
     /**
-     * 根据传入SQL条件以及参数，返回List对象Map集合数据
+     * 分片查询：各分片并行执行同一SQL，按分片顺序拼接 Map 结果
      *
      * @param sql
      * @param params sql语句参数，没有传 null
-     * @return
+     * @return 异常返回null
      */
-    public List<Map<String, Object>> selectListMap(String sql, Object[] params) {
-        return selectListCommon("map",sql,params);
+    public List<Map<String, Object>> selectListMapOnShards(String sql, Object[] params) {
+        return selectListOnShards("map", sql, params);
     }
 
-    private List selectListCommon(String type, String sql, Object[] params) {
-        log.info("clickHouse 查询集合数据执行sql：" + sql);
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
+    private List selectListOnShards(String type, String sql, Object[] params) {
+        log.debug("clickHouse 分片查询执行sql：{}", sql);
         try {
-            conn = getConnection();
-            preparedStatement = conn.prepareStatement(sql);
-            putPrepareStatementParams(preparedStatement, params);
-            resultSet = preparedStatement.executeQuery();
-            List backList = null;
-            if ("map".equals(type)) {
-                backList = mapResultSetToMap(resultSet);
-            } else if ("obj".equals(type)) {
-                backList = mapResultSetToPO(resultSet);
+            List<List> shardLists = executeQueryOnShards("selectListOnShards", sql, params,
+                    (resultSet, fetcher) -> "map".equals(type) ? mapResultSetToMap(resultSet, fetcher) : mapResultSetToPO(resultSet, fetcher));
+            int size = 0;
+            for (List shardList : shardLists) {
+                size += shardList == null ? 0 : shardList.size();
             }
+            List backList = new ArrayList(size);
+            for (List shardList : shardLists) {
+                if (shardList != null) {
+                    backList.addAll(shardList);
+                }
+            }
+            log.debug("{}个分片查询出数据size：{}", shardLists.size(), size);
+            return backList;
+        } catch (SQLException e) {
+            log.error("发生了异常", e);
+        }
+        return null;
+    }
+
+    private List selectListCommon(String type, String sql, Object[] params, long ttlMillis) {
+        log.debug("clickHouse 查询集合数据执行sql：{}", sql);
+        try {
+            List backList = cachedQuery(type + ":" + sql, params, ttlMillis, () -> executeQuery("selectList", sql, params, (resultSet, fetcher) -> {
+                List list = null;
+                if ("map".equals(type)) {
+                    list = mapResultSetToMap(resultSet, fetcher);
+                } else if ("obj".equals(type)) {
+                    list = mapResultSetToPO(resultSet, fetcher);
+                }
+                return list != null && ttlMillis > 0 ? Collections.unmodifiableList(list) : list;// 缓存的集合共享，不允许修改
+            }));
             if (backList != null) {
                 log.debug("查询出数据size：{}", backList.size());
             } else {
@@ -584,8 +1550,6 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
             return backList;
         } catch (SQLException e) {
             log.error("发生了异常", e);
-        } finally {//关闭连接
-            //close(preparedStatement, conn, resultSet);
         }
         return null;
     }
@@ -630,224 +1594,380 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
      * @return
      */
     public T selectOne(String selectSql, Object[] params) {
-        log.info("clickHouse 查询单条数据执行sql：" + selectSql);
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
+        log.debug("clickHouse 查询单条数据执行sql：{}", selectSql);
         try {
-            conn = getConnection();
-            preparedStatement = conn.prepareStatement(selectSql);
-            putPrepareStatementParams(preparedStatement, params);
-            resultSet = preparedStatement.executeQuery();
-            Class<T> clazz = getTClass();
-            if (Number.class.isAssignableFrom(clazz)
-                    || Date.class.isAssignableFrom(clazz)
-                    || String.class.isAssignableFrom(clazz)) {
-                if (resultSet.next()) {
-                    return (T) resultSet.getObject(1);
+            return executeQuery("selectOne", selectSql, params, (resultSet, fetcher) -> {
+                Class<T> clazz = getTClass();
+                if (Number.class.isAssignableFrom(clazz)
+                        || Date.class.isAssignableFrom(clazz)
+                        || String.class.isAssignableFrom(clazz)) {
+                    if (fetcher.next(resultSet)) {
+                        return (T) resultSet.getObject(1);
+                    }
+                    return null;
                 }
-            } else {
-                List<T> list = mapResultSetToPO(resultSet);
+                List<T> list = mapResultSetToPO(resultSet, fetcher);
                 return CollectionUtils.isEmpty(list) ? null : list.get(0);
-            }
+            });
         } catch (SQLException e) {
             log.error("发生了异常",e);
-        } finally {//关闭连接
-            //close(preparedStatement, conn, resultSet);
         }
         return null;
     }
 
     /**
-     * 批量插入实体对象集合数据
+     * 批量插入实体对象集合数据，每批行数取配置 clickhouse.dao.batch-size
      *
      * @param list
      */
     public void batchInsert(List<T> list) {
-        //TODO 需要优化
-//        String tableName = getTableName();
-//        if (CollectionUtils.isEmpty(list) || StringUtil.isEmpty(tableName)){
-//            return;
-//        }
-//        PreparedStatement preparedStatement = null;
-//        ResultSet resultSet = null;
-//        Field[] fields = null;
-//        int fieldSize = 0;
-//        try {
-//            Long startTime = System.currentTimeMillis();
-//            // 此处查询一次，只为了获取对应列名索引，进而插入对应值
-//            conn = getConnection();
-//            resultSet = conn.createStatement().executeQuery(Constant.QUERY + Constant.WILDCARD + Constant.FROM + tableName + Constant.LIMIT + 1);
-//            Map<String, Integer> indexMap = new HashMap<>();
-//            // 将列名和对应索引存入indexMap
-//            for (int a = 1; a <= resultSet.getMetaData().getColumnCount(); a++) {
-//                indexMap.put(resultSet.getMetaData().getColumnName(a), a);
-//            }
-//            int batch = 0;
-//            for (T obj : list) {
-//                batch++;
-//                if (null == fields || fieldSize == 0) {
-//                    StringBuffer sql = new StringBuffer(Constant.ADD + tableName + " values(");
-//                    fields =  this.getAllFieldList();
-//                    fieldSize = fields.length;
-//                    for (int i = 0; i < fieldSize; i++) {
-//                        //如果没有注解或者注解的列是空
-//                        if (!fields[i].isAnnotationPresent(Column.class) || fields[i].getAnnotation(Column.class) == null) {
-//                            continue;
-//                        }
-//                        sql.append("?,");
-//                    }
-//                    sql.deleteCharAt(sql.length() - 1);
-//                    sql.append(")");
-//                    preparedStatement = conn.prepareStatement(sql.toString());
-//                    log.info("批量插入" + tableName + "打印执行sql: " + sql);
-//                }
-//
-//                for (int j = 0; j < fieldSize; j++) {
-//                    fields[j].setAccessible(true);
-//                    //如果没有注解或者注解的列是空
-//                    if (!fields[j].isAnnotationPresent(Column.class) || fields[j].getAnnotation(Column.class) == null) {
-//                        continue;
-//                    }
-//                    // 获取当前需要插入的列名
-//                    String columnName = fields[j].getAnnotation(Column.class).name();
-//                    // 将value set到对应的列位
-//                    if (StringUtil.isNotNull(fields[j].get(obj))) {
-//                        if (resultSet.getMetaData().getColumnType(indexMap.get(columnName)) == Types.TIMESTAMP) {
-//                            if (fields[j].get(obj) instanceof Timestamp) {
-//                                preparedStatement.setTimestamp(indexMap.get(columnName), (Timestamp) fields[j].get(obj));
-//                            } else if (fields[j].get(obj) instanceof Date) {
-//                                preparedStatement.setTimestamp(indexMap.get(columnName), new java.sql.Timestamp(((Date) fields[j].get(obj)).getTime()));
-//                            } else {
-//                                preparedStatement.setTimestamp(indexMap.get(columnName), null);
-//                            }
-//                        } else if (resultSet.getMetaData().getColumnType(indexMap.get(columnName)) == Types.DATE) {
-//                            if (fields[j].get(obj) instanceof java.sql.Date) {
-//                                preparedStatement.setDate(indexMap.get(columnName), (java.sql.Date) fields[j].get(obj));
-//                            } else if (fields[j].get(obj) instanceof Date) {
-//                                preparedStatement.setDate(indexMap.get(columnName), new java.sql.Date(((Date) fields[j].get(obj)).getTime()));
-//                            } else if (fields[j].get(obj) instanceof String) {
-//                                preparedStatement.setString(indexMap.get(columnName), fields[j].get(obj).toString());
-//                            } else {
-//                                preparedStatement.setDate(indexMap.get(columnName), null);
-//                            }
-//                        } else if (resultSet.getMetaData().getColumnType(indexMap.get(columnName)) == Types.DECIMAL) {
-//                            if (fields[j].get(obj) instanceof BigDecimal) {
-//                                preparedStatement.setBigDecimal(indexMap.get(columnName), (BigDecimal) fields[j].get(obj));
-//                            } else if (fields[j].get(obj) instanceof String) {
-//                                preparedStatement.setBigDecimal(indexMap.get(columnName), new BigDecimal(fields[j].get(obj).toString()));
-//                            } else if (fields[j].get(obj) instanceof Number) {
-//                                preparedStatement.setBigDecimal(indexMap.get(columnName), BigDecimal.valueOf((Double) fields[j].get(obj)));
-//                            } else {
-//                                preparedStatement.setBigDecimal(indexMap.get(columnName), null);
-//                            }
-//                        } else {
-//                            preparedStatement.setObject(indexMap.get(columnName), fields[j].get(obj));
-//                        }
-//                    } else {
-//                        preparedStatement.setObject(indexMap.get(columnName), null);
-//                    }
-//                }
-//                preparedStatement.addBatch();
-//                // 每2000插入一次
-//                if (batch % 2000 == 0) {
-//                    preparedStatement.executeBatch();
-//                }
-//            }
-//            if(batch % 2000 != 0){
-//                // 插入剩余数量不足2000的
-//                preparedStatement.executeBatch();
-//            }
-//            indexMap = null;
-//            Long endTime = System.currentTimeMillis();
-//            log.info("集合size：{}，批量插入{}成功,耗时{}ms......", list.size(), tableName, (endTime - startTime));
-//        } catch (Exception e1) {
-//            log.error("集合size：{}，批量插入{}异常：{}", list.size(), tableName, e1.getMessage());
-//        } finally {
-//            //close(preparedStatement, conn, resultSet);
-//        }
+        batchInsert(list, getDaoProperties().getBatchSize());
     }
 
     /**
-     * 批量插入List对象集合map数据
+     * 批量插入实体对象集合数据：按@Column属性与表结构确定插入列，
+     * 以RowBinary格式直接写入插入流，每 batchSize 行发送一次
      *
      * @param list
+     * @param batchSize 每批行数
      */
-    public void batchInsertExt(List<Map<String, Object>> list) {
+    public void batchInsert(List<T> list, int batchSize) {
         String tableName = getTableName();
-        if (list == null || list.size() <= 0 || StringUtil.isEmpty(tableName))
+        if (CollectionUtils.isEmpty(list) || StringUtil.isEmpty(tableName)) {
             return;
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
-        String[] fieldsStr = null;
-        int fieldSize = 0;
+        }
         try {
             Long startTime = System.currentTimeMillis();
-            // 此处查询一次，只为了获取对应列名索引，进而插入对应值
-            conn = getConnection();
-            resultSet = conn.createStatement().executeQuery(Constant.QUERY + Constant.WILDCARD + Constant.FROM + tableName + Constant.LIMIT + 1);
-            Map<String, Integer> indexMap = new HashMap<>();
-            // 将列名和对应索引存入indexMap
-            for (int a = 1; a <= resultSet.getMetaData().getColumnCount(); a++) {
-                indexMap.put(resultSet.getMetaData().getColumnName(a), a);
-            }
-            int batch = 0;
-            Object value;
-            for (Map<String, Object> map : list) {
-                batch++;
-                if (null == fieldsStr || fieldSize == 0) {
-                    StringBuffer sql = new StringBuffer(Constant.ADD + tableName + " (");
-                    fieldsStr = map.keySet().toArray(new String[map.keySet().size()]);
-                    fieldSize = fieldsStr.length;
-                    for (int i = 0; i < fieldSize; i++) {
-                        sql.append(fieldsStr[i] + ",");
-                    }
-                    sql.deleteCharAt(sql.length() - 1);
-                    sql.append(") values(");
-                    for (int i = 0; i < fieldSize; i++) {
-                        sql.append("?,");
-                    }
-                    sql.deleteCharAt(sql.length() - 1);
-                    sql.append(")");
-                    preparedStatement = conn.prepareStatement(sql.toString());
-                    log.info("批量插入" + tableName + "打印执行sql: " + sql);
+            insertBatch(list, batchSize);
+            Long endTime = System.currentTimeMillis();
+            log.debug("集合size：{}，批量插入{}成功,耗时{}ms......", list.size(), tableName, (endTime - startTime));
+        } catch (Exception e1) {
+            log.error("集合size：{}，批量插入{}异常：{}", list.size(), tableName, e1);
+        }
+    }
+
+    /**
+     * RowBinary批量插入，异常直接抛出，供需要感知插入失败的调用方（如 AsyncClickHouseWriter）使用；
+     * 配置了分片且实体声明了 @ClickHouseShardingKey 时按分片键拆分，并行写入各分片的本地表
+     *
+     * @param list
+     * @param batchSize 每批行数，小于等于0时一次发送
+     * @throws SQLException
+     */
+    protected void insertBatch(List<T> list, int batchSize) throws SQLException {
+        fillVersions(list);
+        try {
+            ColumnMeta shardingKey = getShardingKey();
+            if (shardingKey == null) {
+                insertBatch(clickHouseDatasource, false, list, batchSize);
+                return;
+            }
+            List<List<T>> parts = clickHouseShards.partition(list, shardingKey::get, shardingKey.getShardingHash());
+            clickHouseShards.fanOut((shard, dataSource) -> {
+                if (!parts.get(shard).isEmpty()) {
+                    insertBatch(dataSource, true, parts.get(shard), batchSize);
                 }
-                for (int j = 0; j < fieldSize; j++) {
-                    // 获取当前需要插入的列名
-                    value = map.get(fieldsStr[j]);
-                    // 将value set到对应的列位
-                    if (value instanceof Integer) {
-                        preparedStatement.setInt(j + 1, (Integer) value);
-                    } else if (value instanceof Long) {
-                        preparedStatement.setLong(j + 1, (Long) value);
-                    } else if (value instanceof String) {
-                        preparedStatement.setString(j + 1, value.toString());
-                    } else if (value instanceof Double) {
-                        preparedStatement.setDouble(j + 1, (Double) value);
-                    } else if (value instanceof BigDecimal) {
-                        preparedStatement.setBigDecimal(j + 1, (BigDecimal) value);
-                    } else if (value instanceof Float) {
-                        preparedStatement.setFloat(j + 1, (Float) value);
-                    } else {
-                        preparedStatement.setObject(j + 1, value);
+                return null;
+            });
+        } finally {
+            invalidateResultCache();
+        }
+    }
+
+    /**
+     * 版本表插入时补齐版本列和符号列：版本为null的行取新版本，符号为null的行取1
+     *
+     * @param list
+     */
+    private void fillVersions(List<T> list) {
+        EntityMeta<T> meta = EntityMeta.of(getTClass());
+        ColumnMeta version = meta.getVersionColumn();
+        ColumnMeta sign = meta.getSignColumn();
+        if (version == null && sign == null) {
+            return;
+        }
+        for (T row : list) {
+            if (version != null && version.get(row) == null) {
+                version.set(row, meta.nextVersion());
+            }
+            if (sign != null && sign.get(row) == null) {
+                sign.set(row, EntityMeta.flag(sign, 1));
+            }
+        }
+    }
+
+    /**
+     * 按分片键写入时的分片键属性：配置了分片且实体声明了 @ClickHouseShardingKey，否则返回null
+     *
+     * @return
+     */
+    private ColumnMeta getShardingKey() {
+        if (clickHouseShards == null || clickHouseShards.size() == 0) {
+            return null;
+        }
+        return EntityMeta.of(getTClass()).getShardingKey();
+    }
+
+    /**
+     * 在指定数据源上RowBinary批量插入
+     *
+     * @param dataSource
+     * @param local 是否写分片本地表
+     * @param list
+     * @param batchSize 每批行数，小于等于0时一次发送
+     * @throws SQLException
+     */
+    private void insertBatch(DataSource dataSource, boolean local, List<T> list, int batchSize) throws SQLException {
+        if (batchSize <= 0) {
+            batchSize = list.size();
+        }
+        int rowsPerBatch = batchSize;
+        ClickHouseDaoMetrics.Sample sample = getMetrics().start("insert");
+        try {
+            withConnection(dataSource, conn -> {
+                sample.mark(ClickHouseDaoMetrics.Phase.CONNECTION);
+                EntityRowBinaryWriter<T> writer = getRowBinaryWriter(conn, local);
+                try (ClickHouseStatement statement = conn.unwrap(ClickHouseConnection.class).createStatement()) {
+                    sample.mark(ClickHouseDaoMetrics.Phase.PREPARE);
+                    for (int from = 0; from < list.size(); from += rowsPerBatch) {
+                        List<T> batch = list.subList(from, Math.min(from + rowsPerBatch, list.size()));
+                        statement.sendRowBinaryStream(writer.getInsertSql(), queryParams(), stream -> {
+                            for (T entity : batch) {
+                                sample.addBytesWritten(writer.write(stream, entity));
+                            }
+                        });
+                        sample.addRows(batch.size());
                     }
+                    sample.mark(ClickHouseDaoMetrics.Phase.EXECUTE);
                 }
-                preparedStatement.addBatch();
-                // 每2000插入一次
-                if (batch % 2000 == 0) {
-                    preparedStatement.executeBatch();
+                return null;
+            });
+            sample.success();
+        } catch (SQLException | RuntimeException e) {
+            sample.error(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 获取实体的RowBinary编码器，首次调用时通过 DESCRIBE TABLE 获取列类型
+     *
+     * @param conn
+     * @param local 是否写分片本地表（@ClickHouseTable localName）
+     * @return
+     * @throws SQLException
+     */
+    private EntityRowBinaryWriter<T> getRowBinaryWriter(Connection conn, boolean local) throws SQLException {
+        EntityRowBinaryWriter<T> writer = local ? localRowBinaryWriter : rowBinaryWriter;
+        if (writer == null) {
+            String tableName = local ? EntityMeta.of(getTClass()).getLocalTableName() : getTableName();
+            writer = new EntityRowBinaryWriter<>(EntityMeta.of(getTClass()), tableName, describeTable(conn, tableName));
+            if (local) {
+                localRowBinaryWriter = writer;
+            } else {
+                rowBinaryWriter = writer;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * DESCRIBE TABLE 获取可写入的列（不含 MATERIALIZED / ALIAS 列）及类型
+     *
+     * @param conn
+     * @param tableName
+     * @return 列名 -> clickHouse类型
+     * @throws SQLException
+     */
+    private Map<String, String> describeTable(Connection conn, String tableName) throws SQLException {
+        Map<String, String> columnTypes = new HashMap<>();
+        try (Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("DESCRIBE TABLE " + tableName)) {
+            while (resultSet.next()) {
+                String defaultType = resultSet.getString("default_type");
+                if ("MATERIALIZED".equals(defaultType) || "ALIAS".equals(defaultType)) {
+                    continue;
                 }
+                columnTypes.put(resultSet.getString("name"), resultSet.getString("type"));
+            }
+        }
+        return columnTypes;
+    }
+
+    /**
+     * map批量插入时确定参数绑定器用的列类型，每个表只 DESCRIBE 一次；
+     * 获取失败时返回空map，各列只按取值类型绑定
+     *
+     * @param conn
+     * @param tableName
+     * @return
+     */
+    private Map<String, String> getColumnTypes(Connection conn, String tableName) {
+        Map<String, String> columnTypes = columnTypesByTable.get(tableName);
+        if (columnTypes == null) {
+            try {
+                columnTypes = describeTable(conn, tableName);
+            } catch (SQLException | RuntimeException e) {
+                log.warn("获取{}表结构失败，参数按取值类型绑定", tableName, e);
+                return Collections.emptyMap();// 不缓存，下次再取
             }
-            if(batch % 2000 != 0){
-                // 插入剩余数量不足2000的
-                preparedStatement.executeBatch();
+            columnTypesByTable.put(tableName, columnTypes);
+        }
+        return columnTypes;
+    }
+
+    /**
+     * 获取DAO配置，未注入时使用默认值
+     *
+     * @return
+     */
+    private ClickHouseDaoProperties getDaoProperties() {
+        return daoProperties == null ? DEFAULT_PROPERTIES : daoProperties;
+    }
+
+    /**
+     * 批量插入List对象集合map数据；配置了分片且实体声明了 @ClickHouseShardingKey 时
+     * 按map中分片键列的值拆分，并行写入各分片的本地表
+     *
+     * @param list
+     */
+    public void batchInsertExt(List<Map<String, Object>> list) {
+        String tableName = getTableName();
+        if (list == null || list.size() <= 0 || StringUtil.isEmpty(tableName))
+            return;
+        try {
+            Long startTime = System.currentTimeMillis();
+            ColumnMeta shardingKey = getShardingKey();
+            if (shardingKey == null) {
+                insertMaps(clickHouseDatasource, tableName, list);
+            } else {
+                String localTableName = EntityMeta.of(getTClass()).getLocalTableName();
+                List<List<Map<String, Object>>> parts = clickHouseShards.partition(list,
+                        map -> map.get(shardingKey.getColumnName()), shardingKey.getShardingHash());
+                clickHouseShards.fanOut((shard, dataSource) -> {
+                    if (!parts.get(shard).isEmpty()) {
+                        insertMaps(dataSource, localTableName, parts.get(shard));
+                    }
+                    return null;
+                });
             }
-            indexMap = null;
             Long endTime = System.currentTimeMillis();
-            log.info("集合size：{}，批量插入{}成功,耗时{}ms......", list.size(), tableName, (endTime - startTime));
+            log.debug("集合size：{}，批量插入{}成功,耗时{}ms......", list.size(), tableName, (endTime - startTime));
         } catch (Exception e1) {
             log.error("集合size：{}，批量插入{}异常：{}", list.size(), tableName, e1);
         } finally {
-            //close(preparedStatement, conn, resultSet);
+            invalidateResultCache();
+        }
+    }
+
+    /**
+     * 异步批量插入map数据，在异步线程池中执行 {@link #batchInsertExt(List)}；
+     * 取消时在服务端 KILL QUERY，已发送的批次不会回滚
+     *
+     * @param list
+     * @return 插入完成（含失败，失败只记录日志）时完成，排队已满时以 RejectedExecutionException 失败
+     */
+    public ClickHouseFuture<Void> batchInsertExtAsync(List<Map<String, Object>> list) {
+        return getAsyncExecutor().submit(() -> {
+            batchInsertExt(list);
+            return null;
+        });
+    }
+
+    /**
+     * 在指定数据源上以预编译语句批量插入map数据，列取第一个map的key；
+     * 每列的参数绑定器按表结构和该列第一个非null取值确定一次，整批复用
+     *
+     * @param dataSource
+     * @param tableName
+     * @param list
+     * @throws SQLException
+     */
+    private void insertMaps(DataSource dataSource, String tableName, List<Map<String, Object>> list) throws SQLException {
+        int batchSize = Math.max(1, getDaoProperties().getBatchSize());
+        ClickHouseDaoMetrics.Sample sample = getMetrics().start("insertExt");
+        try {
+            withConnection(dataSource, conn -> {
+                sample.mark(ClickHouseDaoMetrics.Phase.CONNECTION);
+                PreparedStatement preparedStatement = null;
+                String[] fieldsStr = null;
+                ParameterBinder[] binders = null;
+                Map<String, String> columnTypes = null;
+                int fieldSize = 0;
+                try {
+                    int batch = 0;
+                    Object value;
+                    for (Map<String, Object> map : list) {
+                        batch++;
+                        if (null == fieldsStr || fieldSize == 0) {
+                            StringBuffer sql = new StringBuffer(Constant.ADD + tableName + " (");
+                            fieldsStr = map.keySet().toArray(new String[map.keySet().size()]);
+                            fieldSize = fieldsStr.length;
+                            for (int i = 0; i < fieldSize; i++) {
+                                sql.append(fieldsStr[i] + ",");
+                            }
+                            sql.deleteCharAt(sql.length() - 1);
+                            sql.append(") values(");
+                            for (int i = 0; i < fieldSize; i++) {
+                                sql.append("?,");
+                            }
+                            sql.deleteCharAt(sql.length() - 1);
+                            sql.append(")");
+                            preparedStatement = conn.prepareStatement(sql.toString());
+                            log.debug("批量插入{}打印执行sql: {}", tableName, sql);
+                            binders = new ParameterBinder[fieldSize];
+                            columnTypes = getColumnTypes(conn, tableName);
+                        }
+                        for (int j = 0; j < fieldSize; j++) {
+                            // 获取当前需要插入的列名
+                            value = map.get(fieldsStr[j]);
+                            if (binders[j] == null) {
+                                if (value == null) {
+                                    ParameterBinder.bindValue(preparedStatement, j + 1, null);
+                                    continue;
+                                }
+                                binders[j] = ParameterBinder.forColumn(columnTypes.get(fieldsStr[j]), value);
+                            }
+                            // 将value set到对应的列位
+                            binders[j].bind(preparedStatement, j + 1, value);
+                        }
+                        preparedStatement.addBatch();
+                        // 每batchSize插入一次
+                        if (batch % batchSize == 0) {
+                            executeBatch(preparedStatement);
+                        }
+                    }
+                    if(batch % batchSize != 0){
+                        // 插入剩余数量不足batchSize的
+                        executeBatch(preparedStatement);
+                    }
+                } finally {
+                    closeQuietly(preparedStatement);
+                }
+                return null;
+            });
+            sample.addRows(list.size());
+            sample.mark(ClickHouseDaoMetrics.Phase.EXECUTE);
+            sample.success();
+        } catch (SQLException | RuntimeException e) {
+            sample.error(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 关闭语句，忽略关闭时的异常
+     *
+     * @param statement
+     */
+    private void closeQuietly(Statement statement) {
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            log.error("发生了异常",e);
         }
     }
 
@@ -857,19 +1977,36 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
      * @param sql
      */
     public Integer executeInsertUpdateDelete(String sql) {
-        log.info("clickhouse 输出执行sql：" + sql);
+        log.debug("clickhouse 输出执行sql：{}", sql);
+        ClickHouseDaoMetrics.Sample sample = getMetrics().start("executeUpdate");
         try {
-            conn = getConnection();
-            Statement statement = conn.createStatement();
-            int count = statement.executeUpdate(sql);
-//            conn.commit();// 执行
+            int count = withConnection(clickHouseDatasource, conn -> {
+                sample.mark(ClickHouseDaoMetrics.Phase.CONNECTION);
+                try (Statement statement = conn.createStatement()) {
+                    int updated;
+                    if (statement.isWrapperFor(ClickHouseStatement.class)) {
+                        // 与 executeUpdate 相同，但带上 query_id 和查询设置
+                        ResultSet resultSet = statement.unwrap(ClickHouseStatement.class).executeQuery(sql, queryParams());
+                        if (resultSet != null) {
+                            resultSet.close();
+                        }
+                        updated = 1;
+                    } else {
+                        updated = statement.executeUpdate(sql);
+                    }
+                    sample.mark(ClickHouseDaoMetrics.Phase.EXECUTE);
+                    return updated;
+                }
+            });
+            sample.success();
             if (count > 0) {
-                log.info("执行成功！");
+                log.debug("执行成功！");
             } else {
-                log.info("执行失败！");
+                log.debug("执行失败！");
             }
             return count;
         } catch (Exception e) {
+            sample.error(e);
 //            try {
 //                conn.rollback();//异常回滚
 //            } catch (Exception e1) {
@@ -877,17 +2014,20 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
 //            }
             log.error("执行 sql 发生了异常",e);
             return -1;
-        } finally {//关闭连接
-//            close(statement, conn, null);
+        } finally {
+            invalidateResultCache();// updateBySql/deleteBySql 等可能修改本表
         }
     }
-    public List execute( String sql) {
-        log.info("clickHouse 查询集合数据执行sql：" + sql);
+    /**
+     * 执行任意查询，每行返回一个按列顺序的 Object[]
+     *
+     * @param sql
+     * @return 异常返回null
+     */
+    public List<Object[]> execute(String sql) {
+        log.debug("clickHouse 查询集合数据执行sql：{}", sql);
         try {
-            conn = getConnection();
-            Statement statement = conn.prepareStatement(sql);
-            ResultSet resultSet = statement.executeQuery(sql);
-            List backList = mapResultSetToObject(resultSet);
+            List<Object[]> backList = executeQuery("execute", sql, null, this::mapResultSetToObject);
             if (backList != null) {
                 log.debug("查询出数据size：{}", backList.size());
             } else {
@@ -896,14 +2036,7 @@ public class ClickHouseDaoBase<T extends _BaseEntity> {
             return backList;
         } catch (SQLException e) {
             log.error("发生了异常", e);
-        } finally {//关闭连接
-            //close(preparedStatement, conn, resultSet);
         }
         return null;
     }
-    @Override
-    protected void finalize() throws Throwable {
-        close(null, conn, null);
-        super.finalize();
-    }
 }
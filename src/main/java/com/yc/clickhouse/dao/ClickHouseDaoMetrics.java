@@ -0,0 +1,259 @@
+package com.yc.clickhouse.dao;
+
+import com.yc.clickhouse.mapping.RowFetcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAO操作的Micrometer指标，全部带 table（@ClickHouseTable表名）和 operation 标签：
+ * <ul>
+ * <li>clickhouse.dao.operation：整次调用耗时，outcome=success/error</li>
+ * <li>clickhouse.dao.phase：各阶段耗时，phase=connection（等待连接池）/prepare/execute/fetch/mapping</li>
+ * <li>clickhouse.dao.rows：每次调用读取或写入的行数</li>
+ * <li>clickhouse.dao.bytes：读取/写入的字节数（未压缩），direction=read/written；读取只在 RowBinary 查询上统计，
+ * 写入在 RowBinary 批量插入上统计</li>
+ * <li>clickhouse.dao.errors：异常次数，exception=异常类名</li>
+ * <li>clickhouse.dao.mutations：mutation 合并器的修改/删除次数，result=requested/issued/saved</li>
+ * </ul>
+ * 取数（ResultSet.next()）和映射在同一个循环里交替进行，逐行计时开销太大，
+ * 每 8 次 next() 计时一次并按比例估算取数耗时，读取阶段其余时间计为映射。
+ */
+public class ClickHouseDaoMetrics {
+
+    private static final int FETCH_SAMPLE_MASK = 7;
+
+    /**
+     * 调用阶段
+     */
+    public enum Phase {
+        CONNECTION, PREPARE, EXECUTE, FETCH, MAPPING;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry registry;
+    private final String table;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    public ClickHouseDaoMetrics(MeterRegistry registry, String table) {
+        this.registry = registry;
+        this.table = table;
+    }
+
+    /**
+     * 开始一次调用的计时，Sample 只在当前线程使用
+     *
+     * @param operation
+     * @return
+     */
+    public Sample start(String operation) {
+        return new Sample(meters.computeIfAbsent(operation, Meters::new));
+    }
+
+    /**
+     * 导出预编译语句缓存的命中/未命中/淘汰次数
+     *
+     * @param cache
+     */
+    public void bindStatementCache(StatementCache cache) {
+        FunctionCounter.builder("clickhouse.dao.statement.cache", cache, StatementCache::getHitCount)
+                .tags("table", table, "result", "hit").register(registry);
+        FunctionCounter.builder("clickhouse.dao.statement.cache", cache, StatementCache::getMissCount)
+                .tags("table", table, "result", "miss").register(registry);
+        FunctionCounter.builder("clickhouse.dao.statement.cache", cache, StatementCache::getEvictionCount)
+                .tags("table", table, "result", "eviction").register(registry);
+    }
+
+    /**
+     * 导出查询结果缓存的命中/未命中/淘汰次数和条数
+     *
+     * @param cache
+     */
+    public void bindResultCache(QueryResultCache cache) {
+        FunctionCounter.builder("clickhouse.dao.result.cache", cache, c -> c.getStats().hitCount())
+                .tags("table", table, "result", "hit").register(registry);
+        FunctionCounter.builder("clickhouse.dao.result.cache", cache, c -> c.getStats().missCount())
+                .tags("table", table, "result", "miss").register(registry);
+        FunctionCounter.builder("clickhouse.dao.result.cache", cache, c -> c.getStats().evictionCount())
+                .tags("table", table, "result", "eviction").register(registry);
+        Gauge.builder("clickhouse.dao.result.cache.size", cache, QueryResultCache::size)
+                .tags("table", table).register(registry);
+    }
+
+    /**
+     * 导出 mutation 合并器收到的修改/删除次数、实际执行的 mutation 个数和合并节省的个数
+     *
+     * @param batcher
+     */
+    public void bindMutationBatcher(MutationBatcher<?> batcher) {
+        FunctionCounter.builder("clickhouse.dao.mutations", batcher, MutationBatcher::getRequestedCount)
+                .tags("table", table, "result", "requested").register(registry);
+        FunctionCounter.builder("clickhouse.dao.mutations", batcher, MutationBatcher::getMutationCount)
+                .tags("table", table, "result", "issued").register(registry);
+        FunctionCounter.builder("clickhouse.dao.mutations", batcher, MutationBatcher::getMutationsSaved)
+                .tags("table", table, "result", "saved").register(registry);
+    }
+
+    /**
+     * 一个操作的全部指标，首次使用时注册，之后直接复用避免每次查找注册表
+     */
+    private final class Meters {
+        private final String operation;
+        private final Timer success;
+        private final Timer error;
+        private final Timer[] phases = new Timer[Phase.values().length];
+        private final DistributionSummary rows;
+        private final Counter bytesRead;
+        private final Counter bytesWritten;
+
+        private Meters(String operation) {
+            this.operation = operation;
+            this.success = timer("clickhouse.dao.operation", "outcome", "success");
+            this.error = timer("clickhouse.dao.operation", "outcome", "error");
+            for (Phase phase : Phase.values()) {
+                phases[phase.ordinal()] = timer("clickhouse.dao.phase", "phase", phase.tag);
+            }
+            this.rows = DistributionSummary.builder("clickhouse.dao.rows")
+                    .tags("table", table, "operation", operation).register(registry);
+            this.bytesRead = Counter.builder("clickhouse.dao.bytes")
+                    .tags("table", table, "operation", operation, "direction", "read").register(registry);
+            this.bytesWritten = Counter.builder("clickhouse.dao.bytes")
+                    .tags("table", table, "operation", operation, "direction", "written").register(registry);
+        }
+
+        private Timer timer(String name, String tagKey, String tagValue) {
+            return Timer.builder(name).tags("table", table, "operation", operation, tagKey, tagValue).register(registry);
+        }
+    }
+
+    /**
+     * 一次调用的计时：mark(phase) 记录上一个标记点到现在的耗时，next(rs) 统计读取的行数
+     */
+    public final class Sample implements RowFetcher {
+        private final Meters meters;
+        private final long startNanos;
+        private long markNanos;
+        private long rows;
+        private long fetchCalls;
+        private long sampledCalls;
+        private long sampledNanos;
+        private long bytesRead;
+        private long bytesWritten;
+        private boolean finished;
+
+        private Sample(Meters meters) {
+            this.meters = meters;
+            this.startNanos = System.nanoTime();
+            this.markNanos = startNanos;
+        }
+
+        /**
+         * 记录一个阶段结束
+         *
+         * @param phase
+         */
+        public void mark(Phase phase) {
+            long now = System.nanoTime();
+            meters.phases[phase.ordinal()].record(now - markNanos, TimeUnit.NANOSECONDS);
+            markNanos = now;
+        }
+
+        @Override
+        public boolean next(ResultSet rs) throws SQLException {
+            boolean hasNext;
+            if ((fetchCalls++ & FETCH_SAMPLE_MASK) == 0) {
+                long start = System.nanoTime();
+                hasNext = rs.next();
+                sampledNanos += System.nanoTime() - start;
+                sampledCalls++;
+            } else {
+                hasNext = rs.next();
+            }
+            if (hasNext) {
+                rows++;
+            }
+            return hasNext;
+        }
+
+        /**
+         * 结果集读取完成：上一个标记点之后的时间按采样拆成 fetch 和 mapping
+         */
+        public void endFetch() {
+            long now = System.nanoTime();
+            long fetchNanos = estimateFetchNanos(now - markNanos);
+            meters.phases[Phase.FETCH.ordinal()].record(fetchNanos, TimeUnit.NANOSECONDS);
+            meters.phases[Phase.MAPPING.ordinal()].record(now - markNanos - fetchNanos, TimeUnit.NANOSECONDS);
+            markNanos = now;
+        }
+
+        /**
+         * 流式读取完成：期间包含调用方处理每行的时间，只记录估算的 fetch
+         */
+        public void endStream() {
+            long now = System.nanoTime();
+            meters.phases[Phase.FETCH.ordinal()].record(estimateFetchNanos(now - markNanos), TimeUnit.NANOSECONDS);
+            markNanos = now;
+        }
+
+        private long estimateFetchNanos(long elapsedNanos) {
+            if (sampledCalls == 0) {
+                return 0;
+            }
+            return Math.min(elapsedNanos, sampledNanos * fetchCalls / sampledCalls);
+        }
+
+        /**
+         * 写入的行数（读取的行数由 next 统计）
+         */
+        public void addRows(long count) {
+            rows += count;
+        }
+
+        public void addBytesRead(long bytes) {
+            bytesRead += bytes;
+        }
+
+        public void addBytesWritten(long bytes) {
+            bytesWritten += bytes;
+        }
+
+        public void success() {
+            finish(meters.success);
+        }
+
+        public void error(Throwable e) {
+            if (finished) {
+                return;
+            }
+            registry.counter("clickhouse.dao.errors", "table", table, "operation", meters.operation,
+                    "exception", e.getClass().getSimpleName()).increment();
+            finish(meters.error);
+        }
+
+        private void finish(Timer timer) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            meters.rows.record(rows);
+            if (bytesRead > 0) {
+                meters.bytesRead.increment(bytesRead);
+            }
+            if (bytesWritten > 0) {
+                meters.bytesWritten.increment(bytesWritten);
+            }
+        }
+    }
+}
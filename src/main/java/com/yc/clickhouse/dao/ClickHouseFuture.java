@@ -0,0 +1,49 @@
+package com.yc.clickhouse.dao;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步DAO调用的结果。cancel 时排队中的调用直接移出队列，执行中的调用在服务端 KILL QUERY；
+ * thenApply 等派生出的 CompletableFuture 取消时不会传递到这里，需要取消请保留本对象
+ */
+public class ClickHouseFuture<R> extends CompletableFuture<R> {
+
+    private final QueryContext context;
+    private volatile Runnable dequeue;// 从执行队列中移除本调用
+
+    ClickHouseFuture(QueryContext context) {
+        this.context = context;
+    }
+
+    /**
+     * 发给服务端的 query_id，可用于在 system.processes / system.query_log 中查找
+     *
+     * @return
+     */
+    public String getQueryId() {
+        return context.getQueryId();
+    }
+
+    void setDequeue(Runnable dequeue) {
+        this.dequeue = dequeue;
+    }
+
+    /**
+     * 取消调用，mayInterruptIfRunning 不起作用：执行中的查询总是通过 KILL QUERY 终止
+     *
+     * @param mayInterruptIfRunning
+     * @return
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            Runnable remove = dequeue;
+            if (remove != null) {
+                remove.run();
+            }
+            context.cancel();
+        }
+        return cancelled;
+    }
+}
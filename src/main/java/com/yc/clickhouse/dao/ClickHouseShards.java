@@ -0,0 +1,221 @@
+package com.yc.clickhouse.dao;
+
+import com.yc.clickhouse.config.annotation.ClickHouseShardingKey;
+import com.yc.clickhouse.utils.ClickHouseHashUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 集群各分片的数据源，以及分片并行查询/写入用的有界线程池。
+ * <p>
+ * 查询直接发给每个分片的HTTP端口、查本地表，客户端合并结果，不再由一个节点通过分布式表汇总，
+ * 大查询可以用上所有分片的HTTP前端。线程数和排队数都有上限，排满时立即失败而不是无限堆积。
+ * <p>
+ * 写入按分片键计算分片，规则与 Distributed 引擎相同：分片i占 weight_i 个槽位，
+ * sharding_key 的值（有符号数按同宽度无符号数处理）对总权重取模得到槽位
+ */
+@Slf4j
+public class ClickHouseShards implements Closeable {
+
+    private final List<DataSource> dataSources;
+    private final int[] slots;// 槽位 -> 分片序号
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param dataSources 每个分片一个数据源，按集群配置中分片的顺序
+     * @param parallelism 最多同时执行的分片查询数，小于等于0时取分片数
+     * @param queueCapacity 排队等待的分片查询数上限
+     */
+    public ClickHouseShards(List<DataSource> dataSources, int parallelism, int queueCapacity) {
+        this(dataSources, null, parallelism, queueCapacity);
+    }
+
+    /**
+     * @param dataSources 每个分片一个数据源，按集群配置中分片的顺序
+     * @param weights 各分片权重（集群配置中的 weight），为空时都为1
+     * @param parallelism 最多同时执行的分片查询数，小于等于0时取分片数
+     * @param queueCapacity 排队等待的分片查询数上限
+     */
+    public ClickHouseShards(List<DataSource> dataSources, List<Integer> weights, int parallelism, int queueCapacity) {
+        this.dataSources = Collections.unmodifiableList(new ArrayList<>(dataSources));
+        if (weights != null && !weights.isEmpty() && weights.size() != dataSources.size()) {
+            throw new IllegalArgumentException("weights size " + weights.size() + " != shards " + dataSources.size());
+        }
+        List<Integer> slotList = new ArrayList<>();
+        for (int i = 0; i < dataSources.size(); i++) {
+            int weight = weights == null || weights.isEmpty() ? 1 : weights.get(i);
+            for (int j = 0; j < weight; j++) {
+                slotList.add(i);
+            }
+        }
+        this.slots = slotList.stream().mapToInt(Integer::intValue).toArray();
+        int threads = parallelism > 0 ? parallelism : Math.max(1, dataSources.size());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread thread = new Thread(r, "clickhouse-shard-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 在一个分片上的操作，入参为分片序号和该分片的数据源
+     */
+    @FunctionalInterface
+    public interface ShardTask<R> {
+        R execute(int shard, DataSource dataSource) throws SQLException;
+    }
+
+    public List<DataSource> getDataSources() {
+        return dataSources;
+    }
+
+    public int size() {
+        return dataSources.size();
+    }
+
+    /**
+     * 计算分片键值所在的分片
+     *
+     * @param key 分片键的值，整数或字符串（CITY_HASH64）
+     * @param hash sharding_key 表达式的函数
+     * @return 分片序号
+     */
+    public int shardOf(Object key, ClickHouseShardingKey.Hash hash) {
+        long value;
+        if (key instanceof String && hash == ClickHouseShardingKey.Hash.CITY_HASH64) {
+            value = ClickHouseHashUtil.cityHash64((String) key);
+        } else if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            long number = ((Number) key).longValue();
+            switch (hash) {
+                case INT_HASH64:
+                    value = ClickHouseHashUtil.intHash64(number);// 参数转换为UInt64，有符号数符号扩展
+                    break;
+                case CITY_HASH64:
+                    value = ClickHouseHashUtil.intHash64(unsigned(key));// 整数的cityHash64即按位零扩展后的intHash64
+                    break;
+                default:
+                    value = unsigned(key);
+            }
+        } else {
+            throw new IllegalArgumentException("unsupported sharding key " + key + " for " + hash);
+        }
+        return slots[(int) Long.remainderUnsigned(value, slots.length)];
+    }
+
+    private static long unsigned(Object key) {
+        if (key instanceof Integer) {
+            return Integer.toUnsignedLong((Integer) key);
+        } else if (key instanceof Short) {
+            return Short.toUnsignedLong((Short) key);
+        } else if (key instanceof Byte) {
+            return Byte.toUnsignedLong((Byte) key);
+        }
+        return (Long) key;
+    }
+
+    /**
+     * 按分片键把行拆分到各分片，保持每个分片内的原有顺序
+     *
+     * @param rows
+     * @param keyGetter 取行的分片键
+     * @param hash sharding_key 表达式的函数
+     * @return 按分片序号的行集合，没有行的分片为空集合
+     */
+    public <E> List<List<E>> partition(List<E> rows, Function<? super E, Object> keyGetter, ClickHouseShardingKey.Hash hash) {
+        List<List<E>> parts = new ArrayList<>(dataSources.size());
+        for (int i = 0; i < dataSources.size(); i++) {
+            parts.add(new ArrayList<>(rows.size() / dataSources.size() + 16));
+        }
+        for (E row : rows) {
+            parts.get(shardOf(keyGetter.apply(row), hash)).add(row);
+        }
+        return parts;
+    }
+
+    /**
+     * 在所有分片上并行执行，按分片顺序返回各分片结果；任一分片失败时取消其余分片并抛出异常，
+     * 不返回缺少分片的部分结果
+     *
+     * @param task
+     * @return
+     * @throws SQLException 分片执行异常或线程池排满
+     */
+    public <R> List<R> fanOut(ShardTask<R> task) throws SQLException {
+        List<Future<R>> futures = new ArrayList<>(dataSources.size());
+        QueryContext context = QueryContext.current();
+        try {
+            for (int i = 0; i < dataSources.size(); i++) {
+                int shard = i;
+                DataSource dataSource = dataSources.get(i);
+                if (context == null) {
+                    futures.add(executor.submit(() -> task.execute(shard, dataSource)));
+                } else {
+                    // 各分片使用派生的上下文：同样的查询设置，调用取消或超时时一起 KILL
+                    QueryContext fork = context.fork();
+                    futures.add(executor.submit(() -> fork.execute(() -> task.execute(shard, dataSource))));
+                }
+            }
+            List<R> results = new ArrayList<>(futures.size());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (RejectedExecutionException e) {
+            cancel(futures);
+            throw new SQLException("分片执行排队已满", e);
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new SQLException("分片执行被中断", e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("分片执行异常", cause);
+        }
+    }
+
+    private void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 停止线程池并关闭可关闭的分片数据源（如连接池）
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof Closeable) {
+                try {
+                    ((Closeable) dataSource).close();
+                } catch (IOException e) {
+                    log.error("发生了异常", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.yc.clickhouse.dao;
+
+import com.yc.clickhouse.entity._BaseEntity;
+import com.yc.clickhouse.mapping.ColumnMeta;
+import com.yc.clickhouse.mapping.EntityMeta;
+import com.yc.clickhouse.mapping.EntitySql;
+import com.yc.clickhouse.mapping.WriteMode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按主键修改/删除的合并器：窗口期内收集的主键删除合并成一个 alter table t delete where pk in (……)，
+ * 修改按 SET 取值分组，取值相同的合并成一个 alter table t update …… where pk in (……)。
+ * <p>
+ * clickHouse 每个 ALTER mutation 都会重写涉及的整个数据part，逐个 deleteByPrimaryKey 循环上千次就是上千个 mutation，
+ * 合并后一个窗口只产生几个。
+ * <p>
+ * 窗口内同一主键多次修改时以最后一次为准；删除之前的修改不再执行，删除之后的修改也不再执行（行已删除）。
+ * 各次 flush 串行执行，mutation 在服务端按提交顺序生效。插入不经过合并器，窗口内先删除再重新插入同一主键的场景
+ * （延后的删除会删掉新插入的行）不要使用。版本表（@ClickHouseTable 声明了 versionColumn / signColumn）的修改/删除本身是插入，不使用合并器。
+ * <pre>
+ * MutationBatcher&lt;TTest&gt; batcher = MutationBatcher.builder(tTestDao).maxDelay(1, TimeUnit.SECONDS).build();
+ * batcher.deleteByPrimaryKey(id);
+ * batcher.updateByPrimaryKey(entity);
+ * ...
+ * batcher.close();// 执行剩余的修改/删除
+ * </pre>
+ */
+@Slf4j
+public class MutationBatcher<T extends _BaseEntity> implements Closeable {
+
+    private final ClickHouseDaoBase<T> dao;
+    private final List<ColumnMeta> updateColumns;
+    private final ColumnMeta primaryKey;
+    private final int maxKeys;// 单个 mutation 的主键个数上限，待处理主键达到时立即执行
+    private final long maxDelayNanos;// 最早一个待处理操作等待超过该时间执行
+
+    private final Object pendingLock = new Object();
+    private Map<List<Object>, Set<Object>> pendingUpdates = new LinkedHashMap<>();// SET 取值 -> 主键
+    private Map<Object, List<Object>> updateValuesByKey = new HashMap<>();// 主键 -> 所在的 SET 取值分组
+    private Set<Object> pendingDeletes = new LinkedHashSet<>();
+    private long pendingRequests;// 待处理的操作次数（合并前）
+    private long oldestPendingNanos;// 0 表示没有待处理操作
+    private boolean flushScheduled;
+
+    private final ReentrantLock flushLock = new ReentrantLock();// mutation 按提交顺序串行执行
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    private final AtomicLong requested = new AtomicLong();// 收到的修改/删除次数
+    private final AtomicLong issued = new AtomicLong();// 实际执行的 mutation 个数
+    private final AtomicLong saved = new AtomicLong();// 已执行的操作中合并掉的 mutation 个数
+    private final AtomicLong failedKeys = new AtomicLong();
+
+    private MutationBatcher(Builder<T> builder) {
+        this.dao = builder.dao;
+        EntitySql<T> entitySql = dao.getEntitySql();
+        if (entitySql.getDeleteByPrimaryKeySql() == null) {
+            throw new IllegalArgumentException(" no Annotation 'ClickHousePrimaryKey' in clazz  ");
+        }
+        if (EntityMeta.of(dao.getTClass()).getWriteMode() != WriteMode.MUTATION) {
+            throw new IllegalArgumentException(dao.getTClass().getName() + " 是版本表，修改/删除直接插入新版本行，不需要合并 mutation");
+        }
+        this.updateColumns = entitySql.getUpdateColumns();
+        this.primaryKey = EntityMeta.of(dao.getTClass()).getPrimaryKey();
+        this.maxKeys = builder.maxKeys;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "clickhouse-mutation-batcher-" + dao.getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(10), maxDelayNanos / 4);
+        scheduler.scheduleWithFixedDelay(this::flushIfDue, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static <T extends _BaseEntity> Builder<T> builder(ClickHouseDaoBase<T> dao) {
+        return new Builder<>(dao);
+    }
+
+    /**
+     * 提交按主键删除，窗口结束时与其他主键合并执行
+     *
+     * @param primaryKeyValue
+     */
+    public void deleteByPrimaryKey(Object primaryKeyValue) {
+        checkKey(primaryKeyValue);
+        int pending;
+        synchronized (pendingLock) {
+            checkOpen();
+            removeUpdate(primaryKeyValue);
+            pendingDeletes.add(primaryKeyValue);
+            pending = markPending();
+        }
+        requested.incrementAndGet();
+        flushIfFull(pending);
+    }
+
+    /**
+     * 提交按主键修改（所有非主键属性），窗口结束时与 SET 取值相同的其他主键合并执行
+     *
+     * @param entity
+     */
+    public void updateByPrimaryKey(T entity) {
+        if (entity == null) {
+            throw new NullPointerException("entity");
+        }
+        Object key = primaryKey.get(entity);
+        checkKey(key);
+        Object[] values = new Object[updateColumns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = updateColumns.get(i).get(entity);
+        }
+        List<Object> setValues = Arrays.asList(values);
+        int pending;
+        synchronized (pendingLock) {
+            checkOpen();
+            if (!pendingDeletes.contains(key)) {// 已删除的行不用再修改
+                removeUpdate(key);
+                pendingUpdates.computeIfAbsent(setValues, v -> new LinkedHashSet<>()).add(key);
+                updateValuesByKey.put(key, setValues);
+            }
+            pending = markPending();
+        }
+        requested.incrementAndGet();
+        flushIfFull(pending);
+    }
+
+    private static void checkKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException("primary key");
+        }
+    }
+
+    /**
+     * 在 pendingLock 内检查：close() 在同一把锁内置 closed，之后不会再有操作加入待处理集合，最后一次 flush 不会漏掉
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("MutationBatcher is closed");
+        }
+    }
+
+    private void removeUpdate(Object key) {
+        List<Object> previous = updateValuesByKey.remove(key);
+        if (previous != null) {
+            Set<Object> keys = pendingUpdates.get(previous);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                pendingUpdates.remove(previous);
+            }
+        }
+    }
+
+    /**
+     * @return 待处理的主键个数
+     */
+    private int markPending() {
+        pendingRequests++;
+        if (oldestPendingNanos == 0) {
+            oldestPendingNanos = System.nanoTime();
+        }
+        return pendingDeletes.size() + updateValuesByKey.size();
+    }
+
+    private void flushIfFull(int pending) {
+        if (pending < maxKeys) {
+            return;
+        }
+        synchronized (pendingLock) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        try {
+            scheduler.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            synchronized (pendingLock) {
+                flushScheduled = false;// 已关闭，剩余操作由 close() 执行
+            }
+        }
+    }
+
+    /**
+     * 后台线程：最早的待处理操作超过窗口时执行
+     */
+    private void flushIfDue() {
+        boolean due;
+        synchronized (pendingLock) {
+            due = oldestPendingNanos != 0 && System.nanoTime() - oldestPendingNanos >= maxDelayNanos;
+        }
+        if (due) {
+            flush();
+        }
+    }
+
+    /**
+     * 立即执行所有待处理的修改和删除：每组 SET 取值一个 update mutation，所有删除一个 delete mutation，
+     * 主键超过 maxKeys 时分成多个
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<List<Object>, Set<Object>> updates;
+            Set<Object> deletes;
+            long requests;
+            synchronized (pendingLock) {
+                updates = pendingUpdates;
+                deletes = pendingDeletes;
+                requests = pendingRequests;
+                pendingRequests = 0;
+                pendingUpdates = new LinkedHashMap<>();
+                updateValuesByKey = new HashMap<>();
+                pendingDeletes = new LinkedHashSet<>();
+                oldestPendingNanos = 0;
+                flushScheduled = false;
+            }
+            // 修改在前：窗口内删除之后提交的修改已经丢弃，删除之前的修改已被删除覆盖
+            int mutations = 0;
+            for (Map.Entry<List<Object>, Set<Object>> update : updates.entrySet()) {
+                mutations += execute(update.getKey().toArray(), update.getValue());
+            }
+            mutations += execute(null, deletes);
+            saved.addAndGet(requests - mutations);
+        } catch (RuntimeException e) {
+            log.error("mutation flush 发生了异常", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return 执行的 mutation 个数
+     */
+    private int execute(Object[] setValues, Set<Object> keys) {
+        int mutations = 0;
+        Iterator<Object> iterator = keys.iterator();
+        while (iterator.hasNext()) {
+            List<Object> chunk = new ArrayList<>(Math.min(keys.size(), maxKeys));
+            while (chunk.size() < maxKeys && iterator.hasNext()) {
+                chunk.add(iterator.next());
+            }
+            try {
+                dao.mutateByPrimaryKeys(setValues, chunk);
+            } catch (Exception e) {
+                failedKeys.addAndGet(chunk.size());
+                log.error("{}个主键的{}异常", chunk.size(), setValues == null ? "删除" : "修改", e);
+            } finally {
+                issued.incrementAndGet();
+                mutations++;
+            }
+        }
+        return mutations;
+    }
+
+    /**
+     * 停止接收新操作，执行剩余的修改和删除后关闭后台线程
+     */
+    @Override
+    public void close() {
+        synchronized (pendingLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public int getPendingKeys() {
+        synchronized (pendingLock) {
+            return pendingDeletes.size() + updateValuesByKey.size();
+        }
+    }
+
+    /**
+     * 收到的修改/删除次数
+     *
+     * @return
+     */
+    public long getRequestedCount() {
+        return requested.get();
+    }
+
+    /**
+     * 实际执行的 mutation 个数
+     *
+     * @return
+     */
+    public long getMutationCount() {
+        return issued.get();
+    }
+
+    /**
+     * 合并节省的 mutation 个数：已执行的操作逐个执行时的 mutation 数减去实际执行的
+     *
+     * @return
+     */
+    public long getMutationsSaved() {
+        return saved.get();
+    }
+
+    public long getFailedKeys() {
+        return failedKeys.get();
+    }
+
+    public static class Builder<T extends _BaseEntity> {
+        private final ClickHouseDaoBase<T> dao;
+        private int maxKeys = 10000;
+        private long maxDelayNanos = TimeUnit.SECONDS.toNanos(1);
+
+        private Builder(ClickHouseDaoBase<T> dao) {
+            this.dao = dao;
+        }
+
+        /**
+         * 单个 mutation 的主键个数上限，待处理主键达到时不等窗口结束立即执行
+         */
+        public Builder<T> maxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * 合并窗口：一个操作最多等待的时间
+         */
+        public Builder<T> maxDelay(long delay, TimeUnit unit) {
+            this.maxDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        public MutationBatcher<T> build() {
+            if (maxKeys <= 0 || maxDelayNanos <= 0) {
+                throw new IllegalArgumentException("maxKeys/maxDelay must be positive");
+            }
+            MutationBatcher<T> batcher = new MutationBatcher<>(this);
+            dao.getMetrics().bindMutationBatcher(batcher);
+            return batcher;
+        }
+    }
+}
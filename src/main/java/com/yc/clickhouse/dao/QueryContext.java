@@ -0,0 +1,277 @@
+package com.yc.clickhouse.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.clickhouse.ClickHouseConnection;
+import ru.yandex.clickhouse.settings.ClickHouseQueryParam;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 一次DAO调用的上下文：发给服务端的 query_id 和查询设置，以及执行期间租借的连接。
+ * <p>
+ * 通过 {@link #run(Supplier)} 绑定到当前线程，DAO执行语句时带上 query_id 和设置并登记连接；
+ * 没有绑定上下文的调用由DAO按默认设置为每次租借连接创建一个。
+ * {@link #cancel()} 在同一节点上另开语句执行 KILL QUERY，服务端停止查询后执行线程收到异常返回；
+ * 设置了 timeout 时到达截止时间自动 cancel
+ */
+@Slf4j
+public class QueryContext {
+
+    private static final ThreadLocal<QueryContext> CURRENT = new ThreadLocal<>();
+
+    private final String queryId;
+    private final QueryOptions options;
+    private final long deadlineNanos;// 0 表示没有截止时间
+    private final QueryContext parent;
+    private final List<QueryContext> forks = new CopyOnWriteArrayList<>();
+    private volatile Connection connection;// 执行中的连接，没有执行时为null
+    private volatile boolean cancelled;
+    private volatile boolean timedOut;
+
+    public QueryContext() {
+        this(null);
+    }
+
+    /**
+     * @param options 查询设置，为null时只带 query_id
+     */
+    public QueryContext(QueryOptions options) {
+        this(null, options, options != null && options.getTimeoutMillis() > 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getTimeoutMillis()) : 0);
+    }
+
+    private QueryContext(QueryContext parent, QueryOptions options, long deadlineNanos) {
+        // 每次调用都生成，不需要 UUID.randomUUID() 的 SecureRandom（多线程下竞争同一把锁）
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.queryId = new UUID(random.nextLong(), random.nextLong()).toString();
+        this.parent = parent;
+        this.options = options;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 当前线程绑定的上下文
+     *
+     * @return 没有时返回null
+     */
+    public static QueryContext current() {
+        return CURRENT.get();
+    }
+
+    public String getQueryId() {
+        return queryId;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 是否因超过截止时间被取消
+     *
+     * @return
+     */
+    public boolean isTimedOut() {
+        return timedOut || parent != null && parent.isTimedOut();
+    }
+
+    /**
+     * 派生一个在其他线程（如分片并行查询）中使用的上下文：设置和截止时间相同，query_id 不同，
+     * 本上下文取消时一起取消
+     *
+     * @return
+     */
+    public QueryContext fork() {
+        QueryContext fork = new QueryContext(this, options, deadlineNanos);
+        forks.add(fork);
+        if (cancelled) {
+            fork.cancelled = true;
+        }
+        return fork;
+    }
+
+    /**
+     * 在本上下文中执行一次DAO调用，结束后恢复线程原来的上下文
+     *
+     * @param call
+     * @return
+     */
+    public <R> R run(Supplier<R> call) {
+        try {
+            return execute(call::get);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);// Supplier不会抛出SQLException
+        }
+    }
+
+    /**
+     * 在本上下文中执行，见 {@link #run(Supplier)}
+     *
+     * @param call
+     * @return
+     * @throws SQLException
+     */
+    public <R> R execute(Call<R> call) throws SQLException {
+        QueryContext previous = CURRENT.get();
+        CURRENT.set(this);
+        ScheduledFuture<?> timer = previous == this ? null : scheduleDeadline();
+        try {
+            return call.call();
+        } finally {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Call<R> {
+        R call() throws SQLException;
+    }
+
+    private ScheduledFuture<?> scheduleDeadline() {
+        if (deadlineNanos == 0 || parent != null || cancelled) {
+            return null;// 派生的上下文随父上下文取消
+        }
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+            timeout();
+            return null;
+        }
+        return DeadlineTimer.SCHEDULER.schedule(this::timeout, remaining, TimeUnit.NANOSECONDS);
+    }
+
+    private void timeout() {
+        if (timedOut) {
+            return;// 流式查询在调用期间和迭代器存活期间各有一个定时器
+        }
+        timedOut = true;
+        log.warn("clickHouse查询超过截止时间{}ms，取消查询 {}", options.getTimeoutMillis(), queryId);
+        cancel();
+    }
+
+    /**
+     * 执行语句时附加的URL参数
+     *
+     * @return
+     */
+    Map<ClickHouseQueryParam, String> getQueryParams() {
+        Map<ClickHouseQueryParam, String> params = new EnumMap<>(ClickHouseQueryParam.class);
+        params.put(ClickHouseQueryParam.QUERY_ID, queryId);
+        if (options == null) {
+            return params;
+        }
+        if (options.getMaxExecutionTime() != null) {
+            params.put(ClickHouseQueryParam.MAX_EXECUTION_TIME, String.valueOf(options.getMaxExecutionTime()));
+        } else if (deadlineNanos != 0) {
+            // 服务端兜底：客户端没来得及 KILL（如网络中断）时服务端按剩余时间自行中止
+            long remaining = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(deadlineNanos - System.nanoTime() + 999_999_999L));
+            params.put(ClickHouseQueryParam.MAX_EXECUTION_TIME, String.valueOf(remaining));
+        }
+        if (options.getMaxMemoryUsage() != null) {
+            params.put(ClickHouseQueryParam.MAX_MEMORY_USAGE, String.valueOf(options.getMaxMemoryUsage()));
+        }
+        if (options.getMaxThreads() != null) {
+            params.put(ClickHouseQueryParam.MAX_THREADS, String.valueOf(options.getMaxThreads()));
+        }
+        return params;
+    }
+
+    /**
+     * 登记执行语句的连接；已取消时不再执行
+     *
+     * @param conn
+     * @throws SQLException 已取消
+     */
+    void attach(Connection conn) throws SQLException {
+        connection = conn;
+        if (cancelled) {
+            connection = null;
+            throw new SQLException("查询已取消：" + queryId);
+        }
+    }
+
+    void detach(Connection conn) {
+        if (connection == conn) {
+            connection = null;
+        }
+    }
+
+    /**
+     * 登记流式查询的连接，连接在DAO调用返回后仍由迭代器持有：截止时间按迭代器的存活期计算，
+     * 返回的操作在迭代器关闭时执行，取消定时器并注销连接
+     *
+     * @param conn
+     * @return
+     * @throws SQLException 已取消
+     */
+    Runnable attachStream(Connection conn) throws SQLException {
+        attach(conn);
+        ScheduledFuture<?> timer = scheduleDeadline();
+        return () -> {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            detach(conn);
+        };
+    }
+
+    /**
+     * 取消：之后的语句不再执行，正在执行的语句（包括派生上下文中的）在服务端 KILL QUERY。
+     * 语句还没有到达服务端时 KILL 不生效，该语句会执行完
+     *
+     * @return 是否发出了 KILL QUERY
+     */
+    public boolean cancel() {
+        cancelled = true;
+        boolean killed = false;
+        for (QueryContext fork : forks) {
+            killed |= fork.cancel();
+        }
+        Connection conn = connection;
+        if (conn == null) {
+            return killed;
+        }
+        String sql = "KILL QUERY WHERE query_id = '" + queryId.replace("'", "\\'") + "' ASYNC";
+        try (Statement statement = conn.unwrap(ClickHouseConnection.class).createStatement()) {
+            statement.execute(sql);
+            log.debug("已取消查询 {}", queryId);
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            log.error("发生了异常", e);
+        }
+        return killed;
+    }
+
+    /**
+     * 截止时间定时器，所有上下文共用一个线程
+     */
+    private static final class DeadlineTimer {
+        private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "clickhouse-query-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            SCHEDULER.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
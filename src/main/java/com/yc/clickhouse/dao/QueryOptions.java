@@ -0,0 +1,72 @@
+package com.yc.clickhouse.dao;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次DAO调用的查询设置：max_execution_time / max_memory_usage / max_threads 作为URL参数发给服务端，
+ * timeout 是客户端的截止时间，超过时在服务端 KILL QUERY。
+ * <pre>
+ * QueryOptions options = QueryOptions.create().timeout(10, TimeUnit.SECONDS).maxThreads(4);
+ * List&lt;TTest&gt; list = tTestDao.withOptions(options, () -&gt; tTestDao.selectListObj(sql, params));
+ * </pre>
+ */
+@Getter
+public class QueryOptions {
+
+    private Integer maxExecutionTime;// 秒
+    private Long maxMemoryUsage;// 字节
+    private Integer maxThreads;
+    private long timeoutMillis;// 客户端截止时间，0 表示不限
+
+    public static QueryOptions create() {
+        return new QueryOptions();
+    }
+
+    /**
+     * 服务端执行时间上限，超过时服务端中止查询
+     *
+     * @param seconds
+     * @return
+     */
+    public QueryOptions maxExecutionTime(int seconds) {
+        this.maxExecutionTime = seconds;
+        return this;
+    }
+
+    /**
+     * 单个查询在一个节点上的内存上限
+     *
+     * @param bytes
+     * @return
+     */
+    public QueryOptions maxMemoryUsage(long bytes) {
+        this.maxMemoryUsage = bytes;
+        return this;
+    }
+
+    /**
+     * 单个查询的处理线程数
+     *
+     * @param threads
+     * @return
+     */
+    public QueryOptions maxThreads(int threads) {
+        this.maxThreads = threads;
+        return this;
+    }
+
+    /**
+     * 客户端截止时间：从调用开始计时，超过时在服务端 KILL QUERY，调用按异常处理；
+     * 没有设置 maxExecutionTime 时同时以剩余时间作为服务端的 max_execution_time
+     *
+     * @param timeout
+     * @param unit
+     * @return
+     */
+    public QueryOptions timeout(long timeout, TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+}
@@ -0,0 +1,145 @@
+package com.yc.clickhouse.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 查询结果缓存：按 SQL + 参数缓存，容量有界（Caffeine W-TinyLFU淘汰），每条查询单独指定TTL。
+ * <p>
+ * 每个DAO（即每张表）一个，DAO对该表写入后调用 invalidateAll()；
+ * 失效时递增版本号，写入前已开始、写入后才返回的查询结果带旧版本号，不会再被读到。
+ */
+public class QueryResultCache {
+
+    private final Cache<Key, Value> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    public QueryResultCache(long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<Key, Value>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Value value, long currentTime) {
+                        return value.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Value value, long currentTime, long currentDuration) {
+                        return value.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Value value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 先查缓存，没有时执行查询并缓存结果；查询异常或返回null时不缓存
+     *
+     * @param sql
+     * @param params sql语句参数，没有传 null
+     * @param ttlMillis 缓存时间，小于等于0时不走缓存
+     * @param query 实际查询
+     * @return
+     * @throws SQLException
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R get(String sql, Object[] params, long ttlMillis, Query<R> query) throws SQLException {
+        if (ttlMillis <= 0) {
+            return query.execute();
+        }
+        Key key = new Key(generation.get(), sql, params);
+        Value cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return (R) cached.result;
+        }
+        R result = query.execute();
+        if (result != null && key.generation == generation.get()) {
+            cache.put(key, new Value(result, TimeUnit.MILLISECONDS.toNanos(ttlMillis)));
+        }
+        return result;
+    }
+
+    /**
+     * 表数据变化后清空缓存
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidationCount.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 实际执行的查询
+     */
+    @FunctionalInterface
+    public interface Query<R> {
+        R execute() throws SQLException;
+    }
+
+    private static final class Key {
+        private final long generation;
+        private final String sql;
+        private final Object[] params;
+        private final int hash;
+
+        Key(long generation, String sql, Object[] params) {
+            this.generation = generation;
+            this.sql = sql;
+            this.params = params == null ? new Object[0] : params.clone();
+            this.hash = Objects.hash(generation, sql, Arrays.deepHashCode(this.params));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return generation == other.generation && sql.equals(other.sql) && Arrays.deepEquals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Value {
+        private final Object result;
+        private final long ttlNanos;
+
+        Value(Object result, long ttlNanos) {
+            this.result = result;
+            this.ttlNanos = ttlNanos;
+        }
+    }
+}
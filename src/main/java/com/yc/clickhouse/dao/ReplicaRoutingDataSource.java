@@ -0,0 +1,358 @@
+package com.yc.clickhouse.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.clickhouse.except.ClickHouseException;
+
+import javax.sql.DataSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * 多副本路由数据源：每个副本一个连接池，每次 getConnection() 从未隔离的副本中随机取两个，
+ * 选负载低的一个（power of two choices），负载 = 响应时间EWMA × (进行中的租借数 + 1) × 错误率惩罚。
+ * 响应时间是从取得连接到服务端开始返回结果（{@link #markResponded(Connection)}），不包括调用方读取和处理结果的时间，
+ * 没有报告时（如写入）取整个租借时长。
+ * <p>
+ * 副本不可达、过载等节点级错误（见 {@link #isRetryable(Throwable)}）使该副本被隔离，
+ * 隔离时间从 quarantineMillis 开始，连续隔离时翻倍，最长 maxQuarantineMillis；隔离结束后重新参与选择，
+ * 成功一次即恢复。所有副本都被隔离时仍选择最早结束隔离的副本，不直接失败。
+ * <p>
+ * 只读查询失败时由DAO换副本重试（最多 maxRetries 次），写入不重试，只记录副本健康状况。
+ * 连接上的操作结果通过 {@link #markFailed(Connection, Throwable)} 在归还连接前报告，
+ * 读取结果途中连接中断同样是副本级错误，DAO换副本重试并隔离该副本
+ */
+@Slf4j
+public class ReplicaRoutingDataSource implements DataSource, Closeable {
+
+    private static final double EWMA_ALPHA = 0.2;
+    private static final double ERROR_PENALTY = 20;
+
+    private final List<Replica> replicas;
+    private final long quarantineNanos;
+    private final long maxQuarantineNanos;
+    private final int maxRetries;
+
+    /**
+     * @param replicas 副本地址 -> 该副本的连接池
+     * @param quarantineMillis 首次隔离时间
+     * @param maxQuarantineMillis 最长隔离时间
+     * @param maxRetries 只读查询换副本重试的次数
+     */
+    public ReplicaRoutingDataSource(Map<String, DataSource> replicas, long quarantineMillis, long maxQuarantineMillis, int maxRetries) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("no replica");
+        }
+        List<Replica> list = new ArrayList<>();
+        replicas.forEach((name, dataSource) -> list.add(new Replica(name, dataSource)));
+        this.replicas = Collections.unmodifiableList(list);
+        this.quarantineNanos = TimeUnit.MILLISECONDS.toNanos(quarantineMillis);
+        this.maxQuarantineNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(quarantineMillis, maxQuarantineMillis));
+        this.maxRetries = maxRetries;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * 各副本当前状态，用于监控
+     *
+     * @return 副本地址 -> 状态描述
+     */
+    public Map<String, String> getReplicaStates() {
+        Map<String, String> states = new LinkedHashMap<>();
+        long now = System.nanoTime();
+        for (Replica replica : replicas) {
+            states.put(replica.name, String.format("latency=%.1fms, errorRate=%.2f, inflight=%d, quarantined=%s",
+                    replica.ewmaNanos / 1e6, replica.errorRate, replica.inflight.get(), replica.isQuarantined(now)));
+        }
+        return states;
+    }
+
+    /**
+     * 选一个副本租借连接，副本连接池取连接失败时隔离该副本并换下一个
+     *
+     * @return
+     * @throws SQLException 所有副本都取不到连接
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        SQLException last = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = choose();
+            replica.inflight.incrementAndGet();
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                        new Lease(replica, connection, System.nanoTime()));
+            } catch (SQLException | RuntimeException e) {
+                // 连接池首次初始化失败时Hikari抛出的是RuntimeException
+                replica.inflight.decrementAndGet();
+                failed(replica, e);
+                last = e instanceof SQLException ? (SQLException) e : new SQLException(e.getMessage(), e);
+            }
+        }
+        throw new SQLException("所有副本都无法获取连接", last);
+    }
+
+    /**
+     * 报告在该连接上的操作失败，应在关闭连接前调用；不是本数据源的连接时忽略。
+     * 只有副本级错误计入错误率并隔离副本；SQL错误等说明副本正常响应，该租借仍按成功统计耗时
+     *
+     * @param connection
+     * @param e
+     * @return 是否为副本级错误，只读查询可以换副本重试
+     */
+    public static boolean markFailed(Connection connection, Throwable e) {
+        if (connection == null || !Proxy.isProxyClass(connection.getClass())
+                || !(Proxy.getInvocationHandler(connection) instanceof Lease)) {
+            return false;
+        }
+        Lease lease = (Lease) Proxy.getInvocationHandler(connection);
+        if (!isRetryable(e)) {
+            return false;
+        }
+        lease.failed = true;
+        lease.owner().failed(lease.replica, e);
+        return true;
+    }
+
+    /**
+     * 报告该连接上的查询已收到服务端响应（执行完成、开始读取结果），副本的响应时间按这一刻计算；不是本数据源的连接时忽略
+     *
+     * @param connection
+     */
+    public static void markResponded(Connection connection) {
+        if (connection != null && Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof Lease) {
+            ((Lease) Proxy.getInvocationHandler(connection)).respondedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * 是否为副本级错误：网络异常、连接超时、服务端过载，换一个副本可能成功；SQL错误等不算
+     *
+     * @param e
+     * @return
+     */
+    public static boolean isRetryable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+            if (t instanceof ClickHouseException) {
+                switch (((ClickHouseException) t).getErrorCode()) {
+                    case 202:// TOO_MANY_SIMULTANEOUS_QUERIES
+                    case 209:// SOCKET_TIMEOUT
+                    case 210:// NETWORK_ERROR
+                    case 241:// MEMORY_LIMIT_EXCEEDED，节点内存紧张
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * power of two choices：从未隔离的副本中随机取两个，选负载低的
+     */
+    private Replica choose() {
+        long now = System.nanoTime();
+        List<Replica> healthy = new ArrayList<>(replicas.size());
+        Replica soonest = null;
+        for (Replica replica : replicas) {
+            if (!replica.isQuarantined(now)) {
+                healthy.add(replica);
+            } else if (soonest == null || replica.quarantinedUntil - soonest.quarantinedUntil < 0) {
+                soonest = replica;
+            }
+        }
+        if (healthy.isEmpty()) {
+            return soonest;
+        }
+        if (healthy.size() == 1) {
+            return healthy.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(healthy.size());
+        int b = random.nextInt(healthy.size() - 1);
+        if (b >= a) {
+            b++;
+        }
+        Replica first = healthy.get(a);
+        Replica second = healthy.get(b);
+        return first.load() <= second.load() ? first : second;
+    }
+
+    private void failed(Replica replica, Throwable e) {
+        synchronized (replica) {
+            replica.errorRate = replica.errorRate * (1 - EWMA_ALPHA) + EWMA_ALPHA;
+            int times = Math.min(replica.quarantines++, 20);
+            long nanos = Math.min(maxQuarantineNanos, quarantineNanos << times);
+            replica.quarantinedUntil = System.nanoTime() + nanos;
+            log.warn("clickHouse副本{}不可用，隔离{}ms：{}", replica.name, TimeUnit.NANOSECONDS.toMillis(nanos), e.getMessage());
+        }
+    }
+
+    private static void succeeded(Replica replica, long nanos) {
+        synchronized (replica) {
+            replica.ewmaNanos = replica.ewmaNanos == 0 ? nanos : replica.ewmaNanos * (1 - EWMA_ALPHA) + nanos * EWMA_ALPHA;
+            replica.errorRate = replica.errorRate * (1 - EWMA_ALPHA);
+            replica.quarantines = 0;
+        }
+    }
+
+    /**
+     * 一个副本及其统计
+     */
+    private static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private volatile double ewmaNanos;// 响应时间的EWMA
+        private volatile double errorRate;// 副本级错误率的EWMA
+        private volatile long quarantinedUntil;
+        private int quarantines;// 连续隔离次数，决定下次隔离时长
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.quarantinedUntil = System.nanoTime();
+        }
+
+        boolean isQuarantined(long now) {
+            return now - quarantinedUntil < 0;
+        }
+
+        double load() {
+            return (ewmaNanos + 1) * (inflight.get() + 1) * (1 + ERROR_PENALTY * errorRate);
+        }
+    }
+
+    /**
+     * 租借的连接：关闭时归还副本连接池并记录响应时间
+     */
+    private class Lease implements InvocationHandler {
+        private final Replica replica;
+        private final Connection connection;
+        private final long start;// 取得连接的时间
+        private volatile long respondedAt;// 最近一次 markResponded 的时间，0 为没有报告
+        private volatile boolean failed;
+        private boolean closed;
+
+        Lease(Replica replica, Connection connection, long start) {
+            this.replica = replica;
+            this.connection = connection;
+            this.start = start;
+        }
+
+        ReplicaRoutingDataSource owner() {
+            return ReplicaRoutingDataSource.this;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        replica.inflight.decrementAndGet();
+                        if (!failed) {
+                            succeeded(replica, (respondedAt != 0 ? respondedAt : System.nanoTime()) - start);
+                        }
+                    }
+                    break;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "ReplicaConnection[" + replica.name + "]";
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * 关闭各副本连接池
+     */
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable) {
+                try {
+                    ((Closeable) replica.dataSource).close();
+                } catch (IOException e) {
+                    log.error("发生了异常", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException("not a wrapper");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return false;
+    }
+}
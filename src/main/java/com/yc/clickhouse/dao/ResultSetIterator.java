@@ -0,0 +1,125 @@
+package com.yc.clickhouse.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 逐行映射的结果集迭代器，持有租借的连接、语句和结果集；
+ * 读完最后一行或调用 close() 时全部关闭并归还连接，内存占用与结果集大小无关；
+ * 取行出错时报告给副本路由数据源，超过查询截止时间被取消的按 SQLTimeoutException 抛出
+ */
+@Slf4j
+public class ResultSetIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private final Connection connection;
+    private final Statement statement;
+    private final ResultSet resultSet;
+    private final RowMapper<T> rowMapper;
+    private final String sql;
+    private final ClickHouseDaoMetrics.Sample sample;// 取行并统计行数、耗时
+    private final QueryContext context;// 判断取行出错是否因为超时被取消
+    private final Runnable onClose;// 注销查询上下文登记的连接
+    private int rowNum;
+    private Boolean hasNext;// null 表示尚未预读
+    private boolean closed;
+
+    ResultSetIterator(Connection connection, Statement statement, ResultSet resultSet, RowMapper<T> rowMapper, String sql,
+                      ClickHouseDaoMetrics.Sample sample, QueryContext context, Runnable onClose) {
+        this.connection = connection;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.rowMapper = rowMapper;
+        this.sql = sql;
+        this.sample = sample;
+        this.context = context;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (hasNext == null) {
+            if (closed) {
+                return false;
+            }
+            try {
+                hasNext = sample.next(resultSet);
+            } catch (SQLException e) {
+                ReplicaRoutingDataSource.markFailed(connection, e);
+                SQLException failure = context.isTimedOut()
+                        ? new SQLTimeoutException("clickHouse查询超过截止时间，已取消：" + context.getQueryId(), e) : e;
+                sample.error(failure);
+                close();
+                throw new UncategorizedSQLException("stream rows", sql, failure);
+            }
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNext = null;
+        try {
+            return rowMapper.mapRow(resultSet, rowNum++);
+        } catch (SQLException e) {
+            sample.error(e);
+            close();
+            throw new UncategorizedSQLException("map row", sql, e);
+        }
+    }
+
+    /**
+     * 包装成Stream，Stream关闭时关闭本迭代器
+     *
+     * @return
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        hasNext = false;
+        sample.endStream();
+        sample.success();// 已记录异常时忽略
+        onClose.run();
+        try {
+            resultSet.close();
+        } catch (SQLException e) {
+            log.error("发生了异常", e);
+        }
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            log.error("发生了异常", e);
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.error("发生了异常", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.yc.clickhouse.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.clickhouse.settings.ClickHouseProperties;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.TimeZone;
+
+/**
+ * 统计 RowBinary 响应读取的字节数（驱动解压之后的字节），计入 clickhouse.dao.bytes{direction=read}。
+ * 驱动不公开响应的输入流，ClickHouseRowBinaryInputStream 的输入流和时区字段通过反射取得后用计数流重新包装；
+ * 取不到时（驱动版本不同）不统计
+ */
+@Slf4j
+final class RowBinaryByteCounter extends FilterInputStream {
+
+    private static final Field IN = field("in");
+    private static final Field TIME_ZONE = field("timeZone");
+
+    private long count;
+
+    private RowBinaryByteCounter(InputStream in) {
+        super(in);
+    }
+
+    private static Field field(String name) {
+        try {
+            Field field = ClickHouseRowBinaryInputStream.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | RuntimeException e) {
+            log.warn("clickhouse-jdbc 的 ClickHouseRowBinaryInputStream 没有字段 {}，不统计RowBinary读取字节数", name);
+            return null;
+        }
+    }
+
+    /**
+     * 包装驱动返回的响应流，读取经过计数
+     *
+     * @param response
+     * @return 不能包装时返回null
+     */
+    static RowBinaryByteCounter of(ClickHouseRowBinaryInputStream response) {
+        if (IN == null || TIME_ZONE == null) {
+            return null;
+        }
+        try {
+            return new RowBinaryByteCounter((InputStream) IN.get(response));
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 在计数流上重建的 RowBinary 流，时区与驱动返回的流相同；关闭时一并关闭响应
+     *
+     * @param response
+     * @return
+     */
+    ClickHouseRowBinaryInputStream wrap(ClickHouseRowBinaryInputStream response) {
+        ClickHouseProperties properties = new ClickHouseProperties();
+        properties.setUseServerTimeZoneForDates(true);// 直接使用传入的时区
+        try {
+            return new ClickHouseRowBinaryInputStream(this, (TimeZone) TIME_ZONE.get(response), properties);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);// 字段已设为可访问
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        count += skipped;
+        return skipped;
+    }
+}
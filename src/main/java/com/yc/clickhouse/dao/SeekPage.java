@@ -0,0 +1,29 @@
+package com.yc.clickhouse.dao;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 游标分页的一页数据，见 {@link ClickHouseDaoBase#selectPage(com.yc.clickhouse.mapping.EntityQuery, int, String)}
+ */
+@Getter
+public class SeekPage<T> {
+
+    private final List<T> rows;
+    private final String continuationToken;// 取下一页时传入，没有下一页时为null
+
+    public SeekPage(List<T> rows, String continuationToken) {
+        this.rows = rows;
+        this.continuationToken = continuationToken;
+    }
+
+    /**
+     * 是否还有下一页
+     *
+     * @return
+     */
+    public boolean hasNext() {
+        return continuationToken != null;
+    }
+}
@@ -0,0 +1,143 @@
+package com.yc.clickhouse.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预编译语句缓存：每个物理连接一个按SQL文本的LRU，语句在连接归还连接池后仍保留，下次租到同一物理连接时复用。
+ * <p>
+ * 只缓存连接池代理连接（unwrap 得到的物理连接与租借连接不同，如Hikari）上的语句，
+ * 非连接池数据源每次都是新连接，照常创建并关闭语句。
+ * 同一物理连接同一时间只被一个线程租借，所以单个连接的LRU不需要加锁；
+ * 语句引用着连接，不能用WeakHashMap，出现新的物理连接时清理已关闭连接的缓存。
+ */
+@Slf4j
+public class StatementCache {
+
+    private final int maxSize;// 每个连接最多缓存的语句数，0 表示不缓存
+    private final Map<Connection, Map<String, PreparedStatement>> caches = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 在租借的连接上执行预编译语句，缓存的语句执行前清空参数，执行异常时丢弃该语句
+     *
+     * @param conn 从连接池租借的连接
+     * @param sql
+     * @param action
+     * @return
+     * @throws SQLException
+     */
+    public <R> R execute(Connection conn, String sql, PreparedStatementCallback<R> action) throws SQLException {
+        Map<String, PreparedStatement> cache = cacheFor(conn);
+        if (cache == null) {
+            try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+                return action.doInPreparedStatement(preparedStatement);
+            }
+        }
+        PreparedStatement preparedStatement = cache.get(sql);
+        if (preparedStatement != null && !preparedStatement.isClosed()) {
+            hitCount.incrementAndGet();
+            preparedStatement.clearParameters();
+        } else {
+            missCount.incrementAndGet();
+            preparedStatement = conn.unwrap(Connection.class).prepareStatement(sql);
+            cache.put(sql, preparedStatement);
+        }
+        try {
+            return action.doInPreparedStatement(preparedStatement);
+        } catch (SQLException | RuntimeException e) {
+            cache.remove(sql);
+            close(preparedStatement);
+            throw e;
+        }
+    }
+
+    /**
+     * 获取物理连接对应的LRU，不可缓存时返回null
+     */
+    private Map<String, PreparedStatement> cacheFor(Connection conn) throws SQLException {
+        if (maxSize <= 0) {
+            return null;
+        }
+        Connection physical = conn.unwrap(Connection.class);
+        if (physical == null || physical == conn) {
+            return null;
+        }
+        Map<String, PreparedStatement> cache = caches.get(physical);
+        if (cache == null) {
+            caches.keySet().removeIf(StatementCache::isClosed);// 连接池淘汰的物理连接
+            cache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > maxSize) {
+                        evictionCount.incrementAndGet();
+                        close(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+            caches.put(physical, cache);
+        }
+        return cache;
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static void close(PreparedStatement preparedStatement) {
+        try {
+            preparedStatement.close();
+        } catch (SQLException e) {
+            log.error("发生了异常", e);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * 命中率，还没有请求时为0
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 当前缓存的物理连接数
+     */
+    public int getConnectionCount() {
+        return caches.size();
+    }
+}
@@ -0,0 +1,137 @@
+package com.yc.clickhouse.mapping;
+
+import com.yc.clickhouse.config.annotation.ClickHousePrimaryKey;
+import com.yc.clickhouse.config.annotation.ClickHouseShardingKey;
+import com.yc.clickhouse.utils.ClickHouseBaseUtil;
+import lombok.Getter;
+
+import javax.persistence.Column;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 实体类中一个@Column属性的元数据：列名、属性类型，以及生成一次、反复使用的getter/setter
+ */
+@Getter
+public class ColumnMeta {
+
+    private final String columnName;// 表字段名
+    private final Field field;// 实体属性
+    private final Class<?> javaType;// 属性类型
+    private final boolean primaryKey;// 是否@ClickHousePrimaryKey
+    private final ClickHouseShardingKey.Hash shardingHash;// @ClickHouseShardingKey的函数，不是分片键时为null
+    private final BiConsumer<Object, Object> setter;
+    private final Function<Object, Object> getter;
+
+    ColumnMeta(Class<?> entityClass, Field field) {
+        this.field = field;
+        this.columnName = field.getAnnotation(Column.class).name();
+        this.javaType = field.getType();
+        this.primaryKey = field.isAnnotationPresent(ClickHousePrimaryKey.class);
+        ClickHouseShardingKey shardingKey = field.getAnnotation(ClickHouseShardingKey.class);
+        this.shardingHash = shardingKey == null ? null : shardingKey.hash();
+        this.setter = createSetter(entityClass, field);
+        this.getter = createGetter(entityClass, field);
+    }
+
+    /**
+     * 给实体赋值
+     *
+     * @param entity
+     * @param value
+     */
+    public void set(Object entity, Object value) {
+        setter.accept(entity, value);
+    }
+
+    /**
+     * 读取实体属性值
+     *
+     * @param entity
+     * @return
+     */
+    public Object get(Object entity) {
+        return getter.apply(entity);
+    }
+
+    /**
+     * 优先把public setter编译成BiConsumer（LambdaMetafactory），没有setter时退化为属性的MethodHandle
+     */
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> createSetter(Class<?> entityClass, Field field) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Method method = entityClass.getMethod("set" + ClickHouseBaseUtil.capitalize(field.getName()), field.getType());
+            MethodHandle impl = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    impl,
+                    MethodType.methodType(void.class, entityClass, wrap(field.getType())));
+            return (BiConsumer<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            try {
+                field.setAccessible(true);
+                final MethodHandle handle = lookup.unreflectSetter(field)
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                return (entity, value) -> {
+                    try {
+                        handle.invokeExact(entity, value);
+                    } catch (Throwable t) {
+                        throw new IllegalStateException("set " + field.getName() + " failed", t);
+                    }
+                };
+            } catch (IllegalAccessException e1) {
+                throw new IllegalStateException("no accessible setter for " + field, e1);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> createGetter(Class<?> entityClass, Field field) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        String suffix = ClickHouseBaseUtil.capitalize(field.getName());
+        try {
+            Method method;
+            try {
+                method = entityClass.getMethod("get" + suffix);
+            } catch (NoSuchMethodException e) {
+                method = entityClass.getMethod("is" + suffix);
+            }
+            MethodHandle impl = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    impl,
+                    MethodType.methodType(wrap(method.getReturnType()), entityClass));
+            return (Function<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            try {
+                field.setAccessible(true);
+                final MethodHandle handle = lookup.unreflectGetter(field)
+                        .asType(MethodType.methodType(Object.class, Object.class));
+                return entity -> {
+                    try {
+                        return handle.invokeExact(entity);
+                    } catch (Throwable t) {
+                        throw new IllegalStateException("get " + field.getName() + " failed", t);
+                    }
+                };
+            } catch (IllegalAccessException e1) {
+                throw new IllegalStateException("no accessible getter for " + field, e1);
+            }
+        }
+    }
+
+    static Class<?> wrap(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.yc.clickhouse.mapping;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 按属性类型直接调用 rs.getInt/getLong/getString 等读取列值，避免 getObject 后再做类型转换；
+ * 列值为NULL时返回null
+ */
+@FunctionalInterface
+public interface ColumnReader {
+
+    Object read(ResultSet rs, int index) throws SQLException;
+
+    /**
+     * 根据实体属性类型与列的JDBC类型选择读取方式
+     *
+     * @param javaType 属性类型
+     * @param sqlType  java.sql.Types
+     * @return
+     */
+    static ColumnReader forType(Class<?> javaType, int sqlType) {
+        if (javaType == Integer.class || javaType == int.class) {
+            return (rs, i) -> {
+                int v = rs.getInt(i);
+                return rs.wasNull() ? null : v;
+            };
+        }
+        if (javaType == Long.class || javaType == long.class) {
+            return (rs, i) -> {
+                long v = rs.getLong(i);
+                return rs.wasNull() ? null : v;
+            };
+        }
+        if (javaType == String.class) {
+            return ResultSet::getString;
+        }
+        if (javaType == Double.class || javaType == double.class) {
+            return (rs, i) -> {
+                double v = rs.getDouble(i);
+                return rs.wasNull() ? null : v;
+            };
+        }
+        if (javaType == Float.class || javaType == float.class) {
+            return (rs, i) -> {
+                float v = rs.getFloat(i);
+                return rs.wasNull() ? null : v;
+            };
+        }
+        if (javaType == Short.class || javaType == short.class) {
+            return (rs, i) -> {
+                short v = rs.getShort(i);
+                return rs.wasNull() ? null : v;
+            };
+        }
+        if (javaType == Byte.class || javaType == byte.class) {
+            return (rs, i) -> {
+                byte v = rs.getByte(i);
+                return rs.wasNull() ? null : v;
+            };
+        }
+        if (javaType == Boolean.class || javaType == boolean.class) {
+            return (rs, i) -> {
+                boolean v = rs.getBoolean(i);
+                return rs.wasNull() ? null : v;
+            };
+        }
+        if (javaType == BigDecimal.class) {
+            return ResultSet::getBigDecimal;
+        }
+        if (javaType == java.sql.Date.class) {
+            return ResultSet::getDate;
+        }
+        if (javaType == Timestamp.class) {
+            return ResultSet::getTimestamp;
+        }
+        if (javaType == java.util.Date.class) {
+            // Date列按天读取，DateTime列保留时分秒
+            if (sqlType == Types.DATE) {
+                return ResultSet::getDate;
+            }
+            return ResultSet::getTimestamp;
+        }
+        if (javaType == LocalDate.class) {
+            return (rs, i) -> {
+                java.sql.Date v = rs.getDate(i);
+                return v == null ? null : v.toLocalDate();
+            };
+        }
+        if (javaType == LocalDateTime.class) {
+            return (rs, i) -> {
+                Timestamp v = rs.getTimestamp(i);
+                return v == null ? null : v.toLocalDateTime();
+            };
+        }
+        return ResultSet::getObject;
+    }
+}
@@ -0,0 +1,749 @@
+package com.yc.clickhouse.mapping;
+
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 列式查询结果：每列一个基本类型数组（int[]/long[]/double[]，字符串列为字典编码），
+ * 避免每行一个HashMap、每个值一个包装对象的开销，适合大量数值行的聚合查询。
+ * <p>
+ * 行号、列号均从0开始；日期列以毫秒时间戳存放。
+ * <p>
+ * 除了从 ResultSet 读取，也可以用 {@link #fromRowBinary(ClickHouseRowBinaryInputStream)} 从 RowBinaryWithNamesAndTypes
+ * 响应直接解码到数组，不经过驱动的文本解析和每个值的包装对象。
+ */
+public final class ColumnarResult {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String[] columnNames;
+    private final Column[] columns;
+    private final Map<String, Integer> columnIndexes;
+    private int rowCount;
+
+    private ColumnarResult(String[] columnNames, Column[] columns) {
+        this.columnNames = columnNames;
+        this.columns = columns;
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < columnNames.length; i++) {
+            indexes.put(columnNames[i].toLowerCase(Locale.ROOT), i);
+        }
+        this.columnIndexes = indexes;
+    }
+
+    /**
+     * 读取结果集剩余的所有行，列类型按 ResultSetMetaData 决定
+     *
+     * @param rs
+     * @return
+     * @throws SQLException
+     */
+    public static ColumnarResult from(ResultSet rs) throws SQLException {
+        return from(rs, RowFetcher.DIRECT);
+    }
+
+    /**
+     * 读取结果集剩余的所有行，通过 fetcher 取行
+     *
+     * @param rs
+     * @param fetcher
+     * @return
+     * @throws SQLException
+     */
+    public static ColumnarResult from(ResultSet rs, RowFetcher fetcher) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] names = new String[columnCount];
+        Column[] columns = new Column[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = metaData.getColumnLabel(i + 1);
+            columns[i] = Column.forSqlType(metaData.getColumnType(i + 1), metaData.getColumnTypeName(i + 1));
+        }
+        ColumnarResult result = new ColumnarResult(names, columns);
+        int row = 0;
+        while (fetcher.next(rs)) {
+            for (int i = 0; i < columnCount; i++) {
+                columns[i].read(rs, i + 1, row);
+            }
+            row++;
+        }
+        result.rowCount = row;
+        for (Column column : columns) {
+            column.trim(row);
+        }
+        return result;
+    }
+
+    /**
+     * 读取 RowBinaryWithNamesAndTypes 响应：列类型按头部的clickHouse类型决定，数值按小端字节直接写入基本类型数组
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     * @throws IllegalArgumentException 有不支持的列类型
+     */
+    public static ColumnarResult fromRowBinary(ClickHouseRowBinaryInputStream in) throws IOException {
+        RowBinaryHeader header = RowBinaryHeader.read(in);
+        int columnCount = header.getColumnCount();
+        Column[] columns = new Column[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = Column.forClickHouseType(header.getTypes()[i]);
+        }
+        ColumnarResult result = new ColumnarResult(header.getNames(), columns);
+        int row = 0;
+        if (columnCount > 0) {
+            while (true) {
+                try {
+                    columns[0].readBinary(in, row);
+                } catch (EOFException e) {
+                    break;// 行的第一个值处结束即没有更多行
+                }
+                for (int i = 1; i < columnCount; i++) {
+                    columns[i].readBinary(in, row);
+                }
+                row++;
+            }
+        }
+        result.rowCount = row;
+        for (Column column : columns) {
+            column.trim(row);
+        }
+        return result;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    /**
+     * 列名（忽略大小写）对应的列号
+     *
+     * @param columnName
+     * @return
+     */
+    public int columnIndex(String columnName) {
+        Integer index = columnIndexes.get(columnName.toLowerCase(Locale.ROOT));
+        if (index == null) {
+            throw new IllegalArgumentException("no column " + columnName);
+        }
+        return index;
+    }
+
+    public boolean isNull(int row, int column) {
+        return columns[column].nulls.get(row);
+    }
+
+    public int getInt(int row, int column) {
+        return columns[column].getInt(row);
+    }
+
+    public long getLong(int row, int column) {
+        return columns[column].getLong(row);
+    }
+
+    public double getDouble(int row, int column) {
+        return columns[column].getDouble(row);
+    }
+
+    public String getString(int row, int column) {
+        return isNull(row, column) ? null : columns[column].getString(row);
+    }
+
+    public Object getObject(int row, int column) {
+        return isNull(row, column) ? null : columns[column].getObject(row);
+    }
+
+    /**
+     * int列的底层数组（长度等于行数），只读
+     */
+    public int[] intColumn(int column) {
+        return ((IntColumn) columns[column]).values;
+    }
+
+    /**
+     * long/日期列的底层数组（长度等于行数），只读
+     */
+    public long[] longColumn(int column) {
+        return ((LongColumn) columns[column]).values;
+    }
+
+    /**
+     * double列的底层数组（长度等于行数），只读
+     */
+    public double[] doubleColumn(int column) {
+        return ((DoubleColumn) columns[column]).values;
+    }
+
+    /**
+     * 字符串列的字典编码：codes[row] 为 dictionary 下标
+     */
+    public int[] stringCodes(int column) {
+        return ((StringColumn) columns[column]).codes;
+    }
+
+    public List<String> stringDictionary(int column) {
+        return Collections.unmodifiableList(((StringColumn) columns[column]).dictionary);
+    }
+
+    /**
+     * 行视图，不复制数据
+     *
+     * @param row
+     * @return
+     */
+    public Row row(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("row " + row + ", rowCount " + rowCount);
+        }
+        return new Row(row);
+    }
+
+    /**
+     * 一行数据的只读视图
+     */
+    public final class Row {
+        private final int row;
+
+        private Row(int row) {
+            this.row = row;
+        }
+
+        public int getRowIndex() {
+            return row;
+        }
+
+        public boolean isNull(String columnName) {
+            return ColumnarResult.this.isNull(row, columnIndex(columnName));
+        }
+
+        public int getInt(String columnName) {
+            return ColumnarResult.this.getInt(row, columnIndex(columnName));
+        }
+
+        public long getLong(String columnName) {
+            return ColumnarResult.this.getLong(row, columnIndex(columnName));
+        }
+
+        public double getDouble(String columnName) {
+            return ColumnarResult.this.getDouble(row, columnIndex(columnName));
+        }
+
+        public String getString(String columnName) {
+            return ColumnarResult.this.getString(row, columnIndex(columnName));
+        }
+
+        public Object get(String columnName) {
+            return ColumnarResult.this.getObject(row, columnIndex(columnName));
+        }
+    }
+
+    // ================================ 列存储 ================================
+
+    @FunctionalInterface
+    private interface IntDecoder {
+        int read(ClickHouseRowBinaryInputStream in) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface LongDecoder {
+        long read(ClickHouseRowBinaryInputStream in) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface DoubleDecoder {
+        double read(ClickHouseRowBinaryInputStream in) throws IOException;
+    }
+
+    private abstract static class Column {
+        final BitSet nulls = new BitSet();
+        boolean nullable;// RowBinary 中每个值前有一个null标记字节
+
+        /**
+         * 按驱动报告的JDBC类型创建列；驱动把 UInt32 报告为 INTEGER，按clickHouse类型名改存为 long，
+         * 超过 Integer.MAX_VALUE 的值（计数、IPv4地址等）读成 int 会溢出
+         */
+        static Column forSqlType(int sqlType, String typeName) {
+            if (typeName != null && "UInt32".equals(ParameterBinders.unwrap(typeName))) {
+                return new LongColumn(Types.BIGINT);
+            }
+            switch (sqlType) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BOOLEAN:
+                case Types.BIT:
+                    return new IntColumn();
+                case Types.BIGINT:
+                    return new LongColumn(sqlType);
+                case Types.DATE:
+                case Types.TIMESTAMP:
+                    return new LongColumn(sqlType);
+                case Types.FLOAT:
+                case Types.REAL:
+                case Types.DOUBLE:
+                    return new DoubleColumn();
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                    return new StringColumn();
+                default:
+                    return new ObjectColumn();
+            }
+        }
+
+        /**
+         * 按clickHouse类型创建RowBinary解码的列，类型划分与 forSqlType 一致
+         */
+        static Column forClickHouseType(String type) {
+            String t = ParameterBinders.unwrap(type);
+            Column column;
+            switch (t) {
+                case "Int8":
+                    column = new IntColumn(ClickHouseRowBinaryInputStream::readInt8);
+                    break;
+                case "UInt8":
+                    column = new IntColumn(ClickHouseRowBinaryInputStream::readUInt8);
+                    break;
+                case "Int16":
+                    column = new IntColumn(ClickHouseRowBinaryInputStream::readInt16);
+                    break;
+                case "UInt16":
+                    column = new IntColumn(ClickHouseRowBinaryInputStream::readUInt16);
+                    break;
+                case "Int32":
+                    column = new IntColumn(ClickHouseRowBinaryInputStream::readInt32);
+                    break;
+                case "UInt32":
+                    column = new LongColumn(Types.BIGINT, ClickHouseRowBinaryInputStream::readUInt32);
+                    break;
+                case "Int64":
+                    column = new LongColumn(Types.BIGINT, ClickHouseRowBinaryInputStream::readInt64);
+                    break;
+                case "UInt64":
+                    column = new LongColumn(Types.BIGINT, ClickHouseRowBinaryInputStream::readUInt64AsLong);
+                    break;
+                case "Float32":
+                    column = new DoubleColumn(ClickHouseRowBinaryInputStream::readFloat32);
+                    break;
+                case "Float64":
+                    column = new DoubleColumn(ClickHouseRowBinaryInputStream::readFloat64);
+                    break;
+                case "Date":
+                    column = new LongColumn(Types.DATE, in -> in.readDate().getTime());
+                    break;
+                default:
+                    if (t.startsWith("DateTime") && !t.startsWith("DateTime64")) {
+                        column = new LongColumn(Types.TIMESTAMP, in -> in.readUInt32() * 1000);
+                    } else if (t.equals("String") || t.startsWith("FixedString(") || t.startsWith("Enum")) {
+                        column = new StringColumn(RowBinaryColumnReader.forType(t));
+                    } else {
+                        return new ObjectColumn(RowBinaryColumnReader.forType(type));// 自己处理Nullable
+                    }
+            }
+            column.nullable = type.contains("Nullable(");
+            return column;
+        }
+
+        abstract void read(ResultSet rs, int index, int row) throws SQLException;
+
+        /**
+         * 从RowBinary解码一个值
+         */
+        final void readBinary(ClickHouseRowBinaryInputStream in, int row) throws IOException {
+            ensureCapacity(row);
+            if (nullable && in.readIsNull()) {
+                setNull(row);
+            } else {
+                decode(in, row);
+            }
+        }
+
+        abstract void ensureCapacity(int row);
+
+        abstract void decode(ClickHouseRowBinaryInputStream in, int row) throws IOException;
+
+        void setNull(int row) {
+            nulls.set(row);
+        }
+
+        abstract void trim(int rowCount);
+
+        int getInt(int row) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " is not int");
+        }
+
+        long getLong(int row) {
+            return getInt(row);
+        }
+
+        double getDouble(int row) {
+            return getLong(row);
+        }
+
+        abstract String getString(int row);
+
+        abstract Object getObject(int row);
+    }
+
+    private static final class IntColumn extends Column {
+        final IntDecoder decoder;
+        int[] values = new int[INITIAL_CAPACITY];
+
+        IntColumn() {
+            this(null);
+        }
+
+        IntColumn(IntDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        void ensureCapacity(int row) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row << 1);
+            }
+        }
+
+        @Override
+        void decode(ClickHouseRowBinaryInputStream in, int row) throws IOException {
+            values[row] = decoder.read(in);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row << 1);
+            }
+            values[row] = rs.getInt(index);
+            if (rs.wasNull()) {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        void trim(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+        }
+
+        @Override
+        int getInt(int row) {
+            return values[row];
+        }
+
+        @Override
+        String getString(int row) {
+            return String.valueOf(values[row]);
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        final int sqlType;
+        final LongDecoder decoder;
+        long[] values = new long[INITIAL_CAPACITY];
+
+        LongColumn(int sqlType) {
+            this(sqlType, null);
+        }
+
+        LongColumn(int sqlType, LongDecoder decoder) {
+            this.sqlType = sqlType;
+            this.decoder = decoder;
+        }
+
+        @Override
+        void ensureCapacity(int row) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row << 1);
+            }
+        }
+
+        @Override
+        void decode(ClickHouseRowBinaryInputStream in, int row) throws IOException {
+            values[row] = decoder.read(in);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row << 1);
+            }
+            if (sqlType == Types.DATE || sqlType == Types.TIMESTAMP) {
+                java.util.Date date = sqlType == Types.DATE ? rs.getDate(index) : rs.getTimestamp(index);
+                if (date == null) {
+                    nulls.set(row);
+                } else {
+                    values[row] = date.getTime();
+                }
+                return;
+            }
+            values[row] = rs.getLong(index);
+            if (rs.wasNull()) {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        void trim(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+        }
+
+        @Override
+        int getInt(int row) {
+            return Math.toIntExact(values[row]);
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        String getString(int row) {
+            return getObject(row).toString();
+        }
+
+        @Override
+        Object getObject(int row) {
+            if (sqlType == Types.DATE) {
+                return new java.sql.Date(values[row]);
+            }
+            if (sqlType == Types.TIMESTAMP) {
+                return new Timestamp(values[row]);
+            }
+            return values[row];
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        final DoubleDecoder decoder;
+        double[] values = new double[INITIAL_CAPACITY];
+
+        DoubleColumn() {
+            this(null);
+        }
+
+        DoubleColumn(DoubleDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        void ensureCapacity(int row) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row << 1);
+            }
+        }
+
+        @Override
+        void decode(ClickHouseRowBinaryInputStream in, int row) throws IOException {
+            values[row] = decoder.read(in);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row << 1);
+            }
+            values[row] = rs.getDouble(index);
+            if (rs.wasNull()) {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        void trim(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+        }
+
+        @Override
+        long getLong(int row) {
+            return (long) values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        String getString(int row) {
+            return String.valueOf(values[row]);
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+    }
+
+    /**
+     * 字典编码的字符串列：相同字符串只保存一份
+     */
+    private static final class StringColumn extends Column {
+        final RowBinaryColumnReader decoder;
+        int[] codes = new int[INITIAL_CAPACITY];
+        final List<String> dictionary = new ArrayList<>();
+        final Map<String, Integer> lookup = new HashMap<>();
+
+        StringColumn() {
+            this(null);
+        }
+
+        StringColumn(RowBinaryColumnReader decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        void read(ResultSet rs, int index, int row) throws SQLException {
+            ensureCapacity(row);
+            String value = rs.getString(index);
+            if (value == null) {
+                setNull(row);
+                return;
+            }
+            add(value, row);
+        }
+
+        @Override
+        void ensureCapacity(int row) {
+            if (row == codes.length) {
+                codes = Arrays.copyOf(codes, row << 1);
+            }
+        }
+
+        @Override
+        void decode(ClickHouseRowBinaryInputStream in, int row) throws IOException {
+            add((String) decoder.read(in), row);
+        }
+
+        @Override
+        void setNull(int row) {
+            nulls.set(row);
+            codes[row] = -1;
+        }
+
+        private void add(String value, int row) {
+            Integer code = lookup.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                lookup.put(value, code);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        void trim(int rowCount) {
+            codes = Arrays.copyOf(codes, rowCount);
+            lookup.clear();// 读取完成后只需要字典
+        }
+
+        @Override
+        String getString(int row) {
+            return dictionary.get(codes[row]);
+        }
+
+        @Override
+        Object getObject(int row) {
+            return getString(row);
+        }
+    }
+
+    private static final class ObjectColumn extends Column {
+        final RowBinaryColumnReader decoder;
+        Object[] values = new Object[INITIAL_CAPACITY];
+
+        ObjectColumn() {
+            this(null);
+        }
+
+        ObjectColumn(RowBinaryColumnReader decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        void ensureCapacity(int row) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row << 1);
+            }
+        }
+
+        @Override
+        void decode(ClickHouseRowBinaryInputStream in, int row) throws IOException {
+            values[row] = decoder.read(in);
+            if (values[row] == null) {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        void read(ResultSet rs, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row << 1);
+            }
+            values[row] = rs.getObject(index);
+            if (values[row] == null) {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        void trim(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+        }
+
+        @Override
+        long getLong(int row) {
+            return ((Number) values[row]).longValue();
+        }
+
+        @Override
+        double getDouble(int row) {
+            return ((Number) values[row]).doubleValue();
+        }
+
+        @Override
+        int getInt(int row) {
+            return ((Number) values[row]).intValue();
+        }
+
+        @Override
+        String getString(int row) {
+            return String.valueOf(values[row]);
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.yc.clickhouse.mapping;
+
+import com.yc.clickhouse.config.annotation.ClickHouseTable;
+import lombok.Getter;
+
+import javax.persistence.Column;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 实体类元数据：表名、@Column属性列表、主键以及无参构造器，每个实体类只解析一次
+ */
+@Getter
+public class EntityMeta<T> {
+
+    private static final Map<Class<?>, EntityMeta<?>> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicLong LAST_VERSION = new AtomicLong();
+
+    private final Class<T> entityClass;
+    private final String tableName;// @ClickHouseTable声明的表名，没有注解时为null
+    private final String localTableName;// 分片本地表名，没有声明 localName 时与 tableName 相同
+    private final List<ColumnMeta> columns;// 所有@Column属性，按声明顺序
+    private final ColumnMeta primaryKey;// @ClickHousePrimaryKey属性，没有时为null
+    private final ColumnMeta shardingKey;// @ClickHouseShardingKey属性，没有时为null
+    private final ColumnMeta versionColumn;// @ClickHouseTable(versionColumn)，没有时为null
+    private final ColumnMeta deletedColumn;// @ClickHouseTable(deletedColumn)，没有时为null
+    private final ColumnMeta signColumn;// @ClickHouseTable(signColumn)，没有时为null
+    private final WriteMode writeMode;
+    private final Map<String, ColumnMeta> columnsByName;// 小写列名 -> 属性
+    private final Supplier<Object> constructor;
+
+    /**
+     * 获取实体类元数据（缓存）
+     *
+     * @param entityClass
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMeta<T> of(Class<T> entityClass) {
+        return (EntityMeta<T>) CACHE.computeIfAbsent(entityClass, EntityMeta::new);
+    }
+
+    private EntityMeta(Class<T> entityClass) {
+        this.entityClass = entityClass;
+        ClickHouseTable table = entityClass.getAnnotation(ClickHouseTable.class);
+        this.tableName = table == null ? null : table.name();
+        this.localTableName = table == null || table.localName().isEmpty() ? tableName : table.localName();
+
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            fields.addAll(0, Arrays.asList(clazz.getDeclaredFields()));
+        }
+        List<ColumnMeta> columnList = new ArrayList<>();
+        Map<String, ColumnMeta> byName = new HashMap<>();
+        ColumnMeta pk = null;
+        ColumnMeta sk = null;
+        for (Field field : fields) {
+            if (!field.isAnnotationPresent(Column.class)) {
+                continue;
+            }
+            ColumnMeta column = new ColumnMeta(entityClass, field);
+            columnList.add(column);
+            byName.put(column.getColumnName().toLowerCase(Locale.ROOT), column);
+            if (column.isPrimaryKey()) {
+                pk = column;
+            }
+            if (column.getShardingHash() != null) {
+                sk = column;
+            }
+        }
+        this.columns = Collections.unmodifiableList(columnList);
+        this.columnsByName = Collections.unmodifiableMap(byName);
+        this.primaryKey = pk;
+        this.shardingKey = sk;
+        this.versionColumn = tableColumn(table == null ? "" : table.versionColumn(), "versionColumn");
+        this.deletedColumn = tableColumn(table == null ? "" : table.deletedColumn(), "deletedColumn");
+        this.signColumn = tableColumn(table == null ? "" : table.signColumn(), "signColumn");
+        if (signColumn != null) {
+            this.writeMode = WriteMode.COLLAPSING;
+        } else if (versionColumn != null || deletedColumn != null) {
+            this.writeMode = WriteMode.REPLACING;
+        } else {
+            this.writeMode = WriteMode.MUTATION;
+        }
+        if (writeMode != WriteMode.MUTATION && primaryKey == null) {
+            throw new IllegalStateException(entityClass.getName() + " 声明了版本/符号列，需要 @ClickHousePrimaryKey");
+        }
+        if (deletedColumn != null && (versionColumn == null || signColumn != null)) {
+            throw new IllegalStateException(entityClass.getName() + " 的 deletedColumn 需要与 versionColumn 一起声明，且不能与 signColumn 同时使用");
+        }
+        if (versionColumn != null) {
+            Class<?> type = ColumnMeta.wrap(versionColumn.getJavaType());
+            if (type != Long.class && type != Integer.class && type != BigInteger.class && !Date.class.isAssignableFrom(type)) {
+                throw new IllegalStateException(entityClass.getName() + " 的版本列只能是 Long/Integer/BigInteger/Date：" + type.getName());
+            }
+        }
+        this.constructor = createConstructor(entityClass);
+    }
+
+    /**
+     * 按表字段名（忽略大小写）查找属性
+     *
+     * @param columnName
+     * @return 没有对应属性返回null
+     */
+    public ColumnMeta getColumn(String columnName) {
+        return columnName == null ? null : columnsByName.get(columnName.toLowerCase(Locale.ROOT));
+    }
+
+    private ColumnMeta tableColumn(String columnName, String attribute) {
+        if (columnName.isEmpty()) {
+            return null;
+        }
+        ColumnMeta column = getColumn(columnName);
+        if (column == null) {
+            throw new IllegalStateException(entityClass.getName() + " 的 @ClickHouseTable(" + attribute + " = \"" + columnName
+                    + "\") 不是 @Column 属性");
+        }
+        return column;
+    }
+
+    /**
+     * 生成一个新版本号：单调递增的当前毫秒，同一毫秒内递增；Integer 版本列取秒，Date 版本列取当前时间。
+     * 不同进程同一毫秒写同一主键时版本相同，ReplacingMergeTree 保留后插入的行
+     *
+     * @return 版本列类型的值，没有版本列时返回null
+     */
+    public Object nextVersion() {
+        if (versionColumn == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long version = LAST_VERSION.updateAndGet(last -> Math.max(last + 1, now));
+        Class<?> type = ColumnMeta.wrap(versionColumn.getJavaType());
+        if (type == Integer.class) {
+            return (int) (version / 1000);
+        } else if (type == BigInteger.class) {
+            return BigInteger.valueOf(version);
+        } else if (Date.class.isAssignableFrom(type)) {
+            return new Date(version);
+        }
+        return version;
+    }
+
+    /**
+     * 标记列（sign / is_deleted）的取值，转换为属性类型
+     *
+     * @param column
+     * @param value 1、-1 或 0
+     * @return
+     */
+    public static Object flag(ColumnMeta column, int value) {
+        Class<?> type = ColumnMeta.wrap(column.getJavaType());
+        if (type == Boolean.class) {
+            return value > 0;
+        } else if (type == Long.class) {
+            return (long) value;
+        } else if (type == Short.class) {
+            return (short) value;
+        } else if (type == Byte.class) {
+            return (byte) value;
+        }
+        return value;
+    }
+
+    /**
+     * 创建一个空实体
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public T newInstance() {
+        return (T) constructor.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> createConstructor(Class<?> entityClass) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle impl = lookup.unreflectConstructor(entityClass.getConstructor());
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    impl,
+                    MethodType.methodType(entityClass));
+            return (Supplier<Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            try {
+                final Constructor<?> ctor = entityClass.getDeclaredConstructor();
+                ctor.setAccessible(true);
+                return () -> {
+                    try {
+                        return ctor.newInstance();
+                    } catch (ReflectiveOperationException e1) {
+                        throw new IllegalStateException("create " + entityClass.getName() + " failed", e1);
+                    }
+                };
+            } catch (NoSuchMethodException e1) {
+                throw new IllegalStateException(entityClass.getName() + " has no no-arg constructor", e1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,774 @@
+package com.yc.clickhouse.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按实体元数据构造的查询：列名都来自 @Column，条件值用 ? 占位，不再拼接 sqlWhere 片段。
+ * <pre>
+ * EntityQuery&lt;TTest&gt; query = tTestDao.query()
+ *         .select("id", "name")
+ *         .prewhere("create_date", EntityQuery.Op.GE, date)
+ *         .where("del_status", EntityQuery.Op.EQ, 0)
+ *         .orderBy("id")
+ *         .after(lastId)
+ *         .limit(100);
+ * List&lt;TTest&gt; list = tTestDao.selectList(query);
+ * </pre>
+ * 列名不属于实体或条件值类型与属性不匹配时抛出 IllegalArgumentException。
+ * <p>
+ * SQL文本只取决于查询的形状（投影列、各条件的列和运算符、IN 的个数、排序、是否有游标和 limit），
+ * 按形状缓存：同一形状每次得到同一个字符串，不重复拼接，语句缓存也能命中。
+ * <p>
+ * 游标分页（keyset）：{@link #after(Object...)} 传入上一页最后一行的排序列取值，生成
+ * (c1, c2) &gt; (?, ?)，按主键索引直接定位，不像 limit offset 那样读取并丢弃前面的行；
+ * {@link #seek(String, int)} / {@link #continuationToken(Object)} 把游标编码成续页令牌交给调用方。
+ * <p>
+ * 版本表（@ClickHouseTable 声明了 versionColumn / signColumn）未合并前同一主键有多行，按 {@link #dedup(Dedup)} 去重，
+ * 默认 FINAL；普通表不去重，SQL与之前相同
+ */
+public class EntityQuery<T> {
+
+    private static final int MAX_CACHED_SHAPES = 4096;
+    private static final Map<Shape, String> SQL_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 条件运算符
+     */
+    public enum Op {
+        EQ("="), NE("!="), GT(">"), GE(">="), LT("<"), LE("<="),
+        IN("in"), NOT_IN("not in"), LIKE("like"), IS_NULL("is null"), IS_NOT_NULL("is not null");
+
+        private final String sql;
+
+        Op(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /**
+     * 版本表读取时的去重方式
+     */
+    public enum Dedup {
+        /**
+         * 不去重，会读到未合并的旧版本行和删除标记行
+         */
+        NONE,
+        /**
+         * from t final：读取时合并同一主键的各版本，过滤删除标记行/取消行；
+         * prewhere 在 FINAL 合并之前执行，所以非主键列的 prewhere 条件改为 where
+         */
+        FINAL,
+        /**
+         * 按主键 group by，每列取 argMax(列, 版本)；只适用于声明了 versionColumn 的 Replacing 表。
+         * 主键条件在去重之前过滤（走主键索引），其他列的条件、排序在去重之后
+         */
+        ARG_MAX,
+        /**
+         * 默认：版本表用 FINAL，普通表不去重
+         */
+        AUTO
+    }
+
+    private static final int PREWHERE = 0;
+    private static final int WHERE = 1;
+    private static final int OUTER = 2;// argMax 去重之后的 where
+    private static final String LAST = "__last";// argMax 子查询中列的别名后缀，与列同名会形成循环别名
+
+    private final EntityMeta<T> meta;
+    private List<ColumnMeta> columns;// 投影列，null 表示全部 @Column
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private Object[] after;// 游标：上一页最后一行的排序列取值
+    private Integer limit;
+    private Dedup dedup = Dedup.AUTO;
+
+    private EntityQuery(EntityMeta<T> meta) {
+        if (meta.getTableName() == null) {
+            throw new IllegalArgumentException(meta.getEntityClass().getName() + " 没有 @ClickHouseTable 注解");
+        }
+        this.meta = meta;
+    }
+
+    /**
+     * 创建实体类的查询
+     *
+     * @param entityClass
+     * @return
+     */
+    public static <T> EntityQuery<T> from(Class<T> entityClass) {
+        return new EntityQuery<>(EntityMeta.of(entityClass));
+    }
+
+    public Class<T> getEntityClass() {
+        return meta.getEntityClass();
+    }
+
+    /**
+     * 只查询指定的列，没有指定时查询全部 @Column 列
+     *
+     * @param columnNames 表字段名
+     * @return
+     */
+    public EntityQuery<T> select(String... columnNames) {
+        List<ColumnMeta> list = new ArrayList<>(columnNames.length);
+        for (String columnName : columnNames) {
+            list.add(column(columnName));
+        }
+        this.columns = list.isEmpty() ? null : list;
+        return this;
+    }
+
+    /**
+     * where 条件，多个条件之间为 and
+     *
+     * @param columnName 表字段名
+     * @param op
+     * @param value IN/NOT_IN 传集合或数组，IS_NULL/IS_NOT_NULL 传null
+     * @return
+     */
+    public EntityQuery<T> where(String columnName, Op op, Object value) {
+        conditions.add(condition(false, columnName, op, value));
+        return this;
+    }
+
+    /**
+     * prewhere 条件：先只读这些列过滤，命中的行再读其余列；适合选择性高、列小的条件，
+     * 多个条件之间为 and
+     *
+     * @param columnName 表字段名
+     * @param op
+     * @param value IN/NOT_IN 传集合或数组，IS_NULL/IS_NOT_NULL 传null
+     * @return
+     */
+    public EntityQuery<T> prewhere(String columnName, Op op, Object value) {
+        conditions.add(condition(true, columnName, op, value));
+        return this;
+    }
+
+    /**
+     * 按列升序
+     *
+     * @param columnName 表字段名
+     * @return
+     */
+    public EntityQuery<T> orderBy(String columnName) {
+        orders.add(new Order(column(columnName), false));
+        return this;
+    }
+
+    /**
+     * 按列降序
+     *
+     * @param columnName 表字段名
+     * @return
+     */
+    public EntityQuery<T> orderByDesc(String columnName) {
+        orders.add(new Order(column(columnName), true));
+        return this;
+    }
+
+    /**
+     * 游标分页：从排序列取值为 values 的行之后开始（不含该行）。
+     * values 按 orderBy 的顺序给出；没有 orderBy 时按主键升序，传主键值。
+     * 各排序列的方向必须相同
+     *
+     * @param values 上一页最后一行的排序列取值，为null或空时从头开始
+     * @return
+     */
+    public EntityQuery<T> after(Object... values) {
+        this.after = values == null || values.length == 0 ? null : values.clone();
+        return this;
+    }
+
+    public EntityQuery<T> limit(int size) {
+        this.limit = size;
+        return this;
+    }
+
+    /**
+     * 版本表的去重方式，默认 AUTO
+     *
+     * @param dedup
+     * @return
+     */
+    public EntityQuery<T> dedup(Dedup dedup) {
+        this.dedup = dedup;
+        return this;
+    }
+
+    /**
+     * 按续页令牌定位：没有 orderBy 时按主键排序；orderBy 中没有主键时把主键作为最后一个排序列，
+     * 排序列取值相同的行在分页边界处不会被跳过。游标取自令牌，并确保投影包含排序列（生成下一页令牌要用）
+     *
+     * @param continuationToken 上一页返回的令牌，为null时从第一页开始
+     * @param size 本次读取的行数
+     * @return
+     * @throws IllegalArgumentException 令牌不是这个查询的排序生成的
+     */
+    public EntityQuery<T> seek(String continuationToken, int size) {
+        ColumnMeta primaryKey = meta.getPrimaryKey();
+        if (primaryKey == null) {
+            if (orders.isEmpty()) {
+                throw new IllegalStateException(meta.getEntityClass().getName() + " 没有主键，游标分页需要指定 orderBy");
+            }
+        } else if (orders.stream().noneMatch(order -> order.column == primaryKey)) {
+            orders.add(new Order(primaryKey, !orders.isEmpty() && orders.get(0).desc));
+        }
+        if (columns != null) {
+            for (Order order : orders) {
+                if (!columns.contains(order.column)) {
+                    columns.add(order.column);
+                }
+            }
+        }
+        this.after = continuationToken == null ? null : decodeToken(continuationToken);
+        this.limit = size;
+        return this;
+    }
+
+    /**
+     * 以 row 为上一页最后一行生成续页令牌：排序列的取值编码为URL安全的字符串
+     *
+     * @param row
+     * @return
+     */
+    public String continuationToken(T row) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(fingerprint());
+            for (Order order : effectiveOrders()) {
+                Object value = order.column.get(row);
+                if (value == null) {
+                    throw new IllegalStateException("排序列 " + order.column.getColumnName() + " 为null，不能生成续页令牌");
+                }
+                out.writeUTF(value instanceof Date ? String.valueOf(((Date) value).getTime()) : value.toString());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);// 写内存不会出错
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    private Object[] decodeToken(String token) {
+        List<Order> orderList = effectiveOrders();
+        Object[] values = new Object[orderList.size()];
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("续页令牌格式错误：" + token, e);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != fingerprint()) {
+                throw new IllegalArgumentException("续页令牌与查询的排序不一致：" + token);
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = parse(orderList.get(i).column, in.readUTF());
+            }
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("续页令牌格式错误：" + token);
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalArgumentException("续页令牌格式错误：" + token, e);
+        }
+        return values;
+    }
+
+    /**
+     * 排序的指纹：表名和排序列，不同排序的令牌不能混用
+     */
+    private int fingerprint() {
+        int hash = meta.getTableName().hashCode();
+        for (Order order : effectiveOrders()) {
+            hash = 31 * hash + order.column.getColumnName().hashCode() * (order.desc ? -1 : 1);
+        }
+        return hash;
+    }
+
+    private static Object parse(ColumnMeta column, String text) {
+        Class<?> type = ColumnMeta.wrap(column.getJavaType());
+        if (type == Integer.class) {
+            return Integer.valueOf(text);
+        } else if (type == Long.class) {
+            return Long.valueOf(text);
+        } else if (type == Short.class) {
+            return Short.valueOf(text);
+        } else if (type == Byte.class) {
+            return Byte.valueOf(text);
+        } else if (type == Double.class) {
+            return Double.valueOf(text);
+        } else if (type == Float.class) {
+            return Float.valueOf(text);
+        } else if (type == BigDecimal.class) {
+            return new BigDecimal(text);
+        } else if (type == BigInteger.class) {
+            return new BigInteger(text);
+        } else if (Date.class.isAssignableFrom(type)) {
+            return new Date(Long.parseLong(text));
+        }
+        return text;
+    }
+
+    /**
+     * 查询SQL（按形状缓存）
+     *
+     * @return
+     */
+    public String toSql() {
+        List<Order> orderList = effectiveOrders();
+        if (after != null) {
+            checkKeyset(orderList);
+        }
+        Dedup mode = dedupMode();
+        Shape shape = shape(false, mode, orderList);
+        String sql = SQL_CACHE.get(shape);
+        return sql != null ? sql : cache(shape, buildSql(false, mode, orderList));
+    }
+
+    /**
+     * 查询的参数，按 prewhere、where、游标、limit 的顺序（argMax 去重时去重之后的条件和游标在 limit 之前）
+     *
+     * @return
+     */
+    public Object[] getParams() {
+        List<Order> orderList = effectiveOrders();
+        if (after != null) {
+            checkKeyset(orderList);
+        }
+        return params(false, dedupMode(), orderList).toArray();
+    }
+
+    /**
+     * 相同条件的 count SQL，忽略排序、游标和 limit：select count(*) as count from t ...
+     *
+     * @return
+     */
+    public String toCountSql() {
+        Dedup mode = dedupMode();
+        Shape shape = shape(true, mode, Collections.emptyList());
+        String sql = SQL_CACHE.get(shape);
+        return sql != null ? sql : cache(shape, buildSql(true, mode, Collections.emptyList()));
+    }
+
+    /**
+     * count SQL 的参数
+     *
+     * @return
+     */
+    public Object[] getCountParams() {
+        return params(true, dedupMode(), Collections.emptyList()).toArray();
+    }
+
+    /**
+     * 实际使用的去重方式：AUTO 按实体的写入方式确定
+     *
+     * @return
+     */
+    public Dedup dedupMode() {
+        if (dedup == Dedup.AUTO) {
+            return meta.getWriteMode() == WriteMode.MUTATION ? Dedup.NONE : Dedup.FINAL;
+        }
+        if (dedup == Dedup.ARG_MAX && (meta.getWriteMode() != WriteMode.REPLACING || meta.getVersionColumn() == null)) {
+            throw new IllegalStateException(meta.getEntityClass().getName() + " 没有声明 versionColumn，不能按 argMax 去重");
+        }
+        return dedup;
+    }
+
+    /**
+     * 实际使用的排序：游标分页没有指定排序时按主键
+     *
+     * @return
+     */
+    public List<Order> effectiveOrders() {
+        if (orders.isEmpty() && after != null && meta.getPrimaryKey() != null) {
+            return Collections.singletonList(new Order(meta.getPrimaryKey(), false));
+        }
+        return Collections.unmodifiableList(orders);
+    }
+
+    private void checkKeyset(List<Order> orderList) {
+        if (orderList.isEmpty()) {
+            throw new IllegalStateException(meta.getEntityClass().getName() + " 没有主键，游标分页需要指定 orderBy");
+        }
+        if (orderList.size() != after.length) {
+            throw new IllegalStateException("游标取值个数 " + after.length + " 与排序列个数 " + orderList.size() + " 不一致");
+        }
+        for (int i = 0; i < orderList.size(); i++) {
+            if (orderList.get(i).desc != orderList.get(0).desc) {
+                throw new IllegalStateException("游标分页的排序列方向必须相同");
+            }
+            checkType(orderList.get(i).column, after[i]);
+        }
+    }
+
+    private List<Object> params(boolean count, Dedup mode, List<Order> orderList) {
+        List<Object> params = new ArrayList<>();
+        boolean keyset = !count && after != null;
+        boolean keysetOuter = keyset && keysetOuter(mode, orderList);
+        addConditionParams(params, PREWHERE, mode);
+        addConditionParams(params, WHERE, mode);
+        if (keyset && !keysetOuter) {
+            Collections.addAll(params, after);
+        }
+        addConditionParams(params, OUTER, mode);
+        if (keysetOuter) {
+            Collections.addAll(params, after);
+        }
+        if (!count && limit != null) {
+            params.add(limit);
+        }
+        return params;
+    }
+
+    private void addConditionParams(List<Object> params, int placement, Dedup mode) {
+        for (Condition condition : conditions) {
+            if (placement(condition, mode) == placement) {
+                Collections.addAll(params, condition.values);
+            }
+        }
+    }
+
+    /**
+     * 条件所在的子句：FINAL 时只有主键列留在 prewhere，argMax 时非主键列在去重之后
+     */
+    private static int placement(Condition condition, Dedup mode) {
+        boolean primaryKey = condition.column.isPrimaryKey();
+        if (mode == Dedup.ARG_MAX && !primaryKey) {
+            return OUTER;
+        }
+        return condition.prewhere && (mode != Dedup.FINAL || primaryKey) ? PREWHERE : WHERE;
+    }
+
+    /**
+     * argMax 去重时，只按主键排序的游标可以放进子查询走主键索引，其他排序列要在去重之后比较
+     */
+    private static boolean keysetOuter(Dedup mode, List<Order> orderList) {
+        return mode == Dedup.ARG_MAX && !(orderList.size() == 1 && orderList.get(0).column.isPrimaryKey());
+    }
+
+    private String cache(Shape shape, String sql) {
+        if (SQL_CACHE.size() < MAX_CACHED_SHAPES) {
+            String previous = SQL_CACHE.putIfAbsent(shape, sql);
+            return previous == null ? sql : previous;
+        }
+        return sql;// 形状太多（如 IN 的个数随调用变化）时不再缓存
+    }
+
+    private String buildSql(boolean count, Dedup mode, List<Order> orderList) {
+        boolean argMax = mode == Dedup.ARG_MAX;
+        boolean keyset = !count && after != null;
+        boolean keysetOuter = keyset && keysetOuter(mode, orderList);
+        List<String> where = predicates(WHERE, mode);
+        if (mode == Dedup.FINAL) {
+            if (meta.getDeletedColumn() != null) {
+                where.add(meta.getDeletedColumn().getColumnName() + " = 0");
+            }
+            if (meta.getSignColumn() != null) {
+                where.add(meta.getSignColumn().getColumnName() + " = 1");// 没有配对的取消行
+            }
+        }
+        if (keyset && !keysetOuter) {
+            where.add(keysetPredicate(orderList, false));
+        }
+        StringBuilder sql = new StringBuilder("select ");
+        if (count) {
+            sql.append("count(*) as count");
+        } else {
+            List<ColumnMeta> list = columns == null ? meta.getColumns() : columns;
+            for (int i = 0; i < list.size(); i++) {
+                ColumnMeta column = list.get(i);
+                sql.append(i == 0 ? "" : ",").append(ref(column, argMax));
+                if (argMax && !column.isPrimaryKey()) {
+                    sql.append(" as ").append(column.getColumnName());
+                }
+            }
+        }
+        if (argMax) {
+            String primaryKey = meta.getPrimaryKey().getColumnName();
+            String version = meta.getVersionColumn().getColumnName();
+            sql.append(" from (select ").append(primaryKey);
+            for (ColumnMeta column : argMaxColumns(count, orderList)) {
+                sql.append(", argMax(").append(column.getColumnName()).append(", ").append(version).append(") as ")
+                        .append(ref(column, true));
+            }
+            sql.append(" from ").append(meta.getTableName());
+            clause(sql, " prewhere ", predicates(PREWHERE, mode));
+            clause(sql, " where ", where);
+            sql.append(" group by ").append(primaryKey).append(')');
+            List<String> outer = new ArrayList<>();
+            if (meta.getDeletedColumn() != null) {
+                outer.add(ref(meta.getDeletedColumn(), true) + " = 0");
+            }
+            outer.addAll(predicates(OUTER, mode));
+            if (keysetOuter) {
+                outer.add(keysetPredicate(orderList, true));
+            }
+            clause(sql, " where ", outer);
+        } else {
+            sql.append(" from ").append(meta.getTableName());
+            if (mode == Dedup.FINAL) {
+                sql.append(" final");
+            }
+            clause(sql, " prewhere ", predicates(PREWHERE, mode));
+            clause(sql, " where ", where);
+        }
+        if (count) {
+            return sql.toString();
+        }
+        for (int i = 0; i < orderList.size(); i++) {
+            Order order = orderList.get(i);
+            sql.append(i == 0 ? " order by " : ",").append(ref(order.column, argMax)).append(order.desc ? " desc" : " asc");
+        }
+        if (limit != null) {
+            sql.append(" limit ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * argMax 子查询要取的非主键列：投影、去重之后的条件、排序以及删除标记，按 @Column 声明顺序
+     */
+    private List<ColumnMeta> argMaxColumns(boolean count, List<Order> orderList) {
+        List<ColumnMeta> needed = new ArrayList<>();
+        if (!count) {
+            needed.addAll(columns == null ? meta.getColumns() : columns);
+        }
+        for (Condition condition : conditions) {
+            needed.add(condition.column);
+        }
+        for (Order order : orderList) {
+            needed.add(order.column);
+        }
+        needed.add(meta.getDeletedColumn());
+        List<ColumnMeta> list = new ArrayList<>();
+        for (ColumnMeta column : meta.getColumns()) {
+            if (!column.isPrimaryKey() && needed.contains(column)) {
+                list.add(column);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 列在SQL中的引用：argMax 去重时非主键列引用子查询的别名
+     */
+    private static String ref(ColumnMeta column, boolean argMax) {
+        return argMax && !column.isPrimaryKey() ? column.getColumnName() + LAST : column.getColumnName();
+    }
+
+    private List<String> predicates(int placement, Dedup mode) {
+        List<String> list = new ArrayList<>();
+        for (Condition condition : conditions) {
+            if (placement(condition, mode) != placement) {
+                continue;
+            }
+            StringBuilder predicate = new StringBuilder(ref(condition.column, placement == OUTER))
+                    .append(' ').append(condition.op.sql);
+            if (condition.op == Op.IN || condition.op == Op.NOT_IN) {
+                predicate.append(" (");
+                for (int i = 0; i < condition.values.length; i++) {
+                    predicate.append(i == 0 ? "?" : ",?");
+                }
+                predicate.append(')');
+            } else if (condition.values.length > 0) {
+                predicate.append(" ?");
+            }
+            list.add(predicate.toString());
+        }
+        return list;
+    }
+
+    private static String keysetPredicate(List<Order> orderList, boolean argMax) {
+        StringBuilder keys = new StringBuilder();
+        StringBuilder holders = new StringBuilder();
+        for (int i = 0; i < orderList.size(); i++) {
+            keys.append(i == 0 ? "" : ", ").append(ref(orderList.get(i).column, argMax));
+            holders.append(i == 0 ? "?" : ", ?");
+        }
+        String op = orderList.get(0).desc ? " < " : " > ";
+        if (orderList.size() == 1) {
+            return keys + op + holders;
+        }
+        return "(" + keys + ")" + op + "(" + holders + ")";
+    }
+
+    private static void clause(StringBuilder sql, String keyword, List<String> predicates) {
+        for (int i = 0; i < predicates.size(); i++) {
+            sql.append(i == 0 ? keyword : " and ").append(predicates.get(i));
+        }
+    }
+
+    private Shape shape(boolean count, Dedup mode, List<Order> orderList) {
+        List<ColumnMeta> all = meta.getColumns();
+        int[] signature = new int[5 + (columns == null ? 0 : columns.size()) + conditions.size() * 2 + orderList.size()];
+        int i = 0;
+        signature[i++] = mode.ordinal() << 1 | (count ? 1 : 0);
+        signature[i++] = columns == null ? -1 : columns.size();
+        if (columns != null) {
+            for (ColumnMeta column : columns) {
+                signature[i++] = all.indexOf(column);
+            }
+        }
+        signature[i++] = conditions.size();
+        for (Condition condition : conditions) {
+            signature[i++] = all.indexOf(condition.column) << 5 | condition.op.ordinal() << 1 | (condition.prewhere ? 1 : 0);
+            signature[i++] = condition.values.length;
+        }
+        signature[i++] = orderList.size();
+        for (Order order : orderList) {
+            signature[i++] = all.indexOf(order.column) << 1 | (order.desc ? 1 : 0);
+        }
+        signature[i] = (after != null ? 2 : 0) | (limit != null ? 1 : 0);
+        return new Shape(meta.getEntityClass(), signature);
+    }
+
+    private ColumnMeta column(String columnName) {
+        ColumnMeta column = meta.getColumn(columnName);
+        if (column == null) {
+            throw new IllegalArgumentException(meta.getEntityClass().getName() + " 没有字段 " + columnName);
+        }
+        return column;
+    }
+
+    private Condition condition(boolean prewhere, String columnName, Op op, Object value) {
+        ColumnMeta column = column(columnName);
+        Object[] values;
+        if (op == Op.IS_NULL || op == Op.IS_NOT_NULL) {
+            values = new Object[0];
+        } else if (op == Op.IN || op == Op.NOT_IN) {
+            values = toArray(value);
+            if (values.length == 0) {
+                throw new IllegalArgumentException(columnName + " " + op.sql + " 的取值为空");
+            }
+        } else {
+            values = new Object[]{value};
+        }
+        for (Object v : values) {
+            if (op == Op.LIKE && !(v instanceof CharSequence)) {
+                throw new IllegalArgumentException(columnName + " like 的取值必须是字符串");
+            }
+            checkType(column, v);
+        }
+        return new Condition(column, op, values, prewhere);
+    }
+
+    private static Object[] toArray(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).toArray();
+        }
+        if (value != null && value.getClass().isArray()) {
+            Object[] values = new Object[Array.getLength(value)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Array.get(value, i);
+            }
+            return values;
+        }
+        throw new IllegalArgumentException("in 的取值必须是集合或数组：" + value);
+    }
+
+    private static void checkType(ColumnMeta column, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException(column.getColumnName() + " 的条件取值为null，判断空值请用 IS_NULL");
+        }
+        Class<?> type = ColumnMeta.wrap(column.getJavaType());
+        boolean matched;
+        if (Number.class.isAssignableFrom(type)) {
+            matched = value instanceof Number;
+        } else if (type == String.class) {
+            matched = value instanceof CharSequence;
+        } else if (Date.class.isAssignableFrom(type)) {
+            matched = value instanceof Date || value instanceof CharSequence;// 也可以传 yyyy-MM-dd HH:mm:ss
+        } else if (type == Boolean.class) {
+            matched = value instanceof Boolean || value instanceof Number;
+        } else {
+            matched = true;
+        }
+        if (!matched) {
+            throw new IllegalArgumentException(column.getColumnName() + "（" + type.getSimpleName() + "）的条件取值类型不匹配："
+                    + value.getClass().getName());
+        }
+    }
+
+    /**
+     * 排序列
+     */
+    public static final class Order {
+        private final ColumnMeta column;
+        private final boolean desc;
+
+        Order(ColumnMeta column, boolean desc) {
+            this.column = column;
+            this.desc = desc;
+        }
+
+        public ColumnMeta getColumn() {
+            return column;
+        }
+
+        public boolean isDesc() {
+            return desc;
+        }
+    }
+
+    private static final class Condition {
+        private final ColumnMeta column;
+        private final Op op;
+        private final Object[] values;
+        private final boolean prewhere;
+
+        Condition(ColumnMeta column, Op op, Object[] values, boolean prewhere) {
+            this.column = column;
+            this.op = op;
+            this.values = values;
+            this.prewhere = prewhere;
+        }
+    }
+
+    /**
+     * 查询形状：决定SQL文本的全部信息，不含条件取值
+     */
+    private static final class Shape {
+        private final Class<?> entityClass;
+        private final int[] signature;
+        private final int hash;
+
+        Shape(Class<?> entityClass, int[] signature) {
+            this.entityClass = entityClass;
+            this.signature = signature;
+            this.hash = 31 * entityClass.hashCode() + Arrays.hashCode(signature);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Shape)) {
+                return false;
+            }
+            Shape shape = (Shape) o;
+            return entityClass == shape.entityClass && Arrays.equals(signature, shape.signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.yc.clickhouse.mapping;
+
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RowBinary行到实体的解码器，与 {@link EntityRowBinaryWriter} 相对：每列的解码器和属性setter按响应头部确定一次，
+ * 之后每行按小端字节直接解码赋值，不经过驱动的文本解析。按（实体类，列布局）缓存
+ */
+public final class EntityRowBinaryReader<T> {
+
+    private static final Map<Class<?>, Map<String, EntityRowBinaryReader<?>>> CACHE = new ConcurrentHashMap<>();
+
+    private final EntityMeta<T> meta;
+    private final RowBinaryColumnReader[] readers;
+    private final ColumnMeta[] targets;// 没有对应@Column属性的列为null，照样解码以跳过
+
+    private EntityRowBinaryReader(EntityMeta<T> meta, RowBinaryHeader header) {
+        this.meta = meta;
+        int columnCount = header.getColumnCount();
+        this.readers = new RowBinaryColumnReader[columnCount];
+        this.targets = new ColumnMeta[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            ColumnMeta column = meta.getColumn(header.getNames()[i]);
+            targets[i] = column;
+            readers[i] = column == null ? RowBinaryColumnReader.forType(header.getTypes()[i])
+                    : RowBinaryColumnReader.forType(header.getTypes()[i], column.getJavaType());
+        }
+    }
+
+    /**
+     * 获取实体类在该列布局下的解码器（缓存）
+     *
+     * @param entityClass
+     * @param header
+     * @return
+     * @throws IllegalArgumentException 有不支持的列类型
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityRowBinaryReader<T> of(Class<T> entityClass, RowBinaryHeader header) {
+        Map<String, EntityRowBinaryReader<?>> byLayout = CACHE.computeIfAbsent(entityClass, k -> new ConcurrentHashMap<>());
+        String layout = header.layoutKey();
+        EntityRowBinaryReader<?> reader = byLayout.get(layout);
+        if (reader == null) {
+            reader = new EntityRowBinaryReader<>(EntityMeta.of(entityClass), header);
+            byLayout.putIfAbsent(layout, reader);
+        }
+        return (EntityRowBinaryReader<T>) reader;
+    }
+
+    /**
+     * 解码头部之后的所有行，读到流结束为止
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public List<T> readAll(ClickHouseRowBinaryInputStream in) throws IOException {
+        List<T> outputList = new ArrayList<>();
+        if (readers.length == 0) {
+            return outputList;
+        }
+        while (true) {
+            Object first;
+            try {
+                first = readers[0].read(in);
+            } catch (EOFException e) {
+                break;// 行的第一个值处结束即没有更多行
+            }
+            T bean = meta.newInstance();
+            assign(bean, 0, first);
+            for (int i = 1; i < readers.length; i++) {
+                assign(bean, i, readers[i].read(in));
+            }
+            outputList.add(bean);
+        }
+        return outputList;
+    }
+
+    private void assign(T bean, int column, Object value) {
+        if (value != null && targets[column] != null) {
+            targets[column].set(bean, value);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.yc.clickhouse.mapping;
+
+import lombok.Getter;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实体到RowBinary行的编码器：插入列取实体@Column属性与表结构的交集，列顺序和编码器只确定一次
+ */
+public class EntityRowBinaryWriter<T> {
+
+    @Getter
+    private final String insertSql;// INSERT INTO table (c1,c2,...)，由驱动追加 FORMAT RowBinary
+    @Getter
+    private final List<String> columnNames;
+    private final ColumnMeta[] columns;
+    private final RowBinaryColumnWriter[] writers;
+
+    /**
+     * @param meta        实体元数据
+     * @param tableName   插入的表
+     * @param columnTypes 表的可插入列 -> clickHouse类型（DESCRIBE TABLE）
+     */
+    public EntityRowBinaryWriter(EntityMeta<T> meta, String tableName, Map<String, String> columnTypes) {
+        List<ColumnMeta> columnList = new ArrayList<>();
+        List<RowBinaryColumnWriter> writerList = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (ColumnMeta column : meta.getColumns()) {
+            String type = columnTypes.get(column.getColumnName());
+            if (type == null) {
+                continue;// 表中没有该列（或是MATERIALIZED/ALIAS列）
+            }
+            columnList.add(column);
+            writerList.add(RowBinaryColumnWriter.forType(type));
+            names.add(column.getColumnName());
+        }
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("no @Column of " + meta.getEntityClass().getName() + " matches table " + tableName);
+        }
+        this.columns = columnList.toArray(new ColumnMeta[0]);
+        this.writers = writerList.toArray(new RowBinaryColumnWriter[0]);
+        this.columnNames = names;
+        this.insertSql = "INSERT INTO " + tableName + " (" + String.join(",", names) + ")";
+    }
+
+    /**
+     * 编码一行
+     *
+     * @param out
+     * @param entity
+     * @return 写入的字节数
+     * @throws IOException
+     */
+    public int write(ClickHouseRowBinaryStream out, T entity) throws IOException {
+        int bytes = 0;
+        for (int i = 0; i < columns.length; i++) {
+            bytes += writers[i].write(out, columns[i].get(entity));
+        }
+        return bytes;
+    }
+
+}
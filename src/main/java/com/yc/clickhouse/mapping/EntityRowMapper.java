@@ -0,0 +1,122 @@
+package com.yc.clickhouse.mapping;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 结果集到实体的行映射器：列序号与属性setter在创建时绑定一次，之后每行只做类型化读取和赋值。
+ * 按（实体类，结果集列布局）缓存，同一条SQL反复执行时直接复用；每个实体类最多缓存 256 种列布局
+ */
+public final class EntityRowMapper<T> {
+
+    private static final int MAX_CACHED_LAYOUTS = 256;
+    private static final Map<Class<?>, Map<String, EntityRowMapper<?>>> CACHE = new ConcurrentHashMap<>();
+
+    private final EntityMeta<T> meta;
+    private final int[] indexes;// 结果集列序号，从1开始
+    private final ColumnReader[] readers;
+    private final ColumnMeta[] targets;
+
+    private EntityRowMapper(EntityMeta<T> meta, ResultSetMetaData metaData) throws SQLException {
+        this.meta = meta;
+        int columnCount = metaData.getColumnCount();
+        List<Integer> indexList = new ArrayList<>(columnCount);
+        List<ColumnMeta> targetList = new ArrayList<>(columnCount);
+        List<ColumnReader> readerList = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            ColumnMeta column = meta.getColumn(metaData.getColumnLabel(i));
+            if (column == null) {
+                continue;// 没有对应@Column属性的列忽略
+            }
+            indexList.add(i);
+            targetList.add(column);
+            readerList.add(ColumnReader.forType(column.getJavaType(), metaData.getColumnType(i)));
+        }
+        this.indexes = indexList.stream().mapToInt(Integer::intValue).toArray();
+        this.targets = targetList.toArray(new ColumnMeta[0]);
+        this.readers = readerList.toArray(new ColumnReader[0]);
+    }
+
+    /**
+     * 获取实体类在该结果集列布局下的映射器（缓存），列布局太多（如拼接的动态列、别名）时超出的不再缓存，每次新建
+     *
+     * @param entityClass
+     * @param metaData
+     * @return
+     * @throws SQLException
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityRowMapper<T> of(Class<T> entityClass, ResultSetMetaData metaData) throws SQLException {
+        Map<String, EntityRowMapper<?>> byLayout = CACHE.computeIfAbsent(entityClass, k -> new ConcurrentHashMap<>());
+        String layout = layoutKey(metaData);
+        EntityRowMapper<?> mapper = byLayout.get(layout);
+        if (mapper == null) {
+            mapper = new EntityRowMapper<>(EntityMeta.of(entityClass), metaData);
+            if (byLayout.size() < MAX_CACHED_LAYOUTS) {
+                EntityRowMapper<?> previous = byLayout.putIfAbsent(layout, mapper);
+                mapper = previous == null ? mapper : previous;
+            }
+        }
+        return (EntityRowMapper<T>) mapper;
+    }
+
+    private static String layoutKey(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        StringBuilder key = new StringBuilder(columnCount * 16);
+        for (int i = 1; i <= columnCount; i++) {
+            key.append(metaData.getColumnLabel(i)).append(':').append(metaData.getColumnType(i)).append(',');
+        }
+        return key.toString();
+    }
+
+    /**
+     * 映射当前行
+     *
+     * @param rs
+     * @return
+     * @throws SQLException
+     */
+    public T mapRow(ResultSet rs) throws SQLException {
+        T bean = meta.newInstance();
+        for (int i = 0; i < indexes.length; i++) {
+            Object value = readers[i].read(rs, indexes[i]);
+            if (value != null) {
+                targets[i].set(bean, value);
+            }
+        }
+        return bean;
+    }
+
+    /**
+     * 映射结果集剩余的所有行
+     *
+     * @param rs
+     * @return
+     * @throws SQLException
+     */
+    public List<T> mapAll(ResultSet rs) throws SQLException {
+        return mapAll(rs, RowFetcher.DIRECT);
+    }
+
+    /**
+     * 映射结果集剩余的所有行，通过 fetcher 取行
+     *
+     * @param rs
+     * @param fetcher
+     * @return
+     * @throws SQLException
+     */
+    public List<T> mapAll(ResultSet rs, RowFetcher fetcher) throws SQLException {
+        List<T> outputList = new ArrayList<>();
+        while (fetcher.next(rs)) {
+            outputList.add(mapRow(rs));
+        }
+        return outputList;
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.yc.clickhouse.mapping;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体级操作的SQL文本（分页、count、按主键修改/删除），每个实体类只构建一次；
+ * 参数全部用 ? 占位，相同操作每次得到同一个SQL字符串，便于语句缓存命中。
+ * 查询列出实体的 @Column 列而不是 select *，宽表上不读取、不传输实体用不到的列
+ */
+@Getter
+public class EntitySql<T> {
+
+    private static final Map<Class<?>, EntitySql<?>> CACHE = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_PROJECTIONS = 256;
+
+    @Getter(AccessLevel.NONE)
+    private final EntityMeta<T> meta;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, String> projectionSql = new ConcurrentHashMap<>();// 列子集 -> select c1,c2 from t
+    private final String selectSql;// select 所有@Column列 from t，实体没有@Column属性时为 select *
+    private final String countSql;// select count(*) as count from t
+    private final String localCountSql;// select count(*) as count from 分片本地表
+    private final String updateByPrimaryKeySql;// alter table t update c1 = ?,c2 = ? where pk = ?，没有主键或除主键外没有@Column列时为null
+    private final List<ColumnMeta> updateColumns;// 修改语句中按顺序绑定的非主键属性
+    private final String deleteByPrimaryKeySql;// alter table t delete where pk = ?，没有主键时为null
+    @Getter(AccessLevel.NONE)
+    private final Map<Integer, String> updateByPrimaryKeysSql = new ConcurrentHashMap<>();// 主键个数 -> SQL
+    @Getter(AccessLevel.NONE)
+    private final Map<Integer, String> deleteByPrimaryKeysSql = new ConcurrentHashMap<>();
+
+    /**
+     * 获取实体类的SQL文本（缓存）
+     *
+     * @param entityClass
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntitySql<T> of(Class<T> entityClass) {
+        return (EntitySql<T>) CACHE.computeIfAbsent(entityClass, clazz -> new EntitySql<>(EntityMeta.of(clazz)));
+    }
+
+    private EntitySql(EntityMeta<T> meta) {
+        this.meta = meta;
+        String tableName = meta.getTableName();
+        this.selectSql = "select " + columnList(meta.getColumns()) + " from " + tableName;
+        this.countSql = "select count(*) as count from " + tableName;
+        this.localCountSql = "select count(*) as count from " + meta.getLocalTableName();
+
+        ColumnMeta primaryKey = meta.getPrimaryKey();
+        List<ColumnMeta> columns = new ArrayList<>();
+        StringBuilder update = new StringBuilder("alter table ").append(tableName).append(" update ");
+        for (ColumnMeta column : meta.getColumns()) {
+            if (column != primaryKey) {
+                update.append(column.getColumnName()).append(" = ?,");
+                columns.add(column);
+            }
+        }
+        update.deleteCharAt(update.length() - 1);
+        this.updateColumns = Collections.unmodifiableList(columns);
+        if (primaryKey == null) {
+            this.updateByPrimaryKeySql = null;
+            this.deleteByPrimaryKeySql = null;
+        } else {
+            this.updateByPrimaryKeySql = columns.isEmpty() ? null
+                    : update.append(" where ").append(primaryKey.getColumnName()).append(" = ?").toString();
+            this.deleteByPrimaryKeySql = "alter table " + tableName + " delete where " + primaryKey.getColumnName() + " = ?";
+        }
+    }
+
+    /**
+     * 按多个主键修改为相同的值：alter table t update c1 = ?,c2 = ? where pk in (?,...)，
+     * 非主键属性按 updateColumns 顺序绑定，之后是各主键
+     *
+     * @param keyCount 主键个数
+     * @return 没有主键或除主键外没有@Column列时为null
+     */
+    public String updateByPrimaryKeysSql(int keyCount) {
+        if (updateByPrimaryKeySql == null) {
+            return null;
+        }
+        return updateByPrimaryKeysSql.computeIfAbsent(keyCount, count -> inList(
+                updateByPrimaryKeySql.substring(0, updateByPrimaryKeySql.lastIndexOf(" = ?")), count));
+    }
+
+    /**
+     * 按多个主键删除：alter table t delete where pk in (?,...)
+     *
+     * @param keyCount 主键个数
+     * @return 没有主键时为null
+     */
+    public String deleteByPrimaryKeysSql(int keyCount) {
+        if (deleteByPrimaryKeySql == null) {
+            return null;
+        }
+        return deleteByPrimaryKeysSql.computeIfAbsent(keyCount, count -> inList(
+                deleteByPrimaryKeySql.substring(0, deleteByPrimaryKeySql.lastIndexOf(" = ?")), count));
+    }
+
+    private static String inList(String prefix, int count) {
+        StringBuilder sql = new StringBuilder(prefix.length() + 6 + count * 2).append(prefix).append(" in (");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * 分页SQL：select 所有@Column列 from t [sqlWhere] limit ?,?，offset 和 size 作为最后两个参数绑定
+     *
+     * @param sqlWhere 条件及排序，可以为null
+     * @return
+     */
+    public String pageSql(String sqlWhere) {
+        return sqlWhere == null ? selectSql + " limit ?,?" : selectSql + " " + sqlWhere + " limit ?,?";
+    }
+
+    /**
+     * 只查询部分列的分页SQL：select c1,c2 from t [sqlWhere] limit ?,?
+     *
+     * @param sqlWhere 条件及排序，可以为null
+     * @param columnNames 表字段名，为空时查询所有@Column列
+     * @return
+     * @throws IllegalArgumentException 列名不属于实体
+     */
+    public String pageSql(String sqlWhere, String... columnNames) {
+        String select = selectSql(columnNames);
+        return sqlWhere == null ? select + " limit ?,?" : select + " " + sqlWhere + " limit ?,?";
+    }
+
+    /**
+     * 只查询部分列：select c1,c2 from t，相同的列子集得到同一个字符串
+     *
+     * @param columnNames 表字段名，为空时查询所有@Column列
+     * @return
+     * @throws IllegalArgumentException 列名不属于实体
+     */
+    public String selectSql(String... columnNames) {
+        if (columnNames == null || columnNames.length == 0) {
+            return selectSql;
+        }
+        String key = String.join(",", columnNames);
+        String sql = projectionSql.get(key);
+        if (sql != null) {
+            return sql;
+        }
+        List<ColumnMeta> columns = new ArrayList<>(columnNames.length);
+        for (String columnName : columnNames) {
+            ColumnMeta column = meta.getColumn(columnName);
+            if (column == null) {
+                throw new IllegalArgumentException(meta.getEntityClass().getName() + " 没有字段 " + columnName);
+            }
+            columns.add(column);
+        }
+        sql = "select " + columnList(columns) + " from " + meta.getTableName();
+        if (projectionSql.size() < MAX_CACHED_PROJECTIONS) {
+            projectionSql.putIfAbsent(key, sql);
+        }
+        return sql;
+    }
+
+    private static String columnList(List<ColumnMeta> columns) {
+        if (columns.isEmpty()) {
+            return "*";
+        }
+        StringBuilder list = new StringBuilder();
+        for (ColumnMeta column : columns) {
+            list.append(list.length() == 0 ? "" : ",").append(column.getColumnName());
+        }
+        return list.toString();
+    }
+
+    /**
+     * count SQL：select count(*) as count from t [sqlWhere]
+     *
+     * @param sqlWhere 条件，可以为null
+     * @return
+     */
+    public String countSql(String sqlWhere) {
+        return sqlWhere == null ? countSql : countSql + " " + sqlWhere;
+    }
+
+    /**
+     * 分片本地表的 count SQL：select count(*) as count from 本地表 [sqlWhere]
+     *
+     * @param sqlWhere 条件，可以为null
+     * @return
+     */
+    public String localCountSql(String sqlWhere) {
+        return sqlWhere == null ? localCountSql : localCountSql + " " + sqlWhere;
+    }
+}
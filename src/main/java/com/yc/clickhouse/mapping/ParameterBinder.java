@@ -0,0 +1,138 @@
+package com.yc.clickhouse.mapping;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * 按取值类型直接调用 ps.setInt/setLong/setString 等绑定参数，与 {@link ColumnReader} 相对；
+ * 每种类型的绑定方式只确定一次（按类缓存），不再对每个参数走一遍 instanceof 判断链。
+ * <p>
+ * 批量插入时每列按第一个非null取值（以及表结构中的列类型）确定一次绑定器，整批复用；
+ * 之后某行取值为null或类型不同时，该值退回按实际类型绑定
+ */
+@FunctionalInterface
+public interface ParameterBinder {
+
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException;
+
+    /**
+     * 按取值的实际类型绑定一个参数，null 绑定为 NULL
+     *
+     * @param ps
+     * @param index 从1开始
+     * @param value
+     * @throws SQLException
+     */
+    static void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+        if (value == null) {
+            ps.setObject(index, null);
+        } else {
+            ParameterBinders.BY_CLASS.get(value.getClass()).bind(ps, index, value);
+        }
+    }
+
+    /**
+     * 按一列的第一个非null取值确定绑定器
+     *
+     * @param sample 为null时每个值按实际类型绑定
+     * @return
+     */
+    static ParameterBinder forValue(Object sample) {
+        if (sample == null) {
+            return ParameterBinder::bindValue;
+        }
+        return exact(sample.getClass(), ParameterBinders.BY_CLASS.get(sample.getClass()));
+    }
+
+    /**
+     * 按表结构中的列类型和第一个非null取值确定绑定器：java.util.Date 写入 DateTime 列时绑定为 epoch 秒，
+     * 写入 Date 列时绑定为 yyyy-MM-dd，不依赖驱动对 java.util.Date 的字符串化；其余同 {@link #forValue(Object)}
+     *
+     * @param type DESCRIBE TABLE 返回的类型，如 Nullable(DateTime)，未知时传null
+     * @param sample
+     * @return
+     */
+    static ParameterBinder forColumn(String type, Object sample) {
+        if (type != null && sample != null && sample.getClass() == Date.class) {
+            String t = ParameterBinders.unwrap(type);
+            if (t.startsWith("DateTime") && !t.startsWith("DateTime64")) {
+                return exact(Date.class, (ps, i, v) -> ps.setLong(i, ((Date) v).getTime() / 1000));
+            }
+            if (t.equals("Date") || t.equals("Date32")) {
+                return exact(Date.class, (ps, i, v) -> ps.setDate(i, new java.sql.Date(((Date) v).getTime())));
+            }
+        }
+        return forValue(sample);
+    }
+
+    /**
+     * 取值恰好是 type 类型时用 binder 绑定，否则按实际类型绑定
+     */
+    static ParameterBinder exact(Class<?> type, ParameterBinder binder) {
+        return (ps, index, value) -> {
+            if (value != null && value.getClass() == type) {
+                binder.bind(ps, index, value);
+            } else {
+                bindValue(ps, index, value);
+            }
+        };
+    }
+}
+
+/**
+ * 按类型缓存的绑定器
+ */
+final class ParameterBinders {
+
+    static final ClassValue<ParameterBinder> BY_CLASS = new ClassValue<ParameterBinder>() {
+        @Override
+        protected ParameterBinder computeValue(Class<?> type) {
+            return binderFor(type);
+        }
+    };
+
+    private ParameterBinders() {
+    }
+
+    private static ParameterBinder binderFor(Class<?> type) {
+        if (type == Integer.class) {
+            return (ps, i, v) -> ps.setInt(i, (Integer) v);
+        } else if (type == Long.class) {
+            return (ps, i, v) -> ps.setLong(i, (Long) v);
+        } else if (type == String.class) {
+            return (ps, i, v) -> ps.setString(i, (String) v);
+        } else if (type == Double.class) {
+            return (ps, i, v) -> ps.setDouble(i, (Double) v);
+        } else if (type == BigDecimal.class) {
+            return (ps, i, v) -> ps.setBigDecimal(i, (BigDecimal) v);
+        } else if (type == Float.class) {
+            return (ps, i, v) -> ps.setFloat(i, (Float) v);
+        } else if (type == Short.class) {
+            return (ps, i, v) -> ps.setShort(i, (Short) v);
+        } else if (type == Byte.class) {
+            return (ps, i, v) -> ps.setByte(i, (Byte) v);
+        } else if (type == Boolean.class) {
+            return (ps, i, v) -> ps.setBoolean(i, (Boolean) v);
+        } else if (type == Date.class) {
+            // 驱动 setObject 对 java.util.Date 只做 toString，按时间戳绑定为 yyyy-MM-dd HH:mm:ss
+            return (ps, i, v) -> ps.setTimestamp(i, new Timestamp(((Date) v).getTime()));
+        } else if (Enum.class.isAssignableFrom(type)) {
+            return (ps, i, v) -> ps.setString(i, ((Enum<?>) v).name());// 与 RowBinary 插入一致，按名称
+        }
+        return PreparedStatement::setObject;
+    }
+
+    /**
+     * 去掉 Nullable(...) / LowCardinality(...) 包装
+     */
+    static String unwrap(String type) {
+        String t = type.trim();
+        while (t.startsWith("Nullable(") || t.startsWith("LowCardinality(")) {
+            t = t.substring(t.indexOf('(') + 1, t.length() - 1).trim();
+        }
+        return t;
+    }
+}
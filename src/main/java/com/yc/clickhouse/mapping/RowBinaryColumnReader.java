@@ -0,0 +1,257 @@
+package com.yc.clickhouse.mapping;
+
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按clickHouse列类型从RowBinary中解码一个值，与 {@link RowBinaryColumnWriter} 相对；
+ * 数值直接按小端字节读取，不经过文本解析
+ */
+@FunctionalInterface
+public interface RowBinaryColumnReader {
+
+    Object read(ClickHouseRowBinaryInputStream in) throws IOException;
+
+    /**
+     * 根据clickHouse列类型（RowBinaryWithNamesAndTypes 头部的类型，如 UInt16、Nullable(String)）创建解码器，
+     * 取值类型：Int8 -> Byte，UInt8/Int16 -> Short，UInt16/Int32 -> Integer，UInt32/Int64 -> Long，UInt64 -> BigInteger，
+     * Float32/Float64 -> Float/Double，Decimal -> BigDecimal，Date -> java.sql.Date，DateTime/DateTime64 -> Timestamp，
+     * String/FixedString/Enum -> String，UUID -> UUID
+     *
+     * @param type
+     * @return
+     * @throws IllegalArgumentException 不支持的类型（如 Array、Tuple），这类查询请走 ResultSet 映射
+     */
+    static RowBinaryColumnReader forType(String type) {
+        String t = type.trim();
+        if (t.startsWith("Nullable(")) {
+            final RowBinaryColumnReader inner = forType(t.substring("Nullable(".length(), t.length() - 1));
+            return in -> in.readIsNull() ? null : inner.read(in);
+        }
+        if (t.startsWith("LowCardinality(")) {
+            // RowBinary中LowCardinality按内部类型编码
+            return forType(t.substring("LowCardinality(".length(), t.length() - 1));
+        }
+        if (t.startsWith("FixedString(")) {
+            final int length = Integer.parseInt(t.substring("FixedString(".length(), t.length() - 1).trim());
+            return in -> in.readFixedString(length);
+        }
+        if (t.startsWith("DateTime64")) {
+            return dateTime64Reader(t);
+        }
+        if (t.startsWith("DateTime")) {
+            // DateTime / DateTime('Asia/Shanghai')：UInt32 秒
+            return in -> new Timestamp(in.readUInt32() * 1000);
+        }
+        if (t.startsWith("Decimal")) {
+            return decimalReader(t);
+        }
+        if (t.startsWith("Enum8(") || t.startsWith("Enum16(")) {
+            return enumReader(t);
+        }
+        switch (t) {
+            case "Int8":
+                return ClickHouseRowBinaryInputStream::readInt8;
+            case "UInt8":
+                return ClickHouseRowBinaryInputStream::readUInt8;
+            case "Int16":
+                return ClickHouseRowBinaryInputStream::readInt16;
+            case "UInt16":
+                return ClickHouseRowBinaryInputStream::readUInt16;
+            case "Int32":
+                return ClickHouseRowBinaryInputStream::readInt32;
+            case "UInt32":
+                return ClickHouseRowBinaryInputStream::readUInt32;
+            case "Int64":
+                return ClickHouseRowBinaryInputStream::readInt64;
+            case "UInt64":
+                return ClickHouseRowBinaryInputStream::readUInt64;
+            case "Float32":
+                return ClickHouseRowBinaryInputStream::readFloat32;
+            case "Float64":
+                return ClickHouseRowBinaryInputStream::readFloat64;
+            case "String":
+                return ClickHouseRowBinaryInputStream::readString;
+            case "Date":
+                return ClickHouseRowBinaryInputStream::readDate;
+            case "UUID":
+                return ClickHouseRowBinaryInputStream::readUUID;
+            default:
+                throw new IllegalArgumentException("unsupported RowBinary column type: " + type);
+        }
+    }
+
+    /**
+     * 解码并转换成实体属性类型，转换方式在创建时确定；UInt64 写入 Long 属性时直接按 long 读取
+     *
+     * @param type     clickHouse列类型
+     * @param javaType 实体属性类型
+     * @return
+     */
+    static RowBinaryColumnReader forType(String type, Class<?> javaType) {
+        String t = ParameterBinders.unwrap(type);
+        if (t.equals("UInt64") && (javaType == Long.class || javaType == long.class)) {
+            if (type.contains("Nullable(")) {
+                return in -> in.readIsNull() ? null : in.readUInt64AsLong();
+            }
+            return ClickHouseRowBinaryInputStream::readUInt64AsLong;
+        }
+        final RowBinaryColumnReader reader = forType(type);
+        final Class<?> target = RowBinaryValues.wrap(javaType);
+        if (target == Object.class) {
+            return reader;
+        }
+        return in -> {
+            Object value = reader.read(in);
+            return value == null || target.isInstance(value) ? value : RowBinaryValues.convert(value, target);
+        };
+    }
+
+    /**
+     * DateTime64(P[, 'tz'])：Int64，单位 10^-P 秒
+     */
+    static RowBinaryColumnReader dateTime64Reader(String t) {
+        String args = t.substring(t.indexOf('(') + 1, t.lastIndexOf(')'));
+        final int precision = Integer.parseInt(args.split(",")[0].trim());
+        final long unit = BigInteger.TEN.pow(precision).longValue();
+        final int nanosPerTick = BigInteger.TEN.pow(9 - precision).intValue();
+        return in -> {
+            long ticks = in.readInt64();
+            Timestamp value = new Timestamp(Math.floorDiv(ticks, unit) * 1000);
+            value.setNanos((int) Math.floorMod(ticks, unit) * nanosPerTick);
+            return value;
+        };
+    }
+
+    /**
+     * Decimal(P, S) / Decimal32(S) / Decimal64(S) / Decimal128(S)
+     */
+    static RowBinaryColumnReader decimalReader(String t) {
+        String args = t.substring(t.indexOf('(') + 1, t.lastIndexOf(')'));
+        final int precision;
+        final int scale;
+        if (t.startsWith("Decimal(")) {
+            String[] ps = args.split(",");
+            precision = Integer.parseInt(ps[0].trim());
+            scale = Integer.parseInt(ps[1].trim());
+        } else {
+            scale = Integer.parseInt(args.trim());
+            precision = t.startsWith("Decimal32") ? 9 : t.startsWith("Decimal64") ? 18 : 38;
+        }
+        if (precision <= 9) {
+            return in -> in.readDecimal32(scale);
+        }
+        if (precision <= 18) {
+            return in -> in.readDecimal64(scale);
+        }
+        return in -> in.readDecimal128(scale);
+    }
+
+    /**
+     * Enum8('a' = 1, 'b' = 2) / Enum16(...)：按编号读取，返回名称
+     */
+    static RowBinaryColumnReader enumReader(String t) {
+        final Map<Integer, String> names = new HashMap<>();
+        Matcher matcher = RowBinaryValues.ENUM_ENTRY.matcher(t);
+        while (matcher.find()) {
+            names.put(Integer.parseInt(matcher.group(2)), matcher.group(1).replace("\\'", "'"));
+        }
+        if (t.startsWith("Enum8(")) {
+            return in -> names.get((int) in.readInt8());
+        }
+        return in -> names.get((int) in.readInt16());
+    }
+}
+
+/**
+ * 解码值到实体属性类型的转换
+ */
+final class RowBinaryValues {
+
+    static final Pattern ENUM_ENTRY = Pattern.compile("'((?:[^'\\\\]|\\\\.)*)'\\s*=\\s*(-?\\d+)");
+
+    private RowBinaryValues() {
+    }
+
+    static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        }
+        return Character.class;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Object convert(Object value, Class<?> target) {
+        if (value instanceof Number) {
+            Number n = (Number) value;
+            if (target == Integer.class) {
+                return n.intValue();
+            } else if (target == Long.class) {
+                return n.longValue();
+            } else if (target == Double.class) {
+                return n.doubleValue();
+            } else if (target == Float.class) {
+                return n.floatValue();
+            } else if (target == Short.class) {
+                return n.shortValue();
+            } else if (target == Byte.class) {
+                return n.byteValue();
+            } else if (target == Boolean.class) {
+                return n.intValue() != 0;
+            } else if (target == BigDecimal.class) {
+                return new BigDecimal(n.toString());
+            } else if (target == BigInteger.class) {
+                return new BigInteger(n.toString());
+            }
+        } else if (value instanceof Date) {
+            Date date = (Date) value;
+            if (target == LocalDate.class) {
+                return value instanceof java.sql.Date ? ((java.sql.Date) value).toLocalDate()
+                        : date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            } else if (target == LocalDateTime.class) {
+                return value instanceof Timestamp ? ((Timestamp) value).toLocalDateTime()
+                        : LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+            } else if (target == java.sql.Date.class) {
+                return new java.sql.Date(date.getTime());
+            } else if (target == Timestamp.class) {
+                return new Timestamp(date.getTime());
+            } else if (target == Long.class) {
+                return date.getTime();
+            }
+        } else if (value instanceof String && target.isEnum()) {
+            return Enum.valueOf((Class<Enum>) target, (String) value);
+        }
+        if (target == String.class) {
+            return value.toString();
+        }
+        return value;// 无法转换时原样赋值，由setter报错
+    }
+}
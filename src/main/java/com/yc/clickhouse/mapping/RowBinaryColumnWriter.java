@@ -0,0 +1,313 @@
+package com.yc.clickhouse.mapping;
+
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+
+/**
+ * 按clickHouse列类型把一个值编码为RowBinary格式；非Nullable列传入null时写该类型的默认值，
+ * 返回写入的字节数（用于统计发送量）
+ */
+@FunctionalInterface
+public interface RowBinaryColumnWriter {
+
+    int write(ClickHouseRowBinaryStream out, Object value) throws IOException;
+
+    /**
+     * 根据clickHouse列类型（DESCRIBE TABLE返回的type，如 UInt16、Nullable(String)）创建编码器
+     *
+     * @param type
+     * @return
+     * @throws IllegalArgumentException 不支持的类型
+     */
+    static RowBinaryColumnWriter forType(String type) {
+        String t = type.trim();
+        if (t.startsWith("Nullable(")) {
+            final RowBinaryColumnWriter inner = forType(t.substring("Nullable(".length(), t.length() - 1));
+            return (out, v) -> {
+                out.markNextNullable(v == null);
+                return v == null ? 1 : 1 + inner.write(out, v);
+            };
+        }
+        if (t.startsWith("LowCardinality(")) {
+            // RowBinary中LowCardinality按内部类型编码
+            return forType(t.substring("LowCardinality(".length(), t.length() - 1));
+        }
+        if (t.startsWith("FixedString(")) {
+            final int length = Integer.parseInt(t.substring("FixedString(".length(), t.length() - 1).trim());
+            return (out, v) -> {
+                byte[] bytes = new byte[length];
+                if (v != null) {
+                    byte[] src = v.toString().getBytes(StandardCharsets.UTF_8);
+                    System.arraycopy(src, 0, bytes, 0, Math.min(src.length, length));
+                }
+                out.writeBytes(bytes);
+                return length;
+            };
+        }
+        if (t.startsWith("DateTime64")) {
+            return dateTime64Writer(t);
+        }
+        if (t.startsWith("DateTime")) {
+            // DateTime / DateTime('Asia/Shanghai')
+            return (out, v) -> {
+                if (v == null) {
+                    out.writeUInt32(0);
+                } else {
+                    out.writeDateTime(toDate(v));
+                }
+                return 4;
+            };
+        }
+        if (t.startsWith("Decimal")) {
+            return decimalWriter(t);
+        }
+        if (t.startsWith("Enum8(") || t.startsWith("Enum16(")) {
+            return enumWriter(t);
+        }
+        switch (t) {
+            case "UInt8":
+                return (out, v) -> {
+                    out.writeUInt8(v instanceof Boolean ? (((Boolean) v) ? 1 : 0) : toNumber(v).intValue());
+                    return 1;
+                };
+            case "Int8":
+                return (out, v) -> {
+                    out.writeInt8(toNumber(v).intValue());
+                    return 1;
+                };
+            case "UInt16":
+                return (out, v) -> {
+                    out.writeUInt16(toNumber(v).intValue());
+                    return 2;
+                };
+            case "Int16":
+                return (out, v) -> {
+                    out.writeInt16(toNumber(v).intValue());
+                    return 2;
+                };
+            case "UInt32":
+                return (out, v) -> {
+                    out.writeUInt32(toNumber(v).longValue());
+                    return 4;
+                };
+            case "Int32":
+                return (out, v) -> {
+                    out.writeInt32(toNumber(v).intValue());
+                    return 4;
+                };
+            case "UInt64":
+                return (out, v) -> {
+                    out.writeUInt64(toNumber(v).longValue());
+                    return 8;
+                };
+            case "Int64":
+                return (out, v) -> {
+                    out.writeInt64(toNumber(v).longValue());
+                    return 8;
+                };
+            case "Float32":
+                return (out, v) -> {
+                    out.writeFloat32(toNumber(v).floatValue());
+                    return 4;
+                };
+            case "Float64":
+                return (out, v) -> {
+                    out.writeFloat64(toNumber(v).doubleValue());
+                    return 8;
+                };
+            case "String":
+                return (out, v) -> {
+                    // 与 writeString 相同的编码，顺便得到字节数
+                    byte[] bytes = (v == null ? "" : (v instanceof Enum ? ((Enum<?>) v).name() : v.toString())).getBytes(StandardCharsets.UTF_8);
+                    out.writeUnsignedLeb128(bytes.length);
+                    out.writeBytes(bytes);
+                    return leb128Size(bytes.length) + bytes.length;
+                };
+            case "Date":
+                return (out, v) -> {
+                    if (v == null) {
+                        out.writeUInt16(0);
+                    } else {
+                        out.writeDate(toDate(v));
+                    }
+                    return 2;
+                };
+            case "UUID":
+                return (out, v) -> {
+                    out.writeUUID(v == null ? new UUID(0, 0) : (v instanceof UUID ? (UUID) v : UUID.fromString(v.toString())));
+                    return 16;
+                };
+            default:
+                throw new IllegalArgumentException("unsupported RowBinary column type: " + type);
+        }
+    }
+
+    /**
+     * DateTime64(P) / DateTime64(P, 'Asia/Shanghai')：Int64，自1970年起的 10^-P 秒数
+     */
+    static RowBinaryColumnWriter dateTime64Writer(String t) {
+        String args = t.substring(t.indexOf('(') + 1, t.lastIndexOf(')'));
+        final int precision = Integer.parseInt(args.split(",")[0].trim());
+        final long unit = BigInteger.TEN.pow(precision).longValue();
+        final int nanosPerTick = BigInteger.TEN.pow(9 - precision).intValue();
+        return (out, v) -> {
+            if (v == null) {
+                out.writeInt64(0);
+            } else {
+                Instant instant = toInstant(v);
+                out.writeInt64(instant.getEpochSecond() * unit + instant.getNano() / nanosPerTick);
+            }
+            return 8;
+        };
+    }
+
+    /**
+     * Enum8('a' = 1, 'b' = 2) / Enum16(...)：按名称（字符串或Java枚举的name()）或数值写入；
+     * 非Nullable列传入null时写最小的枚举值，与服务端默认值相同
+     */
+    static RowBinaryColumnWriter enumWriter(String t) {
+        final Map<String, Integer> values = new HashMap<>();
+        Matcher matcher = RowBinaryValues.ENUM_ENTRY.matcher(t);
+        int min = Integer.MAX_VALUE;
+        while (matcher.find()) {
+            int value = Integer.parseInt(matcher.group(2));
+            values.put(matcher.group(1).replace("\\'", "'"), value);
+            min = Math.min(min, value);
+        }
+        final int defaultValue = min;
+        final boolean enum8 = t.startsWith("Enum8(");
+        return (out, v) -> {
+            int value;
+            if (v == null) {
+                value = defaultValue;
+            } else if (v instanceof Number) {
+                value = ((Number) v).intValue();
+            } else {
+                String name = v instanceof Enum ? ((Enum<?>) v).name() : v.toString();
+                Integer code = values.get(name);
+                if (code == null) {
+                    throw new IllegalArgumentException("unknown value '" + name + "' for " + t);
+                }
+                value = code;
+            }
+            if (enum8) {
+                out.writeInt8(value);
+                return 1;
+            }
+            out.writeInt16(value);
+            return 2;
+        };
+    }
+
+    /**
+     * Decimal(P, S) / Decimal32(S) / Decimal64(S) / Decimal128(S)
+     */
+    static RowBinaryColumnWriter decimalWriter(String t) {
+        String args = t.substring(t.indexOf('(') + 1, t.lastIndexOf(')'));
+        final int precision;
+        final int scale;
+        if (t.startsWith("Decimal(")) {
+            String[] ps = args.split(",");
+            precision = Integer.parseInt(ps[0].trim());
+            scale = Integer.parseInt(ps[1].trim());
+        } else {
+            scale = Integer.parseInt(args.trim());
+            precision = t.startsWith("Decimal32") ? 9 : t.startsWith("Decimal64") ? 18 : 38;
+        }
+        if (precision <= 9) {
+            return (out, v) -> {
+                out.writeDecimal32(toDecimal(v), scale);
+                return 4;
+            };
+        }
+        if (precision <= 18) {
+            return (out, v) -> {
+                out.writeDecimal64(toDecimal(v), scale);
+                return 8;
+            };
+        }
+        return (out, v) -> {
+            out.writeDecimal128(toDecimal(v), scale);
+            return 16;
+        };
+    }
+
+    /**
+     * 无符号LEB128编码的字节数
+     */
+    static int leb128Size(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    static Number toNumber(Object v) {
+        if (v == null) {
+            return 0;
+        }
+        if (v instanceof Number) {
+            return (Number) v;
+        }
+        if (v instanceof Boolean) {
+            return ((Boolean) v) ? 1 : 0;
+        }
+        String s = v.toString();
+        return s.indexOf('.') >= 0 ? (Number) Double.valueOf(s) : (Number) new BigInteger(s);
+    }
+
+    static BigDecimal toDecimal(Object v) {
+        if (v == null) {
+            return BigDecimal.ZERO;
+        }
+        if (v instanceof BigDecimal) {
+            return (BigDecimal) v;
+        }
+        return new BigDecimal(v.toString());
+    }
+
+    static Instant toInstant(Object v) {
+        if (v instanceof Timestamp) {
+            return ((Timestamp) v).toInstant();// 保留纳秒
+        }
+        if (v instanceof Instant) {
+            return (Instant) v;
+        }
+        if (v instanceof LocalDateTime) {
+            return ((LocalDateTime) v).atZone(ZoneId.systemDefault()).toInstant();
+        }
+        return Instant.ofEpochMilli(toDate(v).getTime());
+    }
+
+    static Date toDate(Object v) {
+        if (v instanceof Date) {
+            return (Date) v;
+        }
+        if (v instanceof LocalDate) {
+            return java.sql.Date.valueOf((LocalDate) v);
+        }
+        if (v instanceof LocalDateTime) {
+            return Date.from(((LocalDateTime) v).atZone(ZoneId.systemDefault()).toInstant());
+        }
+        if (v instanceof Number) {
+            return new Date(((Number) v).longValue());
+        }
+        String s = v.toString();
+        return s.length() <= 10 ? java.sql.Date.valueOf(s) : java.sql.Timestamp.valueOf(s);
+    }
+}
@@ -0,0 +1,70 @@
+package com.yc.clickhouse.mapping;
+
+import lombok.Getter;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * RowBinaryWithNamesAndTypes 响应的头部：列数（LEB128）、各列名、各列类型，之后是逐行的RowBinary数据
+ */
+@Getter
+public final class RowBinaryHeader {
+
+    /**
+     * 查询末尾追加的格式子句。驱动只认识自己枚举里的格式名，SQL不以这些名称结尾时会再追加 FORMAT RowBinary，
+     * 所以在格式子句后加一行以 RowBinary 结尾的注释，服务端忽略注释，驱动也不再追加
+     */
+    public static final String FORMAT_CLAUSE = "\nFORMAT RowBinaryWithNamesAndTypes\n-- RowBinary";
+
+    private final String[] names;
+    private final String[] types;
+
+    private RowBinaryHeader(String[] names, String[] types) {
+        this.names = names;
+        this.types = types;
+    }
+
+    /**
+     * 读取头部，响应体为空时返回没有列的头部
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static RowBinaryHeader read(ClickHouseRowBinaryInputStream in) throws IOException {
+        int columnCount;
+        try {
+            columnCount = in.readUnsignedLeb128();
+        } catch (EOFException e) {
+            return new RowBinaryHeader(new String[0], new String[0]);
+        }
+        String[] names = new String[columnCount];
+        String[] types = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = in.readString();
+        }
+        for (int i = 0; i < columnCount; i++) {
+            types[i] = in.readString();
+        }
+        return new RowBinaryHeader(names, types);
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    /**
+     * 列布局（列名:类型,...），用于缓存按布局创建的解码器
+     *
+     * @return
+     */
+    public String layoutKey() {
+        StringBuilder key = new StringBuilder(names.length * 16);
+        for (int i = 0; i < names.length; i++) {
+            key.append(names[i]).append(':').append(types[i]).append(',');
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package com.yc.clickhouse.mapping;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 结果集的行游标（flyweight）：所有行复用同一个 Object[] 缓冲，
+ * 只在当前回调内有效，需要保留时调用 toArray() 复制
+ */
+public final class RowCursor {
+
+    private final String[] columnNames;
+    private final Map<String, Integer> columnIndexes;
+    private final Object[] values;
+    private long rowNum = -1;
+
+    private RowCursor(String[] columnNames) {
+        this.columnNames = columnNames;
+        this.values = new Object[columnNames.length];
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < columnNames.length; i++) {
+            indexes.putIfAbsent(columnNames[i].toLowerCase(Locale.ROOT), i);
+        }
+        this.columnIndexes = indexes;
+    }
+
+    /**
+     * 按结果集元数据创建游标，列数在读取前确定
+     *
+     * @param metaData
+     * @return
+     * @throws SQLException
+     */
+    public static RowCursor of(ResultSetMetaData metaData) throws SQLException {
+        String[] names = new String[metaData.getColumnCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = metaData.getColumnLabel(i + 1);
+        }
+        return new RowCursor(names);
+    }
+
+    /**
+     * 把结果集当前行读入缓冲
+     *
+     * @param rs
+     * @throws SQLException
+     */
+    public void read(ResultSet rs) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rs.getObject(i + 1);
+        }
+        rowNum++;
+    }
+
+    /**
+     * 当前行号，从0开始
+     */
+    public long getRowNum() {
+        return rowNum;
+    }
+
+    public int getColumnCount() {
+        return values.length;
+    }
+
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    /**
+     * 列号从0开始
+     */
+    public Object get(int column) {
+        return values[column];
+    }
+
+    /**
+     * 列名忽略大小写
+     */
+    public Object get(String columnName) {
+        Integer index = columnIndexes.get(columnName.toLowerCase(Locale.ROOT));
+        if (index == null) {
+            throw new IllegalArgumentException("no column " + columnName);
+        }
+        return values[index];
+    }
+
+    /**
+     * 复制当前行
+     */
+    public Object[] toArray() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
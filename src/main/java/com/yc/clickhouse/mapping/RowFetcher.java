@@ -0,0 +1,18 @@
+package com.yc.clickhouse.mapping;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 结果集取下一行；映射循环通过它调用 next()，便于统计取数与映射各自的耗时
+ */
+@FunctionalInterface
+public interface RowFetcher {
+
+    /**
+     * 直接调用 ResultSet.next()
+     */
+    RowFetcher DIRECT = ResultSet::next;
+
+    boolean next(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,25 @@
+package com.yc.clickhouse.mapping;
+
+/**
+ * 实体按主键修改/删除的方式，由 @ClickHouseTable 的 versionColumn / deletedColumn / signColumn 决定
+ */
+public enum WriteMode {
+
+    /**
+     * 默认：alter table ... update/delete，每次都是重写数据part的 mutation
+     */
+    MUTATION,
+
+    /**
+     * ReplacingMergeTree：修改插入新版本行，删除插入当前行的 is_deleted=1 新版本行（声明了 deletedColumn 时）
+     */
+    REPLACING,
+
+    /**
+     * CollapsingMergeTree：修改插入取消行和新行，删除插入取消行。
+     * 先 FINAL 读当前行再插入，两步之间没有任何锁：同一主键并发修改时两个调用读到同一当前行，各自插入取消行，
+     * 多出的取消行会抵消掉别的行，合并后结果不确定；经分布式表异步写入、尚未投递到分片的行也读不到。
+     * 同一主键只有单个写入方时使用；有并发修改方的表请改用 {@link #REPLACING}，新版本行之间按版本列取最大，与读取无关
+     */
+    COLLAPSING
+}
@@ -21,6 +21,7 @@ import java.util.Date;
 public class TTest  extends _BaseEntity implements Serializable {
 
 	//private static final long serialVersionUID = L;
+	@ClickHousePrimaryKey
 	@Column(name = "id")
 	private Integer id;
 	@Column(name = "name")
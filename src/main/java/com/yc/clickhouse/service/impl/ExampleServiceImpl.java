@@ -25,11 +25,11 @@ public class ExampleServiceImpl implements ExampleService {
          *  查
          */
         Object[] params = null;
-        String sql = "SELECT * FROM t_test";
+        String sql = "SELECT id,name,address,create_date,del_status FROM t_test";// 列出需要的列，不用 select *
         List<TTest> l = tTestDao.selectListObj(sql, params);
 
         params = null;
-        sql = "SELECT * FROM t_test";
+        sql = "SELECT id,name FROM t_test";
         List<Map<String, Object>> maps = tTestDao.selectListMap(sql, params);
 
         params = null;
@@ -46,8 +46,9 @@ public class ExampleServiceImpl implements ExampleService {
         sql = "where id = ?";
         params = new Object[]{1};
         l = tTestDao.selectPage(0,10,sql,params);
+        l = tTestDao.selectPage(0,10,sql,params,"id","name");// 只查询部分列
 
-        sql = "SELECT * FROM t_test where id = ?";
+        sql = "SELECT id,name,address,create_date,del_status FROM t_test where id = ?";
         params = new Object[]{1};
         TTest obj = tTestDao.selectOne(sql, params);
 
@@ -0,0 +1,170 @@
+package com.yc.clickhouse.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 与clickHouse服务端结果一致的哈希函数，用于在客户端计算分布式表的分片
+ */
+public class ClickHouseHashUtil {
+
+    private static final long K0 = 0xc3a5c85c97cb3127L;
+    private static final long K1 = 0xb492b66fbe98f273L;
+    private static final long K2 = 0x9ae16a3b2f90404fL;
+    private static final long K3 = 0xc949d7c7509e6557L;
+    private static final long K_MUL = 0x9ddfea08eb382d69L;
+
+    /**
+     * intHash64(x)
+     * @param x
+     * @return 按无符号数使用
+     */
+    public static long intHash64(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    /**
+     * cityHash64(str)，字符串按UTF-8编码
+     * @param str
+     * @return 按无符号数使用
+     */
+    public static long cityHash64(String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        return cityHash64(bytes, 0, bytes.length);
+    }
+
+    /**
+     * clickHouse 使用的 CityHash v1.0.2 的 CityHash64
+     * @param s
+     * @param pos
+     * @param len
+     * @return 按无符号数使用
+     */
+    public static long cityHash64(byte[] s, int pos, int len) {
+        if (len <= 32) {
+            return len <= 16 ? hashLen0to16(s, pos, len) : hashLen17to32(s, pos, len);
+        } else if (len <= 64) {
+            return hashLen33to64(s, pos, len);
+        }
+        long x = fetch64(s, pos);
+        long y = fetch64(s, pos + len - 16) ^ K1;
+        long z = fetch64(s, pos + len - 56) ^ K0;
+        long[] v = weakHashLen32WithSeeds(s, pos + len - 64, len, y);
+        long[] w = weakHashLen32WithSeeds(s, pos + len - 32, len * K1, K0);
+        z += shiftMix(v[1]) * K1;
+        x = rotate(z + x, 39) * K1;
+        y = rotate(y, 33) * K1;
+        len = (len - 1) & ~63;
+        do {
+            x = rotate(x + y + v[0] + fetch64(s, pos + 16), 37) * K1;
+            y = rotate(y + v[1] + fetch64(s, pos + 48), 42) * K1;
+            x ^= w[1];
+            y ^= v[0];
+            z = rotate(z ^ w[0], 33);
+            v = weakHashLen32WithSeeds(s, pos, v[1] * K1, x + w[0]);
+            w = weakHashLen32WithSeeds(s, pos + 32, z + w[1], y);
+            long swap = z;
+            z = x;
+            x = swap;
+            pos += 64;
+            len -= 64;
+        } while (len != 0);
+        return hashLen16(hashLen16(v[0], w[0]) + shiftMix(y) * K1 + z, hashLen16(v[1], w[1]) + x);
+    }
+
+    private static long hashLen0to16(byte[] s, int pos, int len) {
+        if (len > 8) {
+            long a = fetch64(s, pos);
+            long b = fetch64(s, pos + len - 8);
+            return hashLen16(a, Long.rotateRight(b + len, len)) ^ b;
+        }
+        if (len >= 4) {
+            long a = fetch32(s, pos);
+            return hashLen16(len + (a << 3), fetch32(s, pos + len - 4));
+        }
+        if (len > 0) {
+            int a = s[pos] & 0xff;
+            int b = s[pos + (len >>> 1)] & 0xff;
+            int c = s[pos + len - 1] & 0xff;
+            long y = (a + (b << 8)) & 0xffffffffL;
+            long z = (len + (c << 2)) & 0xffffffffL;
+            return shiftMix(y * K2 ^ z * K3) * K2;
+        }
+        return K2;
+    }
+
+    private static long hashLen17to32(byte[] s, int pos, int len) {
+        long a = fetch64(s, pos) * K1;
+        long b = fetch64(s, pos + 8);
+        long c = fetch64(s, pos + len - 8) * K2;
+        long d = fetch64(s, pos + len - 16) * K0;
+        return hashLen16(rotate(a - b, 43) + rotate(c, 30) + d, a + rotate(b ^ K3, 20) - c + len);
+    }
+
+    private static long hashLen33to64(byte[] s, int pos, int len) {
+        long z = fetch64(s, pos + 24);
+        long a = fetch64(s, pos) + (len + fetch64(s, pos + len - 16)) * K0;
+        long b = rotate(a + z, 52);
+        long c = rotate(a, 37);
+        a += fetch64(s, pos + 8);
+        c += rotate(a, 7);
+        a += fetch64(s, pos + 16);
+        long vf = a + z;
+        long vs = b + rotate(a, 31) + c;
+        a = fetch64(s, pos + 16) + fetch64(s, pos + len - 32);
+        z = fetch64(s, pos + len - 8);
+        b = rotate(a + z, 52);
+        c = rotate(a, 37);
+        a += fetch64(s, pos + len - 24);
+        c += rotate(a, 7);
+        a += fetch64(s, pos + len - 16);
+        long wf = a + z;
+        long ws = b + rotate(a, 31) + c;
+        long r = shiftMix((vf + ws) * K2 + (wf + vs) * K0);
+        return shiftMix(r * K0 + vs) * K2;
+    }
+
+    private static long[] weakHashLen32WithSeeds(byte[] s, int pos, long a, long b) {
+        long w = fetch64(s, pos);
+        long x = fetch64(s, pos + 8);
+        long y = fetch64(s, pos + 16);
+        long z = fetch64(s, pos + 24);
+        a += w;
+        b = rotate(b + a + z, 21);
+        long c = a;
+        a += x;
+        a += y;
+        b += rotate(a, 44);
+        return new long[]{a + z, b + c};
+    }
+
+    private static long hashLen16(long u, long v) {
+        long a = (u ^ v) * K_MUL;
+        a ^= a >>> 47;
+        long b = (v ^ a) * K_MUL;
+        b ^= b >>> 47;
+        return b * K_MUL;
+    }
+
+    private static long rotate(long val, int shift) {
+        return shift == 0 ? val : Long.rotateRight(val, shift);
+    }
+
+    private static long shiftMix(long val) {
+        return val ^ (val >>> 47);
+    }
+
+    private static long fetch64(byte[] s, int pos) {
+        return (s[pos] & 0xffL) | (s[pos + 1] & 0xffL) << 8 | (s[pos + 2] & 0xffL) << 16 | (s[pos + 3] & 0xffL) << 24
+                | (s[pos + 4] & 0xffL) << 32 | (s[pos + 5] & 0xffL) << 40 | (s[pos + 6] & 0xffL) << 48 | (s[pos + 7] & 0xffL) << 56;
+    }
+
+    private static long fetch32(byte[] s, int pos) {
+        return (s[pos] & 0xffL) | (s[pos + 1] & 0xffL) << 8 | (s[pos + 2] & 0xffL) << 16 | (s[pos + 3] & 0xffL) << 24;
+    }
+
+}
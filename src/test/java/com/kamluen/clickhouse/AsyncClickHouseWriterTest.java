@@ -0,0 +1,214 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.AsyncClickHouseWriter;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步缓冲写入：按行数/时间攒批、close时写完缓冲（含与close并发的提交）、缓冲满时背压、
+ * 副本级错误重试、放弃的批次交给失败回调
+ */
+public class AsyncClickHouseWriterTest {
+
+    /**
+     * 记录每次插入批次大小的DAO
+     */
+    private static class RecordingDao extends TTestDao {
+        final List<Integer> batches = new CopyOnWriteArrayList<>();
+        volatile CountDownLatch gate;
+
+        @Override
+        protected void insertBatch(List<TTest> list, int batchSize) {
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            batches.add(list.size());
+        }
+    }
+
+    /**
+     * 前 failures 次插入失败的DAO，transient 为true时是可重试的网络错误，否则是SQL错误
+     */
+    private static class FailingDao extends TTestDao {
+        final AtomicInteger attempts = new AtomicInteger();
+        final int failures;
+        final boolean transientError;
+
+        FailingDao(int failures, boolean transientError) {
+            this.failures = failures;
+            this.transientError = transientError;
+        }
+
+        @Override
+        protected void insertBatch(List<TTest> list, int batchSize) throws SQLException {
+            if (attempts.incrementAndGet() <= failures) {
+                throw transientError ? new SQLException("insert failed", new IOException("Connection reset"))
+                        : new SQLException("Code: 16, e.displayText() = DB::Exception: No such column");
+            }
+        }
+    }
+
+    private static TTest row(int id) {
+        TTest test = new TTest();
+        test.setId(id);
+        return test;
+    }
+
+    @Test
+    public void batchesByRowsAndFlushesOnClose() throws Exception {
+        RecordingDao dao = new RecordingDao();
+        AsyncClickHouseWriter<TTest> writer = AsyncClickHouseWriter.builder(dao)
+                .maxRows(100).maxDelay(1, TimeUnit.HOURS).capacity(1000).build();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            final int base = t * 1000;
+            producers.execute(() -> {
+                for (int i = 0; i < 255; i++) {
+                    try {
+                        writer.write(row(base + i));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        producers.shutdown();
+        Assert.assertTrue(producers.awaitTermination(10, TimeUnit.SECONDS));
+        writer.close();
+
+        Assert.assertEquals(1020, dao.batches.stream().mapToInt(Integer::intValue).sum());
+        Assert.assertTrue(dao.batches.stream().allMatch(size -> size <= 100));
+        Assert.assertEquals(1020, writer.getWrittenRows());
+        Assert.assertEquals(0, writer.getPendingRows());
+    }
+
+    @Test
+    public void flushesOldRowsAfterMaxDelay() throws Exception {
+        RecordingDao dao = new RecordingDao();
+        AsyncClickHouseWriter<TTest> writer = AsyncClickHouseWriter.builder(dao)
+                .maxRows(1000).maxDelay(50, TimeUnit.MILLISECONDS).build();
+        writer.write(row(1));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dao.batches.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, dao.batches.size());
+        writer.close();
+    }
+
+    @Test
+    public void appliesBackpressureWhenFull() throws Exception {
+        RecordingDao dao = new RecordingDao();
+        dao.gate = new CountDownLatch(1);
+        AsyncClickHouseWriter<TTest> writer = AsyncClickHouseWriter.builder(dao)
+                .maxRows(10).capacity(10).maxDelay(1, TimeUnit.HOURS).build();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(writer.offer(row(i), 1, TimeUnit.SECONDS));
+        }
+        // 10行正在插入且被阻塞，容量耗尽
+        Assert.assertFalse(writer.offer(row(10), 100, TimeUnit.MILLISECONDS));
+        dao.gate.countDown();
+        Assert.assertTrue(writer.offer(row(10), 5, TimeUnit.SECONDS));
+        writer.close();
+        Assert.assertEquals(11, writer.getWrittenRows());
+    }
+
+    @Test
+    public void closeRacingWritersLosesNoAcceptedRow() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            RecordingDao dao = new RecordingDao();
+            AsyncClickHouseWriter<TTest> writer = AsyncClickHouseWriter.builder(dao)
+                    .maxRows(50).capacity(100).maxDelay(1, TimeUnit.HOURS).build();
+            AtomicInteger accepted = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(8);
+            ExecutorService producers = Executors.newFixedThreadPool(8);
+            for (int t = 0; t < 8; t++) {
+                producers.execute(() -> {
+                    started.countDown();
+                    for (int i = 0; ; i++) {
+                        try {
+                            if (i % 2 == 0) {
+                                writer.write(row(i));
+                            } else if (!writer.offer(row(i), 1, TimeUnit.SECONDS)) {
+                                continue;
+                            }
+                            accepted.incrementAndGet();
+                        } catch (IllegalStateException closed) {
+                            return;
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                });
+            }
+            started.await();
+            Thread.sleep(5);
+            writer.close();
+            producers.shutdown();
+            Assert.assertTrue(producers.awaitTermination(10, TimeUnit.SECONDS));
+
+            // 所有成功返回的提交都已写入，关闭之后没有留在缓冲里的行
+            Assert.assertEquals(accepted.get(), writer.getWrittenRows());
+            Assert.assertEquals(accepted.get(), dao.batches.stream().mapToInt(Integer::intValue).sum());
+            Assert.assertEquals(0, writer.getPendingRows());
+        }
+    }
+
+    @Test
+    public void retriesTransientInsertFailures() throws Exception {
+        FailingDao dao = new FailingDao(2, true);
+        AsyncClickHouseWriter<TTest> writer = AsyncClickHouseWriter.builder(dao)
+                .maxDelay(1, TimeUnit.HOURS).retries(3, 10, TimeUnit.MILLISECONDS).build();
+        for (int i = 0; i < 5; i++) {
+            writer.write(row(i));
+        }
+        writer.close();
+        Assert.assertEquals(3, dao.attempts.get());
+        Assert.assertEquals(2, writer.getRetryCount());
+        Assert.assertEquals(5, writer.getWrittenRows());
+        Assert.assertEquals(0, writer.getFailedRows());
+    }
+
+    @Test
+    public void handsAbandonedBatchesToFailureHandler() throws Exception {
+        List<TTest> deadLetters = new ArrayList<>();
+        FailingDao dao = new FailingDao(Integer.MAX_VALUE, true);
+        AsyncClickHouseWriter<TTest> writer = AsyncClickHouseWriter.builder(dao).maxDelay(1, TimeUnit.HOURS)
+                .retries(2, 10, TimeUnit.MILLISECONDS).onFailure((rows, e) -> deadLetters.addAll(rows)).build();
+        for (int i = 0; i < 5; i++) {
+            writer.write(row(i));
+        }
+        writer.close();
+        Assert.assertEquals(3, dao.attempts.get());// 重试用完
+        Assert.assertEquals(5, deadLetters.size());
+        Assert.assertEquals(5, writer.getFailedRows());
+
+        // SQL错误不重试，直接交给回调
+        deadLetters.clear();
+        FailingDao sqlError = new FailingDao(Integer.MAX_VALUE, false);
+        writer = AsyncClickHouseWriter.builder(sqlError).maxDelay(1, TimeUnit.HOURS)
+                .retries(2, 10, TimeUnit.MILLISECONDS).onFailure((rows, e) -> deadLetters.addAll(rows)).build();
+        writer.write(row(1));
+        writer.close();
+        Assert.assertEquals(1, sqlError.attempts.get());
+        Assert.assertEquals(1, deadLetters.size());
+    }
+}
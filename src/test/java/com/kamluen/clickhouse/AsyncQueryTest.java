@@ -0,0 +1,118 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.AsyncQueryExecutor;
+import com.yc.clickhouse.dao.ClickHouseFuture;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步DAO调用：query_id 传到服务端、取消时 KILL QUERY、排队满时立即失败
+ */
+public class AsyncQueryTest {
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private AsyncQueryExecutor executor;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        server = FakeClickHouseServer.start().tTest(100);
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(4);
+        executor = new AsyncQueryExecutor(1, 1);
+        dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+        ReflectionTestUtils.setField(dao, "asyncQueryExecutor", executor);
+        Assert.assertEquals(100, dao.selectCount(null, null));// 先建好连接，设置的延迟只作用于查询
+    }
+
+    @After
+    public void tearDown() {
+        executor.close();
+        dataSource.close();
+        server.close();
+    }
+
+    @Test
+    public void completesWithQueryId() throws Exception {
+        ClickHouseFuture<List<TTest>> list = dao.selectListObjAsync("SELECT * FROM t_test", null);
+        Assert.assertEquals(100, list.get(5, TimeUnit.SECONDS).size());
+        ClickHouseFuture<Integer> count = dao.selectCountAsync(null, null);
+        Assert.assertEquals(Integer.valueOf(100), count.get(5, TimeUnit.SECONDS));
+        ClickHouseFuture<List<Map<String, Object>>> maps = dao.selectListMapAsync("SELECT id FROM t_test LIMIT 3", null);
+        Assert.assertEquals(3, maps.get(5, TimeUnit.SECONDS).size());
+        dao.batchInsertExtAsync(Collections.singletonList(Collections.singletonMap("id", 1))).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(1, server.getInsertedRows("t_test"));
+
+        List<Map<String, String>> requests = server.getRequestParams();
+        for (ClickHouseFuture<?> future : new ClickHouseFuture<?>[]{list, count, maps}) {
+            Assert.assertTrue(requests.stream().anyMatch(params -> future.getQueryId().equals(params.get("query_id"))));
+        }
+    }
+
+    @Test
+    public void cancelKillsRunningQuery() throws Exception {
+        server.latency(10000);
+        ClickHouseFuture<List<TTest>> future = dao.selectListObjAsync("SELECT * FROM t_test", null);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!server.isRunning(future.getQueryId()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(future.cancel(true));
+        Assert.assertTrue(future.isCancelled());
+        Assert.assertEquals(Collections.singletonList(future.getQueryId()), server.getKilledQueryIds());
+
+        // 被 KILL 的查询结束后线程空出来，下一个调用不用等满10秒
+        server.latency(0);
+        long start = System.currentTimeMillis();
+        Assert.assertEquals(Integer.valueOf(100), dao.selectCountAsync(null, null).get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void rejectsWhenQueueFull() throws Exception {
+        server.latency(300);
+        ClickHouseFuture<Integer> running = dao.selectCountAsync(null, null);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getActiveCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ClickHouseFuture<Integer> queued = dao.selectCountAsync(null, null);
+        ClickHouseFuture<Integer> rejected = dao.selectCountAsync(null, null);
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        // 排队中的调用取消后移出队列，不会发到服务端
+        Assert.assertTrue(queued.cancel(false));
+        Assert.assertEquals(0, executor.getQueueSize());
+        Assert.assertEquals(Integer.valueOf(100), running.get(5, TimeUnit.SECONDS));
+        try {
+            queued.get();
+            Assert.fail();
+        } catch (CancellationException expected) {
+            // 已取消
+        }
+        Assert.assertTrue(server.getRequestParams().stream().noneMatch(params -> queued.getQueryId().equals(params.get("query_id"))));
+        Assert.assertTrue(server.getKilledQueryIds().isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAO按操作租借连接：并发调用不再串行在同一个连接上，且语句、结果集、连接全部归还
+ */
+public class ClickHouseDaoBaseConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int CALLS_PER_THREAD = 5;
+    private static final long LATENCY_MILLIS = 50;
+
+    @Test
+    public void concurrentCallersUseSeparateConnections() throws Exception {
+        StubDataSource dataSource = StubDataSource.tTest(3).latency(LATENCY_MILLIS);
+        TTestDao dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                int rows = 0;
+                for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                    List<TTest> list = dao.selectListObj("SELECT * FROM t_test", null);
+                    rows += list.size();
+                }
+                return rows;
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            Assert.assertEquals(3 * CALLS_PER_THREAD, future.get().intValue());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+
+        long serialMillis = THREADS * CALLS_PER_THREAD * LATENCY_MILLIS;
+        Assert.assertTrue("elapsed " + elapsedMillis + "ms, serial " + serialMillis + "ms", elapsedMillis < serialMillis / 2);
+        Assert.assertTrue(dataSource.maxConcurrentConnections.get() > 1);
+        Assert.assertEquals(0, dataSource.openConnections.get());
+        Assert.assertEquals(0, dataSource.openStatements.get());
+        Assert.assertEquals(0, dataSource.openResultSets.get());
+    }
+
+    @Test
+    public void updateAndCountReleaseConnections() throws Exception {
+        StubDataSource dataSource = StubDataSource.tTest(1);
+        TTestDao dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+
+        dao.deleteByPrimaryKey(1);
+        dao.selectPage(0, 10, null, null);
+        dao.executeInsertUpdateDelete("alter table t_test delete where id = 2");
+
+        Assert.assertEquals(3, dataSource.executedSql.size());
+        Assert.assertEquals(0, dataSource.openConnections.get());
+        Assert.assertEquals(0, dataSource.openStatements.get());
+        Assert.assertEquals(0, dataSource.openResultSets.get());
+    }
+}
@@ -0,0 +1,92 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.TTestDao;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAO调用按 table/operation 记录各阶段耗时、行数、读取字节数和异常
+ */
+public class ClickHouseDaoMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private StubDataSource dataSource;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        dataSource = StubDataSource.tTest(100).pooled();
+        dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+        ReflectionTestUtils.setField(dao, "meterRegistry", registry);
+    }
+
+    @Test
+    public void recordsPhasesAndRows() {
+        dao.selectListObj("SELECT * FROM t_test", null);
+        dao.selectListObj("SELECT * FROM t_test", null);
+
+        Assert.assertEquals(2, registry.get("clickhouse.dao.operation")
+                .tags("table", "t_test", "operation", "selectList", "outcome", "success").timer().count());
+        for (String phase : new String[]{"connection", "prepare", "execute", "fetch", "mapping"}) {
+            Assert.assertEquals(phase, 2, registry.get("clickhouse.dao.phase")
+                    .tags("operation", "selectList", "phase", phase).timer().count());
+        }
+        Assert.assertEquals(200, registry.get("clickhouse.dao.rows")
+                .tags("operation", "selectList").summary().totalAmount(), 0);
+        double phases = registry.get("clickhouse.dao.phase").tags("operation", "selectList").timers().stream()
+                .mapToDouble(t -> t.totalTime(TimeUnit.NANOSECONDS)).sum();
+        double total = registry.get("clickhouse.dao.operation").tags("operation", "selectList").timer().totalTime(TimeUnit.NANOSECONDS);
+        Assert.assertTrue(phases <= total);
+        Assert.assertEquals(1, registry.get("clickhouse.dao.statement.cache").tags("result", "hit").functionCounter().count(), 0);
+    }
+
+    @Test
+    public void recordsErrors() {
+        // 结果集没有 count 列
+        Assert.assertEquals(-1, dao.selectCount("where id = ?", new Object[]{1}));
+
+        Assert.assertEquals(1, registry.get("clickhouse.dao.errors")
+                .tags("table", "t_test", "operation", "selectCount", "exception", "SQLException").counter().count(), 0);
+        Assert.assertEquals(1, registry.get("clickhouse.dao.operation")
+                .tags("operation", "selectCount", "outcome", "error").timer().count());
+    }
+
+    @Test
+    public void streamRecordsRowsOnClose() throws Exception {
+        Assert.assertEquals(100, dao.selectStream("SELECT * FROM t_test", null, row -> { }));
+
+        Assert.assertEquals(100, registry.get("clickhouse.dao.rows")
+                .tags("operation", "selectStream").summary().totalAmount(), 0);
+        Assert.assertEquals(1, registry.get("clickhouse.dao.phase")
+                .tags("operation", "selectStream", "phase", "fetch").timer().count());
+    }
+
+    @Test
+    public void recordsRowBinaryBytesRead() {
+        FakeClickHouseServer server = FakeClickHouseServer.start().tTest(100);
+        try (HikariDataSource pool = new HikariDataSource()) {
+            pool.setJdbcUrl(server.getJdbcUrl() + "?compress=0");// 不压缩时读取的字节数就是响应体大小
+            pool.setMaximumPoolSize(1);
+            ReflectionTestUtils.setField(dao, "clickHouseDatasource", pool);
+            Assert.assertEquals(100, dao.selectCount(null, null));
+
+            long before = server.getSentBytes();
+            Assert.assertEquals(100, dao.selectListBinary("SELECT * FROM t_test", null).size());
+            long sent = server.getSentBytes() - before;
+
+            Assert.assertTrue(sent > 100 * 10);
+            Assert.assertEquals(sent, registry.get("clickhouse.dao.bytes")
+                    .tags("operation", "selectListBinary", "direction", "read").counter().count(), 0);
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -9,6 +9,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.annotation.Resource;
@@ -20,6 +22,18 @@ import java.util.Map;
 @SpringBootTest(classes = ClickHouseApplication.class)
 public class ClickHouseTest<T> {
 
+    /**
+     * 用进程内的假clickHouse服务代替 application.yml 中的地址，不需要真实服务
+     */
+    private static final FakeClickHouseServer SERVER = FakeClickHouseServer.start()
+            .tTest(100)
+            .table("t", new String[]{"asset_id", "price"}, new String[]{"String", "Float64"}, 100, i -> new Object[]{"asset" + i, i * 0.5});
+
+    @DynamicPropertySource
+    static void clickHouseProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.jdbc-url", SERVER::getJdbcUrl);
+    }
+
     @Resource
     private ExampleService exampleService;
 
@@ -0,0 +1,75 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.mapping.ColumnarResult;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Types;
+
+/**
+ * 列式结果：按列类型存入基本类型数组（UInt32 存为 long），字符串字典编码，行视图读取
+ */
+public class ColumnarResultTest {
+
+    @Test
+    public void storesColumnsAsPrimitiveArrays() {
+        final int rows = 5000;
+        StubDataSource dataSource = new StubDataSource(
+                new String[]{"day", "city", "pv", "amount", "ts"},
+                new int[]{Types.INTEGER, Types.VARCHAR, Types.BIGINT, Types.DOUBLE, Types.DATE},
+                rows,
+                i -> new Object[]{i, "city" + (i % 3), i == 7 ? null : (long) i * 10, i / 2.0, new java.sql.Date(86400000L * i)});
+        TTestDao dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+
+        ColumnarResult result = dao.selectColumnar("select day, city, pv, amount, ts from t", null);
+
+        Assert.assertEquals(rows, result.getRowCount());
+        Assert.assertEquals(5, result.getColumnCount());
+        Assert.assertEquals(rows, result.intColumn(0).length);
+        Assert.assertEquals(4999, result.intColumn(0)[4999]);
+        Assert.assertEquals(3, result.stringDictionary(1).size());
+        Assert.assertEquals("city2", result.getString(5, 1));
+        Assert.assertEquals(50L, result.longColumn(2)[5]);
+        Assert.assertTrue(result.isNull(7, 2));
+        Assert.assertNull(result.getObject(7, 2));
+        Assert.assertEquals(2.5, result.doubleColumn(3)[5], 0);
+        Assert.assertEquals(86400000L * 3, result.getLong(3, 4));
+
+        ColumnarResult.Row row = result.row(42);
+        Assert.assertEquals(42, row.getInt("DAY"));
+        Assert.assertEquals("city0", row.getString("city"));
+        Assert.assertEquals(420L, row.getLong("pv"));
+        Assert.assertEquals(java.sql.Date.class, row.get("ts").getClass());
+        Assert.assertEquals(0, dataSource.openConnections.get());
+    }
+
+    @Test
+    public void storesUInt32AsLong() {
+        // 驱动把 UInt32 报告为 INTEGER，超过 Integer.MAX_VALUE 的值不能存成 int
+        FakeClickHouseServer server = FakeClickHouseServer.start().table("t_counter",
+                new String[]{"ip", "hits", "shard"}, new String[]{"UInt32", "Nullable(UInt32)", "Int32"}, 10,
+                i -> new Object[]{4294967295L - i, i == 3 ? null : 3000000000L + i, i});
+        try (HikariDataSource dataSource = new HikariDataSource()) {
+            dataSource.setJdbcUrl(server.getJdbcUrl());
+            dataSource.setMaximumPoolSize(1);
+            TTestDao dao = new TTestDao();
+            ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+
+            ColumnarResult result = dao.selectColumnar("select ip, hits, shard from t_counter", null);
+
+            Assert.assertEquals(10, result.getRowCount());
+            Assert.assertEquals(4294967295L, result.longColumn(0)[0]);
+            Assert.assertEquals(4294967286L, result.getLong(9, 0));
+            Assert.assertEquals(3000000005L, result.longColumn(1)[5]);
+            Assert.assertTrue(result.isNull(3, 1));
+            Assert.assertEquals(7, result.intColumn(2)[7]);
+            Assert.assertArrayEquals(result.longColumn(0), dao.selectColumnarBinary("select ip, hits, shard from t_counter", null).longColumn(0));
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.mapping.EntityQuery;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 实体查询：参数化SQL、prewhere、投影、游标分页、按形状缓存SQL、列名和取值类型校验
+ */
+public class EntityQueryTest {
+
+    @Test
+    public void buildsParameterizedSql() {
+        EntityQuery<TTest> query = EntityQuery.from(TTest.class)
+                .select("id", "name")
+                .where("del_status", EntityQuery.Op.EQ, 0)
+                .prewhere("create_date", EntityQuery.Op.GE, "2020-01-01 00:00:00")
+                .where("id", EntityQuery.Op.IN, Arrays.asList(1, 2, 3))
+                .orderByDesc("create_date")
+                .limit(10);
+        Assert.assertEquals("select id,name from t_test prewhere create_date >= ? where del_status = ? and id in (?,?,?)"
+                + " order by create_date desc limit ?", query.toSql());
+        Assert.assertArrayEquals(new Object[]{"2020-01-01 00:00:00", 0, 1, 2, 3, 10}, query.getParams());
+        Assert.assertEquals("select count(*) as count from t_test prewhere create_date >= ? where del_status = ? and id in (?,?,?)",
+                query.toCountSql());
+        Assert.assertArrayEquals(new Object[]{"2020-01-01 00:00:00", 0, 1, 2, 3}, query.getCountParams());
+
+        Assert.assertEquals("select id,name,address,create_date,del_status from t_test where name is null",
+                EntityQuery.from(TTest.class).where("name", EntityQuery.Op.IS_NULL, null).toSql());
+    }
+
+    @Test
+    public void keysetPagination() {
+        EntityQuery<TTest> byPrimaryKey = EntityQuery.from(TTest.class).where("del_status", EntityQuery.Op.EQ, 0).after(41).limit(20);
+        Assert.assertEquals("select id,name,address,create_date,del_status from t_test where del_status = ? and id > ?"
+                + " order by id asc limit ?", byPrimaryKey.toSql());
+        Assert.assertArrayEquals(new Object[]{0, 41, 20}, byPrimaryKey.getParams());
+
+        EntityQuery<TTest> byTuple = EntityQuery.from(TTest.class).select("id")
+                .orderByDesc("create_date").orderByDesc("id").after("2020-01-01 00:00:00", 7).limit(20);
+        Assert.assertEquals("select id from t_test where (create_date, id) < (?, ?) order by create_date desc,id desc limit ?",
+                byTuple.toSql());
+
+        try {
+            EntityQuery.from(TTest.class).orderBy("create_date").orderByDesc("id").after("2020-01-01", 1).toSql();
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+            // 方向不同的排序列不能用行比较
+        }
+    }
+
+    @Test
+    public void cachesSqlPerShape() {
+        String first = EntityQuery.from(TTest.class).where("id", EntityQuery.Op.GT, 1).limit(5).toSql();
+        String second = EntityQuery.from(TTest.class).where("id", EntityQuery.Op.GT, 100).limit(50).toSql();
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, EntityQuery.from(TTest.class).where("id", EntityQuery.Op.GE, 1).limit(5).toSql());
+    }
+
+    @Test
+    public void rejectsUnknownColumnsAndMismatchedValues() {
+        try {
+            EntityQuery.from(TTest.class).where("no_such_column", EntityQuery.Op.EQ, 1);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 不属于实体的列
+        }
+        try {
+            EntityQuery.from(TTest.class).where("id", EntityQuery.Op.EQ, "1 or 1=1");
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 数值列不接受字符串
+        }
+    }
+
+    @Test
+    public void executesThroughDao() {
+        FakeClickHouseServer server = FakeClickHouseServer.start().tTest(100);
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(1);
+        try {
+            TTestDao dao = new TTestDao();
+            ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+            List<TTest> list = dao.selectList(dao.query().select("id", "name").prewhere("del_status", EntityQuery.Op.EQ, 0).limit(10));
+            Assert.assertEquals(10, list.size());
+            Assert.assertNotNull(list.get(0).getName());
+            Assert.assertNull(list.get(0).getAddress());// 没有投影的列不读取
+            Assert.assertEquals(100, dao.selectCount(dao.query().where("id", EntityQuery.Op.GE, 0)));
+            Assert.assertTrue(server.getQueries().contains("select id,name from t_test prewhere del_status = 0 limit 10"));
+        } finally {
+            dataSource.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.mapping.EntityMeta;
+import com.yc.clickhouse.mapping.EntityRowBinaryWriter;
+import com.yc.clickhouse.mapping.RowBinaryColumnReader;
+import com.yc.clickhouse.mapping.RowBinaryColumnWriter;
+import com.yc.clickhouse.po.TTest;
+import org.junit.Assert;
+import org.junit.Test;
+import ru.yandex.clickhouse.settings.ClickHouseProperties;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * 实体RowBinary编码：插入列取实体与表结构交集，编码结果可被RowBinary读取还原；DateTime64、Enum 列按各自宽度编码
+ */
+public class EntityRowBinaryWriterTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void encodesEntityInTableColumnOrder() throws Exception {
+        Map<String, String> columnTypes = new LinkedHashMap<>();
+        columnTypes.put("id", "UInt16");
+        columnTypes.put("name", "String");
+        columnTypes.put("address", "Nullable(String)");
+        columnTypes.put("create_date", "Date");
+        columnTypes.put("del_status", "UInt8");
+        EntityRowBinaryWriter<TTest> writer = new EntityRowBinaryWriter<>(EntityMeta.of(TTest.class), "t_test", columnTypes);
+        Assert.assertEquals("INSERT INTO t_test (id,name,address,create_date,del_status)", writer.getInsertSql());
+
+        TTest entity = new TTest();
+        entity.setId(7);
+        entity.setName("zhangsan");
+        entity.setCreateDate(new Date(3 * 86400000L));
+        entity.setDelStatus(1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ClickHouseRowBinaryStream out = new ClickHouseRowBinaryStream(bytes, UTC, new ClickHouseProperties());
+        int written = writer.write(out, entity);
+
+        Assert.assertEquals(bytes.size(), written);
+
+        ClickHouseRowBinaryInputStream in = new ClickHouseRowBinaryInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()), UTC, new ClickHouseProperties());
+        Assert.assertEquals(7, in.readUInt16());
+        Assert.assertEquals("zhangsan", in.readString());
+        Assert.assertTrue(in.readIsNull());
+        Assert.assertEquals(3, in.readUInt16());
+        Assert.assertEquals(1, in.readUInt8());
+    }
+
+    private enum Level {
+        low, high
+    }
+
+    @Test
+    public void encodesDateTime64AndEnums() throws Exception {
+        Timestamp time = Timestamp.valueOf("2021-03-04 05:06:07.123456789");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ClickHouseRowBinaryStream out = new ClickHouseRowBinaryStream(bytes, UTC, new ClickHouseProperties());
+        int written = RowBinaryColumnWriter.forType("DateTime64(3)").write(out, time);
+        written += RowBinaryColumnWriter.forType("DateTime64(6, 'Asia/Shanghai')").write(out, time);
+        written += RowBinaryColumnWriter.forType("Nullable(DateTime64(3))").write(out, null);
+        written += RowBinaryColumnWriter.forType("DateTime").write(out, time);
+        String enum8 = "Enum8('low' = 1, 'high' = 2, 'it\\'s' = -3)";
+        written += RowBinaryColumnWriter.forType(enum8).write(out, "high");
+        written += RowBinaryColumnWriter.forType(enum8).write(out, Level.low);
+        written += RowBinaryColumnWriter.forType(enum8).write(out, "it's");
+        written += RowBinaryColumnWriter.forType(enum8).write(out, null);
+        written += RowBinaryColumnWriter.forType("Enum16('a' = 1000, 'b' = -1000)").write(out, "b");
+        written += RowBinaryColumnWriter.forType("LowCardinality(Nullable(Enum16('a' = 1000)))").write(out, 1000);
+        Assert.assertEquals(bytes.size(), written);
+        Assert.assertEquals(8 + 8 + 1 + 4 + 1 + 1 + 1 + 1 + 2 + 3, written);
+
+        ClickHouseRowBinaryInputStream in = new ClickHouseRowBinaryInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()), UTC, new ClickHouseProperties());
+        Assert.assertEquals(time.getTime(), in.readInt64());
+        Assert.assertEquals(time.getTime() / 1000 * 1000000 + 123456, in.readInt64());
+        Assert.assertTrue(in.readIsNull());
+        Assert.assertEquals(time.getTime() / 1000, in.readUInt32());
+        Assert.assertEquals(2, in.readInt8());
+        Assert.assertEquals(1, in.readInt8());
+        Assert.assertEquals(-3, in.readInt8());
+        Assert.assertEquals(-3, in.readInt8());// 默认值为最小的枚举值
+        Assert.assertEquals(-1000, in.readInt16());
+        Assert.assertFalse(in.readIsNull());
+        Assert.assertEquals(1000, in.readInt16());
+
+        in = new ClickHouseRowBinaryInputStream(new ByteArrayInputStream(bytes.toByteArray()), UTC, new ClickHouseProperties());
+        Assert.assertEquals(Timestamp.valueOf("2021-03-04 05:06:07.123"), RowBinaryColumnReader.forType("DateTime64(3)").read(in));
+        Assert.assertEquals(Timestamp.valueOf("2021-03-04 05:06:07.123456"), RowBinaryColumnReader.forType("DateTime64(6)").read(in));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownEnumValue() throws Exception {
+        RowBinaryColumnWriter writer = RowBinaryColumnWriter.forType("Enum8('low' = 1)");
+        writer.write(new ClickHouseRowBinaryStream(new ByteArrayOutputStream(), UTC, new ClickHouseProperties()), "medium");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedType() {
+        Map<String, String> columnTypes = new LinkedHashMap<>();
+        columnTypes.put("id", "Array(UInt16)");
+        new EntityRowBinaryWriter<>(EntityMeta.of(TTest.class), "t_test", columnTypes);
+    }
+}
@@ -0,0 +1,66 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.mapping.EntityRowMapper;
+import com.yc.clickhouse.po.TTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实体行映射器：类型化读取、未映射列忽略、NULL列不赋值、按列布局缓存（有上限）
+ */
+public class EntityRowMapperTest {
+
+    @Test
+    public void mapsTypedColumnsAndIgnoresUnknown() throws Exception {
+        StubDataSource dataSource = new StubDataSource(
+                new String[]{"id", "name", "extra", "create_date", "del_status"},
+                new int[]{Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.DATE, Types.INTEGER},
+                3,
+                i -> new Object[]{(long) i, "n" + i, "ignored", new java.sql.Date(86400000L * i), i == 1 ? null : i});
+        try (Connection conn = dataSource.getConnection();
+             ResultSet rs = conn.prepareStatement("select").executeQuery()) {
+            EntityRowMapper<TTest> mapper = EntityRowMapper.of(TTest.class, rs.getMetaData());
+            Assert.assertSame(mapper, EntityRowMapper.of(TTest.class, rs.getMetaData()));
+
+            List<TTest> list = mapper.mapAll(rs);
+            Assert.assertEquals(3, list.size());
+            TTest second = list.get(1);
+            Assert.assertEquals(Integer.valueOf(1), second.getId());
+            Assert.assertEquals("n1", second.getName());
+            Assert.assertNull(second.getAddress());
+            Assert.assertNull(second.getDelStatus());
+            Assert.assertEquals(86400000L, second.getCreateDate().getTime());
+            Assert.assertEquals(Integer.valueOf(2), list.get(2).getDelStatus());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void boundsCachedLayoutsPerEntity() throws Exception {
+        Map<Class<?>, Map<String, ?>> cache = (Map<Class<?>, Map<String, ?>>) ReflectionTestUtils.getField(EntityRowMapper.class, "CACHE");
+        try {
+            for (int i = 0; i < 300; i++) {
+                StubDataSource dataSource = new StubDataSource(new String[]{"id", "alias_" + i},
+                        new int[]{Types.INTEGER, Types.VARCHAR}, 1, row -> new Object[]{7L, "x"});
+                try (Connection conn = dataSource.getConnection();
+                     ResultSet rs = conn.prepareStatement("select").executeQuery()) {
+                    EntityRowMapper<TTest> mapper = EntityRowMapper.of(TTest.class, rs.getMetaData());
+                    Assert.assertEquals(Integer.valueOf(7), mapper.mapAll(rs).get(0).getId());
+                    if (i == 299) {
+                        Assert.assertNotSame(mapper, EntityRowMapper.of(TTest.class, rs.getMetaData()));// 超出上限不缓存
+                    }
+                }
+            }
+            Assert.assertEquals(256, cache.get(TTest.class).size());
+        } finally {
+            cache.remove(TTest.class);// 不影响其他测试的缓存命中
+        }
+    }
+}
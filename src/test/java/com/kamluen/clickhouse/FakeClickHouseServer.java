@@ -0,0 +1,1105 @@
+package com.kamluen.clickhouse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ru.yandex.clickhouse.response.ClickHouseLZ4Stream;
+import ru.yandex.clickhouse.settings.ClickHouseProperties;
+import ru.yandex.clickhouse.util.ClickHouseLZ4OutputStream;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 进程内的假clickHouse HTTP服务，实现 clickhouse-jdbc 0.2.4 用到的那部分HTTP接口，测试和压测不需要真实服务：
+ * <ul>
+ * <li>查询返回 TabSeparated(WithNames/WithNamesAndTypes)、RowBinary(WithNamesAndTypes) 格式，数据由注册表的行生成器按需生成；</li>
+ * <li>SELECT 支持按列名投影和 LIMIT，count() 返回表行数，WHERE 条件忽略；DESCRIBE TABLE 返回表结构；</li>
+ * <li>表按第一列排序（第i行第一列为i）：WHERE 中 第一列 &gt; N 从第 N+1 行开始，第一列 in (a,b) 只返回这些行，LIMIT offset 直接跳过前 offset 行，
+ * 两者都只生成返回的行，不模拟服务端读取的代价；</li>
+ * <li>INSERT 的 TabSeparated / RowBinary 请求体按表结构解析，只统计行数和字节数；</li>
+ * <li>按URL参数 compress / decompress 处理 LZ4 压缩，统计网络上收发的字节数；可设置每个请求的延迟、按SQL注入异常或在返回结果途中断开连接；</li>
+ * <li>KILL QUERY WHERE query_id='...' 使该 query_id 正在延迟等待的请求立即返回 394 异常。</li>
+ * </ul>
+ * <pre>
+ * FakeClickHouseServer server = FakeClickHouseServer.start().tTest(10000).latency(2);
+ * jdbc url: server.getJdbcUrl()
+ * </pre>
+ */
+public class FakeClickHouseServer implements Closeable {
+
+    private static final Pattern TRAILING_COMMENTS = Pattern.compile("(\\n\\s*--[^\\n]*)+\\s*$");
+    private static final Pattern FORMAT = Pattern.compile("\\s+FORMAT\\s+(\\w+)\\s*;?\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FROM = Pattern.compile("\\bfrom\\s+([\\w.`\"]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SELECT_LIST = Pattern.compile("^select\\s+(.*?)\\s+from\\s", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern COUNT = Pattern.compile("^select\\s+count\\([^)]*\\)(?:\\s+as\\s+(\\w+))?\\s+from\\s", Pattern.CASE_INSENSITIVE);
+    private static final Pattern LIMIT = Pattern.compile("\\blimit\\s+(\\d+)\\s*(?:,\\s*(\\d+))?(?:\\s+offset\\s+(\\d+))?\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DESCRIBE = Pattern.compile("^desc(?:ribe)?\\s+(?:table\\s+)?([\\w.`\"]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INSERT = Pattern.compile("^insert\\s+into\\s+([\\w.`\"]+)\\s*(?:\\(([^)]*)\\))?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IDENTIFIER = Pattern.compile("[\\w`\"]+");
+    private static final Pattern SEEK = Pattern.compile("\\bwhere\\s+(?:.*?\\s+and\\s+)?(\\w+)\\s*>\\s*(\\d+)(?=\\s+and\\s|\\s+order\\s|\\s+limit\\s|\\s*$)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern KEY_IN = Pattern.compile("\\bwhere\\s+(?:.*?\\s+and\\s+)?(\\w+)\\s+in\\s*\\(([\\d,\\s]*)\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern KILL = Pattern.compile("^kill\\s+query\\s+where\\s+query_id\\s*=\\s*'([^']*)'", Pattern.CASE_INSENSITIVE);
+    private static final int MAX_RECORDED_QUERIES = 1000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    private final Map<Pattern, String> failures = new ConcurrentHashMap<>();
+    private final Map<Pattern, long[]> drops = new ConcurrentHashMap<>();// sql -> {afterRows, stallMillis}
+    private final ConcurrentLinkedDeque<String> queries = new ConcurrentLinkedDeque<>();
+    private final ConcurrentLinkedDeque<Map<String, String>> requestParams = new ConcurrentLinkedDeque<>();
+    private final Map<String, CountDownLatch> running = new ConcurrentHashMap<>();// query_id -> 等待中的请求
+    private final List<String> killedQueryIds = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private volatile long latencyMillis;
+
+    static {
+        // 响应头和分块分开写，不关 Nagle 时每个请求都要等客户端的延迟确认（约40ms），测到的就不是客户端的耗时
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private FakeClickHouseServer(HttpServer server) {
+        this.server = server;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fake-clickhouse-" + server.getAddress().getPort());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * 在本机随机端口启动
+     *
+     * @return
+     */
+    public static FakeClickHouseServer start() {
+        try {
+            return new FakeClickHouseServer(HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128));
+        } catch (IOException e) {
+            throw new IllegalStateException("start fake clickhouse failed", e);
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * clickhouse-jdbc 连接地址，数据库为 default
+     *
+     * @return
+     */
+    public String getJdbcUrl() {
+        return "jdbc:clickhouse://127.0.0.1:" + getPort() + "/default";
+    }
+
+    /**
+     * 注册表：rowCount 行，第i行由 rowGenerator 生成，值按列类型输出（Date/DateTime 列传 java.util.Date）
+     *
+     * @param name 表名，不带库名
+     * @param columns
+     * @param types clickHouse类型，如 UInt32、String、Nullable(Date)
+     * @param rowCount
+     * @param rowGenerator
+     * @return
+     */
+    public FakeClickHouseServer table(String name, String[] columns, String[] types, int rowCount, IntFunction<Object[]> rowGenerator) {
+        tables.put(name.toLowerCase(Locale.ROOT), new Table(columns, types, rowCount, rowGenerator));
+        return this;
+    }
+
+    /**
+     * 注册t_test表，第i行为 (i, "name" + i, "address" + i, create_date, i % 2)，与 StubDataSource.tTest 一致
+     *
+     * @param rowCount
+     * @return
+     */
+    public FakeClickHouseServer tTest(int rowCount) {
+        final long day = 24L * 3600 * 1000;
+        return table("t_test",
+                new String[]{"id", "name", "address", "create_date", "del_status"},
+                new String[]{"UInt32", "String", "String", "Date", "UInt8"},
+                rowCount,
+                i -> new Object[]{i, "name" + i, "address" + i, new Date(i * day), i % 2});
+    }
+
+    /**
+     * 每个请求在返回前等待的时间
+     *
+     * @param latencyMillis
+     * @return
+     */
+    public FakeClickHouseServer latency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * SQL匹配正则（忽略大小写，find）时返回clickHouse格式的异常
+     *
+     * @param sqlRegex
+     * @param code clickHouse错误码，如 60 表不存在、159 超时
+     * @param message
+     * @return
+     */
+    public FakeClickHouseServer failWhen(String sqlRegex, int code, String message) {
+        failures.put(Pattern.compile(sqlRegex, Pattern.CASE_INSENSITIVE), "Code: " + code + ", e.displayText() = DB::Exception: " + message);
+        return this;
+    }
+
+    /**
+     * SQL匹配正则（忽略大小写，find）的查询返回 afterRows 行后停住 stallMillis 毫秒（期间被 KILL QUERY 立即结束），然后直接断开连接，
+     * 模拟副本在返回结果的途中宕机，客户端读取结果集时得到 IOException
+     *
+     * @param sqlRegex
+     * @param afterRows 断开前已经发出的行数
+     * @param stallMillis
+     * @return
+     */
+    public FakeClickHouseServer dropWhen(String sqlRegex, int afterRows, long stallMillis) {
+        drops.put(Pattern.compile(sqlRegex, Pattern.CASE_INSENSITIVE), new long[]{afterRows, stallMillis});
+        return this;
+    }
+
+    public FakeClickHouseServer clearFailures() {
+        failures.clear();
+        drops.clear();
+        return this;
+    }
+
+    /**
+     * 已插入表的行数
+     *
+     * @param table
+     * @return
+     */
+    public long getInsertedRows(String table) {
+        Table t = tables.get(table.toLowerCase(Locale.ROOT));
+        return t == null ? 0 : t.insertedRows.get();
+    }
+
+    /**
+     * 已插入表的请求体字节数（解压后）
+     *
+     * @param table
+     * @return
+     */
+    public long getInsertedBytes(String table) {
+        Table t = tables.get(table.toLowerCase(Locale.ROOT));
+        return t == null ? 0 : t.insertedBytes.get();
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * 收到的请求体字节数（网络上的字节，压缩时为压缩后）
+     *
+     * @return
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * 发出的响应体字节数（网络上的字节，压缩时为压缩后）
+     *
+     * @return
+     */
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    /**
+     * 最近执行的SQL（最多保留1000条，不含 FORMAT 子句）
+     *
+     * @return
+     */
+    public List<String> getQueries() {
+        return new ArrayList<>(queries);
+    }
+
+    /**
+     * 最近请求的URL参数（最多保留1000条），含 query_id 和 max_execution_time 等设置
+     *
+     * @return
+     */
+    public List<Map<String, String>> getRequestParams() {
+        return new ArrayList<>(requestParams);
+    }
+
+    /**
+     * 该 query_id 的请求是否正在延迟等待中
+     *
+     * @param queryId
+     * @return
+     */
+    public boolean isRunning(String queryId) {
+        return running.containsKey(queryId);
+    }
+
+    /**
+     * 收到的 KILL QUERY 的 query_id
+     *
+     * @return
+     */
+    public List<String> getKilledQueryIds() {
+        return new ArrayList<>(killedQueryIds);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ================================ 请求处理 ================================
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        boolean dropped = false;
+        try {
+            Map<String, String> params = queryParams(exchange.getRequestURI().getRawQuery());
+            boolean compress = "1".equals(params.get("compress")) || "true".equals(params.get("compress"));
+            if ("/ping".equals(exchange.getRequestURI().getPath())) {
+                respond(exchange, 200, false, out -> out.write("Ok.\n".getBytes(StandardCharsets.UTF_8)));
+                return;
+            }
+            InputStream body = new FilterInputStream(exchange.getRequestBody()) {
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b >= 0) {
+                        receivedBytes.incrementAndGet();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = in.read(b, off, len);
+                    if (read > 0) {
+                        receivedBytes.addAndGet(read);
+                    }
+                    return read;
+                }
+            };
+            if ("1".equals(params.get("decompress")) || "true".equals(params.get("decompress"))) {
+                body = new ClickHouseLZ4Stream(body);
+            }
+            String sql;
+            InputStream data = null;
+            if (params.containsKey("query")) {
+                sql = params.get("query");
+                data = body;
+            } else {
+                sql = new String(readAll(body), StandardCharsets.UTF_8);
+            }
+            String queryId = params.get("query_id");
+            if (queryId != null) {
+                exchange.getResponseHeaders().add("X-ClickHouse-Query-Id", queryId);
+            }
+            if (requestParams.size() >= MAX_RECORDED_QUERIES) {
+                requestParams.pollFirst();
+            }
+            requestParams.addLast(params);
+            Matcher kill = KILL.matcher(sql.trim());
+            if (kill.find()) {
+                kill(exchange, kill.group(1), compress);
+                return;
+            }
+            if (!await(queryId, latencyMillis)) {
+                respondError(exchange, compress, "Code: 394, e.displayText() = DB::Exception: Query was cancelled");
+                return;
+            }
+            execute(exchange, sql.trim(), data, compress);
+        } catch (ConnectionDropped e) {
+            dropped = true;
+            abort(exchange);
+        } catch (Exception e) {
+            try {
+                respondError(exchange, false, "Code: 1000, e.displayText() = DB::Exception: " + e);
+            } catch (IOException ignored) {
+                // 响应头已发送，只能断开连接
+            }
+        } finally {
+            if (!dropped) {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * 关闭底层socket，不写chunked结束块，客户端读到一半的响应体
+     */
+    private static void abort(HttpExchange exchange) {
+        try {
+            Object impl = field(exchange, "impl");
+            Object connection = field(impl, "connection");
+            ((SocketChannel) field(connection, "chan")).close();
+        } catch (ReflectiveOperationException | IOException e) {
+            throw new IllegalStateException("无法断开连接", e);
+        }
+    }
+
+    private static Object field(Object target, String name) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
+    /**
+     * 等待 millis 毫秒，期间被 KILL QUERY 返回false
+     */
+    private boolean await(String queryId, long millis) throws InterruptedException {
+        if (queryId == null || millis <= 0) {
+            sleep(millis);
+            return true;
+        }
+        CountDownLatch killed = new CountDownLatch(1);
+        running.put(queryId, killed);
+        try {
+            return !killed.await(millis, TimeUnit.MILLISECONDS);
+        } finally {
+            running.remove(queryId, killed);
+        }
+    }
+
+    private void kill(HttpExchange exchange, String queryId, boolean compress) throws IOException {
+        killedQueryIds.add(queryId);
+        CountDownLatch killed = running.get(queryId);
+        if (killed != null) {
+            killed.countDown();
+        }
+        respond(exchange, 200, compress, out -> { });
+    }
+
+    private void execute(HttpExchange exchange, String sql, InputStream data, boolean compress) throws IOException {
+        String format = "TabSeparated";
+        sql = TRAILING_COMMENTS.matcher(sql).replaceFirst("");// 如 FORMAT 之后的 -- RowBinary
+        Matcher formatMatcher = FORMAT.matcher(sql);
+        if (formatMatcher.find()) {
+            format = formatMatcher.group(1);
+            sql = sql.substring(0, formatMatcher.start()).trim();
+        }
+        if (queries.size() >= MAX_RECORDED_QUERIES) {
+            queries.pollFirst();
+        }
+        queries.addLast(sql);
+        for (Map.Entry<Pattern, String> failure : failures.entrySet()) {
+            if (failure.getKey().matcher(sql).find()) {
+                respondError(exchange, compress, failure.getValue());
+                return;
+            }
+        }
+        String lower = sql.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("insert")) {
+            insert(exchange, sql, format, data, compress);
+        } else if (lower.equals("select 1")) {
+            result(exchange, format, compress, Result.single("1", "UInt8", 1));
+        } else if (lower.equals("select timezone()")) {
+            result(exchange, format, compress, Result.single("timezone()", "String", TimeZone.getDefault().getID()));
+        } else if (lower.equals("select version()")) {
+            result(exchange, format, compress, Result.single("version()", "String", "20.3.1.1"));
+        } else if (lower.startsWith("desc")) {
+            describe(exchange, sql, format, compress);
+        } else if (lower.startsWith("select")) {
+            select(exchange, sql, format, compress);
+        } else {
+            respond(exchange, 200, compress, out -> { });// alter / create / drop 等直接成功
+        }
+    }
+
+    private void select(HttpExchange exchange, String sql, String format, boolean compress) throws IOException {
+        Matcher from = FROM.matcher(sql);
+        if (!from.find()) {
+            respondError(exchange, compress, "Code: 62, e.displayText() = DB::Exception: Syntax error: " + sql);
+            return;
+        }
+        Table table = table(from.group(1));
+        if (table == null) {
+            respondError(exchange, compress, "Code: 60, e.displayText() = DB::Exception: Table " + from.group(1) + " doesn't exist.");
+            return;
+        }
+        Matcher count = COUNT.matcher(sql);
+        if (count.find()) {
+            String name = count.group(1) == null ? "count()" : count.group(1);
+            result(exchange, format, compress, Result.single(name, "UInt64", (long) table.rowCount));
+            return;
+        }
+        int[] projection = projection(table, sql);
+        int offset = 0;
+        int limit = table.rowCount;
+        Matcher limitMatcher = LIMIT.matcher(sql);
+        if (limitMatcher.find()) {
+            if (limitMatcher.group(2) != null) {// limit offset, size
+                offset = Integer.parseInt(limitMatcher.group(1));
+                limit = Integer.parseInt(limitMatcher.group(2));
+            } else {
+                limit = Integer.parseInt(limitMatcher.group(1));
+                offset = limitMatcher.group(3) == null ? 0 : Integer.parseInt(limitMatcher.group(3));
+            }
+        }
+        int first = 0;
+        Matcher seek = SEEK.matcher(sql);
+        if (seek.find() && seek.group(1).equalsIgnoreCase(table.columns[0])) {
+            first = (int) Math.min(Long.parseLong(seek.group(2)) + 1, table.rowCount);
+        }
+        int[] keys = null;
+        Matcher in = KEY_IN.matcher(sql);
+        if (in.find() && in.group(1).equalsIgnoreCase(table.columns[0])) {
+            keys = Arrays.stream(in.group(2).split(",")).map(String::trim).filter(k -> !k.isEmpty())
+                    .mapToInt(Integer::parseInt).filter(k -> k >= 0 && k < table.rowCount).distinct().sorted().toArray();
+        }
+        int total = keys == null ? table.rowCount : keys.length;
+        int start = (int) Math.min((long) first + offset, total);
+        int end = (int) Math.min((long) start + limit, total);
+        final int[] rows = keys;
+        String[] names = new String[projection.length];
+        String[] types = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            names[i] = table.columns[projection[i]];
+            types[i] = table.types[projection[i]];
+        }
+        Result result = new Result(names, types, end - start, i -> {
+            Object[] row = table.rowGenerator.apply(rows == null ? start + i : rows[start + i]);
+            Object[] projected = new Object[projection.length];
+            for (int j = 0; j < projection.length; j++) {
+                projected[j] = row[projection[j]];
+            }
+            return projected;
+        });
+        for (Map.Entry<Pattern, long[]> drop : drops.entrySet()) {
+            if (drop.getKey().matcher(sql).find() && drop.getValue()[0] < result.rowCount) {
+                String queryId = exchange.getResponseHeaders().getFirst("X-ClickHouse-Query-Id");
+                long stallMillis = drop.getValue()[1];
+                result.dropAfter = (int) drop.getValue()[0];
+                result.stall = () -> await(queryId, stallMillis);
+                break;
+            }
+        }
+        result(exchange, format, compress, result);
+    }
+
+    /**
+     * 选择列全部是本表列名时按列投影，否则（*、表达式）返回所有列
+     */
+    private static int[] projection(Table table, String sql) {
+        int[] all = new int[table.columns.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        Matcher selectList = SELECT_LIST.matcher(sql);
+        if (!selectList.find()) {
+            return all;
+        }
+        String[] items = selectList.group(1).split(",");
+        int[] projection = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            String item = items[i].trim();
+            if (!IDENTIFIER.matcher(item).matches()) {
+                return all;
+            }
+            int index = table.indexOf(unquote(item));
+            if (index < 0) {
+                return all;
+            }
+            projection[i] = index;
+        }
+        return projection;
+    }
+
+    private void describe(HttpExchange exchange, String sql, String format, boolean compress) throws IOException {
+        Matcher matcher = DESCRIBE.matcher(sql);
+        Table table = matcher.find() ? table(matcher.group(1)) : null;
+        if (table == null) {
+            respondError(exchange, compress, "Code: 60, e.displayText() = DB::Exception: Table doesn't exist: " + sql);
+            return;
+        }
+        result(exchange, format, compress, new Result(
+                new String[]{"name", "type", "default_type", "default_expression", "comment", "codec_expression", "ttl_expression"},
+                new String[]{"String", "String", "String", "String", "String", "String", "String"},
+                table.columns.length, i -> new Object[]{table.columns[i], table.types[i], "", "", "", "", ""}));
+    }
+
+    private void insert(HttpExchange exchange, String sql, String format, InputStream data, boolean compress) throws IOException {
+        Matcher matcher = INSERT.matcher(sql);
+        Table table = matcher.find() ? table(matcher.group(1)) : null;
+        if (table == null) {
+            respondError(exchange, compress, "Code: 60, e.displayText() = DB::Exception: Table doesn't exist: " + sql);
+            return;
+        }
+        long rows;
+        CountingInputStream in = new CountingInputStream(data == null ? new ByteArrayInputStream(new byte[0]) : data);
+        String upper = format.toUpperCase(Locale.ROOT);
+        if (data == null) {
+            rows = countValues(sql);
+        } else if (upper.startsWith("ROWBINARY")) {
+            String[] types = table.types;
+            if (matcher.group(2) != null) {
+                String[] columns = matcher.group(2).split(",");
+                types = new String[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    int index = table.indexOf(unquote(columns[i].trim()));
+                    if (index < 0) {
+                        respondError(exchange, compress, "Code: 16, e.displayText() = DB::Exception: No such column " + columns[i].trim());
+                        return;
+                    }
+                    types[i] = table.types[index];
+                }
+            }
+            rows = countRowBinary(in, types);
+        } else {
+            rows = countLines(in);
+        }
+        table.insertedRows.addAndGet(rows);
+        table.insertedBytes.addAndGet(in.count);
+        respond(exchange, 200, compress, out -> { });
+    }
+
+    private Table table(String qualifiedName) {
+        String name = unquote(qualifiedName);
+        int dot = name.lastIndexOf('.');
+        return tables.get((dot < 0 ? name : name.substring(dot + 1)).toLowerCase(Locale.ROOT));
+    }
+
+    private static String unquote(String name) {
+        return name.replace("`", "").replace("\"", "");
+    }
+
+    // ================================ 响应编码 ================================
+
+    private void result(HttpExchange exchange, String format, boolean compress, Result result) throws IOException {
+        String upper = format.toUpperCase(Locale.ROOT);
+        exchange.getResponseHeaders().add("X-ClickHouse-Format", format);
+        switch (upper) {
+            case "TABSEPARATED":
+            case "TSV":
+            case "TABSEPARATEDWITHNAMES":
+            case "TSVWITHNAMES":
+            case "TABSEPARATEDWITHNAMESANDTYPES":
+            case "TSVWITHNAMESANDTYPES":
+                exchange.getResponseHeaders().add("Content-Type", "text/tab-separated-values; charset=UTF-8");
+                respond(exchange, 200, compress, out -> writeTsv(out, result, upper.contains("NAMES"), upper.contains("TYPES")));
+                return;
+            case "ROWBINARY":
+            case "ROWBINARYWITHNAMESANDTYPES":
+                exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+                respond(exchange, 200, compress, out -> writeRowBinary(out, result, upper.contains("NAMES")));
+                return;
+            default:
+                respondError(exchange, compress, "Code: 73, e.displayText() = DB::Exception: Unknown format " + format);
+        }
+    }
+
+    private static void writeTsv(OutputStream out, Result result, boolean names, boolean types) throws IOException {
+        SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd");
+        SimpleDateFormat dateTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder line = new StringBuilder(256);
+        if (names) {
+            out.write((String.join("\t", result.names) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        if (types) {
+            out.write((String.join("\t", result.types) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < result.rowCount; i++) {
+            result.checkDrop(i);
+            Object[] row = result.rowGenerator.apply(i);
+            line.setLength(0);
+            for (int j = 0; j < row.length; j++) {
+                if (j > 0) {
+                    line.append('\t');
+                }
+                Object value = row[j];
+                if (value == null) {
+                    line.append("\\N");
+                } else if (value instanceof Date) {
+                    line.append(baseType(result.types[j]).startsWith("DateTime") ? dateTime.format(value) : date.format(value));
+                } else if (value instanceof Boolean) {
+                    line.append((Boolean) value ? '1' : '0');
+                } else {
+                    escape(line, value.toString());
+                }
+            }
+            line.append('\n');
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void escape(StringBuilder line, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\t':
+                    line.append("\\t");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+    }
+
+    private static void writeRowBinary(OutputStream out, Result result, boolean header) throws IOException {
+        ClickHouseRowBinaryStream stream = new ClickHouseRowBinaryStream(out, TimeZone.getDefault(), new ClickHouseProperties());
+        if (header) {
+            stream.writeUnsignedLeb128(result.names.length);
+            for (String name : result.names) {
+                stream.writeString(name);
+            }
+            for (String type : result.types) {
+                stream.writeString(type);
+            }
+        }
+        for (int i = 0; i < result.rowCount; i++) {
+            result.checkDrop(i);
+            Object[] row = result.rowGenerator.apply(i);
+            for (int j = 0; j < row.length; j++) {
+                writeValue(stream, result.types[j], row[j]);
+            }
+        }
+    }
+
+    private static void writeValue(ClickHouseRowBinaryStream stream, String type, Object value) throws IOException {
+        if (type.startsWith("Nullable(")) {
+            stream.markNextNullable(value == null);
+            if (value == null) {
+                return;
+            }
+            type = type.substring("Nullable(".length(), type.length() - 1);
+        }
+        type = baseType(type);
+        switch (type) {
+            case "UInt8":
+                stream.writeUInt8(value instanceof Boolean ? ((Boolean) value ? 1 : 0) : ((Number) value).intValue());
+                return;
+            case "Int8":
+                stream.writeInt8(((Number) value).intValue());
+                return;
+            case "UInt16":
+                stream.writeUInt16(((Number) value).intValue());
+                return;
+            case "Int16":
+                stream.writeInt16(((Number) value).intValue());
+                return;
+            case "UInt32":
+                stream.writeUInt32(((Number) value).longValue());
+                return;
+            case "Int32":
+                stream.writeInt32(((Number) value).intValue());
+                return;
+            case "UInt64":
+                stream.writeUInt64(((Number) value).longValue());
+                return;
+            case "Int64":
+                stream.writeInt64(((Number) value).longValue());
+                return;
+            case "Float32":
+                stream.writeFloat32(((Number) value).floatValue());
+                return;
+            case "Float64":
+                stream.writeFloat64(((Number) value).doubleValue());
+                return;
+            case "Date":
+                stream.writeDate((Date) value);
+                return;
+            case "String":
+                stream.writeString(value.toString());
+                return;
+            default:
+                if (type.startsWith("DateTime")) {// DateTime / DateTime('Asia/Shanghai')
+                    stream.writeDateTime((Date) value);
+                    return;
+                }
+                throw new IOException("unsupported RowBinary type " + type);
+        }
+    }
+
+    /**
+     * 去掉 LowCardinality 包装，RowBinary 下与内部类型编码相同
+     */
+    private static String baseType(String type) {
+        return type.startsWith("LowCardinality(") ? type.substring("LowCardinality(".length(), type.length() - 1) : type;
+    }
+
+    private void respondError(HttpExchange exchange, boolean compress, String message) throws IOException {
+        respond(exchange, 500, compress, out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void respond(HttpExchange exchange, int status, boolean compress, BodyWriter writer) throws IOException {
+        exchange.sendResponseHeaders(status, 0);// chunked
+        OutputStream out = new BufferedOutputStream(new FilterOutputStream(exchange.getResponseBody()) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                sentBytes.addAndGet(len);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                sentBytes.incrementAndGet();
+            }
+        }, 64 * 1024);
+        OutputStream lz4 = compress ? new BufferedOutputStream(new ClickHouseLZ4OutputStream(out, 1024 * 1024), 64 * 1024) : null;
+        try {
+            writer.write(compress ? lz4 : out);
+        } catch (ConnectionDropped e) {
+            if (compress) {
+                lz4.flush();
+            }
+            out.flush();// 断开前已生成的行先发给客户端
+            e.stall();
+            throw e;
+        }
+        if (compress) {
+            lz4.flush();// 把最后一个压缩块写出
+        }
+        out.flush();
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Stall {
+        void await() throws InterruptedException;
+    }
+
+    /**
+     * 生成结果时抛出，respond 发出已生成的行并停住后由 handle 断开连接
+     */
+    private static final class ConnectionDropped extends IOException {
+        private final Stall stall;
+
+        ConnectionDropped(Stall stall) {
+            this.stall = stall;
+        }
+
+        void stall() throws IOException {
+            try {
+                stall.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+
+    // ================================ 插入解析 ================================
+
+    private static long countLines(InputStream in) throws IOException {
+        long lines = 0;
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        int last = '\n';
+        while ((read = in.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    lines++;
+                }
+            }
+            last = buffer[read - 1];
+        }
+        return last == '\n' ? lines : lines + 1;
+    }
+
+    private static long countRowBinary(InputStream in, String[] types) throws IOException {
+        long rows = 0;
+        while (true) {
+            int first = in.read();
+            if (first < 0) {
+                return rows;
+            }
+            for (int i = 0; i < types.length; i++) {
+                skipValue(in, types[i], i == 0 ? first : -1);
+            }
+            rows++;
+        }
+    }
+
+    /**
+     * 跳过一个 RowBinary 值
+     *
+     * @param first 已读取的第一个字节，没有为 -1
+     */
+    private static void skipValue(InputStream in, String type, int first) throws IOException {
+        if (type.startsWith("Nullable(")) {
+            int isNull = first >= 0 ? first : readByte(in);
+            if (isNull == 1) {
+                return;
+            }
+            skipValue(in, type.substring("Nullable(".length(), type.length() - 1), -1);
+            return;
+        }
+        type = baseType(type);
+        int size;
+        switch (type) {
+            case "UInt8":
+            case "Int8":
+                size = 1;
+                break;
+            case "UInt16":
+            case "Int16":
+            case "Date":
+                size = 2;
+                break;
+            case "UInt32":
+            case "Int32":
+            case "Float32":
+            case "DateTime":
+                size = 4;
+                break;
+            case "UInt64":
+            case "Int64":
+            case "Float64":
+                size = 8;
+                break;
+            case "String":
+                size = (int) readLeb128(in, first);
+                first = -1;
+                break;
+            default:
+                if (type.startsWith("FixedString(")) {
+                    size = Integer.parseInt(type.substring("FixedString(".length(), type.length() - 1));
+                    break;
+                }
+                if (type.startsWith("DateTime")) {
+                    size = 4;
+                    break;
+                }
+                throw new IOException("unsupported RowBinary type " + type);
+        }
+        if (first >= 0) {
+            size--;
+        }
+        skipFully(in, size);
+    }
+
+    private static long readLeb128(InputStream in, int first) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b = first >= 0 ? first : readByte(in);
+        while (true) {
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            b = readByte(in);
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("truncated RowBinary row");
+        }
+        return b;
+    }
+
+    /**
+     * 读取并丢弃 bytes 字节；HttpServer 的分块请求体不能用 skip（会绕过分块解码）
+     */
+    private static void skipFully(InputStream in, int bytes) throws IOException {
+        byte[] buffer = new byte[Math.min(bytes, 8192)];
+        while (bytes > 0) {
+            int read = in.read(buffer, 0, Math.min(bytes, buffer.length));
+            if (read < 0) {
+                throw new EOFException("truncated RowBinary row");
+            }
+            bytes -= read;
+        }
+    }
+
+    /**
+     * INSERT ... VALUES (...), (...) 中的行数
+     */
+    private static long countValues(String sql) {
+        int values = sql.toLowerCase(Locale.ROOT).indexOf("values");
+        if (values < 0) {
+            return 0;
+        }
+        long rows = 0;
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = values; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quoted) {
+                i++;
+            } else if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                if (depth++ == 0) {
+                    rows++;
+                }
+            } else if (!quoted && c == ')') {
+                depth--;
+            }
+        }
+        return rows;
+    }
+
+    // ================================ 工具 ================================
+
+    private static Map<String, String> queryParams(String rawQuery) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            params.put(key, eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+        }
+        return params;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private static final class Table {
+        final String[] columns;
+        final String[] types;
+        final int rowCount;
+        final IntFunction<Object[]> rowGenerator;
+        final AtomicLong insertedRows = new AtomicLong();
+        final AtomicLong insertedBytes = new AtomicLong();
+
+        Table(String[] columns, String[] types, int rowCount, IntFunction<Object[]> rowGenerator) {
+            if (columns.length != types.length) {
+                throw new IllegalArgumentException("columns " + Arrays.toString(columns) + ", types " + Arrays.toString(types));
+            }
+            this.columns = columns;
+            this.types = types;
+            this.rowCount = rowCount;
+            this.rowGenerator = rowGenerator;
+        }
+
+        int indexOf(String column) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equalsIgnoreCase(column)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Result {
+        final String[] names;
+        final String[] types;
+        final int rowCount;
+        final IntFunction<Object[]> rowGenerator;
+        int dropAfter = -1;
+        Stall stall;
+
+        Result(String[] names, String[] types, int rowCount, IntFunction<Object[]> rowGenerator) {
+            this.names = names;
+            this.types = types;
+            this.rowCount = rowCount;
+            this.rowGenerator = rowGenerator;
+        }
+
+        void checkDrop(int row) throws ConnectionDropped {
+            if (row == dropAfter) {
+                throw new ConnectionDropped(stall);
+            }
+        }
+
+        static Result single(String name, String type, Object value) {
+            return new Result(new String[]{name}, new String[]{type}, 1, i -> new Object[]{value});
+        }
+    }
+
+    private static final class CountingInputStream extends InputStream {
+        private final InputStream in;
+        long count;
+
+        CountingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.clickhouse.ClickHouseConnection;
+import ru.yandex.clickhouse.ClickHouseStatement;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通过真实的 clickhouse-jdbc 驱动和连接池访问假clickHouse服务：查询、分页、count、两种批量插入、RowBinary、异常和延迟
+ */
+public class FakeClickHouseServerTest {
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        server = FakeClickHouseServer.start().tTest(100);
+        dao = newDao(server.getJdbcUrl());
+    }
+
+    private TTestDao newDao(String jdbcUrl) {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(jdbcUrl);
+        dataSource.setMaximumPoolSize(4);
+        TTestDao tTestDao = new TTestDao();
+        ReflectionTestUtils.setField(tTestDao, "clickHouseDatasource", dataSource);
+        return tTestDao;
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+        server.close();
+    }
+
+    @Test
+    public void selectsGeneratedRows() {
+        List<TTest> list = dao.selectListObj("SELECT * FROM t_test", null);
+        Assert.assertEquals(100, list.size());
+        Assert.assertEquals(Integer.valueOf(42), list.get(42).getId());
+        Assert.assertEquals("address42", list.get(42).getAddress());
+        Assert.assertEquals(Integer.valueOf(0), list.get(42).getDelStatus());
+        Assert.assertNotNull(list.get(42).getCreateDate());
+
+        List<Map<String, Object>> maps = dao.selectListMap("SELECT id, name FROM t_test LIMIT 3", null);
+        Assert.assertEquals(3, maps.size());
+        Assert.assertEquals(2, maps.get(0).size());
+        Assert.assertEquals("name2", maps.get(2).get("name"));
+    }
+
+    @Test
+    public void countAndPage() {
+        Assert.assertEquals(100, dao.selectCount("where del_status = ?", new Object[]{1}));
+        Assert.assertEquals(100, dao.selectCount("SELECT * FROM t_test"));
+
+        List<TTest> page = dao.selectPage(10, 5, "where del_status = ?", new Object[]{1});
+        Assert.assertEquals(5, page.size());
+        Assert.assertEquals(Integer.valueOf(10), page.get(0).getId());
+        Assert.assertTrue(server.getQueries().contains("select id,name,address,create_date,del_status from t_test where del_status = 1 limit 10,5"));
+
+        List<TTest> subset = dao.selectPage(0, 5, null, null, "id", "name");
+        Assert.assertEquals("name3", subset.get(3).getName());
+        Assert.assertNull(subset.get(3).getAddress());// 没有查询的列不读取
+        Assert.assertTrue(server.getQueries().contains("select id,name from t_test limit 0,5"));
+        Assert.assertTrue(dao.selectPage(0, 5, null, null, "no_such_column").isEmpty());
+    }
+
+    @Test
+    public void countsInsertedRows() {
+        List<TTest> entities = new ArrayList<>();
+        List<Map<String, Object>> maps = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            TTest entity = new TTest();
+            entity.setId(i);
+            entity.setName(i % 10 == 0 ? null : "name\t" + i);
+            entity.setAddress("address" + i);
+            entity.setCreateDate(new Date());
+            entity.setDelStatus(i % 2);
+            entities.add(entity);
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", i);
+            map.put("name", "name\n" + i);
+            maps.add(map);
+        }
+
+        dao.batchInsert(entities, 1000);
+        Assert.assertEquals(2500, server.getInsertedRows("t_test"));
+        Assert.assertTrue(server.getInsertedBytes("t_test") > 2500 * 10);
+
+        dao.batchInsertExt(maps);
+        Assert.assertEquals(5000, server.getInsertedRows("t_test"));
+    }
+
+    @Test
+    public void rowBinaryResponse() throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             ClickHouseStatement statement = conn.unwrap(ClickHouseConnection.class).createStatement();
+             ClickHouseRowBinaryInputStream in = statement.executeQueryClickhouseRowBinaryStream("SELECT id, name FROM t_test LIMIT 5, 2")) {
+            Assert.assertEquals(5, in.readUInt32());
+            Assert.assertEquals("name5", in.readString());
+            Assert.assertEquals(6, in.readUInt32());
+            Assert.assertEquals("name6", in.readString());
+        }
+    }
+
+    @Test
+    public void uncompressedResponses() {
+        dao = newDao(server.getJdbcUrl() + "?compress=0");
+        Assert.assertEquals(100, dao.selectListObj("SELECT * FROM t_test", null).size());
+    }
+
+    @Test
+    public void injectedErrorsAndLatency() {
+        server.failWhen("from t_test", 60, "Table default.t_test doesn't exist.");
+        Assert.assertNull(dao.selectListObj("SELECT * FROM t_test", null));
+        Assert.assertNull(dao.selectOne("SELECT * FROM missing_table", null));
+        server.clearFailures();
+
+        dao.selectCount("SELECT * FROM t_test");// 预热连接
+        server.latency(50);
+        long start = System.nanoTime();
+        Assert.assertEquals(100, dao.selectCount("SELECT * FROM t_test"));
+        Assert.assertTrue(System.nanoTime() - start >= 50_000_000L);
+    }
+}
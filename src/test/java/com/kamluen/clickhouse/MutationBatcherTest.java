@@ -0,0 +1,178 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.MutationBatcher;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * mutation 合并：窗口内的主键删除/修改合并成 where pk in (……)，修改按 SET 取值分组；与 close() 并发的提交不会丢失
+ */
+public class MutationBatcherTest {
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private SimpleMeterRegistry registry;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        server = FakeClickHouseServer.start().tTest(10);
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(1);
+        registry = new SimpleMeterRegistry();
+        dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+        ReflectionTestUtils.setField(dao, "meterRegistry", registry);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+        server.close();
+    }
+
+    @Test
+    public void coalescesDeletesIntoOneMutation() {
+        MutationBatcher<TTest> batcher = MutationBatcher.builder(dao).maxDelay(1, TimeUnit.HOURS).build();
+        for (int id = 0; id < 1000; id++) {
+            batcher.deleteByPrimaryKey(id);
+        }
+        batcher.deleteByPrimaryKey(5);// 重复的主键
+        Assert.assertEquals(1000, batcher.getPendingKeys());
+        batcher.flush();
+
+        List<String> mutations = mutations();
+        Assert.assertEquals(1, mutations.size());
+        Assert.assertTrue(mutations.get(0).startsWith("alter table t_test delete where id in (0,1,2,"));
+        Assert.assertTrue(mutations.get(0).endsWith(",997,998" + String.join("", Collections.nCopies(25, ",999")) + ")"));// 补齐到1024个
+        Assert.assertEquals(1, batcher.getMutationCount());
+        Assert.assertEquals(1000, batcher.getMutationsSaved());
+        Assert.assertEquals(1000, registry.get("clickhouse.dao.mutations")
+                .tags("table", "t_test", "result", "saved").functionCounter().count(), 0);
+        batcher.close();
+    }
+
+    @Test
+    public void groupsUpdatesBySetValues() {
+        MutationBatcher<TTest> batcher = MutationBatcher.builder(dao).maxDelay(1, TimeUnit.HOURS).build();
+        batcher.updateByPrimaryKey(entity(1, "a"));
+        batcher.updateByPrimaryKey(entity(2, "a"));
+        batcher.updateByPrimaryKey(entity(3, "b"));
+        batcher.updateByPrimaryKey(entity(2, "b"));// 以最后一次为准
+        batcher.updateByPrimaryKey(entity(4, "a"));
+        batcher.deleteByPrimaryKey(4);// 删除覆盖之前的修改
+        batcher.updateByPrimaryKey(entity(4, "c"));// 已删除的行不再修改
+        batcher.close();
+
+        List<String> mutations = mutations();
+        Assert.assertEquals(3, mutations.size());
+        Assert.assertEquals("alter table t_test update name = 'a',address = 'addr',create_date = null,del_status = 0 where id in (1)",
+                mutations.get(0));
+        Assert.assertEquals("alter table t_test update name = 'b',address = 'addr',create_date = null,del_status = 0 where id in (3,2)",
+                mutations.get(1));
+        Assert.assertEquals("alter table t_test delete where id in (4)", mutations.get(2));
+        Assert.assertEquals(4, batcher.getMutationsSaved());
+    }
+
+    @Test
+    public void flushesWhenWindowEnds() throws Exception {
+        MutationBatcher<TTest> batcher = MutationBatcher.builder(dao).maxDelay(50, TimeUnit.MILLISECONDS).build();
+        batcher.deleteByPrimaryKey(1);
+        batcher.deleteByPrimaryKey(2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (batcher.getMutationCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, batcher.getMutationCount());
+        Assert.assertEquals("alter table t_test delete where id in (1,2)", mutations().get(0));
+        batcher.close();
+    }
+
+    @Test
+    public void flushesEarlyAtMaxKeys() throws Exception {
+        MutationBatcher<TTest> batcher = MutationBatcher.builder(dao).maxKeys(3).maxDelay(1, TimeUnit.HOURS).build();
+        for (int id = 0; id < 3; id++) {
+            batcher.deleteByPrimaryKey(id);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (batcher.getMutationCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("alter table t_test delete where id in (0,1,2,2)", mutations().get(0));
+        batcher.close();
+    }
+
+    @Test
+    public void closeRacingProducersLosesNoAcceptedKey() throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        for (int round = 0; round < 20; round++) {
+            MutationBatcher<TTest> batcher = MutationBatcher.builder(dao).maxDelay(1, TimeUnit.HOURS).build();
+            CountDownLatch started = new CountDownLatch(8);
+            ExecutorService producers = Executors.newFixedThreadPool(8);
+            for (int t = 0; t < 8; t++) {
+                int base = round * 1000000 + t * 100000;
+                producers.execute(() -> {
+                    started.countDown();
+                    for (int i = 0; i < 2000; i++) {
+                        try {
+                            if (i % 2 == 0) {
+                                batcher.deleteByPrimaryKey(base + i);
+                            } else {
+                                batcher.updateByPrimaryKey(entity(base + i, "a"));
+                            }
+                            accepted.incrementAndGet();
+                        } catch (IllegalStateException closed) {
+                            return;
+                        }
+                    }
+                });
+            }
+            started.await();
+            Thread.sleep(2);
+            batcher.close();
+            producers.shutdown();
+            Assert.assertTrue(producers.awaitTermination(10, TimeUnit.SECONDS));
+            Assert.assertEquals(0, batcher.getPendingKeys());// 关闭之后没有留在待处理集合里的主键
+        }
+        // 所有成功返回的提交都已执行
+        Set<String> keys = new HashSet<>();
+        for (String mutation : mutations()) {
+            String list = mutation.substring(mutation.lastIndexOf('(') + 1, mutation.length() - 1);
+            keys.addAll(Arrays.asList(list.split(",")));
+        }
+        Assert.assertEquals(accepted.get(), keys.size());
+    }
+
+    private List<String> mutations() {
+        return server.getQueries().stream().filter(sql -> sql.startsWith("alter")).collect(Collectors.toList());
+    }
+
+    private static TTest entity(int id, String name) {
+        TTest entity = new TTest();
+        entity.setId(id);
+        entity.setName(name);
+        entity.setAddress("addr");
+        entity.setDelStatus(0);
+        return entity;
+    }
+}
@@ -0,0 +1,73 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.mapping.RowCursor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * execute() 每行返回独立的 Object[]，selectRows() 复用同一个行游标
+ */
+public class ObjectRowMappingTest {
+
+    private StubDataSource dataSource;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        dataSource = StubDataSource.tTest(1000);
+        dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+    }
+
+    @Test
+    public void executeReturnsOneArrayPerRow() {
+        List<Object[]> rows = dao.execute("SELECT * FROM t_test");
+
+        Assert.assertEquals(1000, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            Assert.assertEquals(5, row.length);
+            Assert.assertEquals(i, row[0]);
+            Assert.assertEquals("name" + i, row[1]);
+            Assert.assertEquals(i % 2, row[4]);
+        }
+        Assert.assertNotSame(rows.get(0), rows.get(1));
+        Assert.assertEquals(0, dataSource.openConnections.get());
+    }
+
+    @Test
+    public void executeEmptyResult() {
+        dataSource = StubDataSource.tTest(0);
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+
+        Assert.assertTrue(dao.execute("SELECT * FROM t_test").isEmpty());
+    }
+
+    @Test
+    public void selectRowsReusesCursor() {
+        List<RowCursor> cursors = new ArrayList<>();
+        List<Object[]> copies = new ArrayList<>();
+        long count = dao.selectRows("SELECT * FROM t_test where del_status = ?", new Object[]{1}, cursor -> {
+            if (cursors.isEmpty() || cursors.get(0) != cursor) {
+                cursors.add(cursor);
+            }
+            Assert.assertEquals(5, cursor.getColumnCount());
+            Assert.assertEquals("address" + cursor.getRowNum(), cursor.get("ADDRESS"));
+            if (cursor.getRowNum() % 100 == 0) {
+                copies.add(cursor.toArray());
+            }
+        });
+
+        Assert.assertEquals(1000, count);
+        Assert.assertEquals(1, cursors.size());
+        Assert.assertEquals(10, copies.size());
+        Assert.assertEquals(900, copies.get(9)[0]);
+        Assert.assertEquals(0, dataSource.openConnections.get());
+    }
+}
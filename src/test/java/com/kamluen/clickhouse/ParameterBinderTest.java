@@ -0,0 +1,72 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.mapping.ParameterBinder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 参数绑定：按类型直接 setXxx，批量插入时每列按表结构和第一个取值确定一次
+ */
+public class ParameterBinderTest {
+
+    private enum Status {
+        ACTIVE {
+            @Override
+            public String toString() {
+                return "active";
+            }
+        }
+    }
+
+    private final List<String> calls = new ArrayList<>();
+
+    private final PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[]{PreparedStatement.class}, (proxy, method, args) -> {
+                calls.add(method.getName() + Arrays.asList(args));
+                return null;
+            });
+
+    @Test
+    public void bindsByValueType() throws Exception {
+        Object[] values = {1, 2L, "a", 1.5d, BigDecimal.ONE, 2.5f, (short) 3, (byte) 4, true, Status.ACTIVE, null};
+        for (int i = 0; i < values.length; i++) {
+            ParameterBinder.bindValue(ps, i + 1, values[i]);
+        }
+        Assert.assertEquals(Arrays.asList("setInt[1, 1]", "setLong[2, 2]", "setString[3, a]", "setDouble[4, 1.5]",
+                "setBigDecimal[5, 1]", "setFloat[6, 2.5]", "setShort[7, 3]", "setByte[8, 4]", "setBoolean[9, true]",
+                "setString[10, ACTIVE]", "setObject[11, null]"), calls);
+
+        calls.clear();
+        ParameterBinder.bindValue(ps, 1, new Date(0));
+        Assert.assertEquals("setTimestamp[1, " + new Timestamp(0) + "]", calls.get(0));
+    }
+
+    @Test
+    public void columnBinderUsesSchemaForDates() throws Exception {
+        Date date = new Date(86_400_000L * 365);
+        ParameterBinder.forColumn("Nullable(DateTime)", date).bind(ps, 1, date);
+        ParameterBinder.forColumn("DateTime('Asia/Shanghai')", date).bind(ps, 1, null);
+        ParameterBinder.forColumn("Date", date).bind(ps, 2, date);
+        ParameterBinder.forColumn("DateTime64(3)", date).bind(ps, 3, date);
+        Assert.assertEquals(Arrays.asList("setLong[1, 31536000]", "setObject[1, null]",
+                "setDate[2, " + new java.sql.Date(date.getTime()) + "]", "setTimestamp[3, " + new Timestamp(date.getTime()) + "]"), calls);
+    }
+
+    @Test
+    public void columnBinderFallsBackOnOtherTypes() throws Exception {
+        ParameterBinder binder = ParameterBinder.forColumn("Int64", 1);
+        binder.bind(ps, 1, 7);
+        binder.bind(ps, 1, 8L);// 同一列后面的行换了类型
+        binder.bind(ps, 1, null);
+        Assert.assertEquals(Arrays.asList("setInt[1, 7]", "setLong[1, 8]", "setObject[1, null]"), calls);
+    }
+}
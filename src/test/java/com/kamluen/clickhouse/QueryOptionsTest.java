@@ -0,0 +1,161 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.config.ClickHouseDaoProperties;
+import com.yc.clickhouse.dao.QueryContext;
+import com.yc.clickhouse.dao.QueryOptions;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 每次调用的 query_id、单次调用的查询设置、客户端截止时间超过时 KILL QUERY（包括流式查询和读取结果途中超时）
+ */
+public class QueryOptionsTest {
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        server = FakeClickHouseServer.start().tTest(100);
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(1);// 后台补充的连接会被设置的延迟拖住
+        dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+        Assert.assertEquals(100, dao.selectCount(null, null));// 先建好连接，之后的请求都是DAO调用
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+        server.close();
+    }
+
+    @Test
+    public void everyCallCarriesQueryId() throws Exception {
+        int before = server.getRequestParams().size();
+        dao.selectListObj("SELECT * FROM t_test", null);
+        dao.selectListMap("SELECT id FROM t_test", null);
+        dao.batchInsertExt(Collections.singletonList(Collections.singletonMap("id", 1)));
+        dao.deleteByPrimaryKey(1);
+        dao.updateBySql("alter table t_test update name = 'a' where id = 1");
+        TTest row = dao.selectListObj("SELECT * FROM t_test LIMIT 1", null).get(0);
+        dao.batchInsert(Collections.singletonList(row));
+
+        List<Map<String, String>> requests = server.getRequestParams();
+        Set<String> queryIds = new HashSet<>();
+        for (Map<String, String> params : requests.subList(before, requests.size())) {
+            Assert.assertNotNull(params.toString(), params.get("query_id"));
+            queryIds.add(params.get("query_id"));
+        }
+        Assert.assertEquals(requests.size() - before, queryIds.size());
+    }
+
+    @Test
+    public void sendsPerCallSettings() {
+        QueryOptions options = QueryOptions.create().maxExecutionTime(5).maxMemoryUsage(1L << 30).maxThreads(2);
+        Assert.assertEquals(100, dao.withOptions(options, () -> dao.selectListObj("SELECT * FROM t_test", null)).size());
+        Map<String, String> params = withSetting("max_threads").get(0);
+        Assert.assertEquals("5", params.get("max_execution_time"));
+        Assert.assertEquals(String.valueOf(1L << 30), params.get("max_memory_usage"));
+        Assert.assertEquals("2", params.get("max_threads"));
+
+        dao.selectCount(null, null);
+        Assert.assertEquals(1, withSetting("max_threads").size());// 只作用于这一次调用
+    }
+
+    @Test
+    public void usesConfiguredDefaults() {
+        ClickHouseDaoProperties properties = new ClickHouseDaoProperties();
+        properties.setMaxExecutionTime(30);
+        ReflectionTestUtils.setField(dao, "daoProperties", properties);
+        dao.selectCount(null, null);
+        Assert.assertEquals("30", withSetting("max_execution_time").get(0).get("max_execution_time"));
+    }
+
+    @Test
+    public void deadlineKillsServerQuery() {
+        server.latency(10000);
+        long start = System.currentTimeMillis();
+        List<TTest> list = dao.withOptions(QueryOptions.create().timeout(300, TimeUnit.MILLISECONDS),
+                () -> dao.selectListObj("SELECT * FROM t_test", null));
+        Assert.assertNull(list);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+        Map<String, String> params = server.getRequestParams().stream()
+                .filter(p -> p.get("query_id") != null && !server.getKilledQueryIds().isEmpty()
+                        && p.get("query_id").equals(server.getKilledQueryIds().get(0)))
+                .findFirst().orElseThrow(AssertionError::new);
+        Assert.assertEquals("1", params.get("max_execution_time"));// 没有设置时以剩余时间兜底
+        server.latency(0);
+    }
+
+    @Test
+    public void deadlineKillsStreamingQuery() throws Exception {
+        server.latency(10000);
+        long start = System.currentTimeMillis();
+        long count = dao.withOptions(QueryOptions.create().timeout(300, TimeUnit.MILLISECONDS),
+                () -> dao.selectStream("SELECT * FROM t_test", null, row -> { }));
+        Assert.assertEquals(-1, count);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(1, server.getKilledQueryIds().size());
+        server.latency(0);
+
+        // 迭代器在调用返回后仍持有连接，关闭后连接从上下文注销，cancel 不再发出 KILL
+        QueryContext context = new QueryContext();
+        try (Stream<TTest> stream = context.run(() -> {
+            try {
+                return dao.selectStream("SELECT * FROM t_test", null);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        })) {
+            Assert.assertEquals(100, stream.count());
+        }
+        Assert.assertFalse(context.cancel());
+        Assert.assertTrue(server.getRequestParams().stream().anyMatch(p -> context.getQueryId().equals(p.get("query_id"))));
+    }
+
+    @Test
+    public void deadlineDuringFetchIsTimeout() {
+        server.tTest(20000).dropWhen("from t_test", 5000, 10000);// 发出5000行后停住，被KILL时断开
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TTestDao dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+        ReflectionTestUtils.setField(dao, "meterRegistry", registry);
+        QueryOptions options = QueryOptions.create().timeout(300, TimeUnit.MILLISECONDS);
+        long start = System.currentTimeMillis();
+
+        Assert.assertNull(dao.withOptions(options, () -> dao.selectListObj("SELECT * FROM t_test", null)));// 不是读到的5000行
+        Assert.assertEquals(-1, (long) dao.withOptions(options, () -> dao.selectStream("SELECT * FROM t_test", null, row -> { })));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(2, server.getKilledQueryIds().size());
+        for (String operation : new String[]{"selectList", "selectStream"}) {
+            Assert.assertEquals(operation, 1, registry.get("clickhouse.dao.errors")
+                    .tags("operation", operation, "exception", "SQLTimeoutException").counter().count(), 0);
+        }
+        server.clearFailures();
+    }
+
+    private List<Map<String, String>> withSetting(String name) {
+        return server.getRequestParams().stream().filter(params -> params.containsKey(name)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,88 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 查询结果缓存：按SQL+参数命中，TTL过期，本DAO写入后失效，取行出错的结果不缓存
+ */
+public class QueryResultCacheTest {
+
+    private StubDataSource dataSource;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        dataSource = StubDataSource.tTest(3);
+        dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+    }
+
+    @Test
+    public void cachesBySqlAndParams() {
+        List<Map<String, Object>> first = dao.selectListMap("SELECT * FROM t_test where id > ?", new Object[]{1}, 60000);
+        List<Map<String, Object>> second = dao.selectListMap("SELECT * FROM t_test where id > ?", new Object[]{1}, 60000);
+        dao.selectListMap("SELECT * FROM t_test where id > ?", new Object[]{2}, 60000);
+        dao.selectListObj("SELECT * FROM t_test where id > ?", new Object[]{1}, 60000);
+        dao.selectListMap("SELECT * FROM t_test where id > ?", new Object[]{1});
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(4, dataSource.executedSql.size());
+        Assert.assertEquals(1, dao.getResultCache().getStats().hitCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cachedListIsReadOnly() {
+        dao.selectListObj("SELECT * FROM t_test", null, 60000).add(new TTest());
+    }
+
+    @Test
+    public void expiresAfterTtl() throws Exception {
+        dao.selectListMap("SELECT * FROM t_test", null, 50);
+        dao.selectListMap("SELECT * FROM t_test", null, 50);
+        Thread.sleep(100);
+        dao.selectListMap("SELECT * FROM t_test", null, 50);
+
+        Assert.assertEquals(2, dataSource.executedSql.size());
+    }
+
+    @Test
+    public void writesInvalidate() throws Exception {
+        String sql = "SELECT * FROM t_test";
+        dao.selectListMap(sql, null, 60000);
+        dao.deleteByPrimaryKey(1);
+        dao.selectListMap(sql, null, 60000);
+        dao.updateByPrimaryKey(new TTest());
+        dao.selectListMap(sql, null, 60000);
+        dao.selectListMap(sql, null, 60000);
+
+        Assert.assertEquals(5, dataSource.executedSql.size());
+        Assert.assertEquals(2, dao.getResultCache().getInvalidationCount());
+        Assert.assertEquals(1, dao.getResultCache().getStats().hitCount());
+    }
+
+    @Test
+    public void failedFetchIsNotCached() {
+        try (FakeClickHouseServer server = FakeClickHouseServer.start().tTest(20000).dropWhen("from t_test", 5000, 0);
+             HikariDataSource hikari = new HikariDataSource()) {
+            hikari.setJdbcUrl(server.getJdbcUrl());
+            hikari.setMaximumPoolSize(1);
+            ReflectionTestUtils.setField(dao, "clickHouseDatasource", hikari);
+
+            Assert.assertNull(dao.selectListObj("SELECT * FROM t_test", null, 60000));// 不是前5000行
+            Assert.assertNull(dao.selectListMap("SELECT * FROM t_test", null, 60000));
+            server.clearFailures();
+            Assert.assertEquals(20000, dao.selectListObj("SELECT * FROM t_test", null, 60000).size());
+            Assert.assertEquals(20000, dao.selectListMap("SELECT * FROM t_test", null, 60000).size());
+            Assert.assertEquals(0, dao.getResultCache().getStats().hitCount());
+        }
+    }
+}
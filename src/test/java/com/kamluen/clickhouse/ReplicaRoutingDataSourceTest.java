@@ -0,0 +1,131 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.ReplicaRoutingDataSource;
+import com.yc.clickhouse.dao.TTestDao;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 两个假副本上的路由：负载分摊、副本级错误（包括读取结果途中断开）隔离并换副本重试、SQL错误不重试也不计入错误率、
+ * 副本宕机时切换、响应时间不包括读取结果的时间
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private final List<FakeClickHouseServer> servers = new ArrayList<>();
+    private ReplicaRoutingDataSource dataSource;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        Map<String, DataSource> pools = new LinkedHashMap<>();
+        for (int i = 0; i < 2; i++) {
+            FakeClickHouseServer server = FakeClickHouseServer.start().tTest(10);
+            servers.add(server);
+            HikariDataSource pool = new HikariDataSource();
+            pool.setJdbcUrl(server.getJdbcUrl());
+            pool.setMaximumPoolSize(2);
+            pool.setConnectionTimeout(500);
+            pool.setValidationTimeout(250);
+            pools.put(server.getJdbcUrl(), pool);
+        }
+        dataSource = new ReplicaRoutingDataSource(pools, 60000, 120000, 1);
+        dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+        servers.forEach(FakeClickHouseServer::close);
+    }
+
+    private int selects(FakeClickHouseServer server) {
+        return (int) server.getQueries().stream().filter(sql -> sql.contains("t_test")).count();
+    }
+
+    @Test
+    public void spreadsQueriesOverReplicas() {
+        for (int i = 0; i < 40; i++) {
+            Assert.assertEquals(10, dao.selectListObj("SELECT * FROM t_test", null).size());
+        }
+        Assert.assertTrue(selects(servers.get(0)) > 0);
+        Assert.assertTrue(selects(servers.get(1)) > 0);
+    }
+
+    @Test
+    public void quarantinesFailingReplicaAndRetriesReads() {
+        servers.get(0).failWhen("t_test", 210, "Connection reset by peer");
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(10, dao.selectListObj("SELECT * FROM t_test", null).size());
+        }
+        Assert.assertTrue(selects(servers.get(0)) <= 1);// 失败一次后被隔离
+        Assert.assertEquals(20, selects(servers.get(1)));
+        Assert.assertTrue(dataSource.getReplicaStates().get(servers.get(0).getJdbcUrl()).contains("quarantined=true"));
+    }
+
+    @Test
+    public void retriesAndQuarantinesReplicaDroppingMidResponse() {
+        servers.get(0).tTest(20000).dropWhen("t_test", 5000, 0);
+        servers.get(1).tTest(20000);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(20000, dao.selectListObj("SELECT * FROM t_test", null).size());
+        }
+        Assert.assertEquals(1, selects(servers.get(0)));// 第一次成功后另一个副本耗时为0，负载更低，一定会被选中
+        Assert.assertTrue(dataSource.getReplicaStates().get(servers.get(0).getJdbcUrl()).contains("quarantined=true"));
+    }
+
+    @Test
+    public void latencyExcludesConsumingRows() {
+        long rows = dao.selectStream("SELECT * FROM t_test", null, row -> {
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assert.assertEquals(10, rows);// 连接租借了300ms以上
+        for (String state : dataSource.getReplicaStates().values()) {
+            double latency = Double.parseDouble(state.substring("latency=".length(), state.indexOf("ms")));
+            Assert.assertTrue(state, latency < 150);
+        }
+    }
+
+    @Test
+    public void doesNotRetrySqlErrors() {
+        servers.get(0).failWhen("t_test", 62, "Syntax error");
+        servers.get(1).failWhen("t_test", 62, "Syntax error");
+        Assert.assertNull(dao.selectListObj("SELECT * FROM t_test", null));
+        Assert.assertEquals(1, selects(servers.get(0)) + selects(servers.get(1)));
+        Assert.assertFalse(dataSource.getReplicaStates().toString().contains("quarantined=true"));
+    }
+
+    @Test
+    public void sqlErrorsDoNotRaiseErrorRate() {
+        servers.get(0).failWhen("t_test", 62, "Syntax error");
+        for (int i = 0; i < 20; i++) {
+            dao.selectListObj("SELECT * FROM t_test", null);
+        }
+        Assert.assertTrue(selects(servers.get(0)) > 0);
+        Assert.assertTrue(dataSource.getReplicaStates().get(servers.get(0).getJdbcUrl()).contains("errorRate=0.00"));
+        Assert.assertFalse(dataSource.getReplicaStates().toString().contains("quarantined=true"));
+    }
+
+    @Test
+    public void failsOverWhenReplicaIsDown() {
+        servers.get(0).close();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(10, dao.selectCount("SELECT * FROM t_test"));
+        }
+        Assert.assertTrue(dataSource.getReplicaStates().get(servers.get(0).getJdbcUrl()).contains("quarantined=true"));
+    }
+}
@@ -0,0 +1,163 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.config.annotation.ClickHousePrimaryKey;
+import com.yc.clickhouse.config.annotation.ClickHouseTable;
+import com.yc.clickhouse.dao.ClickHouseDaoBase;
+import com.yc.clickhouse.entity._BaseEntity;
+import com.yc.clickhouse.mapping.ColumnarResult;
+import com.yc.clickhouse.mapping.EntityQuery;
+import com.yc.clickhouse.mapping.RowBinaryColumnReader;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Data;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.clickhouse.settings.ClickHouseProperties;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryInputStream;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * RowBinaryWithNamesAndTypes 读取：直接解码到实体和列数组，结果与 ResultSet 映射一致
+ */
+public class RowBinaryReadTest {
+
+    private static final long DAY = 24L * 3600 * 1000;
+    private static final long BASE = 1_600_000_000_000L;// 整秒
+
+    @Entity
+    @Data
+    @ClickHouseTable(name = "t_metric")
+    public static class TMetric extends _BaseEntity {
+        @ClickHousePrimaryKey
+        @Column(name = "id")
+        private Long id;
+        @Column(name = "name")
+        private String name;
+        @Column(name = "score")
+        private Integer score;
+        @Column(name = "ratio")
+        private Double ratio;
+        @Column(name = "hits")
+        private Integer hits;
+        @Column(name = "day")
+        private LocalDate day;
+        @Column(name = "created")
+        private Date created;
+        @Column(name = "flag")
+        private Boolean flag;
+    }
+
+    public static class TMetricDao extends ClickHouseDaoBase<TMetric> {
+    }
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private TMetricDao dao;
+
+    @Before
+    public void setUp() {
+        server = FakeClickHouseServer.start()
+                .table("t_metric", new String[]{"id", "name", "score", "ratio", "hits", "day", "created", "flag"},
+                        new String[]{"UInt64", "LowCardinality(String)", "Nullable(Int32)", "Float64", "UInt32", "Date", "DateTime", "UInt8"},
+                        50, i -> new Object[]{(long) i, "n" + i % 3, i % 2 == 0 ? null : i, i / 2.0, (long) i * 10,
+                                new Date(BASE + i * DAY), new Date(BASE + i * 1000L), i % 2});
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(1);
+        dao = new TMetricDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+        server.close();
+    }
+
+    @Test
+    public void entitiesMatchResultSetMapping() {
+        String sql = "select id,name,score,ratio,hits,day,created,flag from t_metric";
+        List<TMetric> binary = dao.selectListBinary(sql, null);
+        List<TMetric> text = dao.selectListObj(sql, null);
+        Assert.assertEquals(50, binary.size());
+        Assert.assertEquals(text, binary);
+
+        TMetric row = binary.get(3);
+        Assert.assertEquals(Long.valueOf(3), row.getId());
+        Assert.assertEquals("n0", row.getName());
+        Assert.assertEquals(Integer.valueOf(3), row.getScore());
+        Assert.assertEquals(Integer.valueOf(30), row.getHits());
+        Assert.assertEquals(BASE + 3000L, row.getCreated().getTime());
+        Assert.assertEquals(Boolean.TRUE, row.getFlag());
+        Assert.assertNull(binary.get(2).getScore());
+        Assert.assertTrue(server.getQueries().contains(sql));// 格式子句不算在SQL里
+
+        List<TMetric> page = dao.selectListBinary(EntityQuery.from(TMetric.class).select("id", "ratio").limit(5));
+        Assert.assertEquals(5, page.size());
+        Assert.assertEquals(Double.valueOf(2.0), page.get(4).getRatio());
+        Assert.assertNull(page.get(4).getName());
+    }
+
+    @Test
+    public void columnarMatchesResultSetColumnar() {
+        String sql = "select id,name,score,hits,day,created from t_metric";
+        ColumnarResult binary = dao.selectColumnarBinary(sql, null);
+        ColumnarResult text = dao.selectColumnar(sql, null);
+        Assert.assertEquals(50, binary.getRowCount());
+        Assert.assertArrayEquals(text.longColumn(0), binary.longColumn(0));
+        Assert.assertArrayEquals(text.stringCodes(1), binary.stringCodes(1));
+        Assert.assertEquals(text.stringDictionary(1), binary.stringDictionary(1));
+        Assert.assertArrayEquals(text.longColumn(4), binary.longColumn(4));
+        Assert.assertArrayEquals(text.longColumn(5), binary.longColumn(5));
+        Assert.assertArrayEquals(text.longColumn(3), binary.longColumn(3));// UInt32 两条路径都存为 long
+        for (int row = 0; row < 50; row++) {
+            Assert.assertEquals(text.isNull(row, 2), binary.isNull(row, 2));
+            Assert.assertEquals(text.getObject(row, 2), binary.getObject(row, 2));
+        }
+    }
+
+    @Test
+    public void readersDecodeDriverEncoding() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ClickHouseRowBinaryStream out = new ClickHouseRowBinaryStream(bytes, TimeZone.getDefault(), new ClickHouseProperties());
+        out.writeDecimal64(new BigDecimal("12.34"), 2);
+        out.writeInt8(2);
+        out.writeInt64(BASE + 789);
+        out.writeBytes("ab\0".getBytes(StandardCharsets.UTF_8));
+        out.markNextNullable(true);
+        out.writeInt64(-1L);// UInt64 最大值
+        ClickHouseRowBinaryInputStream in = new ClickHouseRowBinaryInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()), TimeZone.getDefault(), new ClickHouseProperties());
+
+        Assert.assertEquals(new BigDecimal("12.34"), RowBinaryColumnReader.forType("Decimal(18, 2)").read(in));
+        Assert.assertEquals("b'c", RowBinaryColumnReader.forType("Enum8('a' = 1, 'b\\'c' = 2)").read(in));
+        Assert.assertEquals(new Timestamp(BASE + 789), RowBinaryColumnReader.forType("DateTime64(3, 'UTC')").read(in));
+        Assert.assertEquals("ab\0", RowBinaryColumnReader.forType("FixedString(3)").read(in));// 与驱动一样保留补齐的 \0
+        Assert.assertNull(RowBinaryColumnReader.forType("Nullable(String)").read(in));
+        Assert.assertEquals(Long.valueOf(-1), RowBinaryColumnReader.forType("UInt64", Long.class).read(in));
+
+        for (String type : Arrays.asList("Array(Int32)", "Tuple(Int32, String)")) {
+            try {
+                RowBinaryColumnReader.forType(type);
+                Assert.fail(type);
+            } catch (IllegalArgumentException expected) {
+                // 不支持的类型走 ResultSet 映射
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.SeekPage;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.mapping.EntityQuery;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 游标分页：按主键续页、非唯一排序列补上主键、续页令牌与查询排序绑定
+ */
+public class SeekPaginationTest {
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        server = FakeClickHouseServer.start().tTest(95);
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(1);
+        dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+        server.close();
+    }
+
+    @Test
+    public void pagesThroughByPrimaryKey() {
+        List<Integer> ids = new ArrayList<>();
+        int pages = 0;
+        String token = null;
+        do {
+            SeekPage<TTest> page = dao.selectPage(dao.query().select("name"), 20, token);
+            page.getRows().forEach(row -> ids.add(row.getId()));
+            token = page.getContinuationToken();
+            pages++;
+        } while (token != null);
+
+        Assert.assertEquals(5, pages);
+        Assert.assertEquals(95, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(i), ids.get(i));
+        }
+        // 投影自动补上排序列，之后的页按主键定位而不是 offset
+        Assert.assertTrue(server.getQueries().contains("select name,id from t_test order by id asc limit 21"));
+        Assert.assertTrue(server.getQueries().contains("select name,id from t_test where id > 79 order by id asc limit 21"));
+    }
+
+    @Test
+    public void exactMultipleHasNoEmptyTrailingPage() {
+        SeekPage<TTest> page = dao.selectPage(dao.query(), 95, null);
+        Assert.assertEquals(95, page.getRows().size());
+        Assert.assertFalse(page.hasNext());
+    }
+
+    @Test
+    public void rejectsTokenFromDifferentOrdering() {
+        String token = dao.selectPage(dao.query(), 10, null).getContinuationToken();
+        Assert.assertNotNull(token);
+        try {
+            dao.selectPage(dao.query().orderByDesc("id"), 10, token);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 升序的令牌不能用于降序查询
+        }
+        try {
+            dao.selectPage(dao.query(), 10, "not-a-token");
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 格式错误
+        }
+        Assert.assertEquals(Integer.valueOf(10), dao.selectPage(dao.query(), 10, token).getRows().get(0).getId());
+    }
+
+    @Test
+    public void continuationTokenEncodesSortKeys() {
+        EntityQuery<TTest> query = EntityQuery.from(TTest.class).orderByDesc("del_status").orderByDesc("id").seek(null, 10);
+        TTest row = new TTest();
+        row.setId(7);
+        row.setDelStatus(1);
+        String token = query.continuationToken(row);
+
+        EntityQuery<TTest> next = EntityQuery.from(TTest.class).orderByDesc("del_status").orderByDesc("id").seek(token, 10);
+        Assert.assertEquals("select id,name,address,create_date,del_status from t_test where (del_status, id) < (?, ?)"
+                + " order by del_status desc,id desc limit ?", next.toSql());
+        Assert.assertArrayEquals(new Object[]{1, 7, 10}, next.getParams());
+    }
+
+    @Test
+    public void tiesOnSortColumnDoNotSkipRowsAcrossPages() {
+        // del_status 只有0/1两个值，每页边界都落在取值相同的一串行中间；按查询生成的游标在内存中模拟服务端过滤
+        List<TTest> table = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            TTest row = new TTest();
+            row.setId(i);
+            row.setDelStatus(i % 2);
+            table.add(row);
+        }
+        table.sort(Comparator.comparing(TTest::getDelStatus).thenComparing(TTest::getId));
+
+        List<Integer> ids = new ArrayList<>();
+        String token = null;
+        do {
+            EntityQuery<TTest> query = EntityQuery.from(TTest.class).select("name").orderBy("del_status").seek(token, 20);
+            Assert.assertEquals(token == null ? "select name,del_status,id from t_test order by del_status asc,id asc limit ?"
+                    : "select name,del_status,id from t_test where (del_status, id) > (?, ?) order by del_status asc,id asc limit ?",
+                    query.toSql());
+            Object[] params = query.getParams();
+            List<TTest> page = new ArrayList<>();
+            for (TTest row : table) {
+                if (page.size() < 20 && (token == null || row.getDelStatus() > (Integer) params[0]
+                        || row.getDelStatus().equals(params[0]) && row.getId() > (Integer) params[1])) {
+                    page.add(row);
+                }
+            }
+            page.forEach(row -> ids.add(row.getId()));
+            token = page.size() < 20 ? null : query.continuationToken(page.get(page.size() - 1));
+        } while (token != null);
+
+        Assert.assertEquals(95, ids.size());
+        Assert.assertEquals(95, new HashSet<>(ids).size());
+        Assert.assertEquals(table.stream().map(TTest::getId).collect(Collectors.toList()), ids);
+    }
+}
@@ -0,0 +1,131 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.config.annotation.ClickHousePrimaryKey;
+import com.yc.clickhouse.config.annotation.ClickHouseShardingKey;
+import com.yc.clickhouse.config.annotation.ClickHouseTable;
+import com.yc.clickhouse.dao.ClickHouseDaoBase;
+import com.yc.clickhouse.dao.ClickHouseShards;
+import com.yc.clickhouse.entity._BaseEntity;
+import com.yc.clickhouse.utils.ClickHouseHashUtil;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Data;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按分片键直接写分片本地表：权重为 1,2,1 的三个假分片，id 对总权重 4 取模
+ */
+public class ShardedInsertTest {
+
+    @Entity
+    @Data
+    @ClickHouseTable(name = "t_event", localName = "t_event_local")
+    public static class TEvent extends _BaseEntity {
+        @ClickHousePrimaryKey
+        @ClickHouseShardingKey
+        @Column(name = "id")
+        private Long id;
+        @Column(name = "user")
+        private String user;
+    }
+
+    public static class TEventDao extends ClickHouseDaoBase<TEvent> {
+    }
+
+    private final List<FakeClickHouseServer> servers = new ArrayList<>();
+    private ClickHouseShards shards;
+    private TEventDao dao;
+
+    @Before
+    public void setUp() {
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            FakeClickHouseServer server = FakeClickHouseServer.start()
+                    .table("t_event_local", new String[]{"id", "user"}, new String[]{"Int64", "String"}, 0, null);
+            servers.add(server);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(server.getJdbcUrl());
+            dataSource.setMaximumPoolSize(2);
+            dataSources.add(dataSource);
+        }
+        shards = new ClickHouseShards(dataSources, Arrays.asList(1, 2, 1), 0, 8);
+        dao = new TEventDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSources.get(0));
+        ReflectionTestUtils.setField(dao, "clickHouseShards", shards);
+    }
+
+    @After
+    public void tearDown() {
+        shards.close();
+        servers.forEach(FakeClickHouseServer::close);
+    }
+
+    @Test
+    public void writesEachRowToItsShardLocalTable() {
+        List<TEvent> events = new ArrayList<>();
+        List<Map<String, Object>> maps = new ArrayList<>();
+        for (long i = 0; i < 400; i++) {
+            TEvent event = new TEvent();
+            event.setId(i);
+            event.setUser("user" + i);
+            events.add(event);
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", i);
+            map.put("user", "user" + i);
+            maps.add(map);
+        }
+        dao.batchInsert(events, 30);
+        Assert.assertEquals(100, servers.get(0).getInsertedRows("t_event_local"));
+        Assert.assertEquals(200, servers.get(1).getInsertedRows("t_event_local"));
+        Assert.assertEquals(100, servers.get(2).getInsertedRows("t_event_local"));
+
+        dao.batchInsertExt(maps);
+        Assert.assertEquals(200, servers.get(0).getInsertedRows("t_event_local"));
+        Assert.assertEquals(400, servers.get(1).getInsertedRows("t_event_local"));
+        Assert.assertEquals(200, servers.get(2).getInsertedRows("t_event_local"));
+        for (FakeClickHouseServer server : servers) {
+            Assert.assertEquals(0, server.getInsertedRows("t_event"));
+        }
+    }
+
+    @Test
+    public void shardOfMatchesServerFunctions() {
+        Assert.assertEquals("11160318154034397263", Long.toUnsignedString(ClickHouseHashUtil.cityHash64("")));
+        // 有符号数按同宽度无符号数取模：Int32 -1 即 4294967295，对 4 取模为 3，落在分片2
+        Assert.assertEquals(2, shards.shardOf(-1, ClickHouseShardingKey.Hash.NONE));
+        Assert.assertEquals(1, shards.shardOf(-2L, ClickHouseShardingKey.Hash.NONE));
+        // 整数的 cityHash64 等于零扩展后的 intHash64
+        int slot = (int) Long.remainderUnsigned(ClickHouseHashUtil.intHash64(4294967295L), 4);
+        Assert.assertEquals(new int[]{0, 1, 1, 2}[slot], shards.shardOf(-1, ClickHouseShardingKey.Hash.CITY_HASH64));
+        // CityHash v1.0.2 各长度分支（0-16、17-32、33-64、大于64字节）的已知结果
+        String fox = "The quick brown fox jumps over the lazy dog";
+        String digits = ", 0123456789 ABCDEFGHIJKLMNOPQRSTUVWXYZ abcdefghijklmnopqrstuvwxyz!?";
+        Assert.assertEquals("4220206313085259313", Long.toUnsignedString(ClickHouseHashUtil.cityHash64("abc")));
+        Assert.assertEquals("17126353911716179974", Long.toUnsignedString(ClickHouseHashUtil.cityHash64("user_1")));
+        Assert.assertEquals("11031438419873320790", Long.toUnsignedString(ClickHouseHashUtil.cityHash64("user_12345")));
+        Assert.assertEquals("692747204941329175", Long.toUnsignedString(ClickHouseHashUtil.cityHash64("0123456789abcdef")));
+        Assert.assertEquals("337393348439096653", Long.toUnsignedString(ClickHouseHashUtil.cityHash64("深圳南山区")));
+        Assert.assertEquals("5496319037578566379", Long.toUnsignedString(ClickHouseHashUtil.cityHash64("0123456789abcdef0")));
+        Assert.assertEquals("1612732933313009427", Long.toUnsignedString(ClickHouseHashUtil.cityHash64("The quick brown fox jumps")));
+        Assert.assertEquals("16697807905646383735", Long.toUnsignedString(ClickHouseHashUtil.cityHash64(fox)));
+        Assert.assertEquals("1604063817664129814", Long.toUnsignedString(ClickHouseHashUtil.cityHash64(fox + ", 0123456789 ABCDEFGHIJ")));
+        Assert.assertEquals("17818404648449317440", Long.toUnsignedString(ClickHouseHashUtil.cityHash64(fox + digits + fox + digits)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsStringKeyWithoutHash() {
+        shards.shardOf("user1", ClickHouseShardingKey.Hash.NONE);
+    }
+}
@@ -0,0 +1,82 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.ClickHouseShards;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 三个假分片（10/20/30行）上的分片并行查询：拼接、count/sum 求和、单分片失败
+ */
+public class ShardedQueryTest {
+
+    private final List<FakeClickHouseServer> servers = new ArrayList<>();
+    private ClickHouseShards shards;
+    private TTestDao dao;
+
+    @Before
+    public void setUp() {
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int rows = 10; rows <= 30; rows += 10) {
+            FakeClickHouseServer server = FakeClickHouseServer.start().tTest(rows);
+            servers.add(server);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(server.getJdbcUrl());
+            dataSource.setMaximumPoolSize(2);
+            dataSources.add(dataSource);
+        }
+        shards = new ClickHouseShards(dataSources, 2, 8);
+        dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSources.get(0));
+        ReflectionTestUtils.setField(dao, "clickHouseShards", shards);
+    }
+
+    @After
+    public void tearDown() {
+        shards.close();
+        servers.forEach(FakeClickHouseServer::close);
+    }
+
+    @Test
+    public void concatenatesShardsInOrder() {
+        List<TTest> list = dao.selectListObjOnShards("SELECT * FROM t_test", null);
+        Assert.assertEquals(60, list.size());
+        Assert.assertEquals(Integer.valueOf(9), list.get(9).getId());
+        Assert.assertEquals(Integer.valueOf(0), list.get(10).getId());// 第二个分片的第一行
+        Assert.assertEquals(Integer.valueOf(29), list.get(59).getId());
+        Assert.assertEquals(60, dao.selectListMapOnShards("SELECT id FROM t_test", null).size());
+    }
+
+    @Test
+    public void sumsPartialAggregates() {
+        Assert.assertEquals(60, dao.selectCountOnShards("where del_status = ?", new Object[]{1}));
+        Assert.assertEquals(0, new BigDecimal(60).compareTo(dao.selectSumOnShards("SELECT count() FROM t_test", null)));
+        for (FakeClickHouseServer server : servers) {
+            Assert.assertTrue(server.getQueries().contains("select count(*) as count from t_test where del_status = 1"));
+        }
+    }
+
+    @Test
+    public void failsWhenAnyShardFails() {
+        servers.get(1).failWhen("from t_test", 241, "Memory limit (for query) exceeded");
+        Assert.assertNull(dao.selectListObjOnShards("SELECT * FROM t_test", null));
+        Assert.assertEquals(-1, dao.selectCountOnShards(null, null));
+    }
+
+    @Test
+    public void fallsBackToDefaultDataSourceWithoutShards() {
+        ReflectionTestUtils.setField(dao, "clickHouseShards", null);
+        Assert.assertEquals(10, dao.selectCountOnShards(null, null));
+        Assert.assertEquals(10, dao.selectListObjOnShards("SELECT * FROM t_test", null).size());
+    }
+}
@@ -0,0 +1,121 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.config.ClickHouseDaoProperties;
+import com.yc.clickhouse.config.annotation.ClickHousePrimaryKey;
+import com.yc.clickhouse.config.annotation.ClickHouseTable;
+import com.yc.clickhouse.dao.ClickHouseDaoBase;
+import com.yc.clickhouse.dao.StatementCache;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.entity._BaseEntity;
+import com.yc.clickhouse.mapping.EntitySql;
+import com.yc.clickhouse.po.TTest;
+import lombok.Data;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+
+/**
+ * 实体SQL文本只构建一次（只有主键列的实体没有修改语句），连接池物理连接上的预编译语句按SQL文本LRU复用
+ */
+public class StatementCacheTest {
+
+    @Entity
+    @Data
+    @ClickHouseTable(name = "t_tag")
+    public static class TTag extends _BaseEntity {
+        @ClickHousePrimaryKey
+        @Column(name = "id")
+        private Long id;
+    }
+
+    public static class TTagDao extends ClickHouseDaoBase<TTag> {
+    }
+
+    private TTestDao dao(StubDataSource dataSource, int cacheSize) {
+        TTestDao dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+        ClickHouseDaoProperties properties = new ClickHouseDaoProperties();
+        properties.setStatementCacheSize(cacheSize);
+        ReflectionTestUtils.setField(dao, "daoProperties", properties);
+        return dao;
+    }
+
+    @Test
+    public void pagesShareOneStatement() {
+        StubDataSource dataSource = StubDataSource.tTest(10).pooled();
+        TTestDao dao = dao(dataSource, 64);
+
+        for (int page = 0; page < 10; page++) {
+            Assert.assertEquals(10, dao.selectPage(page * 10, 10, "where del_status = ?", new Object[]{1}).size());
+        }
+
+        StatementCache cache = dao.getStatementCache();
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(9, cache.getHitCount());
+        Assert.assertEquals(0.9, cache.getHitRate(), 1e-9);
+        Assert.assertEquals("select id,name,address,create_date,del_status from t_test where del_status = ? limit ?,?", dataSource.executedSql.get(9));
+        Assert.assertEquals(0, dataSource.openConnections.get());
+        Assert.assertEquals(0, dataSource.openResultSets.get());
+        Assert.assertEquals(1, dataSource.openStatements.get());
+    }
+
+    @Test
+    public void entityOperationsUseCachedSql() throws Exception {
+        StubDataSource dataSource = StubDataSource.tTest(1).pooled();
+        TTestDao dao = dao(dataSource, 2);
+        TTest entity = new TTest();
+        entity.setId(7);
+        entity.setName("n");
+
+        dao.updateByPrimaryKey(entity);
+        dao.updateByPrimaryKey(entity);
+        dao.deleteByPrimaryKey(7);
+        dao.selectCount("where id = ?", new Object[]{7});// 结果集没有count列，执行异常的语句被丢弃
+
+        Assert.assertEquals("alter table t_test update name = ?,address = ?,create_date = ?,del_status = ? where id = ?", dataSource.executedSql.get(0));
+        Assert.assertEquals("alter table t_test delete where id = ?", dataSource.executedSql.get(2));
+        Assert.assertEquals("select count(*) as count from t_test where id = ?", dataSource.executedSql.get(3));
+        StatementCache cache = dao.getStatementCache();
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(1, dataSource.openStatements.get());
+    }
+
+    @Test
+    public void primaryKeyOnlyEntityHasNoUpdateSql() throws Exception {
+        EntitySql<TTag> sql = EntitySql.of(TTag.class);
+        Assert.assertNull(sql.getUpdateByPrimaryKeySql());
+        Assert.assertNull(sql.updateByPrimaryKeysSql(4));
+        Assert.assertEquals("alter table t_tag delete where id = ?", sql.getDeleteByPrimaryKeySql());
+        Assert.assertEquals("alter table t_tag delete where id in (?,?)", sql.deleteByPrimaryKeysSql(2));
+
+        StubDataSource dataSource = StubDataSource.tTest(1).pooled();
+        TTagDao dao = new TTagDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+        TTag tag = new TTag();
+        tag.setId(7L);
+        try {
+            dao.updateByPrimaryKey(tag);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("no @Column except 'ClickHousePrimaryKey'"));
+        }
+        Assert.assertTrue(dataSource.executedSql.isEmpty());
+    }
+
+    @Test
+    public void unpooledConnectionsCloseStatements() {
+        StubDataSource dataSource = StubDataSource.tTest(3);
+        TTestDao dao = dao(dataSource, 64);
+
+        dao.selectPage(0, 10, null, null);
+        dao.selectPage(10, 10, null, null);
+
+        Assert.assertEquals(0, dao.getStatementCache().getHitCount());
+        Assert.assertEquals(0, dataSource.openStatements.get());
+    }
+}
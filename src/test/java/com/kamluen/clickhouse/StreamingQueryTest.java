@@ -0,0 +1,85 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.dao.ResultSetIterator;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 流式查询：逐行处理时堆占用不随结果集增长，关闭后连接、语句、结果集全部释放
+ */
+public class StreamingQueryTest {
+
+    private static final int ROWS = 1_000_000;
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void consumerKeepsHeapFlat() {
+        StubDataSource dataSource = StubDataSource.tTest(ROWS);
+        TTestDao dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+
+        final long[] heapAt = new long[2];
+        final WeakReference<?>[] firstRow = new WeakReference<?>[1];
+        AtomicLong idSum = new AtomicLong();
+        long count = dao.selectStream("SELECT * FROM t_test", null, row -> {
+            int id = row.getId();
+            if (id == 0) {
+                firstRow[0] = new WeakReference<>(row);
+            } else if (id == ROWS / 10) {
+                heapAt[0] = usedHeapAfterGc();
+            } else if (id == ROWS - 1) {
+                heapAt[1] = usedHeapAfterGc();
+            }
+            idSum.addAndGet(id);
+        });
+
+        Assert.assertEquals(ROWS, count);
+        Assert.assertEquals((long) ROWS * (ROWS - 1) / 2, idSum.get());
+        Assert.assertNull("rows must not be retained", firstRow[0].get());
+        long growth = heapAt[1] - heapAt[0];
+        Assert.assertTrue("heap grew " + growth + " bytes over " + (ROWS * 9 / 10) + " rows", growth < 16L * 1024 * 1024);
+        assertReleased(dataSource);
+    }
+
+    @Test
+    public void streamAndIteratorReleaseOnClose() throws Exception {
+        StubDataSource dataSource = StubDataSource.tTest(1000);
+        TTestDao dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+
+        try (Stream<TTest> stream = dao.selectStream("SELECT * FROM t_test", null)) {
+            Assert.assertEquals(10, stream.limit(10).count());
+            Assert.assertEquals(1, dataSource.openConnections.get());
+        }
+        assertReleased(dataSource);
+
+        ResultSetIterator<TTest> iterator = dao.selectIterator("SELECT * FROM t_test", null);
+        int n = 0;
+        while (iterator.hasNext()) {
+            Assert.assertEquals(Integer.valueOf(n++), iterator.next().getId());
+        }
+        Assert.assertEquals(1000, n);
+        // 读完最后一行自动释放
+        assertReleased(dataSource);
+    }
+
+    private static void assertReleased(StubDataSource dataSource) {
+        Assert.assertEquals(0, dataSource.openConnections.get());
+        Assert.assertEquals(0, dataSource.openStatements.get());
+        Assert.assertEquals(0, dataSource.openResultSets.get());
+    }
+}
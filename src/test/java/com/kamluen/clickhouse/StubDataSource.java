@@ -0,0 +1,337 @@
+package com.kamluen.clickhouse;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * 测试用的内存JDBC数据源：按行生成器返回结果集，记录连接/语句/结果集的打开数量和执行过的SQL，
+ * 不需要真实的clickHouse服务
+ */
+public class StubDataSource implements DataSource {
+
+    private final String[] columnNames;
+    private final int[] columnTypes;
+    private final int rowCount;
+    private final IntFunction<Object[]> rowGenerator;
+    private volatile long latencyMillis;
+    private volatile Connection physicalConnection;// pooled() 时所有租借连接共享的物理连接
+
+    public final AtomicInteger openConnections = new AtomicInteger();
+    public final AtomicInteger openStatements = new AtomicInteger();
+    public final AtomicInteger openResultSets = new AtomicInteger();
+    public final AtomicInteger maxConcurrentConnections = new AtomicInteger();
+    public final List<String> executedSql = Collections.synchronizedList(new ArrayList<>());
+    public final List<Object[]> executedBatches = Collections.synchronizedList(new ArrayList<>());
+
+    public StubDataSource(String[] columnNames, int[] columnTypes, int rowCount, IntFunction<Object[]> rowGenerator) {
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.rowCount = rowCount;
+        this.rowGenerator = rowGenerator;
+    }
+
+    /**
+     * t_test表结构的数据源，第i行为 (i, "name" + i, "address" + i, create_date, i % 2)
+     *
+     * @param rowCount
+     * @return
+     */
+    public static StubDataSource tTest(int rowCount) {
+        final long day = 24L * 3600 * 1000;
+        return new StubDataSource(
+                new String[]{"id", "name", "address", "create_date", "del_status"},
+                new int[]{Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.DATE, Types.INTEGER},
+                rowCount,
+                i -> new Object[]{i, "name" + i, "address" + i, new java.sql.Date(i * day), i % 2});
+    }
+
+    public StubDataSource latency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * 模拟连接池：每次租借返回新的代理连接，unwrap(Connection.class) 得到同一个物理连接
+     *
+     * @return
+     */
+    public StubDataSource pooled() {
+        this.physicalConnection = connection(null);
+        return this;
+    }
+
+    @Override
+    public Connection getConnection() {
+        int open = openConnections.incrementAndGet();
+        maxConcurrentConnections.accumulateAndGet(open, Math::max);
+        return connection(physicalConnection);
+    }
+
+    private Connection connection(Connection physical) {
+        final boolean[] closed = {false};
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return statement((String) args[0], (Connection) proxy);
+                case "createStatement":
+                    return statement(null, (Connection) proxy);
+                case "close":
+                    if (!closed[0] && proxy != physicalConnection) {
+                        closed[0] = true;
+                        openConnections.decrementAndGet();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed[0];
+                case "unwrap":
+                    if (physical != null && ((Class<?>) args[0]).isInstance(physical)) {
+                        return physical;
+                    }
+                    if (!((Class<?>) args[0]).isInstance(proxy)) {
+                        throw new SQLException("not a wrapper for " + args[0]);
+                    }
+                    return proxy;
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class}, handler);
+    }
+
+    private PreparedStatement statement(String preparedSql, Connection connection) {
+        openStatements.incrementAndGet();
+        final boolean[] closed = {false};
+        final List<Object> params = new ArrayList<>();
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                int index = (Integer) args[0];
+                while (params.size() < index) {
+                    params.add(null);
+                }
+                params.set(index - 1, args[1]);
+                return null;
+            }
+            switch (name) {
+                case "executeQuery":
+                    sleep();
+                    executedSql.add(args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql);
+                    return resultSet();
+                case "executeUpdate":
+                case "execute":
+                    sleep();
+                    executedSql.add(args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql);
+                    return "execute".equals(name) ? (Object) false : (Object) 1;
+                case "addBatch":
+                    executedBatches.add(params.toArray());
+                    params.clear();
+                    return null;
+                case "executeBatch":
+                    sleep();
+                    executedSql.add(preparedSql);
+                    return new int[0];
+                case "clearParameters":
+                    params.clear();
+                    return null;
+                case "close":
+                    if (!closed[0]) {
+                        closed[0] = true;
+                        openStatements.decrementAndGet();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed[0];
+                case "getConnection":
+                    return connection;
+                case "unwrap":
+                    if (!((Class<?>) args[0]).isInstance(proxy)) {
+                        throw new SQLException("not a wrapper for " + args[0]);
+                    }
+                    return proxy;
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{PreparedStatement.class}, handler);
+    }
+
+    private ResultSet resultSet() {
+        openResultSets.incrementAndGet();
+        final int[] cursor = {-1};
+        final Object[][] current = {null};
+        final boolean[] state = {false, false};// closed, wasNull
+        final ResultSetMetaData metaData = metaData();
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            switch (name) {
+                case "next":
+                    if (cursor[0] + 1 >= rowCount) {
+                        current[0] = null;
+                        return false;
+                    }
+                    cursor[0]++;
+                    current[0] = rowGenerator.apply(cursor[0]);
+                    return true;
+                case "getMetaData":
+                    return metaData;
+                case "wasNull":
+                    return state[1];
+                case "findColumn":
+                    return indexOf((String) args[0]);
+                case "close":
+                    if (!state[0]) {
+                        state[0] = true;
+                        openResultSets.decrementAndGet();
+                    }
+                    return null;
+                case "isClosed":
+                    return state[0];
+                case "unwrap":
+                    if (!((Class<?>) args[0]).isInstance(proxy)) {
+                        throw new SQLException("not a wrapper for " + args[0]);
+                    }
+                    return proxy;
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                default:
+                    if (name.startsWith("get") && args != null && args.length >= 1) {
+                        int index = args[0] instanceof String ? indexOf((String) args[0]) : (Integer) args[0];
+                        Object value = current[0][index - 1];
+                        state[1] = value == null;
+                        return convert(value, method.getReturnType());
+                    }
+                    return defaultValue(method.getReturnType());
+            }
+        };
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ResultSet.class}, handler);
+    }
+
+    private ResultSetMetaData metaData() {
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return columnNames.length;
+                case "getColumnName":
+                case "getColumnLabel":
+                    return columnNames[(Integer) args[0] - 1];
+                case "getColumnType":
+                    return columnTypes[(Integer) args[0] - 1];
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        };
+        return (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ResultSetMetaData.class}, handler);
+    }
+
+    private int indexOf(String column) throws SQLException {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equalsIgnoreCase(column)) {
+                return i + 1;
+            }
+        }
+        throw new SQLException("no column " + column);
+    }
+
+    private void sleep() throws InterruptedException {
+        if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis);
+        }
+    }
+
+    private static Object convert(Object value, Class<?> type) {
+        if (value == null || type == Object.class) {
+            return value == null ? defaultValue(type) : value;
+        }
+        if (type == String.class) {
+            return value.toString();
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (type == int.class) return number.intValue();
+            if (type == long.class) return number.longValue();
+            if (type == double.class) return number.doubleValue();
+            if (type == float.class) return number.floatValue();
+            if (type == short.class) return number.shortValue();
+            if (type == byte.class) return number.byteValue();
+            if (type == boolean.class) return number.intValue() != 0;
+            if (type == BigDecimal.class) return new BigDecimal(number.toString());
+        }
+        if (value instanceof java.util.Date) {
+            long time = ((java.util.Date) value).getTime();
+            if (type == java.sql.Date.class) return new java.sql.Date(time);
+            if (type == Timestamp.class) return new Timestamp(time);
+        }
+        return value;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        return null;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) {
+        return getConnection();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException("not a wrapper");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return false;
+    }
+}
@@ -0,0 +1,123 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.config.ClickHouseCompressionProperties;
+import com.yc.clickhouse.config.ClickHouseDataSourceConfig;
+import com.yc.clickhouse.dao.TTestDao;
+import com.yc.clickhouse.po.TTest;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 传输压缩：按数据源配置的LZ4请求体/响应压缩，网络字节数减少且结果不变，JDBC地址参数优先
+ */
+public class TransportCompressionTest {
+
+    private FakeClickHouseServer server;
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        server = FakeClickHouseServer.start().tTest(2000);
+    }
+
+    @After
+    public void tearDown() {
+        dataSources.forEach(HikariDataSource::close);
+        server.close();
+    }
+
+    private TTestDao newDao(String jdbcUrl, boolean compressRequests, boolean compressResponses) {
+        ClickHouseCompressionProperties compression = new ClickHouseCompressionProperties();
+        compression.setCompressRequests(compressRequests);
+        compression.setCompressResponses(compressResponses);
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(jdbcUrl);
+        dataSource.setMaximumPoolSize(1);
+        ClickHouseDataSourceConfig.applyCompression(dataSource, compression);
+        dataSources.add(dataSource);
+        TTestDao dao = new TTestDao();
+        ReflectionTestUtils.setField(dao, "clickHouseDatasource", dataSource);
+        return dao;
+    }
+
+    private long insertAll(TTestDao dao) {
+        List<TTest> entities = new ArrayList<>();
+        List<Map<String, Object>> maps = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            TTest entity = new TTest();
+            entity.setId(i);
+            entity.setName("name" + i % 20);
+            entity.setAddress("shenzhen nanshan " + i % 7);
+            entity.setCreateDate(new Date());
+            entity.setDelStatus(0);
+            entities.add(entity);
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", i);
+            map.put("name", "name" + i % 20);
+            map.put("address", "shenzhen nanshan " + i % 7);
+            maps.add(map);
+        }
+        long before = server.getReceivedBytes();
+        dao.batchInsert(entities);
+        dao.batchInsertExt(maps);
+        return server.getReceivedBytes() - before;
+    }
+
+    private String lastParam(String name) {
+        List<Map<String, String>> params = server.getRequestParams();
+        return params.get(params.size() - 1).get(name);
+    }
+
+    @Test
+    public void compressesInsertBodies() {
+        long plain = insertAll(newDao(server.getJdbcUrl(), false, true));
+        Assert.assertEquals(6000, server.getInsertedRows("t_test"));
+        long plainBytes = server.getInsertedBytes("t_test");
+
+        long compressed = insertAll(newDao(server.getJdbcUrl(), true, true));
+        Assert.assertEquals(12000, server.getInsertedRows("t_test"));
+        Assert.assertEquals(plainBytes * 2, server.getInsertedBytes("t_test"));// 解压后的数据一样
+        Assert.assertTrue(plain + " -> " + compressed, compressed * 3 < plain);
+        Assert.assertTrue(Boolean.parseBoolean(lastParam("decompress")) || "1".equals(lastParam("decompress")));
+    }
+
+    @Test
+    public void responsesFollowSetting() {
+        String sql = "SELECT * FROM t_test";
+        TTestDao plainDao = newDao(server.getJdbcUrl(), false, false);
+        long before = server.getSentBytes();
+        Assert.assertEquals(2000, plainDao.selectListObj(sql, null).size());
+        long plain = server.getSentBytes() - before;
+        Assert.assertFalse(Boolean.parseBoolean(lastParam("compress")) || "1".equals(lastParam("compress")));
+
+        TTestDao compressedDao = newDao(server.getJdbcUrl(), true, true);
+        before = server.getSentBytes();
+        Assert.assertEquals(plainDao.selectListObj(sql, null), compressedDao.selectListObj(sql, null));
+        Assert.assertEquals(plainDao.selectListBinary(sql, null), compressedDao.selectListBinary(sql, null));
+        Assert.assertTrue(server.getSentBytes() - before > 0);
+
+        before = server.getSentBytes();
+        compressedDao.selectListObj(sql, null);
+        Assert.assertTrue(server.getSentBytes() - before < plain);
+    }
+
+    @Test
+    public void jdbcUrlParametersOverrideSetting() {
+        TTestDao dao = newDao(server.getJdbcUrl() + "?decompress=0", true, true);
+        long plain = insertAll(dao);
+        Assert.assertEquals(6000, server.getInsertedRows("t_test"));
+        Assert.assertTrue(plain >= server.getInsertedBytes("t_test"));// 请求体未压缩
+        Assert.assertFalse(Boolean.parseBoolean(lastParam("decompress")) || "1".equals(lastParam("decompress")));
+    }
+}
@@ -0,0 +1,275 @@
+package com.kamluen.clickhouse;
+
+import com.yc.clickhouse.config.annotation.ClickHousePrimaryKey;
+import com.yc.clickhouse.config.annotation.ClickHouseShardingKey;
+import com.yc.clickhouse.config.annotation.ClickHouseTable;
+import com.yc.clickhouse.dao.ClickHouseDaoBase;
+import com.yc.clickhouse.dao.ClickHouseShards;
+import com.yc.clickhouse.dao.MutationBatcher;
+import com.yc.clickhouse.entity._BaseEntity;
+import com.yc.clickhouse.mapping.EntityQuery;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Data;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 版本表：修改/删除插入新版本行而不是 ALTER mutation（删除行复制当前行，写到原行所在分片），读取时按 FINAL 或 argMax 去重
+ */
+public class VersionedWriteTest {
+
+    @Entity
+    @Data
+    @ClickHouseTable(name = "t_user", versionColumn = "ver", deletedColumn = "is_deleted")
+    public static class TUser extends _BaseEntity {
+        @ClickHousePrimaryKey
+        @Column(name = "id")
+        private Long id;
+        @Column(name = "name")
+        private String name;
+        @Column(name = "score")
+        private Integer score;
+        @Column(name = "ver")
+        private Long ver;
+        @Column(name = "is_deleted")
+        private Integer isDeleted;
+    }
+
+    @Entity
+    @Data
+    @ClickHouseTable(name = "t_account", signColumn = "sign")
+    public static class TAccount extends _BaseEntity {
+        @ClickHousePrimaryKey
+        @Column(name = "id")
+        private Long id;
+        @Column(name = "balance")
+        private Long balance;
+        @Column(name = "sign")
+        private Integer sign;
+    }
+
+    @Entity
+    @Data
+    @ClickHouseTable(name = "t_order", localName = "t_order_local", versionColumn = "ver", deletedColumn = "is_deleted")
+    public static class TOrder extends _BaseEntity {
+        @ClickHousePrimaryKey
+        @Column(name = "id")
+        private Long id;
+        @ClickHouseShardingKey
+        @Column(name = "user_id")
+        private Long userId;
+        @Column(name = "ver")
+        private Long ver;
+        @Column(name = "is_deleted")
+        private Integer isDeleted;
+    }
+
+    /**
+     * 记录每次插入的行，再交给真实的插入
+     */
+    public static class RecordingDao<T extends _BaseEntity> extends ClickHouseDaoBase<T> {
+        final List<List<T>> inserts = new ArrayList<>();
+
+        @Override
+        protected void insertBatch(List<T> list, int batchSize) throws SQLException {
+            inserts.add(new ArrayList<>(list));
+            super.insertBatch(list, batchSize);
+        }
+    }
+
+    public static class TUserDao extends RecordingDao<TUser> {
+    }
+
+    public static class TAccountDao extends RecordingDao<TAccount> {
+    }
+
+    public static class TOrderDao extends RecordingDao<TOrder> {
+    }
+
+    private FakeClickHouseServer server;
+    private HikariDataSource dataSource;
+    private TUserDao userDao;
+    private TAccountDao accountDao;
+
+    @Before
+    public void setUp() {
+        server = FakeClickHouseServer.start()
+                .table("t_user", new String[]{"id", "name", "score", "ver", "is_deleted"},
+                        new String[]{"Int64", "String", "Int32", "Int64", "UInt8"}, 6, i -> new Object[]{(long) i, "n" + i, i, 1L, 0})
+                .table("t_account", new String[]{"id", "balance", "sign"},
+                        new String[]{"Int64", "Int64", "Int8"}, 1, i -> new Object[]{(long) i, 10L, 1});
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(server.getJdbcUrl());
+        dataSource.setMaximumPoolSize(1);
+        userDao = new TUserDao();
+        ReflectionTestUtils.setField(userDao, "clickHouseDatasource", dataSource);
+        accountDao = new TAccountDao();
+        ReflectionTestUtils.setField(accountDao, "clickHouseDatasource", dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+        server.close();
+    }
+
+    @Test
+    public void replacingUpdateAndDeleteAreInserts() throws Exception {
+        TUser user = new TUser();
+        user.setId(1L);
+        user.setName("a");
+        Assert.assertEquals(1, userDao.updateByPrimaryKey(user));
+        long firstVersion = user.getVer();
+        user.setName("b");
+        userDao.updateByPrimaryKey(user);
+        Assert.assertTrue(user.getVer() > firstVersion);
+
+        Assert.assertEquals(1, userDao.deleteByPrimaryKey(2L));
+        Assert.assertEquals(3, userDao.deleteByPrimaryKeys(Arrays.asList(3L, 4L, 5L, 99L)));// 不存在的主键不插入
+
+        Assert.assertEquals(6, server.getInsertedRows("t_user"));
+        Assert.assertEquals(4, userDao.inserts.size());// 多个主键的删除一次插入
+        TUser deleted = userDao.inserts.get(2).get(0);
+        Assert.assertEquals(Long.valueOf(2), deleted.getId());
+        Assert.assertEquals("n2", deleted.getName());// 其余列与当前行相同
+        Assert.assertEquals(Integer.valueOf(1), deleted.getIsDeleted());
+        Assert.assertTrue(deleted.getVer() > user.getVer());
+        Assert.assertTrue(server.getQueries().stream().noneMatch(sql -> sql.startsWith("alter")));
+    }
+
+    @Test
+    public void collapsingUpdateCancelsCurrentRow() throws Exception {
+        TAccount account = new TAccount();
+        account.setId(0L);
+        account.setBalance(99L);
+        accountDao.updateByPrimaryKey(account);
+
+        Assert.assertTrue(server.getQueries().contains("select id,balance,sign from t_account final where id in (0) and sign = 1"));
+        List<TAccount> rows = accountDao.inserts.get(0);
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals(Long.valueOf(10), rows.get(0).getBalance());// 取消行与当前行相同
+        Assert.assertEquals(Integer.valueOf(-1), rows.get(0).getSign());
+        Assert.assertEquals(Long.valueOf(99), rows.get(1).getBalance());
+        Assert.assertEquals(Integer.valueOf(1), rows.get(1).getSign());
+
+        Assert.assertEquals(1, accountDao.deleteByPrimaryKey(0L));
+        Assert.assertEquals(Integer.valueOf(-1), accountDao.inserts.get(1).get(0).getSign());
+        Assert.assertEquals(3, server.getInsertedRows("t_account"));
+        Assert.assertTrue(server.getQueries().stream().noneMatch(sql -> sql.startsWith("alter")));
+    }
+
+    @Test
+    public void replacingDeleteGoesToTheRowsShard() throws Exception {
+        server.table("t_order", new String[]{"id", "user_id", "ver", "is_deleted"},
+                new String[]{"Int64", "Int64", "Int64", "UInt8"}, 10, i -> new Object[]{(long) i, 100L + i, 1L, 0});
+        List<FakeClickHouseServer> shardServers = new ArrayList<>();
+        List<DataSource> shardDataSources = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            FakeClickHouseServer shard = FakeClickHouseServer.start()
+                    .table("t_order_local", new String[]{"id", "user_id", "ver", "is_deleted"},
+                            new String[]{"Int64", "Int64", "Int64", "UInt8"}, 0, null);
+            shardServers.add(shard);
+            HikariDataSource shardDataSource = new HikariDataSource();
+            shardDataSource.setJdbcUrl(shard.getJdbcUrl());
+            shardDataSource.setMaximumPoolSize(1);
+            shardDataSources.add(shardDataSource);
+        }
+        ClickHouseShards shards = new ClickHouseShards(shardDataSources, 0, 8);
+        try {
+            TOrderDao orderDao = new TOrderDao();
+            ReflectionTestUtils.setField(orderDao, "clickHouseDatasource", dataSource);
+            ReflectionTestUtils.setField(orderDao, "clickHouseShards", shards);
+
+            Assert.assertEquals(1, orderDao.deleteByPrimaryKey(3L));
+            TOrder deleted = orderDao.inserts.get(0).get(0);
+            Assert.assertEquals(Long.valueOf(3), deleted.getId());
+            Assert.assertEquals(Long.valueOf(103), deleted.getUserId());
+            Assert.assertEquals(Integer.valueOf(1), deleted.getIsDeleted());
+            int shard = shards.shardOf(103L, ClickHouseShardingKey.Hash.NONE);
+            Assert.assertEquals(1, shardServers.get(shard).getInsertedRows("t_order_local"));
+            Assert.assertEquals(0, shardServers.get(1 - shard).getInsertedRows("t_order_local"));
+        } finally {
+            shards.close();
+            shardServers.forEach(FakeClickHouseServer::close);
+        }
+    }
+
+    @Test
+    public void batchInsertFillsVersionAndSign() {
+        TUser user = new TUser();
+        user.setId(1L);
+        userDao.batchInsert(Collections.singletonList(user));
+        Assert.assertNotNull(user.getVer());
+
+        TAccount account = new TAccount();
+        account.setId(1L);
+        accountDao.batchInsert(Collections.singletonList(account));
+        Assert.assertEquals(Integer.valueOf(1), account.getSign());
+    }
+
+    @Test
+    public void finalMovesNonKeyPrewhereAfterMerge() {
+        EntityQuery<TUser> query = EntityQuery.from(TUser.class)
+                .prewhere("id", EntityQuery.Op.GE, 10L)
+                .prewhere("score", EntityQuery.Op.GT, 5)
+                .where("name", EntityQuery.Op.EQ, "a")
+                .limit(5);
+        Assert.assertEquals(EntityQuery.Dedup.FINAL, query.dedupMode());
+        Assert.assertEquals("select id,name,score,ver,is_deleted from t_user final prewhere id >= ?"
+                + " where score > ? and name = ? and is_deleted = 0 limit ?", query.toSql());
+        Assert.assertArrayEquals(new Object[]{10L, 5, "a", 5}, query.getParams());
+
+        query.dedup(EntityQuery.Dedup.NONE);
+        Assert.assertEquals("select id,name,score,ver,is_deleted from t_user prewhere id >= ? and score > ?"
+                + " where name = ? limit ?", query.toSql());
+    }
+
+    @Test
+    public void argMaxFiltersAfterDedup() {
+        EntityQuery<TUser> query = EntityQuery.from(TUser.class)
+                .select("name")
+                .prewhere("id", EntityQuery.Op.GE, 10L)
+                .where("score", EntityQuery.Op.GT, 5)
+                .orderBy("score")
+                .limit(20)
+                .dedup(EntityQuery.Dedup.ARG_MAX);
+        Assert.assertEquals("select name__last as name from (select id, argMax(name, ver) as name__last,"
+                + " argMax(score, ver) as score__last, argMax(is_deleted, ver) as is_deleted__last"
+                + " from t_user prewhere id >= ? group by id)"
+                + " where is_deleted__last = 0 and score__last > ? order by score__last asc limit ?", query.toSql());
+        Assert.assertArrayEquals(new Object[]{10L, 5, 20}, query.getParams());
+        Assert.assertEquals("select count(*) as count from (select id, argMax(score, ver) as score__last,"
+                + " argMax(is_deleted, ver) as is_deleted__last from t_user prewhere id >= ? group by id)"
+                + " where is_deleted__last = 0 and score__last > ?", query.toCountSql());
+
+        // 只按主键的游标在去重之前定位
+        EntityQuery<TUser> page = EntityQuery.from(TUser.class).select("id").after(100L).limit(10).dedup(EntityQuery.Dedup.ARG_MAX);
+        Assert.assertEquals("select id from (select id, argMax(is_deleted, ver) as is_deleted__last from t_user"
+                + " where id > ? group by id) where is_deleted__last = 0 order by id asc limit ?", page.toSql());
+
+        try {
+            EntityQuery.from(TAccount.class).dedup(EntityQuery.Dedup.ARG_MAX).toSql();
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+            // Collapsing 表不能按 argMax 去重
+        }
+        try {
+            MutationBatcher.builder(userDao).build();
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 版本表不需要合并 mutation
+        }
+    }
+}